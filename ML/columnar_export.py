@@ -0,0 +1,196 @@
+"""
+Columnar Export Reader
+
+Loads the analytics exports served by the backend at
+GET /api/admin/export/{incidents|verifications|audit-logs} into pandas.
+
+File layout (see ColumnarFileWriter in the backend):
+    magic "SSC1" | row groups | JSON footer | footer length (int32 LE) | magic
+Each row group holds one chunk per column, framed as compressed length and
+raw length (int32 LE) followed by zlib-deflated bytes. A chunk starts with a
+presence bitmap (LSB first, bit set = value present) and encodes only the
+present values:
+    INT64, TIMESTAMP  zigzag varint deltas (timestamps in microseconds)
+    FLOAT64           scale byte k + zigzag varint deltas of value * 10^k,
+                      or 0xFF + 8 byte planes of little-endian doubles
+    BOOLEAN           bitmap
+    STRING            varint length + UTF-8 bytes
+    DICTIONARY        varint count, varint length + UTF-8 entries, varint codes
+
+Usage:
+    python columnar_export.py incidents.ssc incidents.csv   # convert to CSV
+    df = read_export("incidents.ssc")                        # in a script
+"""
+
+import json
+import struct
+import sys
+import zlib
+from typing import Any, Dict, List, Tuple
+
+import numpy as np
+import pandas as pd
+from pandas.api.types import union_categoricals
+
+MAGIC = b"SSC1"
+
+
+def _decode_varints(buf: np.ndarray) -> np.ndarray:
+    """Decode a run of unsigned LEB128 varints into uint64 values"""
+    if buf.size == 0:
+        return np.zeros(0, dtype=np.uint64)
+    ends = np.flatnonzero(buf < 0x80)
+    starts = np.concatenate(([0], ends[:-1] + 1))
+    shifts = (np.arange(buf.size) - np.repeat(starts, ends - starts + 1)) * 7
+    parts = (buf & 0x7F).astype(np.uint64) << shifts.astype(np.uint64)
+    return np.add.reduceat(parts, starts)
+
+
+def _read_varint(data: bytes, pos: int) -> Tuple[int, int]:
+    result = 0
+    shift = 0
+    while True:
+        byte = data[pos]
+        pos += 1
+        result |= (byte & 0x7F) << shift
+        if byte < 0x80:
+            return result, pos
+        shift += 7
+
+
+def _decode_deltas(body: bytes) -> np.ndarray:
+    values = _decode_varints(np.frombuffer(body, dtype=np.uint8))
+    signed = (values >> np.uint64(1)).astype(np.int64) ^ -(values & np.uint64(1)).astype(np.int64)
+    return np.cumsum(signed)
+
+
+def _decode_column(kind: str, raw: bytes, rows: int) -> Any:
+    bitmap_len = (rows + 7) // 8
+    presence = np.unpackbits(np.frombuffer(raw, dtype=np.uint8, count=bitmap_len),
+                             bitorder="little")[:rows].astype(bool)
+    present = int(presence.sum())
+    body = raw[bitmap_len:]
+
+    if kind == "FLOAT64":
+        out = np.full(rows, np.nan)
+        if present == 0:
+            return out
+        scale = body[0]
+        if scale == 0xFF:
+            planes = np.frombuffer(body, dtype=np.uint8, count=present * 8, offset=1).reshape(8, present)
+            out[presence] = np.ascontiguousarray(planes.T).view("<f8").ravel()
+        else:
+            out[presence] = _decode_deltas(body[1:]).astype(np.float64) / 10.0 ** scale
+        return out
+
+    if kind == "INT64":
+        out = pd.array(np.zeros(rows, dtype=np.int64), dtype="Int64")
+        out[presence] = _decode_deltas(body)
+        out[~presence] = pd.NA
+        return out
+
+    if kind == "TIMESTAMP":
+        out = np.full(rows, np.datetime64("NaT"), dtype="datetime64[us]")
+        out[presence] = _decode_deltas(body).astype("datetime64[us]")
+        return out
+
+    if kind == "BOOLEAN":
+        bits = np.unpackbits(np.frombuffer(body, dtype=np.uint8), bitorder="little")[:present].astype(bool)
+        out = pd.array(np.zeros(rows, dtype=bool), dtype="boolean")
+        out[presence] = bits
+        out[~presence] = pd.NA
+        return out
+
+    if kind == "DICTIONARY":
+        count, pos = _read_varint(body, 0)
+        entries = []
+        for _ in range(count):
+            length, pos = _read_varint(body, pos)
+            entries.append(body[pos:pos + length].decode("utf-8"))
+            pos += length
+        codes = np.full(rows, -1, dtype=np.int64)
+        codes[presence] = _decode_varints(np.frombuffer(body[pos:], dtype=np.uint8)).astype(np.int64)
+        return pd.Categorical.from_codes(codes, categories=entries)
+
+    if kind == "STRING":
+        out = np.full(rows, None, dtype=object)
+        pos = 0
+        for index in np.flatnonzero(presence):
+            length, pos = _read_varint(body, pos)
+            out[index] = body[pos:pos + length].decode("utf-8")
+            pos += length
+        return out
+
+    raise ValueError(f"Unknown column type {kind}")
+
+
+def read_footer(path: str) -> Dict[str, Any]:
+    """Read the schema, row group index and export metadata (since/until watermark)"""
+    with open(path, "rb") as f:
+        f.seek(-8, 2)
+        footer_len = struct.unpack("<i", f.read(4))[0]
+        if f.read(4) != MAGIC:
+            raise ValueError(f"{path} is not a complete columnar export")
+        f.seek(-8 - footer_len, 2)
+        return json.loads(f.read(footer_len))
+
+
+def read_export(path: str, columns: List[str] = None) -> pd.DataFrame:
+    """
+    Load an export into a DataFrame; enum columns come back as categoricals
+
+    Args:
+        path: Export file
+        columns: Optional subset of columns to decode; others are skipped
+    """
+    footer = read_footer(path)
+    schema = footer["columns"]
+    wanted = set(columns) if columns else {c["name"] for c in schema}
+
+    parts: Dict[str, list] = {c["name"]: [] for c in schema if c["name"] in wanted}
+    with open(path, "rb") as f:
+        for group in footer["rowGroups"]:
+            f.seek(group["offset"])
+            for column in schema:
+                compressed_len, raw_len = struct.unpack("<ii", f.read(8))
+                if column["name"] not in wanted:
+                    f.seek(compressed_len, 1)
+                    continue
+                raw = zlib.decompress(f.read(compressed_len))
+                if len(raw) != raw_len:
+                    raise ValueError(f"Corrupt chunk for {column['name']} at offset {group['offset']}")
+                parts[column["name"]].append(_decode_column(column["type"], raw, group["rows"]))
+
+    data = {}
+    for column in schema:
+        name = column["name"]
+        if name not in wanted:
+            continue
+        chunks = parts[name]
+        if not chunks:
+            data[name] = pd.Series([], dtype=object)
+        elif column["type"] == "DICTIONARY":
+            # Each row group carries its own dictionary
+            data[name] = union_categoricals(chunks)
+        elif column["type"] in ("INT64", "BOOLEAN"):
+            data[name] = pd.concat([pd.Series(c) for c in chunks], ignore_index=True)
+        else:
+            data[name] = np.concatenate(chunks)
+    return pd.DataFrame(data)
+
+
+def latest_rows(df: pd.DataFrame) -> pd.DataFrame:
+    """Keep the newest row per id when several incremental exports are concatenated"""
+    return df.drop_duplicates(subset="id", keep="last").reset_index(drop=True)
+
+
+if __name__ == "__main__":
+    if len(sys.argv) not in (2, 3):
+        print("usage: python columnar_export.py <export.ssc> [out.csv]")
+        sys.exit(1)
+    frame = read_export(sys.argv[1])
+    meta = read_footer(sys.argv[1])
+    print(f"{meta['dataset']}: {len(frame)} rows, watermark {meta['metadata'].get('until')}")
+    if len(sys.argv) == 3:
+        frame.to_csv(sys.argv[2], index=False)
+        print(f"Wrote {sys.argv[2]}")
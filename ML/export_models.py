@@ -0,0 +1,159 @@
+"""
+Model Export
+
+Writes the trained fraud and risk pipelines to the JSON tree-ensemble format
+the backend scores in-process (TreeEnsembleModel). Each export is checked
+against the original pipeline on its training data before it is written.
+
+Usage:
+    python export_models.py [--out export]
+"""
+
+import argparse
+import json
+import math
+from pathlib import Path
+
+import joblib
+import numpy as np
+import pandas as pd
+from sklearn.ensemble import GradientBoostingClassifier, RandomForestRegressor
+from sklearn.preprocessing import OneHotEncoder
+
+TREE_LEAF = -1
+
+
+def column_spec(prep):
+    """Transformed column layout of a fitted ColumnTransformer"""
+    columns = []
+    for name, transformer, features in prep.transformers_:
+        if name == "remainder" or transformer == "drop":
+            continue
+        if transformer == "passthrough":
+            columns += [{"feature": feature} for feature in features]
+        elif isinstance(transformer, OneHotEncoder):
+            if transformer.drop is not None:
+                raise ValueError("OneHotEncoder with drop is not supported")
+            for feature, categories in zip(features, transformer.categories_):
+                columns += [{"feature": feature, "equals": str(category)} for category in categories]
+        else:
+            raise ValueError(f"Unsupported transformer {name}: {transformer}")
+    return columns
+
+
+def export_tree(estimator, scale=1.0):
+    """Flat node arrays of one fitted decision tree; leaves have feature -1"""
+    tree = estimator.tree_
+    leaf = tree.children_left == TREE_LEAF
+    return {
+        "feature": np.where(leaf, -1, tree.feature).tolist(),
+        "threshold": tree.threshold.tolist(),
+        "left": tree.children_left.tolist(),
+        "right": tree.children_right.tolist(),
+        "value": (tree.value[:, 0, 0] * scale).tolist()
+    }
+
+
+def transform(prep, X):
+    transformed = prep.transform(X)
+    return transformed.toarray() if hasattr(transformed, "toarray") else np.asarray(transformed)
+
+
+def export_fraud(model, X):
+    prep, clf = model.named_steps["prep"], model.named_steps["clf"]
+    if not isinstance(clf, GradientBoostingClassifier) or clf.n_classes_ != 2:
+        raise ValueError("Expected a binary GradientBoostingClassifier")
+
+    # The learning rate is folded into the leaf values; the prior's log-odds becomes the base score
+    trees = [export_tree(stage[0], clf.learning_rate) for stage in clf.estimators_]
+    X0 = transform(prep, X.head(1))
+    raw = clf.decision_function(X0)[0]
+    base_score = raw - sum(stage[0].predict(X0)[0] for stage in clf.estimators_) * clf.learning_rate
+
+    return {
+        "format": "tree-ensemble",
+        "name": "fraud_v1.0-embedded",
+        "objective": "binary-logistic",
+        "aggregation": "sum",
+        "baseScore": float(base_score),
+        "columns": column_spec(prep),
+        "trees": trees
+    }
+
+
+def export_risk(model, X):
+    prep, rf = model.named_steps["prep"], model.named_steps["rf"]
+    if not isinstance(rf, RandomForestRegressor):
+        raise ValueError("Expected a RandomForestRegressor")
+
+    return {
+        "format": "tree-ensemble",
+        "name": "risk_v1.0-embedded",
+        "objective": "regression",
+        "aggregation": "mean",
+        "baseScore": 0.0,
+        "columns": column_spec(prep),
+        "trees": [export_tree(estimator) for estimator in rf.estimators_]
+    }
+
+
+def score_export(export, row):
+    """Reference implementation of TreeEnsembleModel.predict for one input row"""
+    x = []
+    for column in export["columns"]:
+        value = row[column["feature"]]
+        if "equals" in column:
+            x.append(1.0 if str(value) == column["equals"] else 0.0)
+        else:
+            x.append(float(np.float32(value)))
+
+    total = 0.0
+    for tree in export["trees"]:
+        node = 0
+        while tree["feature"][node] >= 0:
+            feature = tree["feature"][node]
+            node = tree["left"][node] if x[feature] <= tree["threshold"][node] else tree["right"][node]
+        total += tree["value"][node]
+
+    if export["aggregation"] == "mean":
+        total /= len(export["trees"])
+    raw = export["baseScore"] + total
+    return 1.0 / (1.0 + math.exp(-raw)) if export["objective"] == "binary-logistic" else raw
+
+
+def verify(export, expected, X, tolerance, rows=500):
+    sample = X.head(rows)
+    worst = max(abs(score_export(export, row) - want)
+                for (_, row), want in zip(sample.iterrows(), expected[:rows]))
+    if worst > tolerance:
+        raise AssertionError(f"{export['name']}: export differs from the pipeline by {worst}")
+    print(f"{export['name']}: {len(export['trees'])} trees, max difference {worst:.2e} over {len(sample)} rows")
+
+
+def main():
+    parser = argparse.ArgumentParser(description="Export fraud and risk models for in-JVM scoring")
+    parser.add_argument("--out", default="export")
+    args = parser.parse_args()
+
+    out = Path(args.out)
+    out.mkdir(parents=True, exist_ok=True)
+
+    fraud_model = joblib.load("fraud_detector.pkl")
+    fraud_X = pd.read_csv("fraud_dataset.csv")
+    fraud_X = fraud_X[list(fraud_model.feature_names_in_)]
+    fraud_export = export_fraud(fraud_model, fraud_X)
+    verify(fraud_export, fraud_model.predict_proba(fraud_X)[:, 1], fraud_X, 1e-6)
+    (out / "fraud_model.json").write_text(json.dumps(fraud_export))
+
+    risk_model = joblib.load("risk_priority_model.pkl")
+    risk_X = pd.read_csv("synthetic_incidents.csv")
+    risk_X = risk_X[list(risk_model.feature_names_in_)]
+    risk_export = export_risk(risk_model, risk_X)
+    verify(risk_export, risk_model.predict(risk_X), risk_X, 1e-6)
+    (out / "risk_model.json").write_text(json.dumps(risk_export))
+
+    print(f"Wrote {out / 'fraud_model.json'} and {out / 'risk_model.json'}")
+
+
+if __name__ == "__main__":
+    main()
@@ -151,21 +151,7 @@ class FraudDetectionEndpoint:
             
             # Get prediction probabilities
             probabilities = self.model.predict_proba(df)[0]
-            fraud_probability = float(probabilities[1])  # Probability of fraud (class 1)
-            
-            # Binary classification
-            is_fraud = fraud_probability >= threshold
-            
-            # Calculate confidence (distance from threshold)
-            confidence = abs(fraud_probability - threshold) / max(threshold, 1 - threshold)
-            confidence = min(confidence, 1.0)
-            
-            return FraudPredictionResult(
-                success=True,
-                fraud_probability=fraud_probability,
-                is_fraud=is_fraud,
-                confidence=confidence
-            )
+            return self._result_from_probability(float(probabilities[1]), threshold)
             
         except Exception as e:
             logger.error(f"Error in fraud prediction: {str(e)}")
@@ -174,18 +160,65 @@ class FraudDetectionEndpoint:
                 error=f"Prediction error: {str(e)}"
             )
     
+    def _result_from_probability(self, fraud_probability: float, threshold: float) -> FraudPredictionResult:
+        """
+        Build a prediction result from the model's fraud probability (class 1)
+        """
+        # Binary classification
+        is_fraud = fraud_probability >= threshold
+        
+        # Calculate confidence (distance from threshold)
+        confidence = abs(fraud_probability - threshold) / max(threshold, 1 - threshold)
+        confidence = min(confidence, 1.0)
+        
+        return FraudPredictionResult(
+            success=True,
+            fraud_probability=fraud_probability,
+            is_fraud=is_fraud,
+            confidence=confidence
+        )
+    
     def predict_batch(self, data_list: List[Dict[str, Any]], threshold: float = 0.5) -> List[FraudPredictionResult]:
         """
-        Predict fraud for multiple incidents
+        Predict fraud for multiple incidents with one model pass
+        
+        Invalid entries get their validation error; the valid ones are scored
+        together in a single DataFrame.
         
         Args:
             data_list: List of incident data dictionaries
             threshold: Threshold for binary classification
             
         Returns:
-            List of FraudPredictionResult objects
+            List of FraudPredictionResult objects, in input order
         """
-        return [self.predict(data, threshold) for data in data_list]
+        if self.model is None:
+            return [FraudPredictionResult(success=False, error="Model not loaded") for _ in data_list]
+        
+        results: List[Optional[FraudPredictionResult]] = [None] * len(data_list)
+        valid_indices = []
+        for i, data in enumerate(data_list):
+            validation_error = self._validate_input(data)
+            if validation_error:
+                results[i] = FraudPredictionResult(success=False, error=validation_error)
+            else:
+                valid_indices.append(i)
+        
+        if valid_indices:
+            try:
+                df = pd.DataFrame([
+                    {feature: data_list[i][feature] for feature in self.required_features}
+                    for i in valid_indices
+                ])
+                probabilities = self.model.predict_proba(df)[:, 1]
+                for i, fraud_probability in zip(valid_indices, probabilities):
+                    results[i] = self._result_from_probability(float(fraud_probability), threshold)
+            except Exception as e:
+                logger.error(f"Error in batch fraud prediction: {str(e)}")
+                for i in valid_indices:
+                    results[i] = FraudPredictionResult(success=False, error=f"Prediction error: {str(e)}")
+        
+        return results
     
     def get_feature_importance(self) -> Dict[str, float]:
         """
@@ -174,35 +174,7 @@ class RiskPriorityEndpoint:
             df = pd.DataFrame([{feature: data[feature] for feature in self.required_features}])
             
             # Get prediction
-            risk_score = float(self.model.predict(df)[0])
-            
-            # Ensure score is within reasonable bounds
-            risk_score = max(0, min(100, risk_score))
-            
-            # Get risk level
-            risk_level = self._get_risk_level(risk_score)
-            
-            # Calculate confidence based on score magnitude and features
-            # Higher scores and certain features (injuries, sensitive locations) increase confidence
-            base_confidence = min(risk_score / 100.0, 1.0) if risk_score > 0 else 0.1
-            
-            # Boost confidence for high-risk indicators
-            confidence_boost = 0
-            if data.get("injuries_reported", 0) > 0:
-                confidence_boost += 0.1
-            if data.get("near_sensitive_location", 0) == 1:
-                confidence_boost += 0.1
-            if data.get("people_involved", 1) > 3:
-                confidence_boost += 0.05
-            
-            confidence = min(base_confidence + confidence_boost, 1.0)
-            
-            return RiskPredictionResult(
-                success=True,
-                risk_score=risk_score,
-                risk_level=risk_level,
-                confidence=confidence
-            )
+            return self._result_from_score(float(self.model.predict(df)[0]), data)
             
         except Exception as e:
             logger.error(f"Error in risk prediction: {str(e)}")
@@ -211,17 +183,78 @@ class RiskPriorityEndpoint:
                 error=f"Prediction error: {str(e)}"
             )
     
+    def _result_from_score(self, risk_score: float, data: Dict[str, Any]) -> RiskPredictionResult:
+        """
+        Build a prediction result from the model's raw priority score
+        """
+        # Ensure score is within reasonable bounds
+        risk_score = max(0, min(100, risk_score))
+        
+        # Get risk level
+        risk_level = self._get_risk_level(risk_score)
+        
+        # Calculate confidence based on score magnitude and features
+        # Higher scores and certain features (injuries, sensitive locations) increase confidence
+        base_confidence = min(risk_score / 100.0, 1.0) if risk_score > 0 else 0.1
+        
+        # Boost confidence for high-risk indicators
+        confidence_boost = 0
+        if data.get("injuries_reported", 0) > 0:
+            confidence_boost += 0.1
+        if data.get("near_sensitive_location", 0) == 1:
+            confidence_boost += 0.1
+        if data.get("people_involved", 1) > 3:
+            confidence_boost += 0.05
+        
+        confidence = min(base_confidence + confidence_boost, 1.0)
+        
+        return RiskPredictionResult(
+            success=True,
+            risk_score=risk_score,
+            risk_level=risk_level,
+            confidence=confidence
+        )
+    
     def predict_batch(self, data_list: List[Dict[str, Any]]) -> List[RiskPredictionResult]:
         """
-        Predict risk priority for multiple incidents
+        Predict risk priority for multiple incidents with one model pass
+        
+        Invalid entries get their validation error; the valid ones are scored
+        together in a single DataFrame.
         
         Args:
             data_list: List of incident data dictionaries
             
         Returns:
-            List of RiskPredictionResult objects
+            List of RiskPredictionResult objects, in input order
         """
-        return [self.predict(data) for data in data_list]
+        if self.model is None:
+            return [RiskPredictionResult(success=False, error="Model not loaded") for _ in data_list]
+        
+        results: List[Optional[RiskPredictionResult]] = [None] * len(data_list)
+        valid_indices = []
+        for i, data in enumerate(data_list):
+            validation_error = self._validate_input(data)
+            if validation_error:
+                results[i] = RiskPredictionResult(success=False, error=validation_error)
+            else:
+                valid_indices.append(i)
+        
+        if valid_indices:
+            try:
+                df = pd.DataFrame([
+                    {feature: data_list[i][feature] for feature in self.required_features}
+                    for i in valid_indices
+                ])
+                scores = self.model.predict(df)
+                for i, risk_score in zip(valid_indices, scores):
+                    results[i] = self._result_from_score(float(risk_score), data_list[i])
+            except Exception as e:
+                logger.error(f"Error in batch risk prediction: {str(e)}")
+                for i in valid_indices:
+                    results[i] = RiskPredictionResult(success=False, error=f"Prediction error: {str(e)}")
+        
+        return results
     
     def get_feature_importance(self) -> Dict[str, float]:
         """
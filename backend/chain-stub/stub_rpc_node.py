@@ -0,0 +1,292 @@
+#!/usr/bin/env python3
+"""
+SenseSafe Ethereum JSON-RPC stand-in
+
+Answers the JSON-RPC calls the backend's blockchain writer makes, using only
+the standard library, so nonce handling, batching, receipt polling and
+replacement can be exercised without a real node. Point the backend at it
+with BLOCKCHAIN_RPC_URL=http://localhost:8545 and any BLOCKCHAIN_PRIVATE_KEY.
+
+It behaves like a single-account node: signatures are not checked and every
+transaction is treated as coming from the same sender. Transactions are
+mined in nonce order; one with a nonce gap waits for the gap to fill. A call
+to the contract for a function its ABI doesn't declare is mined with status 0,
+as the deployed contract would revert it; transactions to any other address
+always succeed, like call data sent to an account.
+
+Environment variables:
+  PORT                 port to listen on (default: 8545)
+  STUB_CHAIN_ID        chain id (default: 1337)
+  STUB_BLOCK_TIME_MS   time between blocks (default: 1000)
+  STUB_GAS_PRICE       gas price in wei (default: 1000000000)
+  STUB_DROP_RATE       fraction of new transactions that are never mined unless
+                       replaced at a higher gas price (default: 0)
+  STUB_RPC_LATENCY_MS  delay applied to every call (default: 0)
+  STUB_ANCHOR          1 to accept anchorRoot(bytes32,uint256) as a contract function
+  STUB_ABI             contract ABI path (default: ../src/main/resources/IncidentAudit.abi)
+  STUB_CONTRACT        contract address (default: blockchain.contract-address in application.yml)
+
+GET /stats returns counters for checking a run.
+"""
+
+import json
+import os
+import random
+import threading
+import time
+from http.server import BaseHTTPRequestHandler, ThreadingHTTPServer
+from pathlib import Path
+
+# --- Keccak-256 (Ethereum's hash; hashlib.sha3_256 uses different padding) ---
+
+ROTATIONS = [[0, 36, 3, 41, 18], [1, 44, 10, 45, 2], [62, 6, 43, 15, 61], [28, 55, 25, 21, 56],
+             [27, 20, 39, 8, 14]]
+MASK = (1 << 64) - 1
+
+
+def round_constants():
+    constants, r = [], 1
+    for _ in range(24):
+        rc = 0
+        for j in range(7):
+            r = ((r << 1) ^ ((r >> 7) * 0x71)) % 256
+            if r & 2:
+                rc ^= 1 << ((1 << j) - 1)
+        constants.append(rc)
+    return constants
+
+
+ROUND_CONSTANTS = round_constants()
+
+
+def rotl(value, shift):
+    return ((value << shift) | (value >> (64 - shift))) & MASK if shift else value
+
+
+def keccak_f(a):
+    for rc in ROUND_CONSTANTS:
+        c = [a[x][0] ^ a[x][1] ^ a[x][2] ^ a[x][3] ^ a[x][4] for x in range(5)]
+        d = [c[(x - 1) % 5] ^ rotl(c[(x + 1) % 5], 1) for x in range(5)]
+        a = [[a[x][y] ^ d[x] for y in range(5)] for x in range(5)]
+        b = [[0] * 5 for _ in range(5)]
+        for x in range(5):
+            for y in range(5):
+                b[y][(2 * x + 3 * y) % 5] = rotl(a[x][y], ROTATIONS[x][y])
+        a = [[b[x][y] ^ ((~b[(x + 1) % 5][y]) & b[(x + 2) % 5][y]) for y in range(5)] for x in range(5)]
+        a[0][0] ^= rc
+    return a
+
+
+def keccak256(data):
+    rate = 136
+    padded = bytearray(data) + b'\x01' + bytes((-len(data) - 1) % rate)
+    padded[-1] |= 0x80
+    state = [[0] * 5 for _ in range(5)]
+    for offset in range(0, len(padded), rate):
+        block = padded[offset:offset + rate]
+        for i in range(rate // 8):
+            state[i % 5][i // 5] ^= int.from_bytes(block[8 * i:8 * i + 8], 'little')
+        state = keccak_f(state)
+    return b''.join(state[i % 5][i // 5].to_bytes(8, 'little') for i in range(4))
+
+
+# --- RLP, enough to read a signed legacy transaction ---
+
+def rlp_decode(data, pos=0):
+    prefix = data[pos]
+    if prefix < 0x80:
+        return data[pos:pos + 1], pos + 1
+    if prefix < 0xb8:
+        length, start = prefix - 0x80, pos + 1
+        return data[start:start + length], start + length
+    if prefix < 0xc0:
+        size = prefix - 0xb7
+        length, start = int.from_bytes(data[pos + 1:pos + 1 + size], 'big'), pos + 1 + size
+        return data[start:start + length], start + length
+    if prefix < 0xf8:
+        length, start = prefix - 0xc0, pos + 1
+    else:
+        size = prefix - 0xf7
+        length, start = int.from_bytes(data[pos + 1:pos + 1 + size], 'big'), pos + 1 + size
+    items, cursor = [], start
+    while cursor < start + length:
+        item, cursor = rlp_decode(data, cursor)
+        items.append(item)
+    return items, start + length
+
+
+def selector(signature):
+    return keccak256(signature.encode()).hex()[:8]
+
+
+def contract_selectors():
+    path = Path(os.environ.get('STUB_ABI', Path(__file__).parent / '../src/main/resources/IncidentAudit.abi'))
+    selectors = set()
+    for entry in json.loads(path.read_text()):
+        if entry.get('type') == 'function':
+            selectors.add(selector(f"{entry['name']}({','.join(i['type'] for i in entry['inputs'])})"))
+    if os.environ.get('STUB_ANCHOR') == '1':
+        selectors.add(selector('anchorRoot(bytes32,uint256)'))
+    return selectors
+
+
+# --- Chain state ---
+
+class Chain:
+
+    def __init__(self):
+        self.lock = threading.Lock()
+        self.block = 1
+        self.mined_nonce = 0          # nonce of the next transaction to mine
+        self.pool = {}                # nonce -> pending transaction
+        self.receipts = {}            # hash -> receipt
+        self.known = set()
+        self.selectors = contract_selectors()
+        self.contract = os.environ.get('STUB_CONTRACT', '0x598761b8e308aa6f37Cd57B468CB8c86eB519F4b').lower()
+        self.drop_rate = float(os.environ.get('STUB_DROP_RATE', '0'))
+        self.stats = {'received': 0, 'replaced': 0, 'rejected': 0, 'dropped': 0, 'mined': 0, 'reverted': 0}
+
+    def pending_nonce(self):
+        nonce = self.mined_nonce
+        while nonce in self.pool:
+            nonce += 1
+        return nonce
+
+    def send_raw(self, raw_hex):
+        raw = bytes.fromhex(raw_hex[2:])
+        fields, _ = rlp_decode(raw)
+        nonce = int.from_bytes(fields[0], 'big')
+        gas_price = int.from_bytes(fields[1], 'big')
+        tx_hash = '0x' + keccak256(raw).hex()
+        with self.lock:
+            self.stats['received'] += 1
+            if tx_hash in self.known:
+                return None, 'already known'
+            if nonce < self.mined_nonce:
+                self.stats['rejected'] += 1
+                return None, 'nonce too low'
+            if nonce > self.pending_nonce():
+                self.stats['rejected'] += 1
+                return None, 'nonce too high'
+            current = self.pool.get(nonce)
+            if current is not None:
+                # Geth wants at least a 10% higher gas price to replace a pooled transaction
+                if gas_price * 10 < current['gas_price'] * 11:
+                    self.stats['rejected'] += 1
+                    return None, 'replacement transaction underpriced'
+                self.stats['replaced'] += 1
+            dropped = current is None and random.random() < self.drop_rate
+            if dropped:
+                self.stats['dropped'] += 1
+            self.known.add(tx_hash)
+            self.pool[nonce] = {'hash': tx_hash, 'nonce': nonce, 'gas_price': gas_price,
+                                'to': '0x' + fields[3].hex(), 'data': fields[5].hex(), 'dropped': dropped}
+            return tx_hash, None
+
+    def mine(self):
+        with self.lock:
+            self.block += 1
+            index = 0
+            while self.mined_nonce in self.pool and not self.pool[self.mined_nonce]['dropped']:
+                tx = self.pool.pop(self.mined_nonce)
+                ok = tx['to'] != self.contract or tx['data'][:8] in self.selectors
+                self.stats['mined'] += 1
+                if not ok:
+                    self.stats['reverted'] += 1
+                self.receipts[tx['hash']] = receipt(tx, self.block, index, ok)
+                self.mined_nonce += 1
+                index += 1
+
+
+def receipt(tx, block, index, ok):
+    gas_used = hex(21000 + 16 * len(tx['data']) // 2 + (20000 if ok else 0))
+    block_hash = '0x' + keccak256(block.to_bytes(8, 'big')).hex()
+    return {
+        'transactionHash': tx['hash'], 'transactionIndex': hex(index), 'blockHash': block_hash,
+        'blockNumber': hex(block), 'from': '0x' + '00' * 20, 'to': tx['to'], 'cumulativeGasUsed': gas_used,
+        'gasUsed': gas_used, 'effectiveGasPrice': hex(tx['gas_price']), 'contractAddress': None, 'logs': [],
+        'logsBloom': '0x' + '00' * 256, 'type': '0x0', 'status': '0x1' if ok else '0x0', 'root': None
+    }
+
+
+CHAIN = Chain()
+
+
+def rpc(method, params):
+    if method == 'eth_chainId':
+        return hex(int(os.environ.get('STUB_CHAIN_ID', '1337')))
+    if method == 'net_version':
+        return os.environ.get('STUB_CHAIN_ID', '1337')
+    if method == 'eth_blockNumber':
+        return hex(CHAIN.block)
+    if method == 'eth_gasPrice':
+        return hex(int(os.environ.get('STUB_GAS_PRICE', '1000000000')))
+    if method == 'eth_getTransactionCount':
+        with CHAIN.lock:
+            return hex(CHAIN.pending_nonce() if params[1] == 'pending' else CHAIN.mined_nonce)
+    if method == 'eth_sendRawTransaction':
+        tx_hash, error = CHAIN.send_raw(params[0])
+        if error:
+            raise RpcError(error)
+        return tx_hash
+    if method == 'eth_getTransactionReceipt':
+        with CHAIN.lock:
+            return CHAIN.receipts.get(params[0])
+    raise RpcError(f'the method {method} does not exist/is not available', -32601)
+
+
+class RpcError(Exception):
+
+    def __init__(self, message, code=-32000):
+        super().__init__(message)
+        self.code = code
+
+
+class RpcHandler(BaseHTTPRequestHandler):
+
+    def do_GET(self):
+        if self.path == '/stats':
+            with CHAIN.lock:
+                stats = dict(CHAIN.stats, block=CHAIN.block, pending=len(CHAIN.pool), next_nonce=CHAIN.mined_nonce)
+            self.send_json(stats)
+        else:
+            self.send_error(404)
+
+    def do_POST(self):
+        body = json.loads(self.rfile.read(int(self.headers.get('Content-Length', 0))))
+        time.sleep(int(os.environ.get('STUB_RPC_LATENCY_MS', '0')) / 1000.0)
+        if isinstance(body, list):
+            self.send_json([self.answer(call) for call in body])
+        else:
+            self.send_json(self.answer(body))
+
+    def answer(self, call):
+        try:
+            return {'jsonrpc': '2.0', 'id': call.get('id'), 'result': rpc(call['method'], call.get('params') or [])}
+        except RpcError as e:
+            return {'jsonrpc': '2.0', 'id': call.get('id'), 'error': {'code': e.code, 'message': str(e)}}
+
+    def send_json(self, payload):
+        data = json.dumps(payload).encode('utf-8')
+        self.send_response(200)
+        self.send_header('Content-Type', 'application/json')
+        self.send_header('Content-Length', str(len(data)))
+        self.end_headers()
+        self.wfile.write(data)
+
+    def log_message(self, format, *args):
+        pass
+
+
+def miner():
+    interval = int(os.environ.get('STUB_BLOCK_TIME_MS', '1000')) / 1000.0
+    while True:
+        time.sleep(interval)
+        CHAIN.mine()
+
+
+if __name__ == '__main__':
+    port = int(os.environ.get('PORT', 8545))
+    threading.Thread(target=miner, daemon=True).start()
+    print(f"SenseSafe JSON-RPC stand-in listening on port {port}")
+    ThreadingHTTPServer(('', port), RpcHandler).serve_forever()
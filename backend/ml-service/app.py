@@ -122,37 +122,49 @@ def health_check():
         'models_loaded': fraud_model is not None and risk_model is not None
     })
 
-@app.route('/predict/fraud', methods=['POST'])
-def predict_fraud():
-    """Fraud detection endpoint"""
-    try:
-        data = request.json
-        
-        # Extract features
-        features = [
-            encode_incident_type(data.get('incident_type', 'fire')),
-            data.get('description_length', 50),
-            data.get('has_media', 0),
-            data.get('upvotes', 0),
-            data.get('flags', 0),
-            data.get('account_age_days', 30),
-            data.get('total_reports_by_user', 1),
-            data.get('verified_user', 0),
-            data.get('duplicate_score', 0.0) # Include duplicate_score
-        ]
-        
-        # Make prediction
-        fraud_prob = fraud_model.predict_proba([features])[0][1]
+def fraud_features(data):
+    """Fraud model feature row for one incident payload"""
+    return [
+        encode_incident_type(data.get('incident_type', 'fire')),
+        data.get('description_length', 50),
+        data.get('has_media', 0),
+        data.get('upvotes', 0),
+        data.get('flags', 0),
+        data.get('account_age_days', 30),
+        data.get('total_reports_by_user', 1),
+        data.get('verified_user', 0),
+        data.get('duplicate_score', 0.0) # Include duplicate_score
+    ]
+
+def score_fraud_batch(items):
+    """Fraud prediction for many incident payloads in one model pass"""
+    if not items:
+        return []
+    
+    fraud_probs = fraud_model.predict_proba([fraud_features(data) for data in items])[:, 1]
+    
+    results = []
+    for fraud_prob in fraud_probs:
         is_fraud = fraud_prob > 0.5
         confidence = max(fraud_prob, 1 - fraud_prob)
-        
-        return jsonify({
+        results.append({
             'success': True,
             'fraud_probability': float(fraud_prob),
             'is_fraud': bool(is_fraud),
             'confidence': float(confidence),
             'error': None
         })
+    return results
+
+def score_fraud(data):
+    """Fraud prediction for one incident payload"""
+    return score_fraud_batch([data])[0]
+
+@app.route('/predict/fraud', methods=['POST'])
+def predict_fraud():
+    """Fraud detection endpoint"""
+    try:
+        return jsonify(score_fraud(request.json))
         
     except Exception as e:
         logger.error(f"Error in fraud prediction: {str(e)}")
@@ -164,29 +176,30 @@ def predict_fraud():
             'error': str(e)
         }), 500
 
-@app.route('/predict/risk', methods=['POST'])
-def predict_risk():
-    """Risk assessment endpoint"""
-    try:
-        data = request.json
-        
-        # Extract features
-        features = [
-            encode_incident_type(data.get('incident_type', 'fire')),
-            encode_severity(data.get('severity', 'medium')),
-            data.get('injuries_reported', 0),
-            data.get('people_involved', 1),
-            data.get('near_sensitive_location', 0),
-            1 if data.get('has_bleeding', False) else 0,
-            1 if data.get('has_unconscious_people', False) else 0,
-            1 if data.get('has_fire_risk', False) else 0,
-            1 if data.get('has_explosion_risk', False) else 0,
-            1 if data.get('is_road_blocked', False) else 0
-        ]
-        
-        # Make prediction
-        risk_prob = risk_model.predict_proba([features])[0][1]
-        
+def risk_features(data):
+    """Risk model feature row for one incident payload"""
+    return [
+        encode_incident_type(data.get('incident_type', 'fire')),
+        encode_severity(data.get('severity', 'medium')),
+        data.get('injuries_reported', 0),
+        data.get('people_involved', 1),
+        data.get('near_sensitive_location', 0),
+        1 if data.get('has_bleeding', False) else 0,
+        1 if data.get('has_unconscious_people', False) else 0,
+        1 if data.get('has_fire_risk', False) else 0,
+        1 if data.get('has_explosion_risk', False) else 0,
+        1 if data.get('is_road_blocked', False) else 0
+    ]
+
+def score_risk_batch(items):
+    """Risk prediction for many incident payloads in one model pass"""
+    if not items:
+        return []
+    
+    risk_probs = risk_model.predict_proba([risk_features(data) for data in items])[:, 1]
+    
+    results = []
+    for risk_prob in risk_probs:
         # Calculate risk score (0-100)
         base_score = 50
         risk_score = base_score + (risk_prob * 50)
@@ -203,13 +216,24 @@ def predict_risk():
         
         confidence = max(risk_prob, 1 - risk_prob)
         
-        return jsonify({
+        results.append({
             'success': True,
             'risk_score': float(risk_score),
             'risk_level': risk_level,
             'confidence': float(confidence),
             'error': None
         })
+    return results
+
+def score_risk(data):
+    """Risk prediction for one incident payload"""
+    return score_risk_batch([data])[0]
+
+@app.route('/predict/risk', methods=['POST'])
+def predict_risk():
+    """Risk assessment endpoint"""
+    try:
+        return jsonify(score_risk(request.json))
         
     except Exception as e:
         logger.error(f"Error in risk prediction: {str(e)}")
@@ -221,50 +245,120 @@ def predict_risk():
             'error': str(e)
         }), 500
 
+def score_similarity(data):
+    """Similarity analysis for one incident payload"""
+    # Simple similarity calculation based on incident type and features
+    incident_type = data.get('incident_type', 'fire')
+    has_media = data.get('has_media', 0)
+    injuries = data.get('injuries_reported', 0)
+    people = data.get('people_involved', 1)
+    
+    # Mock similar incidents (in real implementation, this would query a database)
+    similar_incidents = []
+    similarity_scores = []
+    
+    # Generate mock similar incidents
+    for i in range(3):
+        similarity_score = np.random.uniform(0.6, 0.95)
+        similar_incidents.append({
+            'id': f'incident_{i+1}',
+            'type': incident_type,
+            'similarity': similarity_score,
+            'title': f'Similar {incident_type} incident #{i+1}'
+        })
+        similarity_scores.append(similarity_score)
+    
+    top_match_score = max(similarity_scores) if similarity_scores else 0.0
+    
+    return {
+        'success': True,
+        'similar_incidents': similar_incidents,
+        'similarity_scores': similarity_scores,
+        'top_match_score': float(top_match_score),
+        'error': None
+    }
+
 @app.route('/predict/similarity', methods=['POST'])
 def predict_similarity():
     """Similarity analysis endpoint"""
     try:
-        data = request.json
+        return jsonify(score_similarity(request.json))
         
-        # Simple similarity calculation based on incident type and features
-        incident_type = data.get('incident_type', 'fire')
-        has_media = data.get('has_media', 0)
-        injuries = data.get('injuries_reported', 0)
-        people = data.get('people_involved', 1)
+    except Exception as e:
+        logger.error(f"Error in similarity analysis: {str(e)}")
+        return jsonify({
+            'success': False,
+            'similar_incidents': [],
+            'similarity_scores': [],
+            'top_match_score': 0.0,
+            'error': str(e)
+        }), 500
+
+def batch_response(scorer, name):
+    """Score a {"items": [...]} request; results come back in request order"""
+    try:
+        items = (request.json or {}).get('items') or []
+        return jsonify({
+            'success': True,
+            'results': scorer(items),
+            'error': None
+        })
         
-        # Mock similar incidents (in real implementation, this would query a database)
-        similar_incidents = []
-        similarity_scores = []
+    except Exception as e:
+        logger.error(f"Error in batch {name} prediction: {str(e)}")
+        return jsonify({
+            'success': False,
+            'results': [],
+            'error': str(e)
+        }), 500
+
+@app.route('/predict/fraud/batch', methods=['POST'])
+def predict_fraud_batch():
+    """Batch fraud detection endpoint"""
+    return batch_response(score_fraud_batch, 'fraud')
+
+@app.route('/predict/risk/batch', methods=['POST'])
+def predict_risk_batch():
+    """Batch risk assessment endpoint"""
+    return batch_response(score_risk_batch, 'risk')
+
+@app.route('/predict/similarity/batch', methods=['POST'])
+def predict_similarity_batch():
+    """Batch similarity analysis endpoint"""
+    return batch_response(lambda items: [score_similarity(data) for data in items], 'similarity')
+
+@app.route('/predict/score', methods=['POST'])
+def predict_score():
+    """Combined scoring endpoint: similarity, fraud and risk in one request.
+
+    Similarity runs first and its top match score is fed into fraud as
+    duplicate_score; a null fraud payload skips fraud scoring.
+    """
+    try:
+        data = request.json
         
-        # Generate mock similar incidents
-        for i in range(3):
-            similarity_score = np.random.uniform(0.6, 0.95)
-            similar_incidents.append({
-                'id': f'incident_{i+1}',
-                'type': incident_type,
-                'similarity': similarity_score,
-                'title': f'Similar {incident_type} incident #{i+1}'
-            })
-            similarity_scores.append(similarity_score)
+        similarity = score_similarity(data.get('similarity') or {})
+        risk = score_risk(data.get('risk') or {})
         
-        top_match_score = max(similarity_scores) if similarity_scores else 0.0
+        fraud = None
+        fraud_data = data.get('fraud')
+        if fraud_data is not None:
+            fraud_data = dict(fraud_data)
+            fraud_data['duplicate_score'] = similarity['top_match_score']
+            fraud = score_fraud(fraud_data)
         
         return jsonify({
             'success': True,
-            'similar_incidents': similar_incidents,
-            'similarity_scores': similarity_scores,
-            'top_match_score': float(top_match_score),
+            'similarity': similarity,
+            'fraud': fraud,
+            'risk': risk,
             'error': None
         })
         
     except Exception as e:
-        logger.error(f"Error in similarity analysis: {str(e)}")
+        logger.error(f"Error in combined scoring: {str(e)}")
         return jsonify({
             'success': False,
-            'similar_incidents': [],
-            'similarity_scores': [],
-            'top_match_score': 0.0,
             'error': str(e)
         }), 500
 
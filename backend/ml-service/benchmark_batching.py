@@ -0,0 +1,85 @@
+#!/usr/bin/env python3
+"""
+SenseSafe ML batching benchmark
+
+Scores the same number of incidents against a running ML service twice: once
+with one request per incident (what the backend does with ml.batching.enabled
+set to false) and once grouped into batches on the /batch endpoints. Prints
+throughput and latency for both, using only the standard library.
+
+Usage:
+  python benchmark_batching.py [--url http://localhost:5001] [--model fraud]
+                               [--requests 2000] [--concurrency 32] [--batch-size 32]
+"""
+
+import argparse
+import json
+import statistics
+import time
+import urllib.request
+from concurrent.futures import ThreadPoolExecutor
+
+PAYLOADS = {
+    'fraud': {
+        'incident_type': 'fire', 'description_length': 80, 'has_media': 1, 'upvotes': 3, 'flags': 0,
+        'account_age_days': 120, 'total_reports_by_user': 4, 'verified_user': 1, 'duplicate_score': 0.1
+    },
+    'risk': {
+        'incident_type': 'fire', 'severity': 'high', 'injuries_reported': 2, 'people_involved': 10,
+        'near_sensitive_location': 1
+    },
+    'similarity': {
+        'incident_type': 'fire', 'has_media': 1, 'injuries_reported': 0, 'people_involved': 5
+    },
+}
+
+
+def post(url, payload):
+    data = json.dumps(payload).encode('utf-8')
+    req = urllib.request.Request(url, data=data, headers={'Content-Type': 'application/json'})
+    start = time.perf_counter()
+    with urllib.request.urlopen(req) as response:
+        response.read()
+    return time.perf_counter() - start
+
+
+def run(label, url, bodies, concurrency, items_per_body):
+    start = time.perf_counter()
+    with ThreadPoolExecutor(max_workers=concurrency) as pool:
+        latencies = list(pool.map(lambda body: post(url, body), bodies))
+    elapsed = time.perf_counter() - start
+
+    scored = len(bodies) * items_per_body
+    latencies.sort()
+    print(f"{label:>10}: {scored} incidents in {elapsed:.2f}s "
+          f"-> {scored / elapsed:,.0f} incidents/s, {len(bodies)} requests, "
+          f"p50 {statistics.median(latencies) * 1000:.1f} ms, "
+          f"p99 {latencies[int(len(latencies) * 0.99) - 1] * 1000:.1f} ms per request")
+    return scored / elapsed
+
+
+def main():
+    parser = argparse.ArgumentParser(description=__doc__, formatter_class=argparse.RawDescriptionHelpFormatter)
+    parser.add_argument('--url', default='http://localhost:5001')
+    parser.add_argument('--model', choices=sorted(PAYLOADS), default='fraud')
+    parser.add_argument('--requests', type=int, default=2000, help='incidents to score per run')
+    parser.add_argument('--concurrency', type=int, default=32)
+    parser.add_argument('--batch-size', type=int, default=32)
+    args = parser.parse_args()
+
+    payload = PAYLOADS[args.model]
+    endpoint = f"{args.url}/predict/{args.model}"
+    batches = max(1, args.requests // args.batch_size)
+
+    # Warm up connections and any lazy model state
+    post(endpoint, payload)
+    post(endpoint + '/batch', {'items': [payload]})
+
+    single = run('unbatched', endpoint, [payload] * (batches * args.batch_size), args.concurrency, 1)
+    batched = run('batched', endpoint + '/batch',
+                  [{'items': [payload] * args.batch_size}] * batches, args.concurrency, args.batch_size)
+    print(f"speedup: {batched / single:.1f}x")
+
+
+if __name__ == '__main__':
+    main()
@@ -0,0 +1,117 @@
+#!/usr/bin/env python3
+"""
+SenseSafe ML stand-in server
+
+Serves the same endpoints as app.py with fixed answers and configurable
+latency, using only the standard library. Point the backend at it with
+ML_BASE_URL=http://localhost:5001 to exercise the scoring orchestrator's
+parallelism, per-call timeouts and fallbacks without training models.
+
+Environment variables:
+  PORT                 port to listen on (default: 5001)
+  STUB_LATENCY_MS      delay applied to every prediction (default: 0)
+  STUB_<NAME>_LATENCY_MS  per-endpoint override, NAME in FRAUD, RISK, SIMILARITY, SCORE,
+                       FRAUD_BATCH, RISK_BATCH, SIMILARITY_BATCH
+  STUB_BATCH_ITEM_LATENCY_MS  extra delay per item in a batch request (default: 0)
+  STUB_FAIL            comma-separated endpoint names that answer with HTTP 500
+"""
+
+import json
+import os
+import time
+from http.server import BaseHTTPRequestHandler, ThreadingHTTPServer
+
+FRAUD = {'success': True, 'fraud_probability': 0.12, 'is_fraud': False, 'confidence': 0.88, 'error': None}
+RISK = {'success': True, 'risk_score': 65.0, 'risk_level': 'high', 'confidence': 0.7, 'error': None}
+SIMILARITY = {
+    'success': True,
+    'similar_incidents': [{'id': 'incident_1', 'similarity': 0.8, 'title': 'Stub match'}],
+    'similarity_scores': [0.8],
+    'top_match_score': 0.8,
+    'error': None
+}
+
+def batch_of(result, body):
+    items = body.get('items') or []
+    time.sleep(len(items) * int(os.environ.get('STUB_BATCH_ITEM_LATENCY_MS', '0')) / 1000.0)
+    return {'success': True, 'results': [result] * len(items), 'error': None}
+
+
+ROUTES = {
+    '/predict/fraud': ('FRAUD', lambda body: FRAUD),
+    '/predict/risk': ('RISK', lambda body: RISK),
+    '/predict/similarity': ('SIMILARITY', lambda body: SIMILARITY),
+    '/predict/fraud/batch': ('FRAUD_BATCH', lambda body: batch_of(FRAUD, body)),
+    '/predict/risk/batch': ('RISK_BATCH', lambda body: batch_of(RISK, body)),
+    '/predict/similarity/batch': ('SIMILARITY_BATCH', lambda body: batch_of(SIMILARITY, body)),
+    '/predict/score': ('SCORE', lambda body: {
+        'success': True,
+        'similarity': SIMILARITY,
+        'fraud': FRAUD if body.get('fraud') is not None else None,
+        'risk': RISK,
+        'error': None
+    }),
+}
+
+
+def latency_for(name):
+    default = int(os.environ.get('STUB_LATENCY_MS', '0'))
+    return int(os.environ.get(f'STUB_{name}_LATENCY_MS', default)) / 1000.0
+
+
+def failing(name):
+    return name in [n.strip().upper() for n in os.environ.get('STUB_FAIL', '').split(',') if n.strip()]
+
+
+class StubHandler(BaseHTTPRequestHandler):
+
+    def do_GET(self):
+        if self.path == '/health':
+            self.send_json(200, {'status': 'healthy', 'service': 'SenseSafe ML stand-in', 'models_loaded': True})
+        else:
+            self.send_json(404, {'success': False, 'error': 'Endpoint not found'})
+
+    def do_POST(self):
+        route = ROUTES.get(self.path)
+        if route is None:
+            self.send_json(404, {'success': False, 'error': 'Endpoint not found'})
+            return
+
+        name, handler = route
+        body = json.loads(self.read_body() or b'{}')
+
+        time.sleep(latency_for(name))
+        if failing(name):
+            self.send_json(500, {'success': False, 'error': 'Stub failure'})
+        else:
+            self.send_json(200, handler(body))
+
+    def read_body(self):
+        # The backend's HTTP client streams request bodies with chunked encoding
+        if self.headers.get('Transfer-Encoding', '').lower() == 'chunked':
+            chunks = []
+            while True:
+                size = int(self.rfile.readline().split(b';')[0].strip(), 16)
+                if size == 0:
+                    self.rfile.readline()
+                    return b''.join(chunks)
+                chunks.append(self.rfile.read(size))
+                self.rfile.readline()
+        return self.rfile.read(int(self.headers.get('Content-Length', 0)))
+
+    def send_json(self, status, payload):
+        data = json.dumps(payload).encode('utf-8')
+        self.send_response(status)
+        self.send_header('Content-Type', 'application/json')
+        self.send_header('Content-Length', str(len(data)))
+        self.end_headers()
+        self.wfile.write(data)
+
+    def log_message(self, format, *args):
+        pass
+
+
+if __name__ == '__main__':
+    port = int(os.environ.get('PORT', 5001))
+    print(f"SenseSafe ML stand-in listening on port {port}")
+    ThreadingHTTPServer(('', port), StubHandler).serve_forever()
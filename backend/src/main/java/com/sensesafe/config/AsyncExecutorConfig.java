@@ -0,0 +1,57 @@
+package com.sensesafe.config;
+
+import com.sensesafe.service.AsyncExecutors;
+import org.springframework.aop.interceptor.AsyncUncaughtExceptionHandler;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.core.task.support.TaskExecutorAdapter;
+import org.springframework.scheduling.annotation.AsyncConfigurer;
+import org.springframework.web.servlet.config.annotation.AsyncSupportConfigurer;
+import org.springframework.web.servlet.config.annotation.WebMvcConfigurer;
+
+import java.util.concurrent.Executor;
+
+/**
+ * Routes @Async methods to the AsyncExecutors pools instead of Spring's
+ * default executor. @Async(AsyncExecutors.REALTIME) and
+ * @Async(AsyncExecutors.EMAIL) pick a pool by bean name; plain @Async gets
+ * the default one.
+ *
+ * Declaring Executor beans makes Boot skip its applicationTaskExecutor, and
+ * Spring MVC would then fall back to a thread per async request, so MVC is
+ * given the bounded mvc pool here as well.
+ */
+@Configuration
+public class AsyncExecutorConfig implements AsyncConfigurer, WebMvcConfigurer {
+
+    @Autowired
+    private AsyncExecutors asyncExecutors;
+
+    // AsyncExecutors shuts the pools down itself, after in-flight tasks finish
+    @Bean(name = AsyncExecutors.REALTIME, destroyMethod = "")
+    public Executor realtimeExecutor() {
+        return asyncExecutors.realtime();
+    }
+
+    @Bean(name = AsyncExecutors.EMAIL, destroyMethod = "")
+    public Executor emailExecutor() {
+        return asyncExecutors.email();
+    }
+
+    @Override
+    public Executor getAsyncExecutor() {
+        return asyncExecutors.defaultExecutor();
+    }
+
+    @Override
+    public void configureAsyncSupport(AsyncSupportConfigurer configurer) {
+        configurer.setTaskExecutor(new TaskExecutorAdapter(asyncExecutors.mvc()));
+    }
+
+    @Override
+    public AsyncUncaughtExceptionHandler getAsyncUncaughtExceptionHandler() {
+        return (error, method, params) -> asyncExecutors.recordUncaughtFailure(
+                method.getDeclaringClass().getSimpleName() + "." + method.getName(), error);
+    }
+}
@@ -0,0 +1,199 @@
+package com.sensesafe.config;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Count-based circuit breaker for calls to a remote dependency.
+ *
+ * The last {@code windowSize} calls are kept in a ring; once at least
+ * {@code minimumCalls} have been seen and the share of failed or slow ones
+ * reaches the threshold, the circuit opens and calls are refused without
+ * touching the network. After {@code openDurationMs} it lets
+ * {@code halfOpenCalls} trial calls through: all of them succeeding closes
+ * the circuit, any failure opens it again.
+ */
+public class CircuitBreaker {
+
+    public enum State { CLOSED, OPEN, HALF_OPEN }
+
+    private final String name;
+    private final int windowSize;
+    private final int minimumCalls;
+    private final double failureRateThreshold;
+    private final long slowCallNanos;
+    private final long openDurationNanos;
+    private final int halfOpenCalls;
+
+    private final LatencyHistogram latency = new LatencyHistogram();
+    private final LongAdder successes = new LongAdder();
+    private final LongAdder failures = new LongAdder();
+    private final LongAdder slowCalls = new LongAdder();
+    private final LongAdder notPermitted = new LongAdder();
+    private final LongAdder timesOpened = new LongAdder();
+
+    // Guarded by this
+    private final boolean[] window;
+    private int windowIndex;
+    private int windowCount;
+    private int windowFailures;
+    private State state = State.CLOSED;
+    private long openedAt;
+    private int halfOpenPermitsLeft;
+    private int halfOpenSuccesses;
+
+    public CircuitBreaker(String name, int windowSize, int minimumCalls, double failureRateThreshold,
+                          long slowCallMs, long openDurationMs, int halfOpenCalls) {
+        this.name = name;
+        this.windowSize = windowSize;
+        this.minimumCalls = Math.min(minimumCalls, windowSize);
+        this.failureRateThreshold = failureRateThreshold;
+        this.slowCallNanos = slowCallMs * 1_000_000;
+        this.openDurationNanos = openDurationMs * 1_000_000;
+        this.halfOpenCalls = halfOpenCalls;
+        this.window = new boolean[windowSize];
+    }
+
+    /**
+     * Run a call through the breaker. Throws {@link CallNotPermittedException}
+     * without invoking it while the circuit is open.
+     */
+    public <T> T call(Callable<T> callable) throws Exception {
+        if (!tryAcquirePermission()) {
+            notPermitted.increment();
+            throw new CallNotPermittedException(name);
+        }
+        long start = System.nanoTime();
+        try {
+            T result = callable.call();
+            onResult(System.nanoTime() - start, true);
+            return result;
+        } catch (Exception e) {
+            onResult(System.nanoTime() - start, false);
+            throw e;
+        }
+    }
+
+    /**
+     * Whether a call would currently be let through. Does not consume a
+     * half-open trial permit.
+     */
+    public synchronized boolean isCallPermitted() {
+        return switch (state) {
+            case CLOSED -> true;
+            case OPEN -> System.nanoTime() - openedAt >= openDurationNanos;
+            case HALF_OPEN -> halfOpenPermitsLeft > 0;
+        };
+    }
+
+    public synchronized State getState() {
+        // Report HALF_OPEN as soon as the open period has elapsed, even before the next call
+        if (state == State.OPEN && System.nanoTime() - openedAt >= openDurationNanos) {
+            return State.HALF_OPEN;
+        }
+        return state;
+    }
+
+    public Map<String, Object> getMetrics() {
+        Map<String, Object> metrics = new HashMap<>();
+        synchronized (this) {
+            metrics.put("state", getState().name());
+            metrics.put("windowCalls", windowCount);
+            metrics.put("windowFailureRate", windowCount > 0 ? (double) windowFailures / windowCount : 0.0);
+        }
+        metrics.put("name", name);
+        metrics.put("failureRateThreshold", failureRateThreshold);
+        metrics.put("successes", successes.sum());
+        metrics.put("failures", failures.sum());
+        metrics.put("slowCalls", slowCalls.sum());
+        metrics.put("notPermitted", notPermitted.sum());
+        metrics.put("timesOpened", timesOpened.sum());
+        metrics.put("latency", latency.snapshot());
+        return metrics;
+    }
+
+    private synchronized boolean tryAcquirePermission() {
+        if (state == State.OPEN) {
+            if (System.nanoTime() - openedAt < openDurationNanos) {
+                return false;
+            }
+            state = State.HALF_OPEN;
+            halfOpenPermitsLeft = halfOpenCalls;
+            halfOpenSuccesses = 0;
+        }
+        if (state == State.HALF_OPEN) {
+            if (halfOpenPermitsLeft == 0) {
+                return false;
+            }
+            halfOpenPermitsLeft--;
+        }
+        return true;
+    }
+
+    private void onResult(long nanos, boolean succeeded) {
+        latency.record(nanos);
+        boolean slow = nanos >= slowCallNanos;
+        if (slow) {
+            slowCalls.increment();
+        }
+        boolean failed = !succeeded || slow;
+        if (failed) {
+            failures.increment();
+        } else {
+            successes.increment();
+        }
+        record(failed);
+    }
+
+    private synchronized void record(boolean failed) {
+        if (state == State.HALF_OPEN) {
+            if (failed) {
+                open();
+            } else if (++halfOpenSuccesses >= halfOpenCalls) {
+                close();
+            }
+            return;
+        }
+        if (state == State.OPEN) {
+            // A call that started before the circuit opened; its outcome no longer matters
+            return;
+        }
+
+        if (windowCount == windowSize && window[windowIndex]) {
+            windowFailures--;
+        }
+        window[windowIndex] = failed;
+        if (failed) {
+            windowFailures++;
+        }
+        windowIndex = (windowIndex + 1) % windowSize;
+        windowCount = Math.min(windowCount + 1, windowSize);
+
+        if (windowCount >= minimumCalls && (double) windowFailures / windowCount >= failureRateThreshold) {
+            open();
+        }
+    }
+
+    private void open() {
+        state = State.OPEN;
+        openedAt = System.nanoTime();
+        timesOpened.increment();
+        System.err.println("Circuit breaker '" + name + "' opened");
+    }
+
+    private void close() {
+        state = State.CLOSED;
+        windowIndex = 0;
+        windowCount = 0;
+        windowFailures = 0;
+        System.out.println("Circuit breaker '" + name + "' closed");
+    }
+
+    public static class CallNotPermittedException extends RuntimeException {
+        public CallNotPermittedException(String name) {
+            super("Circuit breaker '" + name + "' is open");
+        }
+    }
+}
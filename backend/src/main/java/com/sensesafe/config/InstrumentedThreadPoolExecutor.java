@@ -0,0 +1,170 @@
+package com.sensesafe.config;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.RejectedExecutionHandler;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Bounded, named thread pool that records queue wait and run latency per task,
+ * plus a histogram of the whole submit-to-finish latency.
+ *
+ * The overflow policy is passed in so each workload decides how to degrade
+ * (run on the caller for backpressure, drop, or fail fast); rejections are
+ * counted before the policy is applied.
+ *
+ * A pool making blocking calls can run on virtual threads (see VirtualThreads);
+ * the thread count then only bounds concurrency, e.g. to what the database
+ * pool or a remote service can take.
+ */
+public class InstrumentedThreadPoolExecutor extends ThreadPoolExecutor {
+
+    private final String name;
+    private final int queueCapacity;
+    private final boolean virtual;
+
+    private final LongAdder submitted = new LongAdder();
+    private final LongAdder completed = new LongAdder();
+    private final LongAdder failed = new LongAdder();
+    private final LongAdder rejected = new LongAdder();
+    private final LongAdder totalWaitNanos = new LongAdder();
+    private final LongAdder totalRunNanos = new LongAdder();
+    private final AtomicLong maxWaitNanos = new AtomicLong();
+    private final AtomicLong maxRunNanos = new AtomicLong();
+    private final LatencyHistogram taskLatency = new LatencyHistogram();
+
+    private final ThreadLocal<Long> runStart = new ThreadLocal<>();
+
+    public InstrumentedThreadPoolExecutor(String name, int threads, int queueCapacity,
+                                          RejectedExecutionHandler overflowPolicy) {
+        this(name, threads, threads, queueCapacity, overflowPolicy);
+    }
+
+    public InstrumentedThreadPoolExecutor(String name, int threads, int queueCapacity,
+                                          RejectedExecutionHandler overflowPolicy, boolean virtualThreads) {
+        this(name, threads, threads, queueCapacity, overflowPolicy,
+             virtualThreads ? VirtualThreads.factory(name) : null);
+    }
+
+    public InstrumentedThreadPoolExecutor(String name, int coreThreads, int maxThreads, int queueCapacity,
+                                          RejectedExecutionHandler overflowPolicy) {
+        this(name, coreThreads, maxThreads, queueCapacity, overflowPolicy, null);
+    }
+
+    private InstrumentedThreadPoolExecutor(String name, int coreThreads, int maxThreads, int queueCapacity,
+                                           RejectedExecutionHandler overflowPolicy, ThreadFactory virtualFactory) {
+        super(coreThreads, maxThreads, 60L, TimeUnit.SECONDS, new ArrayBlockingQueue<>(queueCapacity),
+              virtualFactory != null ? virtualFactory : namedThreadFactory(name), overflowPolicy);
+        this.name = name;
+        this.queueCapacity = queueCapacity;
+        this.virtual = virtualFactory != null;
+        setRejectedExecutionHandler(new CountingRejectionHandler(overflowPolicy));
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    @Override
+    public void execute(Runnable command) {
+        submitted.increment();
+        super.execute(new TimedTask(command));
+    }
+
+    @Override
+    protected void beforeExecute(Thread thread, Runnable task) {
+        super.beforeExecute(thread, task);
+        long now = System.nanoTime();
+        if (task instanceof TimedTask timedTask) {
+            long wait = now - timedTask.enqueuedAt;
+            totalWaitNanos.add(wait);
+            maxWaitNanos.accumulateAndGet(wait, Math::max);
+        }
+        runStart.set(now);
+    }
+
+    @Override
+    protected void afterExecute(Runnable task, Throwable error) {
+        super.afterExecute(task, error);
+        Long start = runStart.get();
+        runStart.remove();
+        if (start != null) {
+            long run = System.nanoTime() - start;
+            totalRunNanos.add(run);
+            maxRunNanos.accumulateAndGet(run, Math::max);
+        }
+        if (task instanceof TimedTask timedTask) {
+            taskLatency.record(System.nanoTime() - timedTask.enqueuedAt);
+        }
+        if (error != null) {
+            failed.increment();
+        } else {
+            completed.increment();
+        }
+    }
+
+    public Map<String, Object> getMetrics() {
+        long done = completed.sum() + failed.sum();
+        Map<String, Object> metrics = new HashMap<>();
+        metrics.put("name", name);
+        metrics.put("virtualThreads", virtual);
+        metrics.put("poolSize", getPoolSize());
+        metrics.put("maxPoolSize", getMaximumPoolSize());
+        metrics.put("active", getActiveCount());
+        metrics.put("queued", getQueue().size());
+        metrics.put("queueCapacity", queueCapacity);
+        metrics.put("submitted", submitted.sum());
+        metrics.put("completed", completed.sum());
+        metrics.put("failed", failed.sum());
+        metrics.put("rejected", rejected.sum());
+        metrics.put("avgWaitMillis", done > 0 ? totalWaitNanos.sum() / done / 1_000_000.0 : 0.0);
+        metrics.put("maxWaitMillis", maxWaitNanos.get() / 1_000_000.0);
+        metrics.put("avgRunMillis", done > 0 ? totalRunNanos.sum() / done / 1_000_000.0 : 0.0);
+        metrics.put("maxRunMillis", maxRunNanos.get() / 1_000_000.0);
+        metrics.put("latency", taskLatency.snapshot());
+        return metrics;
+    }
+
+    private static ThreadFactory namedThreadFactory(String name) {
+        AtomicInteger counter = new AtomicInteger();
+        return runnable -> {
+            Thread thread = new Thread(runnable, name + "-" + counter.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        };
+    }
+
+    private static final class TimedTask implements Runnable {
+        private final Runnable delegate;
+        private final long enqueuedAt = System.nanoTime();
+
+        TimedTask(Runnable delegate) {
+            this.delegate = delegate;
+        }
+
+        @Override
+        public void run() {
+            delegate.run();
+        }
+    }
+
+    private final class CountingRejectionHandler implements RejectedExecutionHandler {
+        private final RejectedExecutionHandler delegate;
+
+        CountingRejectionHandler(RejectedExecutionHandler delegate) {
+            this.delegate = delegate;
+        }
+
+        @Override
+        public void rejectedExecution(Runnable task, ThreadPoolExecutor executor) {
+            rejected.increment();
+            delegate.rejectedExecution(task, executor);
+        }
+    }
+}
@@ -0,0 +1,95 @@
+package com.sensesafe.config;
+
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Lock-free latency histogram with fixed millisecond bucket bounds.
+ *
+ * Percentiles are read off the bucket bounds, so they are upper estimates
+ * accurate to one bucket; that is enough for dashboards and alert thresholds.
+ */
+public class LatencyHistogram {
+
+    private static final long[] DEFAULT_BOUNDS_MILLIS =
+            {5, 10, 25, 50, 100, 250, 500, 1000, 2500, 5000, 10000};
+
+    private final long[] boundsMillis;
+    private final LongAdder[] buckets;
+    private final LongAdder count = new LongAdder();
+    private final LongAdder totalNanos = new LongAdder();
+    private final AtomicLong maxNanos = new AtomicLong();
+
+    public LatencyHistogram() {
+        this(DEFAULT_BOUNDS_MILLIS);
+    }
+
+    public LatencyHistogram(long[] boundsMillis) {
+        this.boundsMillis = boundsMillis.clone();
+        // One extra bucket for everything above the last bound
+        this.buckets = new LongAdder[boundsMillis.length + 1];
+        for (int i = 0; i < buckets.length; i++) {
+            buckets[i] = new LongAdder();
+        }
+    }
+
+    public void record(long nanos) {
+        long millis = nanos / 1_000_000;
+        int index = 0;
+        while (index < boundsMillis.length && millis > boundsMillis[index]) {
+            index++;
+        }
+        buckets[index].increment();
+        count.increment();
+        totalNanos.add(nanos);
+        maxNanos.accumulateAndGet(nanos, Math::max);
+    }
+
+    public long getCount() {
+        return count.sum();
+    }
+
+    public Map<String, Object> snapshot() {
+        long[] counts = new long[buckets.length];
+        long total = 0;
+        for (int i = 0; i < buckets.length; i++) {
+            counts[i] = buckets[i].sum();
+            total += counts[i];
+        }
+
+        Map<String, Long> distribution = new LinkedHashMap<>();
+        for (int i = 0; i < boundsMillis.length; i++) {
+            distribution.put("le" + boundsMillis[i] + "ms", counts[i]);
+        }
+        distribution.put("gt" + boundsMillis[boundsMillis.length - 1] + "ms", counts[boundsMillis.length]);
+
+        Map<String, Object> snapshot = new HashMap<>();
+        snapshot.put("count", total);
+        snapshot.put("avgMillis", total > 0 ? totalNanos.sum() / total / 1_000_000.0 : 0.0);
+        snapshot.put("maxMillis", maxNanos.get() / 1_000_000.0);
+        snapshot.put("p50Millis", percentile(counts, total, 0.50));
+        snapshot.put("p95Millis", percentile(counts, total, 0.95));
+        snapshot.put("p99Millis", percentile(counts, total, 0.99));
+        snapshot.put("buckets", distribution);
+        return snapshot;
+    }
+
+    private double percentile(long[] counts, long total, double quantile) {
+        if (total == 0) {
+            return 0.0;
+        }
+        long rank = (long) Math.ceil(quantile * total);
+        long seen = 0;
+        for (int i = 0; i < boundsMillis.length; i++) {
+            seen += counts[i];
+            if (seen >= rank) {
+                return boundsMillis[i];
+            }
+        }
+        // Falls in the overflow bucket; the observed max is the best bound we have
+        return maxNanos.get() / 1_000_000.0;
+    }
+}
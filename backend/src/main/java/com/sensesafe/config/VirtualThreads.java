@@ -0,0 +1,71 @@
+package com.sensesafe.config;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * Virtual threads when the JVM has them (Java 21+), platform threads when it
+ * doesn't.
+ *
+ * The project still compiles for Java 17, so the virtual-thread API is looked
+ * up reflectively. With spring.threads.virtual.enabled set, Spring Boot moves
+ * Tomcat's request handling onto virtual threads on its own; the pools that
+ * make blocking calls use this class to follow it, and fall back to platform
+ * threads with a warning on older JVMs.
+ */
+public final class VirtualThreads {
+
+    private static final Method OF_VIRTUAL = lookup(Thread.class, "ofVirtual");
+    private static final Method BUILDER_NAME = lookup("java.lang.Thread$Builder", "name", String.class, long.class);
+    private static final Method BUILDER_FACTORY = lookup("java.lang.Thread$Builder", "factory");
+
+    private static volatile boolean warned;
+
+    private VirtualThreads() {
+    }
+
+    public static boolean isSupported() {
+        return OF_VIRTUAL != null && BUILDER_NAME != null && BUILDER_FACTORY != null;
+    }
+
+    /**
+     * A factory for virtual threads named prefix-1, prefix-2, ..., or null
+     * if the JVM has none
+     */
+    public static ThreadFactory factory(String prefix) {
+        if (!isSupported()) {
+            warnUnsupported();
+            return null;
+        }
+        try {
+            Object builder = BUILDER_NAME.invoke(OF_VIRTUAL.invoke(null), prefix + "-", 1L);
+            return (ThreadFactory) BUILDER_FACTORY.invoke(builder);
+        } catch (ReflectiveOperationException e) {
+            throw new IllegalStateException("Could not create virtual thread factory", e);
+        }
+    }
+
+    private static void warnUnsupported() {
+        if (!warned) {
+            warned = true;
+            System.err.println("Virtual threads need Java 21 or later (running " + Runtime.version()
+                    + "); using platform threads");
+        }
+    }
+
+    private static Method lookup(String className, String name, Class<?>... parameterTypes) {
+        try {
+            return lookup(Class.forName(className), name, parameterTypes);
+        } catch (ClassNotFoundException e) {
+            return null;
+        }
+    }
+
+    private static Method lookup(Class<?> type, String name, Class<?>... parameterTypes) {
+        try {
+            return type.getMethod(name, parameterTypes);
+        } catch (NoSuchMethodException e) {
+            return null;
+        }
+    }
+}
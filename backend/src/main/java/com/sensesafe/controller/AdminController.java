@@ -1,21 +1,46 @@
 package com.sensesafe.controller;
 
 import com.sensesafe.model.Incident;
+import com.sensesafe.model.OutboundNotification;
 import com.sensesafe.model.User;
 import com.sensesafe.model.SystemConfig;
+import com.sensesafe.service.AnalyticsExportService;
+import com.sensesafe.service.AsyncExecutors;
+import com.sensesafe.service.AuditAnchorService;
+import com.sensesafe.service.AuditLogService;
+import com.sensesafe.service.BlockchainService;
+import com.sensesafe.service.DashboardMetricsService;
+import com.sensesafe.service.DashboardStreamService;
+import com.sensesafe.service.EmailService;
+import com.sensesafe.service.EmbeddedInferenceService;
+import com.sensesafe.service.IncidentPipelineService;
 import com.sensesafe.service.IncidentService;
+import com.sensesafe.service.IncidentSimilarityService;
+import com.sensesafe.service.IncidentTopicRouter;
 import com.sensesafe.service.UserService;
 import com.sensesafe.service.VolunteerService;
 import com.sensesafe.service.MLAnalysisService;
+import com.sensesafe.service.MLScoringOrchestrator;
+import com.sensesafe.service.ServerThreadMetrics;
 import com.sensesafe.service.SystemConfigService;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.format.annotation.DateTimeFormat;
+import org.springframework.http.ContentDisposition;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.security.access.prepost.PreAuthorize;
 import org.springframework.security.core.Authentication;
 import org.springframework.security.core.context.SecurityContextHolder;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.server.ResponseStatusException;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
+import java.io.IOException;
 import java.time.LocalDateTime;
+import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
@@ -41,6 +66,48 @@ public class AdminController {
     @Autowired
     private SystemConfigService systemConfigService;
 
+    @Autowired
+    private IncidentPipelineService incidentPipelineService;
+
+    @Autowired
+    private MLScoringOrchestrator mlScoringOrchestrator;
+
+    @Autowired
+    private IncidentSimilarityService incidentSimilarityService;
+
+    @Autowired
+    private EmbeddedInferenceService embeddedInferenceService;
+
+    @Autowired
+    private BlockchainService blockchainService;
+
+    @Autowired
+    private AuditAnchorService auditAnchorService;
+
+    @Autowired
+    private AuditLogService auditLogService;
+
+    @Autowired
+    private AnalyticsExportService analyticsExportService;
+
+    @Autowired
+    private DashboardMetricsService dashboardMetricsService;
+
+    @Autowired
+    private DashboardStreamService dashboardStreamService;
+
+    @Autowired
+    private IncidentTopicRouter incidentTopicRouter;
+
+    @Autowired
+    private EmailService emailService;
+
+    @Autowired
+    private AsyncExecutors asyncExecutors;
+
+    @Autowired
+    private ServerThreadMetrics serverThreadMetrics;
+
     @GetMapping("/dashboard")
     public ResponseEntity<?> getDashboardData() {
         try {
@@ -264,26 +331,82 @@ public class AdminController {
         }
     }
 
+    /**
+     * Server-sent dashboard counters: a "snapshot" event with every counter,
+     * then "delta" events with the ones that changed
+     */
+    @GetMapping(value = "/dashboard/stream", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public SseEmitter streamDashboard() {
+        return dashboardStreamService.subscribe();
+    }
+
+    @GetMapping("/notifications/dead-letters")
+    public ResponseEntity<?> getDeadLetters(@RequestParam(defaultValue = "50") int limit) {
+        try {
+            List<Map<String, Object>> deadLetters = new ArrayList<>();
+            for (OutboundNotification notification : emailService.getDeadLetters(Math.min(Math.max(limit, 1), 500))) {
+                Map<String, Object> item = new HashMap<>();
+                item.put("id", notification.getId());
+                item.put("recipient", notification.getRecipient());
+                item.put("subject", notification.getSubject());
+                item.put("attempts", notification.getAttempts());
+                item.put("lastError", notification.getLastError());
+                item.put("createdAt", notification.getCreatedAt());
+                deadLetters.add(item);
+            }
+            
+            Map<String, Object> response = new HashMap<>();
+            response.put("success", true);
+            response.put("deadLetters", deadLetters);
+            response.put("count", deadLetters.size());
+            
+            return ResponseEntity.ok(response);
+            
+        } catch (Exception e) {
+            Map<String, Object> response = new HashMap<>();
+            response.put("success", false);
+            response.put("message", e.getMessage());
+            return ResponseEntity.badRequest().body(response);
+        }
+    }
+
+    @PostMapping("/notifications/dead-letters/{id}/retry")
+    public ResponseEntity<?> retryDeadLetter(@PathVariable Long id) {
+        try {
+            if (!emailService.requeueDeadLetter(id)) {
+                throw new RuntimeException("Dead-lettered notification not found: " + id);
+            }
+            
+            Map<String, Object> response = new HashMap<>();
+            response.put("success", true);
+            response.put("message", "Notification requeued for delivery");
+            
+            return ResponseEntity.ok(response);
+            
+        } catch (Exception e) {
+            Map<String, Object> response = new HashMap<>();
+            response.put("success", false);
+            response.put("message", e.getMessage());
+            return ResponseEntity.badRequest().body(response);
+        }
+    }
+
     @GetMapping("/real-time-data")
     public ResponseEntity<?> getRealTimeData() {
         try {
             Map<String, Object> realTimeData = new HashMap<>();
             
             // Active incidents count
-            List<Incident> activeIncidents = incidentService.findIncidentsByStatus(Incident.Status.IN_PROGRESS);
-            realTimeData.put("activeIncidentsCount", activeIncidents.size());
+            realTimeData.put("activeIncidentsCount", dashboardMetricsService.getIncidentCount(Incident.Status.IN_PROGRESS));
             
-            // Recent incidents (last hour)
-            List<Incident> recentIncidents = incidentService.findRecentIncidents(1);
-            realTimeData.put("recentIncidentsCount", recentIncidents.size());
+            // Recent incidents (this hour)
+            realTimeData.put("recentIncidentsCount", dashboardMetricsService.window(1).getIncidents());
             
             // Critical incidents count
-            List<Incident> criticalIncidents = incidentService.findCriticalIncidents();
-            realTimeData.put("criticalIncidentsCount", criticalIncidents.size());
+            realTimeData.put("criticalIncidentsCount", dashboardMetricsService.getCriticalActiveCount());
             
             // Active users (logged in last 24 hours)
-            List<User> activeUsers = userService.getRecentlyActiveUsers(1);
-            realTimeData.put("activeUsersCount", activeUsers.size());
+            realTimeData.put("activeUsersCount", dashboardMetricsService.getActiveUserCount());
             
             // Pending volunteer applications
             Long pendingApplications = volunteerService.getPendingApplicationCount();
@@ -307,11 +430,80 @@ public class AdminController {
         }
     }
 
+    @GetMapping("/pipeline/metrics")
+    public ResponseEntity<?> getPipelineMetrics() {
+        try {
+            Map<String, Object> response = new HashMap<>();
+            response.put("success", true);
+            response.put("pipeline", incidentPipelineService.getMetrics());
+            response.put("mlScoring", mlScoringOrchestrator.getMetrics());
+            response.put("mlClient", mlAnalysisService.getClientMetrics());
+            response.put("similarityEngine", incidentSimilarityService.getMetrics());
+            response.put("embeddedModels", embeddedInferenceService.getMetrics());
+            response.put("blockchainSubmitter", blockchainService.getSubmitterMetrics());
+            response.put("auditAnchoring", auditAnchorService.getMetrics());
+            response.put("auditLogging", auditLogService.getExecutorMetrics());
+            response.put("analyticsExport", analyticsExportService.getMetrics());
+            response.put("dashboardMetrics", dashboardMetricsService.getMetrics());
+            response.put("dashboardStream", dashboardStreamService.getMetrics());
+            response.put("incidentTopics", incidentTopicRouter.getMetrics());
+            response.put("mailDispatch", emailService.getDispatchMetrics());
+            response.put("notificationOutbox", emailService.getOutboxMetrics());
+            response.put("asyncExecutors", asyncExecutors.getMetrics());
+            response.put("serverThreads", serverThreadMetrics.getMetrics());
+            response.put("timestamp", LocalDateTime.now());
+            
+            return ResponseEntity.ok(response);
+            
+        } catch (Exception e) {
+            Map<String, Object> response = new HashMap<>();
+            response.put("success", false);
+            response.put("message", e.getMessage());
+            return ResponseEntity.badRequest().body(response);
+        }
+    }
+
+    /**
+     * Stream a dataset (incidents, verifications, audit-logs) as a columnar
+     * export of rows changed after since. The X-Export-Watermark header is
+     * the since to pass for the next incremental export
+     */
+    @GetMapping("/export/{dataset}")
+    public ResponseEntity<StreamingResponseBody> exportDataset(@PathVariable String dataset,
+                                                               @RequestParam(required = false)
+                                                               @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME)
+                                                               LocalDateTime since) {
+        if (!analyticsExportService.isDataset(dataset)) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Unknown export dataset: " + dataset);
+        }
+
+        LocalDateTime until = analyticsExportService.nextWatermark();
+        StreamingResponseBody body = output -> {
+            try {
+                analyticsExportService.export(dataset, since, until, output);
+            } catch (IOException | RuntimeException e) {
+                // Headers are already sent; the client gets a file without a valid footer
+                System.err.println("Analytics export of " + dataset + " failed: " + e.getMessage());
+                throw e;
+            }
+        };
+
+        HttpHeaders headers = new HttpHeaders();
+        headers.setContentType(MediaType.APPLICATION_OCTET_STREAM);
+        headers.setContentDisposition(ContentDisposition.attachment()
+                .filename(dataset + "-" + until.toString().replace(':', '-') + ".ssc")
+                .build());
+        headers.set("X-Export-Watermark", until.toString());
+        headers.setAccessControlExposeHeaders(List.of("X-Export-Watermark"));
+
+        return new ResponseEntity<>(body, headers, HttpStatus.OK);
+    }
+
     private Map<String, Object> getSystemStats() {
         Map<String, Object> stats = new HashMap<>();
         
         // User statistics
-        Long totalUsers = (long) userService.findAllUsers().size();
+        Long totalUsers = dashboardMetricsService.getTotalUsers();
         Long newUsersThisWeek = userService.getNewUserCount(7);
         Long activeVolunteers = volunteerService.getActiveVolunteerCount();
         
@@ -1,6 +1,8 @@
 package com.sensesafe.controller;
 
 import com.sensesafe.model.AuditLog;
+import com.sensesafe.repository.AuditLogFilter;
+import com.sensesafe.service.AuditAnchorService;
 import com.sensesafe.service.AuditLogService;
 import com.sensesafe.service.BlockchainService;
 import org.springframework.beans.factory.annotation.Autowired;
@@ -9,11 +11,15 @@ import org.springframework.format.annotation.DateTimeFormat;
 import org.springframework.http.*;
 import org.springframework.security.access.prepost.PreAuthorize;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
+import java.io.IOException;
 import java.time.LocalDateTime;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
+import java.util.zip.GZIPOutputStream;
 
 @RestController
 @RequestMapping("/api/audit")
@@ -27,6 +33,9 @@ public class AuditLogController {
     @Autowired
     private BlockchainService blockchainService;
 
+    @Autowired
+    private AuditAnchorService auditAnchorService;
+
     /**
      * Get audit logs with pagination and filtering
      */
@@ -56,6 +65,35 @@ public class AuditLogController {
         }
     }
 
+    /**
+     * Get audit logs newest first by cursor rather than page number; pass
+     * back nextCursor from the previous response to continue. Page cost does
+     * not grow with depth
+     */
+    @GetMapping("/logs/scroll")
+    public ResponseEntity<Map<String, Object>> scrollAuditLogs(
+            @RequestParam(required = false) String actionType,
+            @RequestParam(required = false) String userId,
+            @RequestParam(required = false) String status,
+            @RequestParam(required = false) String targetType,
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime startDate,
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime endDate,
+            @RequestParam(required = false) String cursor,
+            @RequestParam(defaultValue = "20") int size) {
+
+        try {
+            AuditLogFilter filter = new AuditLogFilter(actionType, userId, status, targetType, startDate, endDate);
+            return ResponseEntity.ok(auditLogService.scrollAuditLogs(filter, cursor, Math.min(Math.max(size, 1), 500)));
+        } catch (IllegalArgumentException e) {
+            Map<String, Object> response = new HashMap<>();
+            response.put("success", false);
+            response.put("message", e.getMessage());
+            return ResponseEntity.badRequest().body(response);
+        } catch (Exception e) {
+            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).build();
+        }
+    }
+
     /**
      * Get audit trail for a specific incident
      */
@@ -161,6 +199,22 @@ public class AuditLogController {
         }
     }
 
+    /**
+     * Verify an audit log's inclusion in its Merkle anchor
+     */
+    @GetMapping("/logs/{id}/verify")
+    public ResponseEntity<Map<String, Object>> verifyAuditLogInclusion(@PathVariable Long id) {
+        try {
+            Map<String, Object> result = auditAnchorService.verifyInclusion(id);
+            if (!Boolean.TRUE.equals(result.get("success"))) {
+                return ResponseEntity.status(HttpStatus.NOT_FOUND).body(result);
+            }
+            return ResponseEntity.ok(result);
+        } catch (Exception e) {
+            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).build();
+        }
+    }
+
     /**
      * Find audit log by blockchain transaction hash
      */
@@ -179,26 +233,44 @@ public class AuditLogController {
     }
 
     /**
-     * Export audit logs to CSV
+     * Export audit logs to CSV, streamed to the client as rows are read.
+     * gzip=true sends a .csv.gz file; limit caps the row count, which is
+     * otherwise unbounded
      */
     @GetMapping("/export")
-    public ResponseEntity<String> exportAuditLogs(
+    public ResponseEntity<StreamingResponseBody> exportAuditLogs(
             @RequestParam(required = false) String actionType,
             @RequestParam(required = false) String userId,
             @RequestParam(required = false) String status,
             @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime startDate,
-            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime endDate) {
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime endDate,
+            @RequestParam(defaultValue = "false") boolean gzip,
+            @RequestParam(defaultValue = "0") long limit) {
 
         try {
-            String csvContent = auditLogService.exportAuditLogsToCSV(actionType, userId, status, startDate, endDate);
-            
+            StreamingResponseBody body = output -> {
+                try {
+                    if (gzip) {
+                        GZIPOutputStream gzipOutput = new GZIPOutputStream(output, 64 * 1024);
+                        auditLogService.writeAuditLogsCsv(gzipOutput, actionType, userId, status, startDate, endDate, limit);
+                        gzipOutput.finish();
+                    } else {
+                        auditLogService.writeAuditLogsCsv(output, actionType, userId, status, startDate, endDate, limit);
+                    }
+                } catch (IOException | RuntimeException e) {
+                    // Headers are already sent; the client sees a truncated download
+                    System.err.println("Audit log export failed: " + e.getMessage());
+                    throw e;
+                }
+            };
+
             HttpHeaders headers = new HttpHeaders();
-            headers.setContentType(MediaType.APPLICATION_OCTET_STREAM);
+            headers.setContentType(gzip ? MediaType.parseMediaType("application/gzip") : MediaType.APPLICATION_OCTET_STREAM);
             headers.setContentDisposition(ContentDisposition.attachment()
-                    .filename("audit-logs-" + System.currentTimeMillis() + ".csv")
+                    .filename("audit-logs-" + System.currentTimeMillis() + (gzip ? ".csv.gz" : ".csv"))
                     .build());
-            
-            return new ResponseEntity<>(csvContent, headers, HttpStatus.OK);
+
+            return new ResponseEntity<>(body, headers, HttpStatus.OK);
         } catch (Exception e) {
             return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).build();
         }
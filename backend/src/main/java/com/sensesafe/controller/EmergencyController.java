@@ -50,7 +50,9 @@ public class EmergencyController {
 
     @PostMapping("/sos")
     public ResponseEntity<?> sendSOSAlert(@RequestBody SOSRequest request,
-                                        @RequestHeader(value = "Authorization", required = false) String authHeader) {
+                                        @RequestHeader(value = "Authorization", required = false) String authHeader,
+                                        // Lets a client retry an SOS without alerting the contacts twice
+                                        @RequestHeader(value = "Idempotency-Key", required = false) String idempotencyKey) {
         try {
             User user = null;
             
@@ -110,7 +112,8 @@ public class EmergencyController {
                     request.getLatitude(),
                     request.getLongitude(),
                     request.getMessage(),
-                    java.time.LocalDateTime.now()
+                    java.time.LocalDateTime.now(),
+                    idempotencyKey
                 );
             } else {
                 // Create temporary user info for anonymous SOS
@@ -125,7 +128,8 @@ public class EmergencyController {
                     request.getLatitude(),
                     request.getLongitude(),
                     request.getMessage(),
-                    java.time.LocalDateTime.now()
+                    java.time.LocalDateTime.now(),
+                    idempotencyKey
                 );
             }
 
@@ -5,6 +5,7 @@ import com.sensesafe.model.IncidentVerification;
 import com.sensesafe.model.User;
 import com.sensesafe.security.JwtUtil;
 import com.sensesafe.service.IncidentService;
+import com.sensesafe.service.IncidentTopicRouter;
 import com.sensesafe.service.UserService;
 import com.sensesafe.service.GeolocationService;
 import com.sensesafe.service.MLAnalysisService;
@@ -36,6 +37,9 @@ public class IncidentController {
     @Autowired
     private MLAnalysisService mlAnalysisService;
 
+    @Autowired
+    private IncidentTopicRouter incidentTopicRouter;
+
     @Autowired
     private JwtUtil jwtUtil;
 
@@ -368,6 +372,7 @@ public class IncidentController {
             response.put("mlServiceAvailable", isAvailable);
             response.put("status", isAvailable ? "healthy" : "unavailable");
             response.put("fallbackMode", !isAvailable);
+            response.put("circuitState", mlAnalysisService.getCircuitState().name());
             response.put("timestamp", java.time.LocalDateTime.now().toString());
 
             return ResponseEntity.ok(response);
@@ -442,6 +447,43 @@ public class IncidentController {
         }
     }
 
+    /**
+     * Geo topics to subscribe to for a viewport, or for a radius around a location
+     */
+    @GetMapping("/geo-topics")
+    public ResponseEntity<?> getGeoTopics(@RequestParam(required = false) Double south,
+                                          @RequestParam(required = false) Double west,
+                                          @RequestParam(required = false) Double north,
+                                          @RequestParam(required = false) Double east,
+                                          @RequestParam(required = false) Double latitude,
+                                          @RequestParam(required = false) Double longitude,
+                                          @RequestParam(defaultValue = "10.0") Double radiusKm) {
+        try {
+            Map<String, Object> plan;
+            if (south != null && west != null && north != null && east != null) {
+                plan = incidentTopicRouter.plan(south, west, north, east);
+            } else if (latitude != null && longitude != null) {
+                double latDelta = radiusKm / 111.32;
+                double lngDelta = radiusKm / (111.32 * Math.max(0.01, Math.cos(Math.toRadians(latitude))));
+                double fromLng = longitude - lngDelta < -180 ? longitude - lngDelta + 360 : longitude - lngDelta;
+                double toLng = longitude + lngDelta > 180 ? longitude + lngDelta - 360 : longitude + lngDelta;
+                plan = incidentTopicRouter.plan(latitude - latDelta, fromLng, latitude + latDelta, toLng);
+            } else {
+                throw new IllegalArgumentException("Provide south, west, north and east, or latitude and longitude");
+            }
+
+            Map<String, Object> response = new HashMap<>(plan);
+            response.put("success", true);
+            return ResponseEntity.ok(response);
+
+        } catch (Exception e) {
+            Map<String, Object> response = new HashMap<>();
+            response.put("success", false);
+            response.put("message", e.getMessage());
+            return ResponseEntity.badRequest().body(response);
+        }
+    }
+
     private Map<String, Object> createIncidentResponse(Incident incident) {
         Map<String, Object> response = new HashMap<>();
         response.put("id", incident.getId());
@@ -450,6 +492,7 @@ public class IncidentController {
         response.put("type", incident.getType().name());
         response.put("severity", incident.getSeverity().name());
         response.put("status", incident.getStatus().name());
+        response.put("processingStage", incident.getProcessingStage() != null ? incident.getProcessingStage().name() : null);
         response.put("latitude", incident.getLatitude());
         response.put("longitude", incident.getLongitude());
         response.put("address", incident.getAddress());
@@ -242,6 +242,41 @@ public class VolunteerController {
         }
     }
 
+    @GetMapping("/nearest")
+    @PreAuthorize("hasAnyRole('ADMIN', 'VOLUNTEER')")
+    public ResponseEntity<?> getNearestVolunteers(@RequestParam Double latitude,
+            @RequestParam Double longitude,
+            @RequestParam(defaultValue = "5") int count,
+            @RequestParam(defaultValue = "25.0") Double maxRadiusKm) {
+        try {
+            List<User> volunteers = userService.findNearestVolunteers(latitude, longitude, count, maxRadiusKm);
+
+            List<Map<String, Object>> results = volunteers.stream().map(volunteer -> {
+                Map<String, Object> summary = new HashMap<>();
+                summary.put("id", volunteer.getId());
+                summary.put("firstName", volunteer.getFirstName());
+                summary.put("lastName", volunteer.getLastName());
+                summary.put("phoneNumber", volunteer.getPhoneNumber());
+                summary.put("latitude", volunteer.getLatitude());
+                summary.put("longitude", volunteer.getLongitude());
+                return summary;
+            }).toList();
+
+            Map<String, Object> response = new HashMap<>();
+            response.put("success", true);
+            response.put("volunteers", results);
+            response.put("total", results.size());
+
+            return ResponseEntity.ok(response);
+
+        } catch (Exception e) {
+            Map<String, Object> response = new HashMap<>();
+            response.put("success", false);
+            response.put("message", e.getMessage());
+            return ResponseEntity.badRequest().body(response);
+        }
+    }
+
     @GetMapping("/by-type")
     @PreAuthorize("hasAnyRole('ADMIN', 'VOLUNTEER')")
     public ResponseEntity<?> getVolunteersByType(@RequestParam String type) {
@@ -0,0 +1,151 @@
+package com.sensesafe.model;
+
+import jakarta.persistence.*;
+import org.hibernate.annotations.CreationTimestamp;
+
+import java.time.LocalDateTime;
+
+/**
+ * One Merkle root committed on-chain for a contiguous range of audit logs
+ */
+@Entity
+@Table(name = "audit_anchors", indexes = {
+    @Index(name = "idx_anchor_root", columnList = "merkle_root")
+})
+public class AuditAnchor {
+    
+    // A sequence, so anchors restored from the audit journal with their ids can move it past them
+    @Id
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "audit_anchor_seq")
+    @SequenceGenerator(name = "audit_anchor_seq", sequenceName = "audit_anchor_seq", allocationSize = 1)
+    private Long id;
+    
+    @Column(name = "merkle_root", nullable = false, length = 66)
+    private String merkleRoot;
+    
+    @Column(name = "leaf_count", nullable = false)
+    private Integer leafCount;
+    
+    @Column(name = "first_audit_log_id", nullable = false)
+    private Long firstAuditLogId;
+    
+    @Column(name = "last_audit_log_id", nullable = false)
+    private Long lastAuditLogId;
+    
+    @Column(name = "status", nullable = false, length = 20)
+    private String status; // PENDING, CONFIRMED, FAILED
+    
+    @Column(name = "tx_hash", length = 66)
+    private String txHash;
+    
+    @Column(name = "block_number")
+    private Long blockNumber;
+    
+    @Column(name = "error_message", columnDefinition = "TEXT")
+    private String errorMessage;
+    
+    @CreationTimestamp
+    @Column(name = "created_at", nullable = false, updatable = false)
+    private LocalDateTime createdAt;
+    
+    @Column(name = "confirmed_at")
+    private LocalDateTime confirmedAt;
+    
+    public AuditAnchor() {}
+    
+    public AuditAnchor(String merkleRoot, Integer leafCount, Long firstAuditLogId, Long lastAuditLogId) {
+        this.merkleRoot = merkleRoot;
+        this.leafCount = leafCount;
+        this.firstAuditLogId = firstAuditLogId;
+        this.lastAuditLogId = lastAuditLogId;
+        this.status = "PENDING";
+    }
+    
+    public Long getId() {
+        return id;
+    }
+    
+    public void setId(Long id) {
+        this.id = id;
+    }
+    
+    public String getMerkleRoot() {
+        return merkleRoot;
+    }
+    
+    public void setMerkleRoot(String merkleRoot) {
+        this.merkleRoot = merkleRoot;
+    }
+    
+    public Integer getLeafCount() {
+        return leafCount;
+    }
+    
+    public void setLeafCount(Integer leafCount) {
+        this.leafCount = leafCount;
+    }
+    
+    public Long getFirstAuditLogId() {
+        return firstAuditLogId;
+    }
+    
+    public void setFirstAuditLogId(Long firstAuditLogId) {
+        this.firstAuditLogId = firstAuditLogId;
+    }
+    
+    public Long getLastAuditLogId() {
+        return lastAuditLogId;
+    }
+    
+    public void setLastAuditLogId(Long lastAuditLogId) {
+        this.lastAuditLogId = lastAuditLogId;
+    }
+    
+    public String getStatus() {
+        return status;
+    }
+    
+    public void setStatus(String status) {
+        this.status = status;
+    }
+    
+    public String getTxHash() {
+        return txHash;
+    }
+    
+    public void setTxHash(String txHash) {
+        this.txHash = txHash;
+    }
+    
+    public Long getBlockNumber() {
+        return blockNumber;
+    }
+    
+    public void setBlockNumber(Long blockNumber) {
+        this.blockNumber = blockNumber;
+    }
+    
+    public String getErrorMessage() {
+        return errorMessage;
+    }
+    
+    public void setErrorMessage(String errorMessage) {
+        this.errorMessage = errorMessage;
+    }
+    
+    public LocalDateTime getCreatedAt() {
+        return createdAt;
+    }
+    
+    public void setCreatedAt(LocalDateTime createdAt) {
+        this.createdAt = createdAt;
+    }
+    
+    public LocalDateTime getConfirmedAt() {
+        return confirmedAt;
+    }
+    
+    public void setConfirmedAt(LocalDateTime confirmedAt) {
+        this.confirmedAt = confirmedAt;
+    }
+}
@@ -3,21 +3,27 @@ package com.sensesafe.model;
 import jakarta.persistence.*;
 import jakarta.validation.constraints.NotNull;
 import jakarta.validation.constraints.Size;
-import org.hibernate.annotations.CreationTimestamp;
 
 import java.time.LocalDateTime;
 
 @Entity
+// Filtered lists are read newest first by (created_at, id), so each filter column leads an index ending in those
 @Table(name = "audit_logs", indexes = {
-    @Index(name = "idx_audit_timestamp", columnList = "created_at"),
-    @Index(name = "idx_audit_action", columnList = "action_type"),
-    @Index(name = "idx_audit_user", columnList = "user_id"),
-    @Index(name = "idx_audit_blockchain", columnList = "blockchain_tx_hash")
+    @Index(name = "idx_audit_timestamp", columnList = "created_at, id"),
+    @Index(name = "idx_audit_action", columnList = "action_type, created_at, id"),
+    @Index(name = "idx_audit_user", columnList = "user_id, created_at, id"),
+    @Index(name = "idx_audit_status", columnList = "status, created_at, id"),
+    @Index(name = "idx_audit_target", columnList = "target_type, target_id, created_at"),
+    @Index(name = "idx_audit_blockchain", columnList = "blockchain_tx_hash"),
+    @Index(name = "idx_audit_anchor", columnList = "anchor_id"),
+    @Index(name = "idx_audit_journal", columnList = "journal_sequence")
 })
 public class AuditLog {
     
+    // Pooled sequence rather than IDENTITY, so inserts can be JDBC-batched
     @Id
-    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "audit_log_seq")
+    @SequenceGenerator(name = "audit_log_seq", sequenceName = "audit_log_seq", allocationSize = 50)
     private Long id;
     
     @NotNull
@@ -59,7 +65,7 @@ public class AuditLog {
     @Column(name = "error_message", columnDefinition = "TEXT")
     private String errorMessage;
     
-    @Column(name = "blockchain_tx_hash", unique = true)
+    @Column(name = "blockchain_tx_hash")
     @Size(max = 66)
     private String blockchainTxHash;
     
@@ -77,13 +83,28 @@ public class AuditLog {
     @Column(name = "blockchain_block_number")
     private Long blockchainBlockNumber;
     
-    @CreationTimestamp
     @Column(name = "created_at", nullable = false, updatable = false)
     private LocalDateTime createdAt;
     
     @Column(name = "metadata", columnDefinition = "TEXT")
     private String metadata; // JSON string for additional data
     
+    // Merkle anchoring: the leaf hash of this log's content and its proof against the anchor's root
+    @Column(name = "anchor_id")
+    private Long anchorId;
+    
+    @Column(name = "merkle_leaf_hash", length = 66)
+    private String merkleLeafHash;
+    
+    @Column(name = "merkle_leaf_index")
+    private Integer merkleLeafIndex;
+    
+    @Column(name = "merkle_proof", columnDefinition = "TEXT")
+    private String merkleProof; // comma-separated sibling hashes, leaf to root
+    
+    @Column(name = "journal_sequence")
+    private Long journalSequence; // record in the local audit journal, for replay
+    
     // Constructors
     public AuditLog() {}
     
@@ -94,6 +115,14 @@ public class AuditLog {
         this.status = status;
     }
     
+    // Only when unset: a log replayed from the audit journal keeps the time it was first recorded
+    @PrePersist
+    protected void onCreate() {
+        if (createdAt == null) {
+            createdAt = LocalDateTime.now();
+        }
+    }
+    
     // Getters and Setters
     public Long getId() {
         return id;
@@ -238,4 +267,44 @@ public class AuditLog {
     public void setMetadata(String metadata) {
         this.metadata = metadata;
     }
+    
+    public Long getAnchorId() {
+        return anchorId;
+    }
+    
+    public void setAnchorId(Long anchorId) {
+        this.anchorId = anchorId;
+    }
+    
+    public String getMerkleLeafHash() {
+        return merkleLeafHash;
+    }
+    
+    public void setMerkleLeafHash(String merkleLeafHash) {
+        this.merkleLeafHash = merkleLeafHash;
+    }
+    
+    public Integer getMerkleLeafIndex() {
+        return merkleLeafIndex;
+    }
+    
+    public void setMerkleLeafIndex(Integer merkleLeafIndex) {
+        this.merkleLeafIndex = merkleLeafIndex;
+    }
+    
+    public String getMerkleProof() {
+        return merkleProof;
+    }
+    
+    public void setMerkleProof(String merkleProof) {
+        this.merkleProof = merkleProof;
+    }
+    
+    public Long getJournalSequence() {
+        return journalSequence;
+    }
+    
+    public void setJournalSequence(Long journalSequence) {
+        this.journalSequence = journalSequence;
+    }
 }
@@ -72,6 +72,11 @@ public class Incident {
     private String riskLevel;
     private Double similarityScore;
 
+    // Ingestion pipeline progress (null for incidents created outside the pipeline)
+    @Enumerated(EnumType.STRING)
+    @Column(name = "processing_stage")
+    private ProcessingStage processingStage;
+
     // Blockchain
     private String blockchainTxHash;
     private Boolean blockchainVerified = false;
@@ -106,6 +111,10 @@ public class Incident {
         NEW, VERIFIED, IN_PROGRESS, RESOLVED, REJECTED, DUPLICATE
     }
 
+    public enum ProcessingStage {
+        RECEIVED, ENRICHED, SCORED, NOTIFIED, COMPLETED
+    }
+
     // Constructors
     public Incident() {}
 
@@ -193,6 +202,9 @@ public class Incident {
     public Double getSimilarityScore() { return similarityScore; }
     public void setSimilarityScore(Double similarityScore) { this.similarityScore = similarityScore; }
 
+    public ProcessingStage getProcessingStage() { return processingStage; }
+    public void setProcessingStage(ProcessingStage processingStage) { this.processingStage = processingStage; }
+
     public String getBlockchainTxHash() { return blockchainTxHash; }
     public void setBlockchainTxHash(String blockchainTxHash) { this.blockchainTxHash = blockchainTxHash; }
 
@@ -0,0 +1,18 @@
+package com.sensesafe.repository;
+
+import com.sensesafe.model.AuditAnchor;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.stereotype.Repository;
+
+import java.util.List;
+
+@Repository
+public interface AuditAnchorRepository extends JpaRepository<AuditAnchor, Long> {
+    
+    /**
+     * Count anchors by status
+     */
+    @Query("SELECT a.status, COUNT(a) FROM AuditAnchor a GROUP BY a.status")
+    List<Object[]> countByStatus();
+}
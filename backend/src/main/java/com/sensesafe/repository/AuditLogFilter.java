@@ -0,0 +1,37 @@
+package com.sensesafe.repository;
+
+import java.time.LocalDateTime;
+
+/**
+ * Optional audit log filters; only the non-null ones end up in the query
+ */
+public class AuditLogFilter {
+
+    private final String actionType;
+    private final String userId;
+    private final String status;
+    private final String targetType;
+    private final LocalDateTime startDate;
+    private final LocalDateTime endDate;
+
+    public AuditLogFilter(String actionType, String userId, String status, String targetType,
+                          LocalDateTime startDate, LocalDateTime endDate) {
+        this.actionType = actionType;
+        this.userId = userId;
+        this.status = status;
+        this.targetType = targetType;
+        this.startDate = startDate;
+        this.endDate = endDate;
+    }
+
+    public static AuditLogFilter none() {
+        return new AuditLogFilter(null, null, null, null, null, null);
+    }
+
+    public String getActionType() { return actionType; }
+    public String getUserId() { return userId; }
+    public String getStatus() { return status; }
+    public String getTargetType() { return targetType; }
+    public LocalDateTime getStartDate() { return startDate; }
+    public LocalDateTime getEndDate() { return endDate; }
+}
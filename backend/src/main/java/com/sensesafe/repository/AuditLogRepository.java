@@ -1,19 +1,24 @@
 package com.sensesafe.repository;
 
 import com.sensesafe.model.AuditLog;
+import jakarta.persistence.QueryHint;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
 import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
 
 import java.time.LocalDateTime;
+import java.util.Collection;
 import java.util.List;
 import java.util.Optional;
 
 @Repository
-public interface AuditLogRepository extends JpaRepository<AuditLog, Long> {
+public interface AuditLogRepository extends JpaRepository<AuditLog, Long>, AuditLogRepositoryCustom {
     
     /**
      * Find audit logs by user ID with pagination
@@ -36,34 +41,10 @@ public interface AuditLogRepository extends JpaRepository<AuditLog, Long> {
     List<AuditLog> findByTargetTypeAndTargetIdOrderByCreatedAtDesc(String targetType, String targetId);
     
     /**
-     * Find audit logs by blockchain transaction hash
+     * Find the first audit log for a blockchain transaction hash; an anchored
+     * batch shares one hash
      */
-    Optional<AuditLog> findByBlockchainTxHash(String blockchainTxHash);
-    
-    /**
-     * Find audit logs within date range
-     */
-    @Query("SELECT al FROM AuditLog al WHERE al.createdAt BETWEEN :startDate AND :endDate ORDER BY al.createdAt DESC")
-    Page<AuditLog> findByDateRange(@Param("startDate") LocalDateTime startDate, 
-                                   @Param("endDate") LocalDateTime endDate, 
-                                   Pageable pageable);
-    
-    /**
-     * Find audit logs by multiple criteria
-     */
-    @Query("SELECT al FROM AuditLog al WHERE " +
-           "(:actionType IS NULL OR al.actionType = :actionType) AND " +
-           "(:userId IS NULL OR al.userId = :userId) AND " +
-           "(:status IS NULL OR al.status = :status) AND " +
-           "(:startDate IS NULL OR al.createdAt >= :startDate) AND " +
-           "(:endDate IS NULL OR al.createdAt <= :endDate) " +
-           "ORDER BY al.createdAt DESC")
-    Page<AuditLog> findByMultipleCriteria(@Param("actionType") String actionType,
-                                          @Param("userId") String userId,
-                                          @Param("status") String status,
-                                          @Param("startDate") LocalDateTime startDate,
-                                          @Param("endDate") LocalDateTime endDate,
-                                          Pageable pageable);
+    Optional<AuditLog> findFirstByBlockchainTxHashOrderByIdAsc(String blockchainTxHash);
     
     /**
      * Get audit trail for a specific incident (target type = INCIDENT)
@@ -71,12 +52,6 @@ public interface AuditLogRepository extends JpaRepository<AuditLog, Long> {
     @Query("SELECT al FROM AuditLog al WHERE al.targetType = 'INCIDENT' AND al.targetId = :incidentId ORDER BY al.createdAt ASC")
     List<AuditLog> getIncidentAuditTrail(@Param("incidentId") String incidentId);
     
-    /**
-     * Get recent audit logs (last N entries)
-     */
-    @Query("SELECT al FROM AuditLog al ORDER BY al.createdAt DESC")
-    List<AuditLog> findRecentLogs(Pageable pageable);
-    
     /**
      * Count logs by action type
      */
@@ -111,4 +86,86 @@ public interface AuditLogRepository extends JpaRepository<AuditLog, Long> {
      */
     @Query("SELECT al FROM AuditLog al WHERE al.userRole = :userRole ORDER BY al.createdAt DESC")
     List<AuditLog> findByUserRole(@Param("userRole") String userRole, Pageable pageable);
-}
+    
+    /**
+     * Logs not yet covered by a Merkle anchor, oldest first
+     */
+    @Query("SELECT al FROM AuditLog al WHERE al.anchorId IS NULL ORDER BY al.id ASC")
+    List<AuditLog> findUnanchored(Pageable pageable);
+    
+    /**
+     * Put the logs of an anchor that never reached the chain back in line
+     * for the next anchoring run
+     */
+    @Modifying
+    @Transactional
+    @Query("UPDATE AuditLog al SET al.anchorId = NULL, al.merkleLeafHash = NULL, al.merkleLeafIndex = NULL, " +
+           "al.merkleProof = NULL WHERE al.anchorId = :anchorId")
+    int releaseAnchor(@Param("anchorId") Long anchorId);
+    
+    /**
+     * Record the outcome of a log's own blockchain transaction without
+     * rewriting the rest of the row
+     */
+    @Modifying
+    @Transactional
+    @Query("UPDATE AuditLog al SET al.blockchainTxHash = :txHash, al.blockchainStatus = :status, " +
+           "al.blockchainNetwork = :network, al.blockchainGasUsed = :gasUsed, " +
+           "al.blockchainBlockNumber = :blockNumber, al.errorMessage = COALESCE(:errorMessage, al.errorMessage) " +
+           "WHERE al.id = :id")
+    int updateBlockchainResult(@Param("id") Long id,
+                               @Param("txHash") String txHash,
+                               @Param("status") String status,
+                               @Param("network") String network,
+                               @Param("gasUsed") Long gasUsed,
+                               @Param("blockNumber") Long blockNumber,
+                               @Param("errorMessage") String errorMessage);
+    
+    /**
+     * Record an anchor's transaction on the logs that rely on it, i.e. all but
+     * the action types written to the contract individually
+     */
+    @Modifying
+    @Transactional
+    @Query("UPDATE AuditLog al SET al.blockchainTxHash = :txHash, al.blockchainStatus = :status, " +
+           "al.blockchainBlockNumber = :blockNumber, al.blockchainNetwork = 'ETHEREUM' " +
+           "WHERE al.anchorId = :anchorId AND al.actionType NOT IN :excludedActionTypes")
+    int updateAnchoredBlockchainStatus(@Param("anchorId") Long anchorId,
+                                       @Param("txHash") String txHash,
+                                       @Param("status") String status,
+                                       @Param("blockNumber") Long blockNumber,
+                                       @Param("excludedActionTypes") Collection<String> excludedActionTypes);
+    
+    /**
+     * Logs written from journal records in a sequence range, for replay
+     */
+    List<AuditLog> findByJournalSequenceBetween(Long fromSequence, Long toSequence);
+    
+    @Query("SELECT al.journalSequence FROM AuditLog al WHERE al.journalSequence BETWEEN :fromSequence AND :toSequence")
+    List<Long> findJournalSequencesBetween(@Param("fromSequence") Long fromSequence,
+                                           @Param("toSequence") Long toSequence);
+    
+    List<AuditLog> findByAnchorId(Long anchorId);
+    
+    @Query("SELECT MAX(al.journalSequence) FROM AuditLog al")
+    Long findMaxJournalSequence();
+    
+    /**
+     * Analytics export rows created in (since, until], as scalars in the
+     * export column order, paged by keyset on (createdAt, id)
+     */
+    @QueryHints(@QueryHint(name = "org.hibernate.fetchSize", value = "1000"))
+    @Query("SELECT al.id, al.actionType, al.userId, al.userRole, al.targetType, al.targetId, " +
+           "al.targetDescription, al.ipAddress, al.userAgent, al.status, al.errorMessage, al.blockchainTxHash, " +
+           "al.blockchainStatus, al.blockchainNetwork, al.blockchainGasUsed, al.blockchainBlockNumber, " +
+           "al.anchorId, al.journalSequence, al.createdAt, al.metadata " +
+           "FROM AuditLog al WHERE (:since IS NULL OR al.createdAt > :since) AND al.createdAt <= :until AND " +
+           "(:afterTimestamp IS NULL OR al.createdAt > :afterTimestamp OR " +
+           "(al.createdAt = :afterTimestamp AND al.id > :afterId)) " +
+           "ORDER BY al.createdAt ASC, al.id ASC")
+    List<Object[]> findExportRows(@Param("since") LocalDateTime since,
+                                  @Param("until") LocalDateTime until,
+                                  @Param("afterTimestamp") LocalDateTime afterTimestamp,
+                                  @Param("afterId") Long afterId,
+                                  Pageable pageable);
+}
\ No newline at end of file
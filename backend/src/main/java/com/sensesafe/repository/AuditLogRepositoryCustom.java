@@ -0,0 +1,29 @@
+package com.sensesafe.repository;
+
+import com.sensesafe.model.AuditLog;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.Pageable;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+/**
+ * Audit log queries built from the filters that are present, so each one
+ * can use the matching composite index instead of an (:x IS NULL OR ...)
+ * catch-all
+ */
+public interface AuditLogRepositoryCustom {
+
+    /**
+     * Up to limit logs newest first by (createdAt, id), starting after the
+     * cursor row; a null cursor starts from the newest log. Cost depends on
+     * the page size, not on how deep the page is
+     */
+    List<AuditLog> findKeysetPage(AuditLogFilter filter, LocalDateTime beforeCreatedAt, Long beforeId, int limit);
+
+    /**
+     * Offset page for clients that still page by number; deep pages cost
+     * O(offset)
+     */
+    Page<AuditLog> findFiltered(AuditLogFilter filter, Pageable pageable);
+}
@@ -0,0 +1,96 @@
+package com.sensesafe.repository;
+
+import com.sensesafe.model.AuditLog;
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.PersistenceContext;
+import jakarta.persistence.criteria.CriteriaBuilder;
+import jakarta.persistence.criteria.CriteriaQuery;
+import jakarta.persistence.criteria.Order;
+import jakarta.persistence.criteria.Predicate;
+import jakarta.persistence.criteria.Root;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.query.QueryUtils;
+import org.springframework.data.support.PageableExecutionUtils;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+
+public class AuditLogRepositoryCustomImpl implements AuditLogRepositoryCustom {
+
+    @PersistenceContext
+    private EntityManager entityManager;
+
+    @Override
+    public List<AuditLog> findKeysetPage(AuditLogFilter filter, LocalDateTime beforeCreatedAt, Long beforeId, int limit) {
+        CriteriaBuilder cb = entityManager.getCriteriaBuilder();
+        CriteriaQuery<AuditLog> query = cb.createQuery(AuditLog.class);
+        Root<AuditLog> root = query.from(AuditLog.class);
+
+        List<Predicate> predicates = filterPredicates(cb, root, filter);
+        if (beforeCreatedAt != null) {
+            // The redundant bound gives the planner a range on the index; the OR breaks ties on id
+            predicates.add(cb.lessThanOrEqualTo(root.<LocalDateTime>get("createdAt"), beforeCreatedAt));
+            predicates.add(cb.or(
+                    cb.lessThan(root.<LocalDateTime>get("createdAt"), beforeCreatedAt),
+                    cb.and(cb.equal(root.get("createdAt"), beforeCreatedAt), cb.lessThan(root.<Long>get("id"), beforeId))));
+        }
+        query.where(predicates.toArray(new Predicate[0]))
+                .orderBy(cb.desc(root.get("createdAt")), cb.desc(root.get("id")));
+
+        return entityManager.createQuery(query)
+                .setMaxResults(limit)
+                .setHint("org.hibernate.fetchSize", limit)
+                .getResultList();
+    }
+
+    @Override
+    public Page<AuditLog> findFiltered(AuditLogFilter filter, Pageable pageable) {
+        CriteriaBuilder cb = entityManager.getCriteriaBuilder();
+        CriteriaQuery<AuditLog> query = cb.createQuery(AuditLog.class);
+        Root<AuditLog> root = query.from(AuditLog.class);
+
+        List<Order> orders = new ArrayList<>(QueryUtils.toOrders(pageable.getSort(), root, cb));
+        orders.add(cb.desc(root.get("id")));
+        query.where(filterPredicates(cb, root, filter).toArray(new Predicate[0])).orderBy(orders);
+
+        List<AuditLog> content = entityManager.createQuery(query)
+                .setFirstResult((int) pageable.getOffset())
+                .setMaxResults(pageable.getPageSize())
+                .getResultList();
+
+        return PageableExecutionUtils.getPage(content, pageable, () -> count(filter));
+    }
+
+    private long count(AuditLogFilter filter) {
+        CriteriaBuilder cb = entityManager.getCriteriaBuilder();
+        CriteriaQuery<Long> query = cb.createQuery(Long.class);
+        Root<AuditLog> root = query.from(AuditLog.class);
+        query.select(cb.count(root)).where(filterPredicates(cb, root, filter).toArray(new Predicate[0]));
+        return entityManager.createQuery(query).getSingleResult();
+    }
+
+    private List<Predicate> filterPredicates(CriteriaBuilder cb, Root<AuditLog> root, AuditLogFilter filter) {
+        List<Predicate> predicates = new ArrayList<>();
+        if (filter.getActionType() != null) {
+            predicates.add(cb.equal(root.get("actionType"), filter.getActionType()));
+        }
+        if (filter.getUserId() != null) {
+            predicates.add(cb.equal(root.get("userId"), filter.getUserId()));
+        }
+        if (filter.getStatus() != null) {
+            predicates.add(cb.equal(root.get("status"), filter.getStatus()));
+        }
+        if (filter.getTargetType() != null) {
+            predicates.add(cb.equal(root.get("targetType"), filter.getTargetType()));
+        }
+        if (filter.getStartDate() != null) {
+            predicates.add(cb.greaterThanOrEqualTo(root.<LocalDateTime>get("createdAt"), filter.getStartDate()));
+        }
+        if (filter.getEndDate() != null) {
+            predicates.add(cb.lessThanOrEqualTo(root.<LocalDateTime>get("createdAt"), filter.getEndDate()));
+        }
+        return predicates;
+    }
+}
@@ -1,8 +1,11 @@
 package com.sensesafe.repository;
 
 import com.sensesafe.model.Incident;
+import jakarta.persistence.QueryHint;
+import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
 import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
 import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
@@ -46,6 +49,22 @@ public interface IncidentRepository extends JpaRepository<Incident, Long> {
                                                   @Param("radiusKm") Double radiusKm,
                                                   @Param("status") Incident.Status status);
     
+    @Query("SELECT i.id, i.latitude, i.longitude, i.status FROM Incident i")
+    List<Object[]> findAllLocations();
+
+    @Query("SELECT i.id, i.status, i.type, i.severity, i.address, i.riskScore, i.similarityScore, i.createdAt " +
+           "FROM Incident i")
+    List<Object[]> findDashboardFacts();
+
+    @Query("SELECT i.id, i.status, i.type, i.severity, i.address, i.riskScore, i.similarityScore, i.createdAt " +
+           "FROM Incident i WHERE i.updatedAt >= :since")
+    List<Object[]> findDashboardFactsUpdatedSince(@Param("since") LocalDateTime since);
+
+    long countByCreatedAtBefore(LocalDateTime before);
+
+    @Query("SELECT MAX(i.id) FROM Incident i WHERE i.createdAt < :before")
+    Long findMaxIdCreatedBefore(@Param("before") LocalDateTime before);
+
     @Query("SELECT i FROM Incident i WHERE i.severity = 'CRITICAL' AND i.status IN ('NEW', 'VERIFIED', 'IN_PROGRESS') " +
            "ORDER BY i.createdAt DESC")
     List<Incident> findCriticalActiveIncidents();
@@ -73,4 +92,30 @@ public interface IncidentRepository extends JpaRepository<Incident, Long> {
     
     @Query("SELECT i FROM Incident i WHERE i.createdAt BETWEEN :start AND :end ORDER BY i.createdAt DESC")
     List<Incident> findIncidentsBetweenDates(@Param("start") LocalDateTime start, @Param("end") LocalDateTime end);
+    
+    /**
+     * Analytics export rows changed in (since, until], as scalars in the
+     * export column order, paged by keyset on (updatedAt, id)
+     */
+    @QueryHints(@QueryHint(name = "org.hibernate.fetchSize", value = "1000"))
+    @Query("SELECT i.id, i.title, i.description, i.type, i.severity, i.status, i.latitude, i.longitude, " +
+           "i.address, i.landmark, i.reporter.id, SIZE(i.mediaUrls), i.upvotes, i.flags, i.verificationCount, " +
+           "i.injuriesReported, i.peopleInvolved, i.nearSensitiveLocation, i.distanceToResponder, " +
+           "i.fraudProbability, i.isFraud, i.riskScore, i.riskLevel, i.similarityScore, i.processingStage, " +
+           "i.blockchainTxHash, i.blockchainVerified, i.createdAt, i.updatedAt, i.resolvedAt " +
+           "FROM Incident i WHERE (:since IS NULL OR i.updatedAt > :since) AND i.updatedAt <= :until AND " +
+           "(:afterTimestamp IS NULL OR i.updatedAt > :afterTimestamp OR " +
+           "(i.updatedAt = :afterTimestamp AND i.id > :afterId)) " +
+           "ORDER BY i.updatedAt ASC, i.id ASC")
+    List<Object[]> findExportRows(@Param("since") LocalDateTime since,
+                                  @Param("until") LocalDateTime until,
+                                  @Param("afterTimestamp") LocalDateTime afterTimestamp,
+                                  @Param("afterId") Long afterId,
+                                  Pageable pageable);
+    
+    /**
+     * Incidents the ingestion pipeline hadn't finished, as (id, processingStage)
+     */
+    @Query("SELECT i.id, i.processingStage FROM Incident i WHERE i.processingStage <> 'COMPLETED' ORDER BY i.id ASC")
+    List<Object[]> findUnfinishedProcessing();
 }
\ No newline at end of file
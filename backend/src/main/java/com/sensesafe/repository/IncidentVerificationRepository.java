@@ -1,8 +1,11 @@
 package com.sensesafe.repository;
 
 import com.sensesafe.model.IncidentVerification;
+import jakarta.persistence.QueryHint;
+import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
 import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
 import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
@@ -36,4 +39,21 @@ public interface IncidentVerificationRepository extends JpaRepository<IncidentVe
     
     @Query("SELECT iv.verificationType, COUNT(iv) FROM IncidentVerification iv WHERE iv.verifiedAt >= :startDate GROUP BY iv.verificationType")
     List<Object[]> getVerificationTypeStatistics(@Param("startDate") LocalDateTime startDate);
+    
+    /**
+     * Analytics export rows verified in (since, until], as scalars in the
+     * export column order, paged by keyset on (verifiedAt, id)
+     */
+    @QueryHints(@QueryHint(name = "org.hibernate.fetchSize", value = "1000"))
+    @Query("SELECT iv.id, iv.incident.id, iv.verifier.id, iv.verificationType, iv.comments, iv.isAccurate, " +
+           "iv.confidenceLevel, iv.verifiedAt " +
+           "FROM IncidentVerification iv WHERE (:since IS NULL OR iv.verifiedAt > :since) AND iv.verifiedAt <= :until AND " +
+           "(:afterTimestamp IS NULL OR iv.verifiedAt > :afterTimestamp OR " +
+           "(iv.verifiedAt = :afterTimestamp AND iv.id > :afterId)) " +
+           "ORDER BY iv.verifiedAt ASC, iv.id ASC")
+    List<Object[]> findExportRows(@Param("since") LocalDateTime since,
+                                  @Param("until") LocalDateTime until,
+                                  @Param("afterTimestamp") LocalDateTime afterTimestamp,
+                                  @Param("afterId") Long afterId,
+                                  Pageable pageable);
 }
\ No newline at end of file
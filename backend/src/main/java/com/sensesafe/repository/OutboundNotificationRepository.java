@@ -0,0 +1,94 @@
+package com.sensesafe.repository;
+
+import com.sensesafe.model.OutboundNotification;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.time.LocalDateTime;
+import java.util.Collection;
+import java.util.List;
+import java.util.Optional;
+
+@Repository
+public interface OutboundNotificationRepository extends JpaRepository<OutboundNotification, Long> {
+    
+    boolean existsByIdempotencyKey(String idempotencyKey);
+    
+    Optional<OutboundNotification> findByIdempotencyKey(String idempotencyKey);
+    
+    long countByStatus(OutboundNotification.Status status);
+    
+    List<OutboundNotification> findByClaimToken(String claimToken);
+    
+    List<OutboundNotification> findByStatusOrderByIdDesc(OutboundNotification.Status status, Pageable pageable);
+    
+    /**
+     * Rows ready to send, most urgent first: pending and due, or claimed by
+     * a worker whose lease ran out
+     */
+    @Query("SELECT n.id FROM OutboundNotification n WHERE " +
+           "(n.status = 'PENDING' AND n.nextAttemptAt <= :now) OR " +
+           "(n.status = 'SENDING' AND n.leaseUntil < :now) " +
+           "ORDER BY n.priority ASC, n.nextAttemptAt ASC")
+    List<Long> findDueIds(@Param("now") LocalDateTime now, Pageable pageable);
+    
+    /**
+     * Claim due rows for one poll. The due check is repeated so that of two
+     * pollers racing for a row only one gets it; the attempt is counted now,
+     * so a crash mid-send still moves the row toward the dead-letter state.
+     */
+    @Modifying
+    @Transactional
+    @Query("UPDATE OutboundNotification n SET n.status = 'SENDING', n.claimToken = :token, " +
+           "n.leaseUntil = :leaseUntil, n.attempts = n.attempts + 1 WHERE n.id IN :ids AND (" +
+           "(n.status = 'PENDING' AND n.nextAttemptAt <= :now) OR " +
+           "(n.status = 'SENDING' AND n.leaseUntil < :now))")
+    int claim(@Param("ids") Collection<Long> ids,
+              @Param("token") String token,
+              @Param("leaseUntil") LocalDateTime leaseUntil,
+              @Param("now") LocalDateTime now);
+    
+    @Modifying
+    @Transactional
+    @Query("UPDATE OutboundNotification n SET n.status = 'SENT', n.sentAt = :sentAt, " +
+           "n.claimToken = NULL, n.leaseUntil = NULL, n.lastError = NULL " +
+           "WHERE n.id IN :ids")
+    int markSent(@Param("ids") Collection<Long> ids, @Param("sentAt") LocalDateTime sentAt);
+    
+    /**
+     * Put a failed row back as PENDING for a later attempt, or park it as DEAD
+     */
+    @Modifying
+    @Transactional
+    @Query("UPDATE OutboundNotification n SET n.status = :status, n.nextAttemptAt = :nextAttemptAt, " +
+           "n.lastError = :error, n.claimToken = NULL, n.leaseUntil = NULL WHERE n.id = :id")
+    int markFailed(@Param("id") Long id,
+                   @Param("status") OutboundNotification.Status status,
+                   @Param("nextAttemptAt") LocalDateTime nextAttemptAt,
+                   @Param("error") String error);
+    
+    /**
+     * Give a dead-lettered row a fresh set of attempts
+     */
+    @Modifying
+    @Transactional
+    @Query("UPDATE OutboundNotification n SET n.status = 'PENDING', n.attempts = 0, n.nextAttemptAt = :now " +
+           "WHERE n.id = :id AND n.status = 'DEAD'")
+    int requeueDead(@Param("id") Long id, @Param("now") LocalDateTime now);
+    
+    @Query("SELECT MAX(n.journalSequence) FROM OutboundNotification n")
+    Long findMaxJournalSequence();
+    
+    @Query("SELECT MIN(n.createdAt) FROM OutboundNotification n WHERE n.status IN ('PENDING', 'SENDING')")
+    LocalDateTime findOldestUnsentCreatedAt();
+    
+    @Modifying
+    @Transactional
+    @Query("DELETE FROM OutboundNotification n WHERE n.status = 'SENT' AND n.sentAt < :before")
+    int deleteSentBefore(@Param("before") LocalDateTime before);
+}
@@ -48,8 +48,18 @@ public interface UserRepository extends JpaRepository<User, Long> {
                                         @Param("lng") Double longitude, 
                                         @Param("radiusKm") Double radiusKm);
     
+    @Query("SELECT u.id, u.latitude, u.longitude, u.role, u.enabled FROM User u " +
+           "WHERE u.latitude IS NOT NULL AND u.longitude IS NOT NULL")
+    List<Object[]> findAllLocations();
+
     @Query("SELECT COUNT(u) FROM User u WHERE u.createdAt >= :startDate")
     Long countNewUsersAfter(@Param("startDate") LocalDateTime startDate);
+
+    @Query("SELECT u.createdAt FROM User u WHERE u.createdAt >= :since")
+    List<LocalDateTime> findCreatedAtAfter(@Param("since") LocalDateTime since);
+
+    @Query("SELECT u.id, u.lastLogin FROM User u WHERE u.lastLogin >= :since")
+    List<Object[]> findLastLoginsAfter(@Param("since") LocalDateTime since);
     
     @Query("SELECT u FROM User u WHERE u.lastLogin >= :since ORDER BY u.lastLogin DESC")
     List<User> findRecentlyActiveUsers(@Param("since") LocalDateTime since);
@@ -15,6 +15,8 @@ public interface VolunteerApplicationRepository extends JpaRepository<VolunteerA
     
     List<VolunteerApplication> findByStatus(VolunteerApplication.ApplicationStatus status);
     
+    long countByStatus(VolunteerApplication.ApplicationStatus status);
+    
     List<VolunteerApplication> findByVolunteerType(VolunteerApplication.VolunteerType volunteerType);
     
     List<VolunteerApplication> findByUserId(Long userId);
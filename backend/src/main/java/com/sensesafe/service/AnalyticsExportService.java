@@ -0,0 +1,235 @@
+package com.sensesafe.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.sensesafe.repository.AuditLogRepository;
+import com.sensesafe.repository.IncidentRepository;
+import com.sensesafe.repository.IncidentVerificationRepository;
+import com.sensesafe.service.ColumnarFileWriter.Column;
+import com.sensesafe.service.ColumnarFileWriter.ColumnType;
+import jakarta.annotation.PostConstruct;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Pageable;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.time.LocalDateTime;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Bulk export of incidents, verifications and audit logs for the analytics
+ * and model training scripts, in the columnar format of ColumnarFileWriter.
+ *
+ * An export covers rows whose watermark column (updatedAt, verifiedAt or
+ * createdAt) falls in (since, until]. until trails the clock by a settle
+ * window so rows still being committed land in the next export rather than
+ * being skipped; passing it back as since gives an incremental export.
+ * Incidents that changed again appear once more, so consumers keep the
+ * latest row per id. Rows are read as scalar projections in keyset pages
+ * and written as they arrive, so memory is bounded by one row group.
+ */
+@Service
+public class AnalyticsExportService {
+
+    private static final List<Column> INCIDENT_COLUMNS = List.of(
+            new Column("id", ColumnType.INT64),
+            new Column("title", ColumnType.STRING),
+            new Column("description", ColumnType.STRING),
+            new Column("type", ColumnType.DICTIONARY),
+            new Column("severity", ColumnType.DICTIONARY),
+            new Column("status", ColumnType.DICTIONARY),
+            new Column("latitude", ColumnType.FLOAT64),
+            new Column("longitude", ColumnType.FLOAT64),
+            new Column("address", ColumnType.STRING),
+            new Column("landmark", ColumnType.STRING),
+            new Column("reporter_id", ColumnType.INT64),
+            new Column("media_count", ColumnType.INT64),
+            new Column("upvotes", ColumnType.INT64),
+            new Column("flags", ColumnType.INT64),
+            new Column("verification_count", ColumnType.INT64),
+            new Column("injuries_reported", ColumnType.INT64),
+            new Column("people_involved", ColumnType.INT64),
+            new Column("near_sensitive_location", ColumnType.BOOLEAN),
+            new Column("distance_to_responder", ColumnType.FLOAT64),
+            new Column("fraud_probability", ColumnType.FLOAT64),
+            new Column("is_fraud", ColumnType.BOOLEAN),
+            new Column("risk_score", ColumnType.FLOAT64),
+            new Column("risk_level", ColumnType.DICTIONARY),
+            new Column("similarity_score", ColumnType.FLOAT64),
+            new Column("processing_stage", ColumnType.DICTIONARY),
+            new Column("blockchain_tx_hash", ColumnType.STRING),
+            new Column("blockchain_verified", ColumnType.BOOLEAN),
+            new Column("created_at", ColumnType.TIMESTAMP),
+            new Column("updated_at", ColumnType.TIMESTAMP),
+            new Column("resolved_at", ColumnType.TIMESTAMP));
+
+    private static final List<Column> VERIFICATION_COLUMNS = List.of(
+            new Column("id", ColumnType.INT64),
+            new Column("incident_id", ColumnType.INT64),
+            new Column("verifier_id", ColumnType.INT64),
+            new Column("verification_type", ColumnType.DICTIONARY),
+            new Column("comments", ColumnType.STRING),
+            new Column("is_accurate", ColumnType.BOOLEAN),
+            new Column("confidence_level", ColumnType.INT64),
+            new Column("verified_at", ColumnType.TIMESTAMP));
+
+    private static final List<Column> AUDIT_LOG_COLUMNS = List.of(
+            new Column("id", ColumnType.INT64),
+            new Column("action_type", ColumnType.DICTIONARY),
+            new Column("user_id", ColumnType.STRING),
+            new Column("user_role", ColumnType.DICTIONARY),
+            new Column("target_type", ColumnType.DICTIONARY),
+            new Column("target_id", ColumnType.STRING),
+            new Column("target_description", ColumnType.STRING),
+            new Column("ip_address", ColumnType.STRING),
+            new Column("user_agent", ColumnType.STRING),
+            new Column("status", ColumnType.DICTIONARY),
+            new Column("error_message", ColumnType.STRING),
+            new Column("blockchain_tx_hash", ColumnType.STRING),
+            new Column("blockchain_status", ColumnType.DICTIONARY),
+            new Column("blockchain_network", ColumnType.DICTIONARY),
+            new Column("blockchain_gas_used", ColumnType.INT64),
+            new Column("blockchain_block_number", ColumnType.INT64),
+            new Column("anchor_id", ColumnType.INT64),
+            new Column("journal_sequence", ColumnType.INT64),
+            new Column("created_at", ColumnType.TIMESTAMP),
+            new Column("metadata", ColumnType.STRING));
+
+    @Autowired
+    private IncidentRepository incidentRepository;
+
+    @Autowired
+    private IncidentVerificationRepository incidentVerificationRepository;
+
+    @Autowired
+    private AuditLogRepository auditLogRepository;
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    @Value("${analytics.export.page-size:1000}")
+    private int pageSize;
+
+    @Value("${analytics.export.row-group-size:16384}")
+    private int rowGroupSize;
+
+    @Value("${analytics.export.settle-seconds:60}")
+    private long settleSeconds;
+
+    private final Map<String, Dataset> datasets = new LinkedHashMap<>();
+
+    private final LongAdder exports = new LongAdder();
+    private final LongAdder failedExports = new LongAdder();
+    private final LongAdder rowsExported = new LongAdder();
+    private final LongAdder bytesExported = new LongAdder();
+
+    @PostConstruct
+    public void init() {
+        datasets.put("incidents", new Dataset(INCIDENT_COLUMNS, 28, "updated_at", incidentRepository::findExportRows));
+        datasets.put("verifications", new Dataset(VERIFICATION_COLUMNS, 7, "verified_at",
+                incidentVerificationRepository::findExportRows));
+        datasets.put("audit-logs", new Dataset(AUDIT_LOG_COLUMNS, 18, "created_at", auditLogRepository::findExportRows));
+    }
+
+    public boolean isDataset(String name) {
+        return datasets.containsKey(name);
+    }
+
+    /**
+     * Upper bound for an export starting now; returned to the client as the
+     * watermark for its next incremental export
+     */
+    public LocalDateTime nextWatermark() {
+        return LocalDateTime.now().minusSeconds(settleSeconds);
+    }
+
+    /**
+     * Write the dataset's rows in (since, until] to the stream; a null since
+     * exports everything up to until
+     */
+    public Map<String, Object> export(String name, LocalDateTime since, LocalDateTime until,
+                                      OutputStream output) throws IOException {
+        Dataset dataset = datasets.get(name);
+        if (dataset == null) {
+            throw new IllegalArgumentException("Unknown export dataset: " + name);
+        }
+
+        long start = System.nanoTime();
+        Map<String, Object> metadata = new LinkedHashMap<>();
+        metadata.put("watermarkColumn", dataset.watermarkColumn);
+        metadata.put("since", since != null ? since.toString() : null);
+        metadata.put("until", until.toString());
+        metadata.put("exportedAt", LocalDateTime.now().toString());
+
+        ColumnarFileWriter writer = new ColumnarFileWriter(output, objectMapper, name, dataset.columns,
+                rowGroupSize, metadata);
+        try {
+            LocalDateTime afterTimestamp = null;
+            Long afterId = null;
+            while (true) {
+                List<Object[]> page = dataset.query.page(since, until, afterTimestamp, afterId,
+                        PageRequest.of(0, pageSize));
+                for (Object[] row : page) {
+                    writer.writeRow(row);
+                }
+                if (page.size() < pageSize) {
+                    break;
+                }
+                Object[] last = page.get(page.size() - 1);
+                afterTimestamp = (LocalDateTime) last[dataset.timestampIndex];
+                afterId = (Long) last[0];
+            }
+            writer.close();
+        } catch (IOException | RuntimeException e) {
+            failedExports.increment();
+            throw e;
+        }
+
+        exports.increment();
+        rowsExported.add(writer.getRowCount());
+        bytesExported.add(writer.getBytesWritten());
+
+        Map<String, Object> summary = new HashMap<>();
+        summary.put("dataset", name);
+        summary.put("rows", writer.getRowCount());
+        summary.put("bytes", writer.getBytesWritten());
+        summary.put("durationMs", (System.nanoTime() - start) / 1_000_000);
+        summary.put("watermark", until);
+        return summary;
+    }
+
+    public Map<String, Object> getMetrics() {
+        Map<String, Object> metrics = new HashMap<>();
+        metrics.put("datasets", datasets.keySet());
+        metrics.put("exports", exports.sum());
+        metrics.put("failedExports", failedExports.sum());
+        metrics.put("rowsExported", rowsExported.sum());
+        metrics.put("bytesExported", bytesExported.sum());
+        return metrics;
+    }
+
+    private interface ExportQuery {
+        List<Object[]> page(LocalDateTime since, LocalDateTime until, LocalDateTime afterTimestamp,
+                            Long afterId, Pageable pageable);
+    }
+
+    private static final class Dataset {
+        private final List<Column> columns;
+        private final int timestampIndex;
+        private final String watermarkColumn;
+        private final ExportQuery query;
+
+        Dataset(List<Column> columns, int timestampIndex, String watermarkColumn, ExportQuery query) {
+            this.columns = columns;
+            this.timestampIndex = timestampIndex;
+            this.watermarkColumn = watermarkColumn;
+            this.query = query;
+        }
+    }
+}
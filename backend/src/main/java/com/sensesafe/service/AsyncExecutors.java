@@ -0,0 +1,129 @@
+package com.sensesafe.service;
+
+import com.sensesafe.config.InstrumentedThreadPoolExecutor;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Executors behind @Async, one per workload, so a burst of one kind of work
+ * can't hold up another.
+ *
+ * realtime carries WebSocket pushes, email the notification tasks that look
+ * up recipients and queue mail, and the default pool anything that doesn't
+ * name one. mvc runs Spring MVC async responses (StreamingResponseBody
+ * downloads and Callables), which would otherwise get a thread per request
+ * once these executor beans make Boot's own task executor back off. All
+ * are bounded and run a task on the submitting thread when
+ * full, which slows the producer (usually a pipeline stage) down instead of
+ * dropping an alert. ML scoring and blockchain writes already have their own
+ * pools in MLScoringOrchestrator and AuditLogExecutors. With
+ * spring.threads.virtual.enabled the pools run on virtual threads.
+ */
+@Component
+public class AsyncExecutors {
+
+    public static final String REALTIME = "realtimeExecutor";
+    public static final String EMAIL = "emailExecutor";
+
+    @Value("${async.realtime.threads:4}")
+    private int realtimeThreads;
+
+    @Value("${async.realtime.queue-capacity:2000}")
+    private int realtimeQueueCapacity;
+
+    @Value("${async.email.threads:2}")
+    private int emailThreads;
+
+    @Value("${async.email.queue-capacity:1000}")
+    private int emailQueueCapacity;
+
+    @Value("${async.default.threads:2}")
+    private int defaultThreads;
+
+    @Value("${async.default.queue-capacity:500}")
+    private int defaultQueueCapacity;
+
+    @Value("${async.mvc.threads:16}")
+    private int mvcThreads;
+
+    @Value("${async.mvc.queue-capacity:200}")
+    private int mvcQueueCapacity;
+
+    @Value("${spring.threads.virtual.enabled:false}")
+    private boolean virtualThreads;
+
+    private InstrumentedThreadPoolExecutor realtimeExecutor;
+    private InstrumentedThreadPoolExecutor emailExecutor;
+    private InstrumentedThreadPoolExecutor defaultExecutor;
+    private InstrumentedThreadPoolExecutor mvcExecutor;
+
+    // @Async void methods report failures here rather than to their pool
+    private final LongAdder uncaughtFailures = new LongAdder();
+
+    @PostConstruct
+    public void init() {
+        realtimeExecutor = new InstrumentedThreadPoolExecutor("async-realtime", realtimeThreads,
+                realtimeQueueCapacity, new ThreadPoolExecutor.CallerRunsPolicy(), virtualThreads);
+        emailExecutor = new InstrumentedThreadPoolExecutor("async-email", emailThreads, emailQueueCapacity,
+                new ThreadPoolExecutor.CallerRunsPolicy(), virtualThreads);
+        defaultExecutor = new InstrumentedThreadPoolExecutor("async-default", defaultThreads, defaultQueueCapacity,
+                new ThreadPoolExecutor.CallerRunsPolicy(), virtualThreads);
+        // When full, a download streams on its request thread, as it would without async support
+        mvcExecutor = new InstrumentedThreadPoolExecutor("async-mvc", mvcThreads, mvcQueueCapacity,
+                new ThreadPoolExecutor.CallerRunsPolicy(), virtualThreads);
+    }
+
+    @PreDestroy
+    public void shutdown() throws InterruptedException {
+        for (InstrumentedThreadPoolExecutor executor :
+                new InstrumentedThreadPoolExecutor[]{realtimeExecutor, emailExecutor, defaultExecutor, mvcExecutor}) {
+            executor.shutdown();
+            executor.awaitTermination(5, TimeUnit.SECONDS);
+        }
+    }
+
+    public InstrumentedThreadPoolExecutor realtime() {
+        return realtimeExecutor;
+    }
+
+    public InstrumentedThreadPoolExecutor email() {
+        return emailExecutor;
+    }
+
+    public InstrumentedThreadPoolExecutor defaultExecutor() {
+        return defaultExecutor;
+    }
+
+    public InstrumentedThreadPoolExecutor mvc() {
+        return mvcExecutor;
+    }
+
+    public void recordUncaughtFailure(String task, Throwable error) {
+        uncaughtFailures.increment();
+        System.err.println("Async task " + task + " failed: " + error.getMessage());
+    }
+
+    public Map<String, Object> getMetrics() {
+        Map<String, Object> pools = new LinkedHashMap<>();
+        pools.put("realtime", realtimeExecutor.getMetrics());
+        pools.put("email", emailExecutor.getMetrics());
+        pools.put("default", defaultExecutor.getMetrics());
+        pools.put("mvc", mvcExecutor.getMetrics());
+
+        Map<String, Object> metrics = new HashMap<>();
+        metrics.put("queued", realtimeExecutor.getQueue().size() + emailExecutor.getQueue().size()
+                + defaultExecutor.getQueue().size() + mvcExecutor.getQueue().size());
+        metrics.put("uncaughtFailures", uncaughtFailures.sum());
+        metrics.put("pools", pools);
+        return metrics;
+    }
+}
@@ -0,0 +1,273 @@
+package com.sensesafe.service;
+
+import com.sensesafe.model.AuditAnchor;
+import com.sensesafe.model.AuditLog;
+import com.sensesafe.repository.AuditAnchorRepository;
+import com.sensesafe.repository.AuditLogRepository;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.web3j.utils.Numeric;
+
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Periodically commits new audit logs to the blockchain as one Merkle root.
+ *
+ * Each run takes the logs no anchor covers yet, hashes their content into
+ * leaves, stores every log's proof next to it and submits only the root.
+ * A single log can later be checked against the committed root with its
+ * stored proof in O(log n), without touching the other logs. Verification,
+ * resolution and dispatch events are still written to the contract
+ * individually as well, since they have their own contract events. If the
+ * root never reaches the chain, its logs are released and the next run
+ * anchors them again.
+ */
+@Service
+public class AuditAnchorService {
+
+    private static final char FIELD_SEPARATOR = '\u001f';
+    private static final String NULL_FIELD = "\u0000";
+    private static final int PROOF_BATCH = 500;
+
+    private static final String UPDATE_MERKLE_PROOF_SQL =
+            "UPDATE audit_logs SET anchor_id = ?, merkle_leaf_hash = ?, merkle_leaf_index = ?, merkle_proof = ? " +
+            "WHERE id = ?";
+
+    @Autowired
+    private AuditLogRepository auditLogRepository;
+
+    @Autowired
+    private AuditAnchorRepository auditAnchorRepository;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private BlockchainService blockchainService;
+
+    @Autowired
+    private AuditLogExecutors auditLogExecutors;
+
+    @Autowired
+    private AuditJournalService auditJournalService;
+
+    @Value("${audit.anchoring.enabled:true}")
+    private boolean enabled;
+
+    @Value("${audit.anchoring.max-leaves:10000}")
+    private int maxLeaves;
+
+    // "self" sends the root as call data to the writer's own address; "contract" calls anchorRoot on the contract
+    @Value("${audit.anchoring.target:self}")
+    private String target;
+
+    private final LongAdder anchorsCreated = new LongAdder();
+    private final LongAdder logsAnchored = new LongAdder();
+    private final LongAdder anchorsConfirmed = new LongAdder();
+    private final LongAdder anchorsFailed = new LongAdder();
+    private final LongAdder logsReleased = new LongAdder();
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Anchor everything logged since the last run, one tree per max-leaves logs
+     */
+    @Scheduled(fixedDelayString = "${audit.anchoring.interval-ms:60000}",
+               initialDelayString = "${audit.anchoring.interval-ms:60000}")
+    @Transactional
+    public void anchorPendingLogs() {
+        if (!enabled) {
+            return;
+        }
+        List<AuditLog> logs = auditLogRepository.findUnanchored(PageRequest.of(0, maxLeaves));
+        if (logs.isEmpty()) {
+            return;
+        }
+
+        List<byte[]> leaves = new ArrayList<>(logs.size());
+        for (AuditLog log : logs) {
+            leaves.add(leafOf(log));
+        }
+        MerkleTree tree = new MerkleTree(leaves);
+        byte[] root = tree.getRoot();
+
+        AuditAnchor anchor = auditAnchorRepository.save(new AuditAnchor(Numeric.toHexString(root), logs.size(),
+                logs.get(0).getId(), logs.get(logs.size() - 1).getId()));
+
+        // Column updates rather than saves, so a concurrent blockchain status update isn't overwritten
+        List<Object[]> proofs = new ArrayList<>(logs.size());
+        for (int i = 0; i < logs.size(); i++) {
+            proofs.add(new Object[]{anchor.getId(), Numeric.toHexString(leaves.get(i)), i,
+                    encodeProof(tree.getProof(i)), logs.get(i).getId()});
+        }
+        jdbcTemplate.batchUpdate(UPDATE_MERKLE_PROOF_SQL, proofs, PROOF_BATCH, (ps, proof) -> {
+            ps.setLong(1, (Long) proof[0]);
+            ps.setString(2, (String) proof[1]);
+            ps.setInt(3, (Integer) proof[2]);
+            ps.setString(4, (String) proof[3]);
+            ps.setLong(5, (Long) proof[4]);
+        });
+        anchorsCreated.increment();
+        logsAnchored.add(logs.size());
+
+        // Submit only once the proofs are committed, so the result callback always finds the anchor
+        Long anchorId = anchor.getId();
+        int leafCount = logs.size();
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCommit() {
+                blockchainService.anchorRootAsync(root, leafCount, "contract".equalsIgnoreCase(target))
+                        .thenAcceptAsync(result -> recordAnchorResult(anchorId, result), auditLogExecutors.chain());
+            }
+        });
+        System.out.println("Anchoring " + leafCount + " audit logs under root " + anchor.getMerkleRoot());
+    }
+
+    /**
+     * Check one log against its anchor: recompute the leaf from the log's
+     * current content and walk the stored proof up to the committed root
+     */
+    @Transactional(readOnly = true)
+    public Map<String, Object> verifyInclusion(Long auditLogId) {
+        Map<String, Object> result = new HashMap<>();
+        Optional<AuditLog> logOpt = auditLogRepository.findById(auditLogId);
+        if (logOpt.isEmpty()) {
+            result.put("success", false);
+            result.put("error", "Audit log not found");
+            return result;
+        }
+        AuditLog log = logOpt.get();
+        result.put("success", true);
+        result.put("auditLogId", auditLogId);
+        if (log.getAnchorId() == null) {
+            result.put("anchored", false);
+            result.put("message", "Audit log has not been anchored yet");
+            return result;
+        }
+
+        AuditAnchor anchor = auditAnchorRepository.findById(log.getAnchorId()).orElse(null);
+        if (anchor == null) {
+            result.put("anchored", false);
+            result.put("error", "Anchor " + log.getAnchorId() + " not found");
+            return result;
+        }
+
+        byte[] leaf = leafOf(log);
+        List<byte[]> proof = decodeProof(log.getMerkleProof());
+        boolean contentUnchanged = Numeric.toHexString(leaf).equals(log.getMerkleLeafHash());
+        boolean included = MerkleTree.verify(leaf, proof, Numeric.hexStringToByteArray(anchor.getMerkleRoot()));
+
+        result.put("anchored", true);
+        result.put("verified", included);
+        result.put("contentUnchanged", contentUnchanged);
+        result.put("leafHash", Numeric.toHexString(leaf));
+        result.put("leafIndex", log.getMerkleLeafIndex());
+        result.put("proof", log.getMerkleProof() != null && !log.getMerkleProof().isEmpty()
+                ? List.of(log.getMerkleProof().split(",")) : List.of());
+        result.put("merkleRoot", anchor.getMerkleRoot());
+        result.put("anchorId", anchor.getId());
+        result.put("anchorLeafCount", anchor.getLeafCount());
+        result.put("anchorStatus", anchor.getStatus());
+        result.put("anchorTxHash", anchor.getTxHash());
+        result.put("anchorBlockNumber", anchor.getBlockNumber());
+        return result;
+    }
+
+    public Map<String, Object> getMetrics() {
+        Map<String, Object> metrics = new HashMap<>();
+        metrics.put("enabled", enabled);
+        metrics.put("target", target);
+        metrics.put("anchorsCreated", anchorsCreated.sum());
+        metrics.put("logsAnchored", logsAnchored.sum());
+        metrics.put("anchorsConfirmed", anchorsConfirmed.sum());
+        metrics.put("anchorsFailed", anchorsFailed.sum());
+        metrics.put("logsReleased", logsReleased.sum());
+        return metrics;
+    }
+
+    private void recordAnchorResult(Long anchorId, Map<String, Object> result) {
+        Optional<AuditAnchor> anchorOpt = auditAnchorRepository.findById(anchorId);
+        if (anchorOpt.isEmpty()) {
+            return;
+        }
+        AuditAnchor anchor = anchorOpt.get();
+        boolean success = Boolean.TRUE.equals(result.get("success"));
+        if (success) {
+            anchor.setStatus("CONFIRMED");
+            anchor.setTxHash((String) result.get("transactionHash"));
+            anchor.setBlockNumber((Long) result.get("blockNumber"));
+            anchor.setConfirmedAt(LocalDateTime.now());
+            anchorsConfirmed.increment();
+        } else {
+            anchor.setStatus("FAILED");
+            anchor.setErrorMessage(String.valueOf(result.get("error")));
+            auditAnchorRepository.save(anchor);
+            anchorsFailed.increment();
+            // Not journaled as done either, so the logs stay live until an anchor for them is confirmed
+            int released = auditLogRepository.releaseAnchor(anchorId);
+            logsReleased.add(released);
+            System.err.println("Failed to anchor audit logs under " + anchor.getMerkleRoot() + ": " +
+                    result.get("error") + "; " + released + " logs go into the next run");
+            return;
+        }
+        auditAnchorRepository.save(anchor);
+        auditLogRepository.updateAnchoredBlockchainStatus(anchorId, anchor.getTxHash(), anchor.getStatus(),
+                anchor.getBlockNumber(), AuditLogService.INDIVIDUALLY_LOGGED_ACTIONS);
+        if (auditJournalService.isEnabled()) {
+            auditJournalService.recordAnchored(anchor, auditLogRepository.findByAnchorId(anchorId));
+        }
+    }
+
+    /**
+     * Leaf for a log: the fields fixed when the event is recorded. Blockchain
+     * status and the error message are left out because they change later.
+     */
+    static byte[] leafOf(AuditLog log) {
+        StringBuilder content = new StringBuilder(256);
+        Object[] fields = {log.getId(), log.getActionType(), log.getUserId(), log.getUserRole(), log.getTargetType(),
+                log.getTargetId(), log.getTargetDescription(), log.getIpAddress(), log.getUserAgent(),
+                log.getStatus(), log.getMetadata(), log.getCreatedAt()};
+        for (Object field : fields) {
+            content.append(field != null ? field.toString() : NULL_FIELD).append(FIELD_SEPARATOR);
+        }
+        return MerkleTree.leaf(content.toString().getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static String encodeProof(List<byte[]> proof) {
+        StringBuilder encoded = new StringBuilder(proof.size() * 67);
+        for (byte[] sibling : proof) {
+            if (encoded.length() > 0) {
+                encoded.append(',');
+            }
+            encoded.append(Numeric.toHexString(sibling));
+        }
+        return encoded.toString();
+    }
+
+    private static List<byte[]> decodeProof(String encoded) {
+        List<byte[]> proof = new ArrayList<>();
+        if (encoded == null || encoded.isEmpty()) {
+            return proof;
+        }
+        for (String sibling : encoded.split(",")) {
+            proof.add(Numeric.hexStringToByteArray(sibling));
+        }
+        return proof;
+    }
+}
@@ -0,0 +1,518 @@
+package com.sensesafe.service;
+
+import com.sensesafe.config.LatencyHistogram;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.zip.CRC32C;
+
+/**
+ * Append-only journal of audit events in memory-mapped segment files. The
+ * NotificationOutbox keeps its own instance for unsent mail.
+ *
+ * A record is length (int), CRC32C (int), type (byte), sequence (long),
+ * timestamp (long) and the payload. The CRC covers everything after itself
+ * and the length is written last, so a record torn by a crash either reads
+ * as unused space or fails its CRC, and recovery of that segment stops
+ * there. Events take a new sequence; outcome records carry the sequence of
+ * the event they belong to, and a final one marks that event done, also
+ * when the journal is recovered after a restart. Segments are pre-sized and
+ * named after the first sequence they hold; a full one is sealed and the
+ * journal rolls to a new file. Sealed segments are only rewritten by
+ * compaction, which drops records that are done and older than the
+ * retention window.
+ */
+public class AuditJournal implements Closeable {
+
+    public enum FsyncPolicy {
+        ALWAYS,     // force each record before append returns
+        INTERVAL,   // force dirty pages from a background thread
+        NEVER       // leave write-back to the OS; survives a process crash but not power loss
+    }
+
+    /**
+     * Receives recovered records; the payload buffer is only valid during the call
+     */
+    public interface RecordVisitor {
+        void visit(long sequence, long timestamp, ByteBuffer payload);
+    }
+
+    static final int HEADER_BYTES = 25;
+    private static final byte EVENT = 1;
+    private static final byte OUTCOME = 2;          // final; the event is done
+    private static final byte PARTIAL_OUTCOME = 3;  // adds to the event's outcome, which is still to come
+    private static final String SEGMENT_PREFIX = "audit-";
+    private static final String SEGMENT_SUFFIX = ".seg";
+
+    private final Path directory;
+    private final int segmentBytes;
+    private final FsyncPolicy fsyncPolicy;
+
+    // Sealed and active segments by first sequence
+    private final ConcurrentSkipListMap<Long, Segment> segments = new ConcurrentSkipListMap<>();
+    // Events not yet marked done, with the segment holding them
+    private final Map<Long, Segment> liveEvents = new ConcurrentHashMap<>();
+    private final List<Segment> recoveredSegments = new ArrayList<>();
+    private final Object compactionLock = new Object();
+    // Guards the active segment. Appends can queue behind a flush's force() here; waiting on a
+    // ReentrantLock parks a virtual thread instead of pinning its carrier.
+    private final ReentrantLock appendLock = new ReentrantLock();
+
+    private Segment active;
+    private FileChannel activeChannel;
+    private MappedByteBuffer activeBuffer;
+    private long nextSequence;
+    private boolean dirty;
+    private volatile boolean closed;
+    private Thread flusher;
+
+    private final LatencyHistogram appendLatency = new LatencyHistogram();
+    private final LongAdder appended = new LongAdder();
+    private final LongAdder outcomesRecorded = new LongAdder();
+    private final LongAdder bytesAppended = new LongAdder();
+    private final LongAdder fsyncs = new LongAdder();
+    private final LongAdder segmentsRolled = new LongAdder();
+    private final LongAdder segmentsCompacted = new LongAdder();
+    private final LongAdder segmentsDeleted = new LongAdder();
+    private final LongAdder recordsCompactedAway = new LongAdder();
+    private final LongAdder recoveredRecords = new LongAdder();
+    private final LongAdder tornRecords = new LongAdder();
+
+    /**
+     * Open the journal, recovering existing segments. Sequences continue
+     * after both the highest recovered one and minimumSequence, so they stay
+     * unique even when old segments have been deleted.
+     */
+    public AuditJournal(Path directory, int segmentBytes, FsyncPolicy fsyncPolicy, long fsyncIntervalMs,
+                        long minimumSequence) throws IOException {
+        this.directory = directory;
+        this.segmentBytes = segmentBytes;
+        this.fsyncPolicy = fsyncPolicy;
+        Files.createDirectories(directory);
+
+        long highest = minimumSequence;
+        for (Path path : listSegments()) {
+            Segment segment = recover(path);
+            segments.put(segment.baseSequence, segment);
+            recoveredSegments.add(segment);
+            // An empty segment is named after the sequence the next event would have had
+            highest = Math.max(highest, Math.max(segment.lastSequence, segment.baseSequence));
+        }
+        nextSequence = highest + 1;
+        // A fresh segment rather than appending after a possibly torn tail
+        openActive();
+
+        if (fsyncPolicy == FsyncPolicy.INTERVAL) {
+            flusher = new Thread(() -> {
+                while (!closed) {
+                    try {
+                        Thread.sleep(fsyncIntervalMs);
+                        flush();
+                    } catch (InterruptedException e) {
+                        return;
+                    } catch (Exception e) {
+                        System.err.println("Audit journal flush failed: " + e.getMessage());
+                    }
+                }
+            }, "audit-journal-flush");
+            flusher.setDaemon(true);
+            flusher.start();
+        }
+    }
+
+    /**
+     * Append one event and return its sequence
+     */
+    public long append(byte[] payload) throws IOException {
+        long sequence = write(EVENT, 0L, payload);
+        appended.increment();
+        return sequence;
+    }
+
+    /**
+     * Append an outcome for the event with this sequence. A final outcome
+     * also marks the event done; a partial one leaves it live.
+     */
+    public void recordOutcome(long sequence, byte[] payload, boolean done) throws IOException {
+        write(done ? OUTCOME : PARTIAL_OUTCOME, sequence, payload);
+        outcomesRecorded.increment();
+        if (done) {
+            markDone(sequence);
+        }
+    }
+
+    private long write(byte type, long eventSequence, byte[] payload) throws IOException {
+        long start = System.nanoTime();
+        int size = HEADER_BYTES + payload.length;
+        if (size > segmentBytes) {
+            throw new IOException("Audit journal record of " + size + " bytes exceeds the segment size");
+        }
+        long sequence;
+        appendLock.lock();
+        try {
+            if (closed) {
+                throw new IOException("Audit journal is closed");
+            }
+            if (activeBuffer.remaining() < size) {
+                roll();
+            }
+            sequence = type == EVENT ? nextSequence++ : eventSequence;
+            long timestamp = System.currentTimeMillis();
+            int position = activeBuffer.position();
+
+            activeBuffer.put(position + 8, type);
+            activeBuffer.putLong(position + 9, sequence);
+            activeBuffer.putLong(position + 17, timestamp);
+            activeBuffer.put(position + HEADER_BYTES, payload);
+            CRC32C crc = new CRC32C();
+            crc.update(activeBuffer.slice(position + 8, size - 8));
+            activeBuffer.putInt(position + 4, (int) crc.getValue());
+            // Length last: until it is written the record reads as free space
+            activeBuffer.putInt(position, payload.length);
+            activeBuffer.position(position + size);
+
+            active.recordAppended(sequence, timestamp);
+            if (type == EVENT) {
+                active.live.incrementAndGet();
+                liveEvents.put(sequence, active);
+            }
+            if (fsyncPolicy == FsyncPolicy.ALWAYS) {
+                activeBuffer.force(position, size);
+                fsyncs.increment();
+            } else {
+                dirty = true;
+            }
+        } finally {
+            appendLock.unlock();
+        }
+        bytesAppended.add(size);
+        appendLatency.record(System.nanoTime() - start);
+        return sequence;
+    }
+
+    /**
+     * Mark an event as fully processed, so compaction may drop it once it
+     * falls out of the retention window
+     */
+    public void markDone(long sequence) {
+        Segment segment = liveEvents.remove(sequence);
+        if (segment != null) {
+            segment.live.decrementAndGet();
+        }
+    }
+
+    public int getLiveEventCount() {
+        return liveEvents.size();
+    }
+
+    public boolean isLive(long sequence) {
+        return liveEvents.containsKey(sequence);
+    }
+
+    /**
+     * Visit every event in the segments found at startup, oldest first
+     */
+    public void forEachRecoveredEvent(RecordVisitor visitor) throws IOException {
+        forEachRecovered((type, sequence, timestamp, payload) -> {
+            if (type == EVENT) {
+                visitor.visit(sequence, timestamp, payload);
+            }
+        });
+    }
+
+    /**
+     * Visit every outcome, final or partial, in the segments found at
+     * startup, oldest first. The sequence is that of the event.
+     */
+    public void forEachRecoveredOutcome(RecordVisitor visitor) throws IOException {
+        forEachRecovered((type, sequence, timestamp, payload) -> {
+            if (type == OUTCOME || type == PARTIAL_OUTCOME) {
+                visitor.visit(sequence, timestamp, payload);
+            }
+        });
+    }
+
+    private void forEachRecovered(RecordHandler handler) throws IOException {
+        synchronized (compactionLock) {
+            for (Segment segment : recoveredSegments) {
+                if (!Files.exists(segment.path)) {
+                    continue;
+                }
+                try (FileChannel channel = FileChannel.open(segment.path, StandardOpenOption.READ)) {
+                    scan(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()), handler);
+                }
+            }
+        }
+    }
+
+    /**
+     * Delete sealed segments whose events are all done and older than the
+     * cutoff, and rewrite the ones that only partly are
+     */
+    public void compact(long cutoffMillis) throws IOException {
+        synchronized (compactionLock) {
+            for (Segment segment : new ArrayList<>(segments.values())) {
+                if (!segment.sealed || (segment.records > 0 && segment.oldestTimestamp >= cutoffMillis)) {
+                    continue;
+                }
+                if (segment.live.get() == 0 && segment.newestTimestamp < cutoffMillis) {
+                    Files.deleteIfExists(segment.path);
+                    segments.remove(segment.baseSequence);
+                    segmentsDeleted.increment();
+                    recordsCompactedAway.add(segment.records);
+                } else {
+                    rewrite(segment, cutoffMillis);
+                }
+            }
+        }
+    }
+
+    public void flush() {
+        appendLock.lock();
+        try {
+            if (dirty && !closed) {
+                activeBuffer.force();
+                fsyncs.increment();
+                dirty = false;
+            }
+        } finally {
+            appendLock.unlock();
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (flusher != null) {
+            flusher.interrupt();
+        }
+        appendLock.lock();
+        try {
+            if (closed) {
+                return;
+            }
+            if (fsyncPolicy != FsyncPolicy.NEVER) {
+                activeBuffer.force();
+            }
+            closed = true;
+            activeChannel.close();
+        } finally {
+            appendLock.unlock();
+        }
+    }
+
+    public Map<String, Object> getMetrics() {
+        Map<String, Object> metrics = new HashMap<>();
+        metrics.put("directory", directory.toAbsolutePath().toString());
+        metrics.put("fsyncPolicy", fsyncPolicy.name());
+        metrics.put("segments", segments.size());
+        metrics.put("liveEvents", liveEvents.size());
+        metrics.put("appended", appended.sum());
+        metrics.put("outcomesRecorded", outcomesRecorded.sum());
+        metrics.put("bytesAppended", bytesAppended.sum());
+        metrics.put("fsyncs", fsyncs.sum());
+        metrics.put("segmentsRolled", segmentsRolled.sum());
+        metrics.put("segmentsCompacted", segmentsCompacted.sum());
+        metrics.put("segmentsDeleted", segmentsDeleted.sum());
+        metrics.put("recordsCompactedAway", recordsCompactedAway.sum());
+        metrics.put("recoveredRecords", recoveredRecords.sum());
+        metrics.put("tornRecords", tornRecords.sum());
+        metrics.put("appendLatency", appendLatency.snapshot());
+        return metrics;
+    }
+
+    private void roll() throws IOException {
+        if (fsyncPolicy != FsyncPolicy.NEVER) {
+            activeBuffer.force();
+            fsyncs.increment();
+        }
+        dirty = false;
+        active.sealed = true;
+        activeChannel.close();
+        segmentsRolled.increment();
+        if (active.baseSequence == nextSequence) {
+            // Filled with outcomes alone; skip a sequence so the next segment gets a name of its own
+            nextSequence++;
+        }
+        openActive();
+    }
+
+    private void openActive() throws IOException {
+        Segment segment = new Segment(directory.resolve(segmentName(nextSequence)), nextSequence);
+        activeChannel = FileChannel.open(segment.path, StandardOpenOption.CREATE_NEW, StandardOpenOption.READ,
+                StandardOpenOption.WRITE);
+        activeBuffer = activeChannel.map(FileChannel.MapMode.READ_WRITE, 0, segmentBytes);
+        segments.put(segment.baseSequence, segment);
+        active = segment;
+    }
+
+    private Segment recover(Path path) throws IOException {
+        String name = path.getFileName().toString();
+        long base = Long.parseLong(name.substring(SEGMENT_PREFIX.length(), name.length() - SEGMENT_SUFFIX.length()));
+        Segment segment = new Segment(path, base);
+        segment.sealed = true;
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            boolean torn = scan(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()),
+                    (type, sequence, timestamp, payload) -> {
+                        segment.recordAppended(sequence, timestamp);
+                        recoveredRecords.increment();
+                        if (type == EVENT) {
+                            segment.live.incrementAndGet();
+                            liveEvents.put(sequence, segment);
+                        } else if (type == OUTCOME) {
+                            // The event is in this or an earlier segment, so it has been seen already
+                            Segment eventSegment = liveEvents.remove(sequence);
+                            if (eventSegment != null) {
+                                eventSegment.live.decrementAndGet();
+                            }
+                        }
+                    });
+            if (torn) {
+                tornRecords.increment();
+                System.err.println("Audit journal segment " + path.getFileName() + " ends in a damaged record after " +
+                        segment.records + " records");
+            }
+        }
+        return segment;
+    }
+
+    /**
+     * Rewrite a sealed segment with only the records still needed: events
+     * not yet done, and anything inside the retention window. An outcome is
+     * never older than its event, so it is only dropped along with it. Records are copied byte for
+     * byte, CRC included, then the new file replaces the old one atomically.
+     */
+    private void rewrite(Segment segment, long cutoffMillis) throws IOException {
+        Path compacted = segment.path.resolveSibling(segment.path.getFileName() + ".compact");
+        Segment replacement = new Segment(segment.path, segment.baseSequence);
+        replacement.sealed = true;
+        int dropped = 0;
+        try (FileChannel source = FileChannel.open(segment.path, StandardOpenOption.READ);
+             FileChannel target = FileChannel.open(compacted, StandardOpenOption.CREATE,
+                     StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+            MappedByteBuffer buffer = source.map(FileChannel.MapMode.READ_ONLY, 0, source.size());
+            int position = 0;
+            while (position + HEADER_BYTES <= buffer.limit()) {
+                int length = buffer.getInt(position);
+                int size = HEADER_BYTES + length;
+                if (length <= 0 || position + size > buffer.limit() || !crcMatches(buffer, position, size)) {
+                    break;
+                }
+                long sequence = buffer.getLong(position + 9);
+                long timestamp = buffer.getLong(position + 17);
+                if (liveEvents.containsKey(sequence) || timestamp >= cutoffMillis) {
+                    target.write(buffer.slice(position, size));
+                    replacement.recordAppended(sequence, timestamp);
+                } else {
+                    dropped++;
+                }
+                position += size;
+            }
+            if (dropped == 0) {
+                target.close();
+                Files.delete(compacted);
+                return;
+            }
+            target.force(true);
+        }
+        Files.move(compacted, segment.path, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+
+        // Events marked done while rewriting have already left liveEvents; repoint the rest
+        for (Map.Entry<Long, Segment> entry : liveEvents.entrySet()) {
+            if (entry.getValue() == segment && liveEvents.replace(entry.getKey(), segment, replacement)) {
+                replacement.live.incrementAndGet();
+            }
+        }
+        segments.put(replacement.baseSequence, replacement);
+        recoveredSegments.replaceAll(existing -> existing == segment ? replacement : existing);
+        segmentsCompacted.increment();
+        recordsCompactedAway.add(dropped);
+    }
+
+    /**
+     * Visit records up to the first unused or damaged one; true if a damaged one ended the scan
+     */
+    private static boolean scan(ByteBuffer buffer, RecordHandler handler) {
+        int position = 0;
+        while (position + HEADER_BYTES <= buffer.limit()) {
+            int length = buffer.getInt(position);
+            if (length == 0) {
+                return false;
+            }
+            int size = HEADER_BYTES + length;
+            if (length < 0 || position + size > buffer.limit() || !crcMatches(buffer, position, size)) {
+                return true;
+            }
+            handler.handle(buffer.get(position + 8), buffer.getLong(position + 9), buffer.getLong(position + 17),
+                    buffer.slice(position + HEADER_BYTES, length));
+            position += size;
+        }
+        return false;
+    }
+
+    private static boolean crcMatches(ByteBuffer buffer, int position, int size) {
+        CRC32C crc = new CRC32C();
+        crc.update(buffer.slice(position + 8, size - 8));
+        return (int) crc.getValue() == buffer.getInt(position + 4);
+    }
+
+    private List<Path> listSegments() throws IOException {
+        List<Path> paths = new ArrayList<>();
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory,
+                SEGMENT_PREFIX + "*" + SEGMENT_SUFFIX)) {
+            for (Path path : stream) {
+                paths.add(path);
+            }
+        }
+        // Zero-padded names sort by first sequence
+        paths.sort(null);
+        return paths;
+    }
+
+    private static String segmentName(long baseSequence) {
+        return String.format("%s%020d%s", SEGMENT_PREFIX, baseSequence, SEGMENT_SUFFIX);
+    }
+
+    private interface RecordHandler {
+        void handle(byte type, long sequence, long timestamp, ByteBuffer payload);
+    }
+
+    private static final class Segment {
+        private final Path path;
+        private final long baseSequence;
+        private final AtomicInteger live = new AtomicInteger();
+        private volatile long lastSequence;
+        private volatile long oldestTimestamp = Long.MAX_VALUE;
+        private volatile long newestTimestamp;
+        private volatile int records;
+        private volatile boolean sealed;
+
+        Segment(Path path, long baseSequence) {
+            this.path = path;
+            this.baseSequence = baseSequence;
+        }
+
+        void recordAppended(long sequence, long timestamp) {
+            lastSequence = Math.max(lastSequence, sequence);
+            oldestTimestamp = Math.min(oldestTimestamp, timestamp);
+            newestTimestamp = Math.max(newestTimestamp, timestamp);
+            records++;
+        }
+    }
+}
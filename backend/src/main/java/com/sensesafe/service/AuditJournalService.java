@@ -0,0 +1,544 @@
+package com.sensesafe.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.sensesafe.model.AuditAnchor;
+import com.sensesafe.model.AuditLog;
+import com.sensesafe.repository.AuditAnchorRepository;
+import com.sensesafe.repository.AuditLogRepository;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Paths;
+import java.sql.Timestamp;
+import java.sql.Types;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+
+/**
+ * Durable write-ahead record of audit events, kept in a local AuditJournal.
+ *
+ * A committed action is journaled, with its creation time, before it is
+ * handed to the database writer. Its chain result is journaled as an
+ * outcome once stored: the contract transaction for actions with their own
+ * contract call, otherwise the Merkle anchor covering it, with the anchor
+ * and the log's proof. The event stays live until then.
+ *
+ * On startup the journal is compared with the database. Rows lost with the
+ * database whose outcome is journaled are put back as they were, original
+ * id included, before anything else writes, so they are neither submitted
+ * nor anchored again and their proofs still verify. Once the application is
+ * up, events with no row and no outcome go through the writer and the chain
+ * again, and rows still waiting on the chain are resubmitted.
+ */
+@Service
+public class AuditJournalService {
+
+    private static final int REPLAY_BATCH = 1000;
+    // AuditLog's allocationSize: pooled ids are handed out in blocks ending at the sequence value
+    private static final int AUDIT_LOG_ID_BLOCK = 50;
+
+    private static final String RESTORE_LOG_SQL =
+            "INSERT INTO audit_logs (id, action_type, user_id, user_role, target_type, target_id, " +
+            "target_description, ip_address, user_agent, status, error_message, blockchain_tx_hash, " +
+            "blockchain_status, blockchain_network, blockchain_gas_used, blockchain_block_number, created_at, " +
+            "metadata, anchor_id, merkle_leaf_hash, merkle_leaf_index, merkle_proof, journal_sequence) " +
+            "VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?)";
+
+    private static final String RESTORE_ANCHOR_SQL =
+            "INSERT INTO audit_anchors (id, merkle_root, leaf_count, first_audit_log_id, last_audit_log_id, " +
+            "status, tx_hash, block_number, error_message, created_at, confirmed_at) " +
+            "VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?)";
+
+    @Autowired
+    private AuditLogRepository auditLogRepository;
+
+    @Autowired
+    private AuditAnchorRepository auditAnchorRepository;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    @Value("${audit.journal.enabled:true}")
+    private boolean enabled;
+
+    @Value("${audit.journal.directory:./data/audit-journal}")
+    private String directory;
+
+    @Value("${audit.journal.segment-bytes:67108864}")
+    private int segmentBytes;
+
+    // always, interval or never
+    @Value("${audit.journal.fsync:interval}")
+    private String fsync;
+
+    @Value("${audit.journal.fsync-interval-ms:100}")
+    private long fsyncIntervalMs;
+
+    // How long done events stay in the journal to restore a lost database
+    @Value("${audit.journal.retention-hours:168}")
+    private long retentionHours;
+
+    private AuditJournal journal;
+
+    private final LongAdder appendFailures = new LongAdder();
+    private final LongAdder outcomeFailures = new LongAdder();
+    private final LongAdder restoredRows = new LongAdder();
+    private final LongAdder restoredAnchors = new LongAdder();
+    private final LongAdder replayedEvents = new LongAdder();
+    private final LongAdder replayReinserted = new LongAdder();
+    private final LongAdder replayResubmitted = new LongAdder();
+    private final LongAdder unreadableRecords = new LongAdder();
+
+    @PostConstruct
+    public void init() throws IOException {
+        if (!enabled) {
+            return;
+        }
+        Long lastSequence = auditLogRepository.findMaxJournalSequence();
+        journal = new AuditJournal(Paths.get(directory), segmentBytes, fsyncPolicy(), fsyncIntervalMs,
+                lastSequence != null ? lastSequence : 0L);
+        System.out.println("Audit journal opened at " + Paths.get(directory).toAbsolutePath() + " with " +
+                journal.getLiveEventCount() + " recovered events");
+        try {
+            restore();
+        } catch (Exception e) {
+            System.err.println("Restoring audit logs from the journal failed: " + e.getMessage());
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() throws IOException {
+        if (journal != null) {
+            journal.close();
+        }
+    }
+
+    public boolean isEnabled() {
+        return journal != null;
+    }
+
+    /**
+     * Journal a committed event and stamp it with its sequence. A journal
+     * failure is logged and the event carries on to the database unjournaled.
+     */
+    public void append(AuditLog auditLog) {
+        if (journal == null) {
+            return;
+        }
+        if (auditLog.getCreatedAt() == null) {
+            // Set here rather than on insert, so the journal and the row agree
+            auditLog.setCreatedAt(LocalDateTime.now());
+        }
+        try {
+            auditLog.setJournalSequence(journal.append(encode(auditLog)));
+        } catch (Exception e) {
+            appendFailures.increment();
+            System.err.println("Failed to journal audit log " + auditLog.getActionType() + ": " + e.getMessage());
+        }
+    }
+
+    /**
+     * Journal the stored result of a log's own chain transaction; the event
+     * is done
+     */
+    public void recordOutcome(AuditLog auditLog, String txHash, String status, String network, Long gasUsed,
+                              Long blockNumber, String errorMessage) {
+        Map<String, Object> outcome = new LinkedHashMap<>();
+        outcome.put("auditLogId", auditLog.getId());
+        outcome.put("blockchainTxHash", txHash);
+        outcome.put("blockchainStatus", status);
+        outcome.put("blockchainNetwork", network);
+        outcome.put("blockchainGasUsed", gasUsed);
+        outcome.put("blockchainBlockNumber", blockNumber);
+        outcome.put("errorMessage", errorMessage);
+        recordOutcome(auditLog.getJournalSequence(), outcome, true);
+    }
+
+    /**
+     * Journal the anchor covering these logs, as stored once its result is
+     * in. Logs without a contract call of their own are done; the others
+     * only gain their proof and wait for their transaction.
+     */
+    public void recordAnchored(AuditAnchor anchor, List<AuditLog> logs) {
+        for (AuditLog log : logs) {
+            boolean anchorIsOutcome = !AuditLogService.INDIVIDUALLY_LOGGED_ACTIONS.contains(log.getActionType());
+            recordOutcome(log.getJournalSequence(), outcomeOf(log, anchor, anchorIsOutcome), anchorIsOutcome);
+        }
+    }
+
+    /**
+     * Compare the journal found at startup with the database. Events with
+     * no row go to reinsert and rows still PENDING on-chain go to resubmit.
+     * Rows that finished without their outcome reaching the journal have it
+     * journaled now.
+     */
+    public void replay(Consumer<AuditLog> reinsert, Consumer<AuditLog> resubmit) throws IOException {
+        if (journal == null) {
+            return;
+        }
+        List<AuditLog> batch = new ArrayList<>(REPLAY_BATCH);
+        journal.forEachRecoveredEvent((sequence, timestamp, payload) -> {
+            try {
+                batch.add(decode(sequence, timestamp, payload));
+            } catch (Exception e) {
+                unreadableRecords.increment();
+                System.err.println("Skipping unreadable audit journal record " + sequence + ": " + e.getMessage());
+                return;
+            }
+            if (batch.size() == REPLAY_BATCH) {
+                replayBatch(batch, reinsert, resubmit);
+                batch.clear();
+            }
+        });
+        if (!batch.isEmpty()) {
+            replayBatch(batch, reinsert, resubmit);
+        }
+        if (replayedEvents.sum() > 0) {
+            System.out.println("Audit journal replay: " + replayedEvents.sum() + " events, " +
+                    replayReinserted.sum() + " reinserted, " + replayResubmitted.sum() + " resubmitted to the chain");
+        }
+    }
+
+    /**
+     * Drop done events that are older than the retention window
+     */
+    @Scheduled(fixedDelayString = "${audit.journal.compaction-interval-ms:600000}",
+               initialDelayString = "${audit.journal.compaction-interval-ms:600000}")
+    public void compact() {
+        if (journal == null) {
+            return;
+        }
+        try {
+            journal.compact(System.currentTimeMillis() - TimeUnit.HOURS.toMillis(retentionHours));
+        } catch (IOException e) {
+            System.err.println("Audit journal compaction failed: " + e.getMessage());
+        }
+    }
+
+    public Map<String, Object> getMetrics() {
+        Map<String, Object> metrics = journal != null ? journal.getMetrics() : new HashMap<>();
+        metrics.put("enabled", journal != null);
+        metrics.put("retentionHours", retentionHours);
+        metrics.put("appendFailures", appendFailures.sum());
+        metrics.put("outcomeFailures", outcomeFailures.sum());
+        metrics.put("restoredRows", restoredRows.sum());
+        metrics.put("restoredAnchors", restoredAnchors.sum());
+        metrics.put("replayedEvents", replayedEvents.sum());
+        metrics.put("replayReinserted", replayReinserted.sum());
+        metrics.put("replayResubmitted", replayResubmitted.sum());
+        metrics.put("unreadableRecords", unreadableRecords.sum());
+        return metrics;
+    }
+
+    private void replayBatch(List<AuditLog> events, Consumer<AuditLog> reinsert, Consumer<AuditLog> resubmit) {
+        Map<Long, AuditLog> rows = new HashMap<>();
+        for (AuditLog row : auditLogRepository.findByJournalSequenceBetween(events.get(0).getJournalSequence(),
+                events.get(events.size() - 1).getJournalSequence())) {
+            rows.put(row.getJournalSequence(), row);
+        }
+        for (AuditLog event : events) {
+            replayedEvents.increment();
+            AuditLog row = rows.get(event.getJournalSequence());
+            if (!journal.isLive(event.getJournalSequence())) {
+                // Outcome journaled, so the chain has it already; restore() put back a lost row
+                if (row == null) {
+                    System.err.println("Audit journal event " + event.getJournalSequence() +
+                            " has a recorded outcome but could not be restored; not resubmitting it");
+                }
+            } else if (row == null) {
+                replayReinserted.increment();
+                reinsert.accept(event);
+            } else if ("PENDING".equals(row.getBlockchainStatus())) {
+                replayResubmitted.increment();
+                resubmit.accept(row);
+            } else {
+                AuditAnchor anchor = row.getAnchorId() != null
+                        ? auditAnchorRepository.findById(row.getAnchorId()).orElse(null) : null;
+                recordOutcome(row.getJournalSequence(), outcomeOf(row, anchor, true), true);
+            }
+        }
+    }
+
+    /**
+     * Put back rows the database no longer has whose outcome is journaled.
+     * Runs while the application starts, before any new log can take an id
+     * from the sequences this moves past the restored ones.
+     */
+    private void restore() throws IOException {
+        Set<Long> missing = new HashSet<>();
+        List<Long> sequences = new ArrayList<>(REPLAY_BATCH);
+        journal.forEachRecoveredEvent((sequence, timestamp, payload) -> {
+            sequences.add(sequence);
+            if (sequences.size() == REPLAY_BATCH) {
+                collectMissing(sequences, missing);
+                sequences.clear();
+            }
+        });
+        if (!sequences.isEmpty()) {
+            collectMissing(sequences, missing);
+        }
+        if (missing.isEmpty()) {
+            return;
+        }
+
+        // Outcomes in journal order, so later fields add to or replace earlier ones
+        Map<Long, Map<String, Object>> outcomes = new HashMap<>();
+        journal.forEachRecoveredOutcome((sequence, timestamp, payload) -> {
+            if (missing.contains(sequence)) {
+                try {
+                    outcomes.computeIfAbsent(sequence, key -> new HashMap<>()).putAll(readFields(payload));
+                } catch (IOException e) {
+                    unreadableRecords.increment();
+                    System.err.println("Skipping unreadable audit journal outcome for " + sequence + ": " +
+                            e.getMessage());
+                }
+            }
+        });
+
+        List<AuditLog> rows = new ArrayList<>(REPLAY_BATCH);
+        Map<Long, Map<String, Object>> anchors = new HashMap<>();
+        journal.forEachRecoveredEvent((sequence, timestamp, payload) -> {
+            Map<String, Object> outcome = outcomes.get(sequence);
+            if (outcome == null || outcome.get("auditLogId") == null) {
+                return;
+            }
+            AuditLog row;
+            try {
+                row = decode(sequence, timestamp, payload);
+            } catch (Exception e) {
+                // Reported when the journal is replayed
+                return;
+            }
+            applyOutcome(row, outcome);
+            if (outcome.get("anchor") != null) {
+                anchors.putIfAbsent(row.getAnchorId(), castFields(outcome.get("anchor")));
+            }
+            rows.add(row);
+            if (rows.size() == REPLAY_BATCH) {
+                insertRestored(rows);
+                rows.clear();
+            }
+        });
+        if (!rows.isEmpty()) {
+            insertRestored(rows);
+        }
+        if (restoredRows.sum() == 0) {
+            return;
+        }
+        Long maxLogId = jdbcTemplate.queryForObject("SELECT MAX(id) FROM audit_logs", Long.class);
+        jdbcTemplate.execute("ALTER SEQUENCE audit_log_seq RESTART WITH " + (maxLogId + AUDIT_LOG_ID_BLOCK + 1));
+
+        for (Map<String, Object> anchor : anchors.values()) {
+            if (!auditAnchorRepository.existsById(asLong(anchor.get("id")))) {
+                insertRestoredAnchor(anchor);
+            }
+        }
+        if (restoredAnchors.sum() > 0) {
+            Long maxAnchorId = jdbcTemplate.queryForObject("SELECT MAX(id) FROM audit_anchors", Long.class);
+            jdbcTemplate.execute("ALTER SEQUENCE audit_anchor_seq RESTART WITH " + (maxAnchorId + 1));
+        }
+        System.out.println("Restored " + restoredRows.sum() + " audit logs and " + restoredAnchors.sum() +
+                " anchors from the journal");
+    }
+
+    private void collectMissing(List<Long> sequences, Set<Long> missing) {
+        Set<Long> stored = new HashSet<>(auditLogRepository.findJournalSequencesBetween(sequences.get(0),
+                sequences.get(sequences.size() - 1)));
+        for (Long sequence : sequences) {
+            if (!stored.contains(sequence)) {
+                missing.add(sequence);
+            }
+        }
+    }
+
+    private void insertRestored(List<AuditLog> rows) {
+        jdbcTemplate.batchUpdate(RESTORE_LOG_SQL, rows, REPLAY_BATCH, (ps, row) -> {
+            ps.setLong(1, row.getId());
+            ps.setString(2, row.getActionType());
+            ps.setString(3, row.getUserId());
+            ps.setString(4, row.getUserRole());
+            ps.setString(5, row.getTargetType());
+            ps.setString(6, row.getTargetId());
+            ps.setString(7, row.getTargetDescription());
+            ps.setString(8, row.getIpAddress());
+            ps.setString(9, row.getUserAgent());
+            ps.setString(10, row.getStatus());
+            ps.setString(11, row.getErrorMessage());
+            ps.setString(12, row.getBlockchainTxHash());
+            ps.setString(13, row.getBlockchainStatus());
+            ps.setString(14, row.getBlockchainNetwork());
+            ps.setObject(15, row.getBlockchainGasUsed(), Types.BIGINT);
+            ps.setObject(16, row.getBlockchainBlockNumber(), Types.BIGINT);
+            ps.setTimestamp(17, Timestamp.valueOf(row.getCreatedAt()));
+            ps.setString(18, row.getMetadata());
+            ps.setObject(19, row.getAnchorId(), Types.BIGINT);
+            ps.setString(20, row.getMerkleLeafHash());
+            ps.setObject(21, row.getMerkleLeafIndex(), Types.INTEGER);
+            ps.setString(22, row.getMerkleProof());
+            ps.setLong(23, row.getJournalSequence());
+        });
+        restoredRows.add(rows.size());
+    }
+
+    private void insertRestoredAnchor(Map<String, Object> anchor) {
+        jdbcTemplate.update(RESTORE_ANCHOR_SQL, asLong(anchor.get("id")), anchor.get("merkleRoot"),
+                asInteger(anchor.get("leafCount")), asLong(anchor.get("firstAuditLogId")),
+                asLong(anchor.get("lastAuditLogId")), anchor.get("status"), anchor.get("txHash"),
+                asLong(anchor.get("blockNumber")), anchor.get("errorMessage"),
+                asTimestamp(anchor.get("createdAt")), asTimestamp(anchor.get("confirmedAt")));
+        restoredAnchors.increment();
+    }
+
+    private void recordOutcome(Long sequence, Map<String, Object> outcome, boolean done) {
+        if (journal == null || sequence == null) {
+            return;
+        }
+        try {
+            journal.recordOutcome(sequence, objectMapper.writeValueAsBytes(outcome), done);
+        } catch (Exception e) {
+            outcomeFailures.increment();
+            System.err.println("Failed to journal the outcome of audit event " + sequence + ": " + e.getMessage());
+        }
+    }
+
+    /**
+     * Outcome fields of a stored row: its proof and anchor, and with
+     * chainResult its blockchain columns
+     */
+    private static Map<String, Object> outcomeOf(AuditLog row, AuditAnchor anchor, boolean chainResult) {
+        Map<String, Object> outcome = new LinkedHashMap<>();
+        outcome.put("auditLogId", row.getId());
+        if (chainResult) {
+            outcome.put("blockchainTxHash", row.getBlockchainTxHash());
+            outcome.put("blockchainStatus", row.getBlockchainStatus());
+            outcome.put("blockchainNetwork", row.getBlockchainNetwork());
+            outcome.put("blockchainGasUsed", row.getBlockchainGasUsed());
+            outcome.put("blockchainBlockNumber", row.getBlockchainBlockNumber());
+            outcome.put("errorMessage", row.getErrorMessage());
+        }
+        if (anchor != null) {
+            outcome.put("anchorId", anchor.getId());
+            outcome.put("merkleLeafHash", row.getMerkleLeafHash());
+            outcome.put("merkleLeafIndex", row.getMerkleLeafIndex());
+            outcome.put("merkleProof", row.getMerkleProof());
+            Map<String, Object> anchorFields = new LinkedHashMap<>();
+            anchorFields.put("id", anchor.getId());
+            anchorFields.put("merkleRoot", anchor.getMerkleRoot());
+            anchorFields.put("leafCount", anchor.getLeafCount());
+            anchorFields.put("firstAuditLogId", anchor.getFirstAuditLogId());
+            anchorFields.put("lastAuditLogId", anchor.getLastAuditLogId());
+            anchorFields.put("status", anchor.getStatus());
+            anchorFields.put("txHash", anchor.getTxHash());
+            anchorFields.put("blockNumber", anchor.getBlockNumber());
+            anchorFields.put("errorMessage", anchor.getErrorMessage());
+            anchorFields.put("createdAt", anchor.getCreatedAt() != null ? anchor.getCreatedAt().toString() : null);
+            anchorFields.put("confirmedAt", anchor.getConfirmedAt() != null ? anchor.getConfirmedAt().toString() : null);
+            outcome.put("anchor", anchorFields);
+        }
+        return outcome;
+    }
+
+    private static void applyOutcome(AuditLog row, Map<String, Object> outcome) {
+        row.setId(asLong(outcome.get("auditLogId")));
+        if (outcome.containsKey("blockchainStatus")) {
+            row.setBlockchainTxHash((String) outcome.get("blockchainTxHash"));
+            row.setBlockchainStatus((String) outcome.get("blockchainStatus"));
+            row.setBlockchainNetwork((String) outcome.get("blockchainNetwork"));
+            row.setBlockchainGasUsed(asLong(outcome.get("blockchainGasUsed")));
+            row.setBlockchainBlockNumber(asLong(outcome.get("blockchainBlockNumber")));
+        }
+        if (outcome.get("errorMessage") != null) {
+            row.setErrorMessage((String) outcome.get("errorMessage"));
+        }
+        row.setAnchorId(asLong(outcome.get("anchorId")));
+        row.setMerkleLeafHash((String) outcome.get("merkleLeafHash"));
+        row.setMerkleLeafIndex(asInteger(outcome.get("merkleLeafIndex")));
+        row.setMerkleProof((String) outcome.get("merkleProof"));
+    }
+
+    @SuppressWarnings("unchecked")
+    private static Map<String, Object> castFields(Object fields) {
+        return (Map<String, Object>) fields;
+    }
+
+    private static Long asLong(Object value) {
+        return value != null ? ((Number) value).longValue() : null;
+    }
+
+    private static Integer asInteger(Object value) {
+        return value != null ? ((Number) value).intValue() : null;
+    }
+
+    private static Timestamp asTimestamp(Object value) {
+        return value != null ? Timestamp.valueOf(LocalDateTime.parse((String) value)) : null;
+    }
+
+    private byte[] encode(AuditLog auditLog) throws IOException {
+        Map<String, Object> fields = new LinkedHashMap<>();
+        fields.put("actionType", auditLog.getActionType());
+        fields.put("userId", auditLog.getUserId());
+        fields.put("userRole", auditLog.getUserRole());
+        fields.put("targetType", auditLog.getTargetType());
+        fields.put("targetId", auditLog.getTargetId());
+        fields.put("targetDescription", auditLog.getTargetDescription());
+        fields.put("ipAddress", auditLog.getIpAddress());
+        fields.put("userAgent", auditLog.getUserAgent());
+        fields.put("status", auditLog.getStatus());
+        fields.put("errorMessage", auditLog.getErrorMessage());
+        fields.put("metadata", auditLog.getMetadata());
+        fields.put("createdAt", auditLog.getCreatedAt() != null ? auditLog.getCreatedAt().toString() : null);
+        return objectMapper.writeValueAsBytes(fields);
+    }
+
+    private AuditLog decode(long sequence, long timestamp, ByteBuffer payload) throws IOException {
+        Map<String, Object> fields = readFields(payload);
+        AuditLog auditLog = new AuditLog((String) fields.get("actionType"), (String) fields.get("userId"),
+                (String) fields.get("userRole"), (String) fields.get("status"));
+        auditLog.setTargetType((String) fields.get("targetType"));
+        auditLog.setTargetId((String) fields.get("targetId"));
+        auditLog.setTargetDescription((String) fields.get("targetDescription"));
+        auditLog.setIpAddress((String) fields.get("ipAddress"));
+        auditLog.setUserAgent((String) fields.get("userAgent"));
+        auditLog.setErrorMessage((String) fields.get("errorMessage"));
+        auditLog.setMetadata((String) fields.get("metadata"));
+        // Records journaled before createdAt was part of the payload fall back to the append time
+        auditLog.setCreatedAt(fields.get("createdAt") != null
+                ? LocalDateTime.parse((String) fields.get("createdAt"))
+                : LocalDateTime.ofInstant(Instant.ofEpochMilli(timestamp), ZoneId.systemDefault()));
+        auditLog.setBlockchainStatus("PENDING");
+        auditLog.setJournalSequence(sequence);
+        return auditLog;
+    }
+
+    @SuppressWarnings("unchecked")
+    private Map<String, Object> readFields(ByteBuffer payload) throws IOException {
+        byte[] bytes = new byte[payload.remaining()];
+        payload.get(bytes);
+        return objectMapper.readValue(bytes, Map.class);
+    }
+
+    private AuditJournal.FsyncPolicy fsyncPolicy() {
+        return AuditJournal.FsyncPolicy.valueOf(fsync.trim().toUpperCase());
+    }
+}
@@ -0,0 +1,65 @@
+package com.sensesafe.service;
+
+import com.sensesafe.config.InstrumentedThreadPoolExecutor;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Executors for the audit logging stages, kept off the common ForkJoinPool.
+ *
+ * Rows are inserted by the group-commit AuditLogWriter; the chain stage then
+ * hands them to the blockchain writer and records anchor outcomes once their
+ * transaction is mined. It is bounded and runs a task on the submitting
+ * thread when full, so a burst slows the callers down instead of dropping
+ * audit records. The submitting thread is usually one of the writers, which
+ * then briefly stops taking new work until the stage catches up.
+ */
+@Component
+public class AuditLogExecutors {
+
+    @Value("${audit.executor.chain.threads:2}")
+    private int chainThreads;
+
+    @Value("${audit.executor.chain.queue-capacity:5000}")
+    private int chainQueueCapacity;
+
+    // Web3j calls on virtual threads when enabled
+    @Value("${spring.threads.virtual.enabled:false}")
+    private boolean virtualThreads;
+
+    private InstrumentedThreadPoolExecutor chainExecutor;
+
+    @PostConstruct
+    public void init() {
+        chainExecutor = new InstrumentedThreadPoolExecutor("audit-chain", chainThreads, chainQueueCapacity,
+                new ThreadPoolExecutor.CallerRunsPolicy(), virtualThreads);
+    }
+
+    @PreDestroy
+    public void shutdown() throws InterruptedException {
+        chainExecutor.shutdown();
+        chainExecutor.awaitTermination(10, TimeUnit.SECONDS);
+    }
+
+    public InstrumentedThreadPoolExecutor chain() {
+        return chainExecutor;
+    }
+
+    public Map<String, Object> getMetrics() {
+        Map<String, Object> stages = new LinkedHashMap<>();
+        stages.put("chain", chainExecutor.getMetrics());
+
+        Map<String, Object> metrics = new HashMap<>();
+        metrics.put("queued", chainExecutor.getQueue().size());
+        metrics.put("stages", stages);
+        return metrics;
+    }
+}
@@ -2,24 +2,45 @@ package com.sensesafe.service;
 
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.sensesafe.model.AuditLog;
+import com.sensesafe.repository.AuditLogFilter;
 import com.sensesafe.repository.AuditLogRepository;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
 import org.springframework.data.domain.*;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Propagation;
 import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
 
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
 import java.time.LocalDateTime;
 import java.util.*;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.LongAdder;
 
 @Service
 @Transactional
 public class AuditLogService {
 
+    // Action types with their own contract function; everything else is covered by Merkle anchors
+    public static final Set<String> INDIVIDUALLY_LOGGED_ACTIONS =
+            Set.of("INCIDENT_VERIFIED", "RESOURCE_ASSIGNED", "INCIDENT_RESOLVED");
+
     @Autowired
     private AuditLogRepository auditLogRepository;
 
+    @Autowired
+    private AuditAnchorService auditAnchorService;
+
     @Autowired
     @Qualifier("blockchainService")
     private BlockchainService blockchainService;
@@ -27,6 +48,26 @@ public class AuditLogService {
     @Autowired
     private ObjectMapper objectMapper;
 
+    @Autowired
+    private AuditLogExecutors auditLogExecutors;
+
+    @Autowired
+    private AuditLogWriter auditLogWriter;
+
+    @Autowired
+    private AuditJournalService auditJournalService;
+
+    private static final String CSV_HEADER =
+            "ID,Action Type,User ID,User Role,Target Type,Target ID,Target Description," +
+            "IP Address,User Agent,Status,Error Message,Blockchain TX Hash,Blockchain Status," +
+            "Blockchain Network,Gas Used,Block Number,Created At,Metadata\n";
+
+    @Value("${audit.export.page-size:1000}")
+    private int exportPageSize;
+
+    private final LongAdder logsDiscardedOnRollback = new LongAdder();
+    private final LongAdder exportedRows = new LongAdder();
+
     /**
      * Log an action with blockchain integration
      */
@@ -34,34 +75,8 @@ public class AuditLogService {
                                                 String targetType, String targetId, String targetDescription,
                                                 String ipAddress, String userAgent, String status, String errorMessage) {
         
-        return CompletableFuture.supplyAsync(() -> {
-            AuditLog auditLog = new AuditLog(actionType, userId, userRole, status);
-            auditLog.setTargetType(targetType);
-            auditLog.setTargetId(targetId);
-            auditLog.setTargetDescription(targetDescription);
-            auditLog.setIpAddress(ipAddress);
-            auditLog.setUserAgent(userAgent);
-            auditLog.setErrorMessage(errorMessage);
-            auditLog.setBlockchainStatus("PENDING");
-            
-            // Save to database first
-            AuditLog savedLog = auditLogRepository.save(auditLog);
-            
-            // Log to blockchain asynchronously
-            CompletableFuture.runAsync(() -> {
-                try {
-                    logToBlockchain(savedLog);
-                } catch (Exception e) {
-                    System.err.println("Failed to log to blockchain: " + e.getMessage());
-                    // Update status to failed but don't fail the main operation
-                    savedLog.setBlockchainStatus("FAILED");
-                    savedLog.setErrorMessage("Blockchain logging failed: " + e.getMessage());
-                    auditLogRepository.save(savedLog);
-                }
-            });
-            
-            return savedLog;
-        });
+        return persist(newAuditLog(actionType, userId, userRole, targetType, targetId, targetDescription,
+                ipAddress, userAgent, status, errorMessage));
     }
 
     /**
@@ -72,41 +87,26 @@ public class AuditLogService {
                                                             String ipAddress, String userAgent, String status, 
                                                             String errorMessage, Map<String, Object> metadata) {
         
-        return CompletableFuture.supplyAsync(() -> {
-            try {
-                AuditLog auditLog = new AuditLog(actionType, userId, userRole, status);
-                auditLog.setTargetType(targetType);
-                auditLog.setTargetId(targetId);
-                auditLog.setTargetDescription(targetDescription);
-                auditLog.setIpAddress(ipAddress);
-                auditLog.setUserAgent(userAgent);
-                auditLog.setErrorMessage(errorMessage);
-                auditLog.setBlockchainStatus("PENDING");
-                
-                // Convert metadata to JSON string
-                if (metadata != null && !metadata.isEmpty()) {
-                    auditLog.setMetadata(objectMapper.writeValueAsString(metadata));
-                }
-                
-                AuditLog savedLog = auditLogRepository.save(auditLog);
-                
-                // Log to blockchain asynchronously
-                CompletableFuture.runAsync(() -> {
-                    try {
-                        logToBlockchain(savedLog);
-                    } catch (Exception e) {
-                        System.err.println("Failed to log to blockchain: " + e.getMessage());
-                        savedLog.setBlockchainStatus("FAILED");
-                        savedLog.setErrorMessage("Blockchain logging failed: " + e.getMessage());
-                        auditLogRepository.save(savedLog);
-                    }
-                });
-                
-                return savedLog;
-            } catch (Exception e) {
-                throw new RuntimeException("Failed to log action: " + e.getMessage(), e);
+        AuditLog auditLog = newAuditLog(actionType, userId, userRole, targetType, targetId, targetDescription,
+                ipAddress, userAgent, status, errorMessage);
+        try {
+            // Convert metadata to JSON string
+            if (metadata != null && !metadata.isEmpty()) {
+                auditLog.setMetadata(objectMapper.writeValueAsString(metadata));
             }
-        });
+        } catch (Exception e) {
+            return CompletableFuture.failedFuture(new RuntimeException("Failed to log action: " + e.getMessage(), e));
+        }
+        return persist(auditLog);
+    }
+
+    public Map<String, Object> getExecutorMetrics() {
+        Map<String, Object> metrics = auditLogExecutors.getMetrics();
+        metrics.put("writer", auditLogWriter.getMetrics());
+        metrics.put("journal", auditJournalService.getMetrics());
+        metrics.put("discardedOnRollback", logsDiscardedOnRollback.sum());
+        metrics.put("exportedRows", exportedRows.sum());
+        return metrics;
     }
 
     /**
@@ -116,12 +116,40 @@ public class AuditLogService {
     public Page<AuditLog> getAuditLogs(String actionType, String userId, String status,
                                      LocalDateTime startDate, LocalDateTime endDate,
                                      Pageable pageable) {
-        
-        if (actionType != null || userId != null || status != null || startDate != null || endDate != null) {
-            return auditLogRepository.findByMultipleCriteria(actionType, userId, status, startDate, endDate, pageable);
-        } else {
-            return auditLogRepository.findAll(pageable);
+        return auditLogRepository.findFiltered(
+                new AuditLogFilter(actionType, userId, status, null, startDate, endDate), pageable);
+    }
+
+    /**
+     * One page of logs newest first, continuing from an opaque cursor
+     * returned by the previous page (none for the first). The result carries
+     * the page, hasMore and the nextCursor to pass back
+     */
+    @Transactional(readOnly = true)
+    public Map<String, Object> scrollAuditLogs(AuditLogFilter filter, String cursor, int size) {
+        LocalDateTime beforeCreatedAt = null;
+        Long beforeId = null;
+        if (cursor != null && !cursor.isBlank()) {
+            try {
+                String[] position = decodeCursor(cursor);
+                beforeCreatedAt = LocalDateTime.parse(position[0]);
+                beforeId = Long.valueOf(position[1]);
+            } catch (RuntimeException e) {
+                throw new IllegalArgumentException("Invalid cursor");
+            }
         }
+
+        // One extra row tells whether another page follows without a count query
+        List<AuditLog> rows = auditLogRepository.findKeysetPage(filter, beforeCreatedAt, beforeId, size + 1);
+        boolean hasMore = rows.size() > size;
+        List<AuditLog> content = hasMore ? rows.subList(0, size) : rows;
+
+        Map<String, Object> result = new HashMap<>();
+        result.put("content", content);
+        result.put("size", content.size());
+        result.put("hasMore", hasMore);
+        result.put("nextCursor", hasMore ? encodeCursor(content.get(content.size() - 1)) : null);
+        return result;
     }
 
     /**
@@ -153,8 +181,7 @@ public class AuditLogService {
      */
     @Transactional(readOnly = true)
     public List<AuditLog> getRecentLogs(int limit) {
-        Pageable pageable = PageRequest.of(0, limit, Sort.by(Sort.Direction.DESC, "createdAt"));
-        return auditLogRepository.findRecentLogs(pageable);
+        return auditLogRepository.findKeysetPage(AuditLogFilter.none(), null, null, limit);
     }
 
     /**
@@ -216,7 +243,7 @@ public class AuditLogService {
      */
     @Transactional(readOnly = true)
     public Optional<AuditLog> getAuditLogByBlockchainHash(String blockchainTxHash) {
-        return auditLogRepository.findByBlockchainTxHash(blockchainTxHash);
+        return auditLogRepository.findFirstByBlockchainTxHashOrderByIdAsc(blockchainTxHash);
     }
 
     /**
@@ -236,82 +263,219 @@ public class AuditLogService {
     }
 
     /**
-     * Export audit logs to CSV format
+     * Write matching audit logs to the stream as CSV, newest first.
+     *
+     * Rows are read in keyset pages on (createdAt, id), each in its own short
+     * read, and flushed to the client page by page, so memory stays constant
+     * however many rows match and no transaction is held open for the length
+     * of the download. A non-positive maxRows means no limit. Returns the
+     * number of rows written.
      */
-    public String exportAuditLogsToCSV(String actionType, String userId, String status,
-                                     LocalDateTime startDate, LocalDateTime endDate) {
-        // Get all matching logs (without pagination for export)
-        Pageable pageable = PageRequest.of(0, 10000, Sort.by(Sort.Direction.DESC, "createdAt"));
-        Page<AuditLog> auditLogs = getAuditLogs(actionType, userId, status, startDate, endDate, pageable);
-        
-        StringBuilder csv = new StringBuilder();
-        csv.append("ID,Action Type,User ID,User Role,Target Type,Target ID,Target Description,");
-        csv.append("IP Address,User Agent,Status,Error Message,Blockchain TX Hash,Blockchain Status,");
-        csv.append("Blockchain Network,Gas Used,Block Number,Created At,Metadata\n");
-        
-        for (AuditLog log : auditLogs.getContent()) {
-            csv.append(escapeCsvField(log.getId().toString())).append(",");
-            csv.append(escapeCsvField(log.getActionType())).append(",");
-            csv.append(escapeCsvField(log.getUserId())).append(",");
-            csv.append(escapeCsvField(log.getUserRole() != null ? log.getUserRole() : "")).append(",");
-            csv.append(escapeCsvField(log.getTargetType() != null ? log.getTargetType() : "")).append(",");
-            csv.append(escapeCsvField(log.getTargetId() != null ? log.getTargetId() : "")).append(",");
-            csv.append(escapeCsvField(log.getTargetDescription() != null ? log.getTargetDescription() : "")).append(",");
-            csv.append(escapeCsvField(log.getIpAddress() != null ? log.getIpAddress() : "")).append(",");
-            csv.append(escapeCsvField(log.getUserAgent() != null ? log.getUserAgent() : "")).append(",");
-            csv.append(escapeCsvField(log.getStatus())).append(",");
-            csv.append(escapeCsvField(log.getErrorMessage() != null ? log.getErrorMessage() : "")).append(",");
-            csv.append(escapeCsvField(log.getBlockchainTxHash() != null ? log.getBlockchainTxHash() : "")).append(",");
-            csv.append(escapeCsvField(log.getBlockchainStatus() != null ? log.getBlockchainStatus() : "")).append(",");
-            csv.append(escapeCsvField(log.getBlockchainNetwork() != null ? log.getBlockchainNetwork() : "")).append(",");
-            csv.append(log.getBlockchainGasUsed() != null ? log.getBlockchainGasUsed() : "").append(",");
-            csv.append(log.getBlockchainBlockNumber() != null ? log.getBlockchainBlockNumber() : "").append(",");
-            csv.append(log.getCreatedAt() != null ? log.getCreatedAt().toString() : "").append(",");
-            csv.append(escapeCsvField(log.getMetadata() != null ? log.getMetadata() : "")).append("\n");
+    @Transactional(propagation = Propagation.NOT_SUPPORTED)
+    public long writeAuditLogsCsv(OutputStream output, String actionType, String userId, String status,
+                                  LocalDateTime startDate, LocalDateTime endDate, long maxRows) throws IOException {
+        long limit = maxRows > 0 ? maxRows : Long.MAX_VALUE;
+        Writer writer = new BufferedWriter(new OutputStreamWriter(output, StandardCharsets.UTF_8), 64 * 1024);
+        writer.write(CSV_HEADER);
+
+        AuditLogFilter filter = new AuditLogFilter(actionType, userId, status, null, startDate, endDate);
+        long written = 0;
+        LocalDateTime afterCreatedAt = null;
+        Long afterId = null;
+        while (written < limit) {
+            int pageSize = (int) Math.min(exportPageSize, limit - written);
+            List<AuditLog> page = auditLogRepository.findKeysetPage(filter, afterCreatedAt, afterId, pageSize);
+            for (AuditLog log : page) {
+                writeCsvRow(writer, log);
+            }
+            written += page.size();
+            if (page.size() < pageSize) {
+                break;
+            }
+            AuditLog last = page.get(page.size() - 1);
+            afterCreatedAt = last.getCreatedAt();
+            afterId = last.getId();
+            writer.flush();
         }
-        
-        return csv.toString();
+
+        writer.flush();
+        exportedRows.add(written);
+        return written;
+    }
+
+    private void writeCsvRow(Writer writer, AuditLog log) throws IOException {
+        writer.append(escapeCsvField(log.getId().toString())).append(',');
+        writer.append(escapeCsvField(log.getActionType())).append(',');
+        writer.append(escapeCsvField(log.getUserId())).append(',');
+        writer.append(escapeCsvField(log.getUserRole())).append(',');
+        writer.append(escapeCsvField(log.getTargetType())).append(',');
+        writer.append(escapeCsvField(log.getTargetId())).append(',');
+        writer.append(escapeCsvField(log.getTargetDescription())).append(',');
+        writer.append(escapeCsvField(log.getIpAddress())).append(',');
+        writer.append(escapeCsvField(log.getUserAgent())).append(',');
+        writer.append(escapeCsvField(log.getStatus())).append(',');
+        writer.append(escapeCsvField(log.getErrorMessage())).append(',');
+        writer.append(escapeCsvField(log.getBlockchainTxHash())).append(',');
+        writer.append(escapeCsvField(log.getBlockchainStatus())).append(',');
+        writer.append(escapeCsvField(log.getBlockchainNetwork())).append(',');
+        writer.append(log.getBlockchainGasUsed() != null ? log.getBlockchainGasUsed().toString() : "").append(',');
+        writer.append(log.getBlockchainBlockNumber() != null ? log.getBlockchainBlockNumber().toString() : "").append(',');
+        writer.append(log.getCreatedAt() != null ? log.getCreatedAt().toString() : "").append(',');
+        writer.append(escapeCsvField(log.getMetadata())).append('\n');
     }
 
     /**
-     * Log to blockchain
+     * Queue the log's event for the blockchain writer and record the outcome
+     * once the transaction is mined or has failed
      */
-    private void logToBlockchain(AuditLog auditLog) throws Exception {
-        Map<String, Object> blockchainResult;
+    private void logToBlockchain(AuditLog auditLog) {
+        CompletableFuture<Map<String, Object>> blockchainResult;
         
         // Choose appropriate blockchain method based on action type
         switch (auditLog.getActionType()) {
             case "INCIDENT_VERIFIED":
                 Long incidentId = Long.valueOf(auditLog.getTargetId());
-                blockchainResult = blockchainService.logVerified(incidentId);
+                blockchainResult = blockchainService.logVerifiedAsync(incidentId);
                 break;
             case "RESOURCE_ASSIGNED":
                 incidentId = Long.valueOf(auditLog.getTargetId());
-                blockchainResult = blockchainService.logResource(incidentId, auditLog.getTargetDescription());
+                blockchainResult = blockchainService.logResourceAsync(incidentId, auditLog.getTargetDescription());
                 break;
             case "INCIDENT_RESOLVED":
                 incidentId = Long.valueOf(auditLog.getTargetId());
-                blockchainResult = blockchainService.logResolved(incidentId);
+                blockchainResult = blockchainService.logResolvedAsync(incidentId);
                 break;
             default:
+                if (auditAnchorService.isEnabled()) {
+                    // Committed with the next Merkle anchor instead of a transaction of its own,
+                    // which journals the outcome
+                    return;
+                }
                 // For other actions, create a generic audit log on blockchain
-                blockchainResult = blockchainService.logGenericAudit(auditLog);
+                blockchainResult = blockchainService.logGenericAuditAsync(auditLog);
                 break;
         }
         
+        // Only queues the update for the audit writer, so it can run on the blockchain writer thread
+        blockchainResult.thenAccept(result -> recordBlockchainResult(auditLog, result));
+    }
+
+    private AuditLog newAuditLog(String actionType, String userId, String userRole, String targetType,
+                                 String targetId, String targetDescription, String ipAddress, String userAgent,
+                                 String status, String errorMessage) {
+        AuditLog auditLog = new AuditLog(actionType, userId, userRole, status);
+        auditLog.setTargetType(targetType);
+        auditLog.setTargetId(targetId);
+        auditLog.setTargetDescription(targetDescription);
+        auditLog.setIpAddress(ipAddress);
+        auditLog.setUserAgent(userAgent);
+        auditLog.setErrorMessage(errorMessage);
+        auditLog.setBlockchainStatus("PENDING");
+        return auditLog;
+    }
+
+    /**
+     * Journal the log and hand it to the group-commit writer once the
+     * caller's transaction commits, so a rolled-back action leaves no record
+     * claiming it happened
+     */
+    private CompletableFuture<AuditLog> persist(AuditLog auditLog) {
+        CompletableFuture<AuditLog> saved = new CompletableFuture<>();
+        Runnable insert = () -> {
+            auditJournalService.append(auditLog);
+            write(auditLog, saved);
+        };
+
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCompletion(int status) {
+                    if (status == STATUS_COMMITTED) {
+                        insert.run();
+                    } else {
+                        logsDiscardedOnRollback.increment();
+                        saved.cancel(false);
+                    }
+                }
+            });
+        } else {
+            insert.run();
+        }
+        return saved;
+    }
+
+    /**
+     * Insert a journaled log through the group-commit writer, then pass it on
+     * to the chain stage
+     */
+    private void write(AuditLog auditLog, CompletableFuture<AuditLog> saved) {
+        saved.thenAcceptAsync(this::submitToBlockchain, auditLogExecutors.chain());
+        auditLogWriter.append(auditLog).whenComplete((savedLog, error) -> {
+            if (error != null) {
+                saved.completeExceptionally(error);
+            } else {
+                saved.complete(savedLog);
+            }
+        });
+    }
+
+    /**
+     * Replay journal events left over from the previous run, once the writer
+     * and blockchain stages are up
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    @Transactional(propagation = Propagation.NOT_SUPPORTED)
+    public void replayJournal() {
+        try {
+            auditJournalService.replay(
+                    auditLog -> write(auditLog, new CompletableFuture<>()),
+                    row -> auditLogExecutors.chain().execute(() -> submitToBlockchain(row)));
+        } catch (Exception e) {
+            System.err.println("Audit journal replay failed: " + e.getMessage());
+        }
+    }
+
+    private void submitToBlockchain(AuditLog savedLog) {
+        try {
+            logToBlockchain(savedLog);
+        } catch (Exception e) {
+            System.err.println("Failed to log to blockchain: " + e.getMessage());
+            // Update status to failed but don't fail the main operation
+            String errorMessage = "Blockchain logging failed: " + e.getMessage();
+            auditLogWriter.recordBlockchainResult(savedLog.getId(), null, "FAILED", null, null, null, errorMessage,
+                    () -> auditJournalService.recordOutcome(savedLog, null, "FAILED", null, null, null, errorMessage));
+        }
+    }
+
+    private void recordBlockchainResult(AuditLog auditLog, Map<String, Object> blockchainResult) {
+        // Column update, so proofs written by the anchoring job in the meantime are kept
         if (blockchainResult != null && Boolean.TRUE.equals(blockchainResult.get("success"))) {
             String txHash = (String) blockchainResult.get("transactionHash");
-            auditLog.setBlockchainTxHash(txHash);
-            auditLog.setBlockchainStatus("CONFIRMED");
-            auditLog.setBlockchainNetwork("ETHEREUM"); // or get from blockchainResult
-            auditLogRepository.save(auditLog);
+            Long gasUsed = (Long) blockchainResult.get("gasUsed");
+            Long blockNumber = (Long) blockchainResult.get("blockNumber");
+            auditLogWriter.recordBlockchainResult(auditLog.getId(), txHash, "CONFIRMED", "ETHEREUM", gasUsed,
+                    blockNumber, null, () -> auditJournalService.recordOutcome(auditLog, txHash, "CONFIRMED",
+                            "ETHEREUM", gasUsed, blockNumber, null));
         } else {
-            auditLog.setBlockchainStatus("FAILED");
-            if (blockchainResult != null) {
-                auditLog.setErrorMessage("Blockchain logging failed: " + blockchainResult.get("error"));
-            }
-            auditLogRepository.save(auditLog);
+            String errorMessage = blockchainResult != null
+                    ? "Blockchain logging failed: " + blockchainResult.get("error") : null;
+            auditLogWriter.recordBlockchainResult(auditLog.getId(), null, "FAILED", null, null, null, errorMessage,
+                    () -> auditJournalService.recordOutcome(auditLog, null, "FAILED", null, null, null, errorMessage));
+        }
+    }
+
+    private static String encodeCursor(AuditLog last) {
+        String position = last.getCreatedAt() + "|" + last.getId();
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(position.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static String[] decodeCursor(String cursor) {
+        String position = new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8);
+        String[] parts = position.split("\\|");
+        if (parts.length != 2) {
+            throw new IllegalArgumentException("Invalid cursor");
         }
+        return parts;
     }
 
     /**
@@ -319,7 +483,7 @@ public class AuditLogService {
      */
     private String escapeCsvField(String field) {
         if (field == null) return "";
-        if (field.contains(",") || field.contains("\"") || field.contains("\n")) {
+        if (field.contains(",") || field.contains("\"") || field.contains("\n") || field.contains("\r")) {
             return "\"" + field.replace("\"", "\"\"") + "\"";
         }
         return field;
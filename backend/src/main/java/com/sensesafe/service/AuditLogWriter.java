@@ -0,0 +1,335 @@
+package com.sensesafe.service;
+
+import com.sensesafe.model.AuditLog;
+import com.sensesafe.repository.AuditLogRepository;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.sql.Types;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Group-commit writer for audit logs.
+ *
+ * Callers append rows to a bounded ring buffer and one writer thread drains
+ * it, inserting everything that arrived within the linger window in a single
+ * transaction. Hibernate sends those as JDBC batch inserts; the entity takes
+ * its ids from a pooled sequence, since IDENTITY ids turn batching off.
+ * Blockchain results are coalesced per log and written by the same thread
+ * as one batched UPDATE per flush. When the buffer is full the caller
+ * inserts its own row, so a burst slows callers down instead of dropping
+ * audit records.
+ */
+@Component
+public class AuditLogWriter {
+
+    private static final String UPDATE_BLOCKCHAIN_RESULT_SQL =
+            "UPDATE audit_logs SET blockchain_tx_hash = ?, blockchain_status = ?, blockchain_network = ?, " +
+            "blockchain_gas_used = ?, blockchain_block_number = ?, error_message = COALESCE(?, error_message) " +
+            "WHERE id = ?";
+
+    @Autowired
+    private AuditLogRepository auditLogRepository;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    // false writes every row and result in its own transaction, as before group commit
+    @Value("${audit.writer.enabled:true}")
+    private boolean enabled;
+
+    @Value("${audit.writer.buffer-capacity:8192}")
+    private int bufferCapacity;
+
+    @Value("${audit.writer.max-batch-size:500}")
+    private int maxBatchSize;
+
+    @Value("${audit.writer.linger-ms:5}")
+    private long lingerMs;
+
+    @Value("${audit.writer.flush-interval-ms:50}")
+    private long flushIntervalMs;
+
+    private BlockingQueue<PendingInsert> buffer;
+    private final Map<Long, BlockchainResult> pendingResults = new ConcurrentHashMap<>();
+    private TransactionTemplate transactionTemplate;
+    private Thread writerThread;
+    private volatile boolean running;
+
+    private final LongAdder appended = new LongAdder();
+    private final LongAdder inserted = new LongAdder();
+    private final LongAdder insertBatches = new LongAdder();
+    private final LongAdder batchedRows = new LongAdder();
+    private final LongAdder overflowInserts = new LongAdder();
+    private final LongAdder insertFailures = new LongAdder();
+    private final LongAdder resultsQueued = new LongAdder();
+    private final LongAdder resultsCoalesced = new LongAdder();
+    private final LongAdder resultsWritten = new LongAdder();
+    private final LongAdder updateBatches = new LongAdder();
+    private final LongAdder totalInsertFlushNanos = new LongAdder();
+    private final AtomicLong largestBatch = new AtomicLong();
+
+    @PostConstruct
+    public void init() {
+        // A new transaction, since callers may be inside another transaction's completion callback
+        transactionTemplate = new TransactionTemplate(transactionManager);
+        transactionTemplate.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+        buffer = new ArrayBlockingQueue<>(bufferCapacity);
+        if (enabled) {
+            running = true;
+            writerThread = new Thread(this::run, "audit-writer");
+            writerThread.setDaemon(true);
+            writerThread.start();
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() throws InterruptedException {
+        if (writerThread == null) {
+            return;
+        }
+        running = false;
+        writerThread.join(TimeUnit.SECONDS.toMillis(10));
+        // Anything appended while the writer was stopping
+        PendingInsert pending;
+        while ((pending = buffer.poll()) != null) {
+            insertDirect(pending.auditLog, pending.saved);
+        }
+        flushResults();
+    }
+
+    /**
+     * Queue a new log for the next group commit; the future completes once
+     * its row is committed
+     */
+    public CompletableFuture<AuditLog> append(AuditLog auditLog) {
+        CompletableFuture<AuditLog> saved = new CompletableFuture<>();
+        appended.increment();
+        if (!running) {
+            insertDirect(auditLog, saved);
+        } else if (!buffer.offer(new PendingInsert(auditLog, saved))) {
+            overflowInserts.increment();
+            insertDirect(auditLog, saved);
+        }
+        return saved;
+    }
+
+    /**
+     * Queue a log's blockchain outcome; a later result for the same log
+     * replaces one that hasn't been written yet. afterWrite runs once the
+     * update is committed.
+     */
+    public void recordBlockchainResult(Long auditLogId, String txHash, String status, String network,
+                                       Long gasUsed, Long blockNumber, String errorMessage, Runnable afterWrite) {
+        if (!running) {
+            auditLogRepository.updateBlockchainResult(auditLogId, txHash, status, network, gasUsed, blockNumber,
+                    errorMessage);
+            afterWrite.run();
+            return;
+        }
+        resultsQueued.increment();
+        BlockchainResult result = new BlockchainResult(auditLogId, txHash, status, network, gasUsed, blockNumber,
+                errorMessage, afterWrite);
+        pendingResults.compute(auditLogId, (id, previous) -> {
+            if (previous != null) {
+                resultsCoalesced.increment();
+                Runnable previousAfterWrite = previous.afterWrite;
+                result.afterWrite = () -> {
+                    previousAfterWrite.run();
+                    afterWrite.run();
+                };
+            }
+            return result;
+        });
+    }
+
+    public Map<String, Object> getMetrics() {
+        long batches = insertBatches.sum();
+        Map<String, Object> metrics = new HashMap<>();
+        metrics.put("enabled", enabled);
+        metrics.put("buffered", buffer.size());
+        metrics.put("bufferCapacity", bufferCapacity);
+        metrics.put("appended", appended.sum());
+        metrics.put("inserted", inserted.sum());
+        metrics.put("insertBatches", batches);
+        metrics.put("avgBatchSize", batches > 0 ? (double) batchedRows.sum() / batches : 0.0);
+        metrics.put("largestBatch", largestBatch.get());
+        metrics.put("avgFlushMillis", batches > 0 ? totalInsertFlushNanos.sum() / batches / 1_000_000.0 : 0.0);
+        metrics.put("overflowInserts", overflowInserts.sum());
+        metrics.put("insertFailures", insertFailures.sum());
+        metrics.put("pendingResults", pendingResults.size());
+        metrics.put("resultsQueued", resultsQueued.sum());
+        metrics.put("resultsCoalesced", resultsCoalesced.sum());
+        metrics.put("resultsWritten", resultsWritten.sum());
+        metrics.put("updateBatches", updateBatches.sum());
+        return metrics;
+    }
+
+    private void run() {
+        List<PendingInsert> batch = new ArrayList<>(maxBatchSize);
+        while (running || !buffer.isEmpty()) {
+            try {
+                PendingInsert first = buffer.poll(flushIntervalMs, TimeUnit.MILLISECONDS);
+                if (first != null) {
+                    batch.add(first);
+                    // Give concurrent callers a moment to join this commit
+                    long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(lingerMs);
+                    while (batch.size() < maxBatchSize) {
+                        buffer.drainTo(batch, maxBatchSize - batch.size());
+                        long remaining = deadline - System.nanoTime();
+                        if (batch.size() >= maxBatchSize || remaining <= 0) {
+                            break;
+                        }
+                        PendingInsert next = buffer.poll(remaining, TimeUnit.NANOSECONDS);
+                        if (next == null) {
+                            break;
+                        }
+                        batch.add(next);
+                    }
+                    flushInserts(batch);
+                    batch.clear();
+                }
+                flushResults();
+            } catch (InterruptedException e) {
+                running = false;
+            } catch (Exception e) {
+                System.err.println("Audit writer flush failed: " + e.getMessage());
+            }
+        }
+    }
+
+    private void flushInserts(List<PendingInsert> batch) {
+        long start = System.nanoTime();
+        List<AuditLog> logs = new ArrayList<>(batch.size());
+        for (PendingInsert pending : batch) {
+            logs.add(pending.auditLog);
+        }
+        try {
+            List<AuditLog> savedLogs = transactionTemplate.execute(status -> auditLogRepository.saveAll(logs));
+            inserted.add(batch.size());
+            insertBatches.increment();
+            batchedRows.add(batch.size());
+            largestBatch.accumulateAndGet(batch.size(), Math::max);
+            totalInsertFlushNanos.add(System.nanoTime() - start);
+            for (int i = 0; i < batch.size(); i++) {
+                batch.get(i).saved.complete(savedLogs.get(i));
+            }
+        } catch (Exception e) {
+            // One bad row shouldn't fail the rows committed with it, so retry them one at a time
+            System.err.println("Audit log batch of " + batch.size() + " failed, retrying row by row: " + e.getMessage());
+            for (PendingInsert pending : batch) {
+                pending.auditLog.setId(null);
+                insertDirect(pending.auditLog, pending.saved);
+            }
+        }
+    }
+
+    private void insertDirect(AuditLog auditLog, CompletableFuture<AuditLog> saved) {
+        try {
+            AuditLog savedLog = transactionTemplate.execute(status -> auditLogRepository.save(auditLog));
+            inserted.increment();
+            saved.complete(savedLog);
+        } catch (Exception e) {
+            insertFailures.increment();
+            System.err.println("Failed to persist audit log " + auditLog.getActionType() + ": " + e.getMessage());
+            saved.completeExceptionally(e);
+        }
+    }
+
+    private void flushResults() {
+        if (pendingResults.isEmpty()) {
+            return;
+        }
+        List<BlockchainResult> results = new ArrayList<>(pendingResults.size());
+        for (Long auditLogId : pendingResults.keySet()) {
+            BlockchainResult result = pendingResults.remove(auditLogId);
+            if (result != null) {
+                results.add(result);
+            }
+        }
+        try {
+            transactionTemplate.executeWithoutResult(status ->
+                    jdbcTemplate.batchUpdate(UPDATE_BLOCKCHAIN_RESULT_SQL, results, maxBatchSize, (ps, result) -> {
+                        ps.setString(1, result.txHash);
+                        ps.setString(2, result.status);
+                        ps.setString(3, result.network);
+                        ps.setObject(4, result.gasUsed, Types.BIGINT);
+                        ps.setObject(5, result.blockNumber, Types.BIGINT);
+                        ps.setString(6, result.errorMessage);
+                        ps.setLong(7, result.auditLogId);
+                    }));
+            resultsWritten.add(results.size());
+            updateBatches.increment();
+            for (BlockchainResult result : results) {
+                result.afterWrite.run();
+            }
+        } catch (Exception e) {
+            System.err.println("Batched blockchain status update failed, writing " + results.size() +
+                    " results one by one: " + e.getMessage());
+            for (BlockchainResult result : results) {
+                try {
+                    auditLogRepository.updateBlockchainResult(result.auditLogId, result.txHash, result.status,
+                            result.network, result.gasUsed, result.blockNumber, result.errorMessage);
+                    resultsWritten.increment();
+                    result.afterWrite.run();
+                } catch (Exception rowError) {
+                    System.err.println("Failed to record blockchain result for audit log " + result.auditLogId +
+                            ": " + rowError.getMessage());
+                }
+            }
+        }
+    }
+
+    private static final class PendingInsert {
+        private final AuditLog auditLog;
+        private final CompletableFuture<AuditLog> saved;
+
+        PendingInsert(AuditLog auditLog, CompletableFuture<AuditLog> saved) {
+            this.auditLog = auditLog;
+            this.saved = saved;
+        }
+    }
+
+    private static final class BlockchainResult {
+        private final Long auditLogId;
+        private final String txHash;
+        private final String status;
+        private final String network;
+        private final Long gasUsed;
+        private final Long blockNumber;
+        private final String errorMessage;
+        private Runnable afterWrite;
+
+        BlockchainResult(Long auditLogId, String txHash, String status, String network, Long gasUsed,
+                         Long blockNumber, String errorMessage, Runnable afterWrite) {
+            this.auditLogId = auditLogId;
+            this.txHash = txHash;
+            this.status = status;
+            this.network = network;
+            this.gasUsed = gasUsed;
+            this.blockNumber = blockNumber;
+            this.errorMessage = errorMessage;
+            this.afterWrite = afterWrite;
+        }
+    }
+}
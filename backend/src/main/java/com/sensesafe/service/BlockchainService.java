@@ -1,21 +1,18 @@
 package com.sensesafe.service;
 
+import jakarta.annotation.PreDestroy;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.core.io.ClassPathResource;
 import org.springframework.stereotype.Service;
 import org.web3j.crypto.Credentials;
 import org.web3j.protocol.Web3j;
-import org.web3j.protocol.core.methods.response.TransactionReceipt;
 import org.web3j.protocol.http.HttpService;
-import org.web3j.tx.gas.DefaultGasProvider;
 import org.web3j.abi.FunctionEncoder;
-import org.web3j.abi.TypeReference;
 import org.web3j.abi.datatypes.Function;
 import org.web3j.abi.datatypes.Type;
+import org.web3j.abi.datatypes.generated.Bytes32;
 import org.web3j.abi.datatypes.generated.Uint256;
 import org.web3j.abi.datatypes.Utf8String;
-import org.web3j.protocol.core.methods.request.Transaction;
-import org.web3j.protocol.core.methods.response.EthSendTransaction;
 
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.fasterxml.jackson.databind.JsonNode;
@@ -25,31 +22,87 @@ import java.io.IOException;
 import java.math.BigInteger;
 import java.nio.file.Files;
 import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.locks.ReentrantLock;
 
 @Service
 public class BlockchainService {
 
-    @Value("${blockchain.rpc-url:http://localhost:8545}")
+    @Value("${blockchain.rpc-url:}")
     private String rpcUrl;
 
-    @Value("${blockchain.private-key:0x0000000000000000000000000000000000000000000000000000000000000000}")
+    @Value("${blockchain.private-key:}")
     private String privateKey;
 
     @Value("${blockchain.contract-address:0x0000000000000000000000000000000000000000}")
     private String contractAddress;
 
+    @Value("${blockchain.submitter.batch-mode:pipeline}")
+    private String batchMode;
+
+    @Value("${blockchain.submitter.queue-capacity:10000}")
+    private int submitQueueCapacity;
+
+    @Value("${blockchain.submitter.max-batch-size:32}")
+    private int maxBatchSize;
+
+    @Value("${blockchain.submitter.linger-ms:200}")
+    private long lingerMs;
+
+    @Value("${blockchain.submitter.max-in-flight:64}")
+    private int maxInFlight;
+
+    @Value("${blockchain.submitter.max-attempts:4}")
+    private int maxAttempts;
+
+    @Value("${blockchain.submitter.receipt-poll-ms:2000}")
+    private long receiptPollMs;
+
+    @Value("${blockchain.submitter.receipt-timeout-ms:120000}")
+    private long receiptTimeoutMs;
+
+    @Value("${blockchain.submitter.gas-limit:300000}")
+    private long gasLimit;
+
+    @Value("${blockchain.submitter.fallback-gas-price:20000000000}")
+    private long fallbackGasPrice;
+
+    @Value("${blockchain.submitter.gas-bump-percent:15}")
+    private int gasBumpPercent;
+
+    @Value("${blockchain.submitter.simulate-when-unavailable:true}")
+    private boolean simulateWhenUnavailable;
+
     private Web3j web3j;
     private Credentials credentials;
-    private DefaultGasProvider gasProvider;
+    private ChainTransactionSubmitter submitter;
     private JsonNode contractAbi;
-    private boolean isInitialized = false;
+    private volatile boolean isInitialized = false;
+    private volatile boolean warnedSendingOff = false;
+    // Initializing reads the ABI file while holding this, so it isn't a monitor
+    private final ReentrantLock initLock = new ReentrantLock();
 
     public BlockchainService() {
         // Initialize will be called when values are injected
     }
 
     private void initialize() {
-        if (!isInitialized) {
+        if (isInitialized) {
+            return;
+        }
+        initLock.lock();
+        try {
+            if (isInitialized) {
+                return;
+            }
+            if (!isSendingConfigured()) {
+                if (!warnedSendingOff) {
+                    warnedSendingOff = true;
+                    System.err.println("Blockchain sending is off; set BLOCKCHAIN_RPC_URL and "
+                            + "BLOCKCHAIN_PRIVATE_KEY to enable it");
+                }
+                return;
+            }
             try {
                 // Load ABI file
                 loadContractAbi();
@@ -57,7 +110,13 @@ public class BlockchainService {
                 // Initialize Web3j connection
                 this.web3j = Web3j.build(new HttpService(rpcUrl));
                 this.credentials = Credentials.create(privateKey);
-                this.gasProvider = new DefaultGasProvider();
+                
+                // All writes go through one submitter so nonces are assigned in one place
+                this.submitter = new ChainTransactionSubmitter(web3j, credentials, contractAddress,
+                        ChainTransactionSubmitter.BatchMode.valueOf(batchMode.trim().toUpperCase()),
+                        submitQueueCapacity, maxBatchSize, lingerMs, maxInFlight, maxAttempts, receiptPollMs,
+                        receiptTimeoutMs, BigInteger.valueOf(gasLimit), BigInteger.valueOf(fallbackGasPrice),
+                        gasBumpPercent, simulateWhenUnavailable);
                 
                 isInitialized = true;
                 System.out.println("Blockchain service initialized successfully");
@@ -67,6 +126,8 @@ public class BlockchainService {
                 System.err.println("Failed to initialize blockchain service: " + e.getMessage());
                 isInitialized = false;
             }
+        } finally {
+            initLock.unlock();
         }
     }
 
@@ -83,107 +144,60 @@ public class BlockchainService {
         }
     }
 
+    /**
+     * Queue an incident verification event. The returned map says whether it
+     * was accepted; the transaction hash is only known once the writer sends it.
+     */
     public Map<String, Object> logVerified(Long incidentId) {
-        Map<String, Object> result = new HashMap<>();
-        
-        try {
-            initialize();
-            if (!isInitialized) {
-                throw new RuntimeException("Blockchain service not initialized");
-            }
-
-            // Create function call for logVerified
-            Function function = new Function(
-                "logVerified",
-                Arrays.asList(new Uint256(BigInteger.valueOf(incidentId))),
-                Collections.emptyList()
-            );
-
-            String txHash = executeContractFunction(function);
-            
-            result.put("success", true);
-            result.put("transactionHash", txHash);
-            result.put("message", "Incident verification logged on blockchain");
-            result.put("incidentId", incidentId);
-            result.put("timestamp", System.currentTimeMillis() / 1000);
-            
-        } catch (Exception e) {
-            result.put("success", false);
-            result.put("error", e.getMessage());
-            System.err.println("Failed to log verification on blockchain: " + e.getMessage());
-        }
-        
+        Map<String, Object> result = queued(logVerifiedAsync(incidentId),
+                "Incident verification queued for blockchain");
+        result.put("incidentId", incidentId);
         return result;
     }
 
     public Map<String, Object> logResource(Long incidentId, String resourceId) {
-        Map<String, Object> result = new HashMap<>();
-        
-        try {
-            initialize();
-            if (!isInitialized) {
-                throw new RuntimeException("Blockchain service not initialized");
-            }
-
-            // Create function call for logResource
-            Function function = new Function(
-                "logResource",
-                Arrays.asList(
-                    new Uint256(BigInteger.valueOf(incidentId)),
-                    new Utf8String(resourceId)
-                ),
-                Collections.emptyList()
-            );
-
-            String txHash = executeContractFunction(function);
-            
-            result.put("success", true);
-            result.put("transactionHash", txHash);
-            result.put("message", "Resource allocation logged on blockchain");
-            result.put("incidentId", incidentId);
-            result.put("resourceId", resourceId);
-            result.put("timestamp", System.currentTimeMillis() / 1000);
-            
-        } catch (Exception e) {
-            result.put("success", false);
-            result.put("error", e.getMessage());
-            System.err.println("Failed to log resource allocation on blockchain: " + e.getMessage());
-        }
-        
+        Map<String, Object> result = queued(logResourceAsync(incidentId, resourceId),
+                "Resource allocation queued for blockchain");
+        result.put("incidentId", incidentId);
+        result.put("resourceId", resourceId);
         return result;
     }
 
     public Map<String, Object> logResolved(Long incidentId) {
-        Map<String, Object> result = new HashMap<>();
-        
-        try {
-            initialize();
-            if (!isInitialized) {
-                throw new RuntimeException("Blockchain service not initialized");
-            }
+        Map<String, Object> result = queued(logResolvedAsync(incidentId),
+                "Incident resolution queued for blockchain");
+        result.put("incidentId", incidentId);
+        return result;
+    }
 
-            // Create function call for logResolved
-            Function function = new Function(
-                "logResolved",
-                Arrays.asList(new Uint256(BigInteger.valueOf(incidentId))),
-                Collections.emptyList()
-            );
+    /**
+     * Log incident verification; completes once the transaction is mined or has failed
+     */
+    public CompletableFuture<Map<String, Object>> logVerifiedAsync(Long incidentId) {
+        return submit(new Function(
+            "logVerified",
+            Arrays.asList(new Uint256(BigInteger.valueOf(incidentId))),
+            Collections.emptyList()
+        ));
+    }
 
-            String txHash = executeContractFunction(function);
-            
-            result.put("success", true);
-            result.put("transactionHash", txHash);
-            result.put("message", "Incident resolution logged on blockchain");
-            result.put("incidentId", incidentId);
-            result.put("timestamp", System.currentTimeMillis() / 1000);
-            
-        } catch (Exception e) {
-            result.put("success", false);
-            result.put("error", e.getMessage());
-            System.err.println("Failed to log resolution on blockchain: " + e.getMessage());
-        }
-        
-        return result;
+    public CompletableFuture<Map<String, Object>> logResourceAsync(Long incidentId, String resourceId) {
+        return submit(new Function(
+            "logResource",
+            Arrays.asList(
+                new Uint256(BigInteger.valueOf(incidentId)),
+                new Utf8String(resourceId)
+            ),
+            Collections.emptyList()
+        ));
+    }
+
+    public CompletableFuture<Map<String, Object>> logResolvedAsync(Long incidentId) {
+        return submit(new Function(
+            "logResolved",
+            Arrays.asList(new Uint256(BigInteger.valueOf(incidentId))),
+            Collections.emptyList()
+        ));
     }
 
     public Map<String, Object> getIncidentAuditTrail(Long incidentId) {
@@ -235,6 +249,7 @@ public class BlockchainService {
             result.put("rpcUrl", rpcUrl);
             result.put("abiLoaded", contractAbi != null);
             result.put("networkId", web3j.netVersion().send().getNetVersion());
+            result.put("submitter", submitter.getMetrics());
             
         } catch (Exception e) {
             result.put("status", "unhealthy");
@@ -246,34 +261,51 @@ public class BlockchainService {
         return result;
     }
 
-    private String executeContractFunction(Function function) throws Exception {
-        try {
-            // Encode the function call
-            String encodedFunction = FunctionEncoder.encode(function);
-            
-            // Create transaction
-            Transaction transaction = Transaction.createFunctionCallTransaction(
-                credentials.getAddress(),
-                null, // nonce will be determined automatically
-                gasProvider.getGasPrice(),
-                gasProvider.getGasLimit(),
-                contractAddress,
-                encodedFunction
-            );
-
-            // Send transaction
-            EthSendTransaction response = web3j.ethSendTransaction(transaction).send();
-            
-            if (response.hasError()) {
-                throw new RuntimeException("Transaction failed: " + response.getError().getMessage());
+    /**
+     * Sending needs a node and a signing key, and neither has a default
+     */
+    private boolean isSendingConfigured() {
+        return rpcUrl != null && !rpcUrl.isBlank() && privateKey != null && !privateKey.isBlank();
+    }
+
+    private CompletableFuture<Map<String, Object>> submit(Function function) {
+        initialize();
+        if (!isInitialized && !isSendingConfigured() && simulateWhenUnavailable) {
+            return CompletableFuture.completedFuture(
+                    ChainTransactionSubmitter.simulatedResult(function.getName(), FunctionEncoder.encode(function), 0));
+        }
+        if (!isInitialized) {
+            Map<String, Object> result = new HashMap<>();
+            result.put("success", false);
+            result.put("error", isSendingConfigured() ? "Blockchain service not initialized"
+                    : "Blockchain sending is off");
+            return CompletableFuture.completedFuture(result);
+        }
+        return submitter.submit(function);
+    }
+
+    private Map<String, Object> queued(CompletableFuture<Map<String, Object>> future, String message) {
+        Map<String, Object> done = future.getNow(null);
+        if (done != null) {
+            // Rejected (queue full, not initialized) or answered without a node
+            Map<String, Object> result = new HashMap<>(done);
+            if (!Boolean.TRUE.equals(done.get("success"))) {
+                System.err.println("Failed to queue blockchain event: " + done.get("error"));
             }
-            
-            return response.getTransactionHash();
-            
-        } catch (Exception e) {
-            // Fallback to simulation for development
-            System.err.println("Real blockchain transaction failed, using simulation: " + e.getMessage());
-            return simulateTransaction(function.getName(), function.getInputParameters().toArray());
+            return result;
+        }
+        Map<String, Object> result = new HashMap<>();
+        result.put("success", true);
+        result.put("status", "QUEUED");
+        result.put("message", message);
+        result.put("timestamp", System.currentTimeMillis() / 1000);
+        return result;
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        if (submitter != null) {
+            submitter.shutdown();
         }
     }
 
@@ -339,44 +371,50 @@ public class BlockchainService {
      * Log generic audit action on blockchain
      */
     public Map<String, Object> logGenericAudit(AuditLog auditLog) {
-        Map<String, Object> result = new HashMap<>();
-        
-        try {
-            initialize();
-            if (!isInitialized) {
-                throw new RuntimeException("Blockchain service not initialized");
-            }
+        Map<String, Object> result = queued(logGenericAuditAsync(auditLog), "Generic audit queued for blockchain");
+        result.put("actionType", auditLog.getActionType());
+        result.put("userId", auditLog.getUserId());
+        return result;
+    }
 
-            // Create function call for generic audit logging
-            List<Type> inputParameters = Arrays.asList(
-                new Utf8String(auditLog.getActionType()),
-                new Utf8String(auditLog.getUserId()),
-                new Utf8String(auditLog.getTargetType() != null ? auditLog.getTargetType() : ""),
-                new Utf8String(auditLog.getTargetId() != null ? auditLog.getTargetId() : ""),
-                new Utf8String(auditLog.getStatus())
-            );
-            
-            Function function = new Function(
-                "logGenericAudit",
-                inputParameters,
-                Collections.emptyList()
-            );
+    public CompletableFuture<Map<String, Object>> logGenericAuditAsync(AuditLog auditLog) {
+        // Create function call for generic audit logging
+        List<Type> inputParameters = Arrays.asList(
+            new Utf8String(auditLog.getActionType()),
+            new Utf8String(auditLog.getUserId()),
+            new Utf8String(auditLog.getTargetType() != null ? auditLog.getTargetType() : ""),
+            new Utf8String(auditLog.getTargetId() != null ? auditLog.getTargetId() : ""),
+            new Utf8String(auditLog.getStatus())
+        );
+
+        return submit(new Function(
+            "logGenericAudit",
+            inputParameters,
+            Collections.emptyList()
+        ));
+    }
 
-            String txHash = executeContractFunction(function);
-            
-            result.put("success", true);
-            result.put("transactionHash", txHash);
-            result.put("message", "Generic audit logged on blockchain");
-            result.put("actionType", auditLog.getActionType());
-            result.put("userId", auditLog.getUserId());
-            result.put("timestamp", System.currentTimeMillis() / 1000);
-            
-        } catch (Exception e) {
-            result.put("success", false);
-            result.put("error", e.getMessage());
-            System.err.println("Failed to log generic audit on blockchain: " + e.getMessage());
+    /**
+     * Commit a Merkle root of off-chain records. With {@code toContract} it
+     * calls anchorRoot(bytes32,uint256) on the audit contract; otherwise the
+     * same call data is sent to the writer's own address, which needs no
+     * contract support and leaves the root readable from the transaction.
+     */
+    public CompletableFuture<Map<String, Object>> anchorRootAsync(byte[] root, int leafCount, boolean toContract) {
+        initialize();
+        Function function = new Function(
+            ChainTransactionSubmitter.ANCHOR_FUNCTION,
+            Arrays.asList(new Bytes32(root), new Uint256(leafCount)),
+            Collections.emptyList()
+        );
+        if (toContract || !isInitialized) {
+            return submit(function);
         }
-        
-        return result;
+        return submitter.submit(function, credentials.getAddress());
+    }
+
+    public Map<String, Object> getSubmitterMetrics() {
+        initialize();
+        return submitter != null ? submitter.getMetrics() : Map.of("initialized", false);
     }
 }
\ No newline at end of file
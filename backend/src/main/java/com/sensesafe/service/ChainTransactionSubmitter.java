@@ -0,0 +1,574 @@
+package com.sensesafe.service;
+
+import com.sensesafe.config.LatencyHistogram;
+import org.web3j.abi.FunctionEncoder;
+import org.web3j.abi.datatypes.Function;
+import org.web3j.abi.datatypes.generated.Bytes32;
+import org.web3j.abi.datatypes.generated.Uint256;
+import org.web3j.crypto.Credentials;
+import org.web3j.crypto.Hash;
+import org.web3j.crypto.RawTransaction;
+import org.web3j.crypto.TransactionEncoder;
+import org.web3j.protocol.Web3j;
+import org.web3j.protocol.core.DefaultBlockParameterName;
+import org.web3j.protocol.core.methods.response.EthSendTransaction;
+import org.web3j.protocol.core.methods.response.TransactionReceipt;
+import org.web3j.utils.Numeric;
+
+import java.math.BigInteger;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Single writer for transactions to the audit contract.
+ *
+ * Callers queue contract calls and get a future. One writer thread drains
+ * the queue in batches, signs each transaction locally with a nonce it tracks
+ * itself and sends it with eth_sendRawTransaction, so a burst of events goes
+ * out as consecutive nonces without a round trip per event or waiting for the
+ * previous one to be mined. In ANCHOR mode a batch is instead committed as a
+ * single anchorRoot(bytes32,uint256) call carrying the Merkle root of the
+ * encoded calls.
+ *
+ * The same thread polls receipts. A transaction without a receipt after the
+ * timeout is re-sent at the same nonce with a higher gas price; a send the
+ * node rejects is retried with a fresh nonce. Reverts are final, since
+ * sending the same call again would revert again. Futures complete with the
+ * usual result map, with "success" false on failure.
+ */
+public class ChainTransactionSubmitter {
+
+    public enum BatchMode { PIPELINE, ANCHOR }
+
+    public static final String ANCHOR_FUNCTION = "anchorRoot";
+
+    private final Web3j web3j;
+    private final Credentials credentials;
+    private final String contractAddress;
+    private final BatchMode batchMode;
+    private final int maxBatchSize;
+    private final long lingerNanos;
+    private final int maxInFlight;
+    private final int maxAttempts;
+    private final long receiptPollMs;
+    private final long receiptTimeoutNanos;
+    private final BigInteger gasLimit;
+    private final BigInteger fallbackGasPrice;
+    private final int gasBumpPercent;
+    private final boolean simulateWhenUnavailable;
+
+    private final BlockingQueue<Submission> queue;
+    // Writer-thread state
+    private final ArrayDeque<Submission> retries = new ArrayDeque<>();
+    private final List<PendingTransaction> inFlight = new ArrayList<>();
+    private final NonceManager nonces = new NonceManager();
+    private long chainId = -1;
+
+    private final Thread writer;
+    private volatile boolean running = true;
+    private volatile boolean connected = false;
+    private volatile int inFlightCount = 0;
+
+    private final LongAdder submitted = new LongAdder();
+    private final LongAdder rejected = new LongAdder();
+    private final LongAdder batches = new LongAdder();
+    private final LongAdder transactionsSent = new LongAdder();
+    private final LongAdder eventsSent = new LongAdder();
+    private final LongAdder replacements = new LongAdder();
+    private final LongAdder nonceResyncs = new LongAdder();
+    private final LongAdder confirmed = new LongAdder();
+    private final LongAdder reverted = new LongAdder();
+    private final LongAdder failed = new LongAdder();
+    private final LongAdder simulated = new LongAdder();
+    private final LatencyHistogram confirmationLatency = new LatencyHistogram(
+            new long[] {1_000, 2_500, 5_000, 10_000, 15_000, 30_000, 60_000, 120_000, 300_000});
+
+    public ChainTransactionSubmitter(Web3j web3j, Credentials credentials, String contractAddress,
+                                     BatchMode batchMode, int queueCapacity, int maxBatchSize, long lingerMs,
+                                     int maxInFlight, int maxAttempts, long receiptPollMs, long receiptTimeoutMs,
+                                     BigInteger gasLimit, BigInteger fallbackGasPrice, int gasBumpPercent,
+                                     boolean simulateWhenUnavailable) {
+        this.web3j = web3j;
+        this.credentials = credentials;
+        this.contractAddress = contractAddress;
+        this.batchMode = batchMode;
+        this.maxBatchSize = maxBatchSize;
+        this.lingerNanos = TimeUnit.MILLISECONDS.toNanos(lingerMs);
+        this.maxInFlight = maxInFlight;
+        this.maxAttempts = maxAttempts;
+        this.receiptPollMs = receiptPollMs;
+        this.receiptTimeoutNanos = TimeUnit.MILLISECONDS.toNanos(receiptTimeoutMs);
+        this.gasLimit = gasLimit;
+        this.fallbackGasPrice = fallbackGasPrice;
+        this.gasBumpPercent = gasBumpPercent;
+        this.simulateWhenUnavailable = simulateWhenUnavailable;
+        this.queue = new LinkedBlockingQueue<>(queueCapacity);
+        this.writer = new Thread(this::writeLoop, "chain-tx-writer");
+        this.writer.setDaemon(true);
+        this.writer.start();
+    }
+
+    /**
+     * Queue one contract call. The future fails straight away if the queue
+     * is full, so callers never block on the chain.
+     */
+    public CompletableFuture<Map<String, Object>> submit(Function function) {
+        return submit(function, contractAddress);
+    }
+
+    /**
+     * Queue a call to another address, e.g. the writer's own account for
+     * calldata-only anchors. Such calls are never folded into an anchor batch.
+     */
+    public CompletableFuture<Map<String, Object>> submit(Function function, String to) {
+        submitted.increment();
+        Submission submission = new Submission(function, to);
+        if (!running || !queue.offer(submission)) {
+            rejected.increment();
+            submission.future.complete(failure(submission, "Blockchain submit queue is full"));
+        }
+        return submission.future;
+    }
+
+    public boolean isConnected() {
+        return connected;
+    }
+
+    public void shutdown() {
+        running = false;
+        writer.interrupt();
+        List<Submission> leftovers = new ArrayList<>();
+        queue.drainTo(leftovers);
+        for (Submission submission : leftovers) {
+            submission.future.complete(failure(submission, "Blockchain submitter stopped"));
+        }
+    }
+
+    public Map<String, Object> getMetrics() {
+        long batchCount = batches.sum();
+        Map<String, Object> metrics = new HashMap<>();
+        metrics.put("connected", connected);
+        metrics.put("batchMode", batchMode.name());
+        metrics.put("queued", queue.size());
+        metrics.put("inFlightTransactions", inFlightCount);
+        metrics.put("nextNonce", nonces.peek());
+        metrics.put("submitted", submitted.sum());
+        metrics.put("rejected", rejected.sum());
+        metrics.put("batches", batchCount);
+        metrics.put("transactionsSent", transactionsSent.sum());
+        metrics.put("eventsPerTransaction", transactionsSent.sum() > 0
+                ? (double) eventsSent.sum() / transactionsSent.sum() : 0.0);
+        metrics.put("replacements", replacements.sum());
+        metrics.put("nonceResyncs", nonceResyncs.sum());
+        metrics.put("confirmed", confirmed.sum());
+        metrics.put("reverted", reverted.sum());
+        metrics.put("failed", failed.sum());
+        metrics.put("simulated", simulated.sum());
+        metrics.put("confirmationLatency", confirmationLatency.snapshot());
+        return metrics;
+    }
+
+    private void writeLoop() {
+        long nextPoll = System.nanoTime();
+        while (running) {
+            try {
+                if (!connected && !connect()) {
+                    drainWhileUnavailable();
+                    Thread.sleep(5_000);
+                    continue;
+                }
+                if (inFlight.size() < maxInFlight) {
+                    List<Submission> batch = nextBatch(inFlight.isEmpty() ? 1_000 : receiptPollMs);
+                    if (!batch.isEmpty()) {
+                        send(batch);
+                    }
+                } else {
+                    Thread.sleep(receiptPollMs);
+                }
+                if (!inFlight.isEmpty() && System.nanoTime() - nextPoll >= 0) {
+                    pollReceipts();
+                    nextPoll = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(receiptPollMs);
+                }
+                inFlightCount = inFlight.size();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            } catch (Exception e) {
+                // Transport errors end up here; the node is re-checked before the next send
+                System.err.println("Blockchain writer error: " + e.getMessage());
+                connected = false;
+            }
+        }
+    }
+
+    private boolean connect() {
+        try {
+            chainId = web3j.ethChainId().send().getChainId().longValue();
+            nonces.sync(pendingNonce());
+            connected = true;
+            System.out.println("Blockchain writer connected to chain " + chainId + " as " + credentials.getAddress()
+                    + ", next nonce " + nonces.peek());
+            return true;
+        } catch (Exception e) {
+            System.err.println("Blockchain writer cannot reach the node: " + e.getMessage());
+            return false;
+        }
+    }
+
+    private List<Submission> nextBatch(long waitMs) throws InterruptedException {
+        List<Submission> batch = new ArrayList<>(maxBatchSize);
+        while (!retries.isEmpty() && batch.size() < maxBatchSize) {
+            batch.add(retries.poll());
+        }
+        if (batch.isEmpty()) {
+            Submission first = queue.poll(waitMs, TimeUnit.MILLISECONDS);
+            if (first == null) {
+                return batch;
+            }
+            batch.add(first);
+        }
+        long deadline = System.nanoTime() + lingerNanos;
+        while (batch.size() < maxBatchSize) {
+            queue.drainTo(batch, maxBatchSize - batch.size());
+            long remaining = deadline - System.nanoTime();
+            if (batch.size() >= maxBatchSize || remaining <= 0) {
+                break;
+            }
+            Submission next = queue.poll(remaining, TimeUnit.NANOSECONDS);
+            if (next == null) {
+                break;
+            }
+            batch.add(next);
+        }
+        return batch;
+    }
+
+    private void send(List<Submission> batch) {
+        batches.increment();
+        BigInteger gasPrice = currentGasPrice();
+        List<Submission> single = batch;
+        if (batchMode == BatchMode.ANCHOR) {
+            List<Submission> contractCalls = new ArrayList<>(batch.size());
+            single = new ArrayList<>();
+            for (Submission submission : batch) {
+                (submission.to.equalsIgnoreCase(contractAddress) ? contractCalls : single).add(submission);
+            }
+            if (contractCalls.size() > 1) {
+                List<byte[]> leaves = new ArrayList<>(contractCalls.size());
+                for (Submission submission : contractCalls) {
+                    leaves.add(MerkleTree.leaf(Numeric.hexStringToByteArray(submission.data)));
+                }
+                byte[] root = new MerkleTree(leaves).getRoot();
+                Function anchor = new Function(ANCHOR_FUNCTION,
+                        List.of(new Bytes32(root), new Uint256(contractCalls.size())), Collections.emptyList());
+                broadcast(new PendingTransaction(FunctionEncoder.encode(anchor), contractAddress, contractCalls,
+                        gasPrice, Numeric.toHexString(root)));
+            } else {
+                single.addAll(contractCalls);
+            }
+        }
+        for (Submission submission : single) {
+            broadcast(new PendingTransaction(submission.data, submission.to, List.of(submission), gasPrice, null));
+        }
+    }
+
+    /**
+     * Send a new transaction with the next local nonce. If the node says the
+     * nonce is already used, resync from its pending count and try once more.
+     */
+    private void broadcast(PendingTransaction tx) {
+        for (Submission submission : tx.submissions) {
+            submission.attempts++;
+        }
+        for (int attempt = 0; attempt < 2; attempt++) {
+            tx.nonce = nonces.reserve();
+            String error;
+            try {
+                error = sendSigned(tx);
+            } catch (Exception e) {
+                // The node may have it; if not, the receipt timeout re-sends at the same nonce
+                System.err.println("Send of nonce " + tx.nonce + " failed in transport: " + e.getMessage());
+                error = null;
+            }
+            if (error == null) {
+                tx.sends = 1;
+                inFlight.add(tx);
+                transactionsSent.increment();
+                eventsSent.add(tx.submissions.size());
+                return;
+            }
+            // The nonce was not consumed, so later ones would leave a gap
+            if (!resyncNonce()) {
+                retryOrFail(tx.submissions, "Lost the node while sending: " + error);
+                return;
+            }
+            if (!isNonceError(error)) {
+                retryOrFail(tx.submissions, "Transaction rejected by node: " + error);
+                return;
+            }
+        }
+        retryOrFail(tx.submissions, "Could not obtain a usable nonce");
+    }
+
+    /**
+     * Sign and send at the transaction's nonce and gas price. Returns the
+     * node's error, or null if the node accepted the transaction or already
+     * had it.
+     */
+    private String sendSigned(PendingTransaction tx) throws Exception {
+        RawTransaction raw = RawTransaction.createTransaction(tx.nonce, tx.gasPrice, gasLimit, tx.to, tx.data);
+        String signed = Numeric.toHexString(TransactionEncoder.signMessage(raw, chainId, credentials));
+        String hash = Hash.sha3(signed);
+        // Track the hash before sending: if the response is lost the node may still have it
+        tx.hashes.add(hash);
+        tx.sentAtNanos = System.nanoTime();
+        EthSendTransaction response = web3j.ethSendRawTransaction(signed).send();
+        if (response.hasError()) {
+            String error = response.getError().getMessage();
+            if (error != null && error.toLowerCase().contains("already known")) {
+                return null;
+            }
+            tx.hashes.remove(hash);
+            return error;
+        }
+        return null;
+    }
+
+    private void pollReceipts() throws Exception {
+        Iterator<PendingTransaction> it = inFlight.iterator();
+        while (it.hasNext()) {
+            PendingTransaction tx = it.next();
+            TransactionReceipt receipt = findReceipt(tx);
+            if (receipt != null) {
+                it.remove();
+                complete(tx, receipt);
+            } else if (System.nanoTime() - tx.sentAtNanos > receiptTimeoutNanos) {
+                if (tx.sends < maxAttempts) {
+                    replace(tx);
+                } else {
+                    // It may still be mined, so the events are not sent again
+                    it.remove();
+                    for (Submission submission : tx.submissions) {
+                        fail(submission, "No receipt for " + tx.hashes);
+                    }
+                    resyncNonce();
+                }
+            }
+        }
+    }
+
+    private TransactionReceipt findReceipt(PendingTransaction tx) throws Exception {
+        // Any of the replacements may be the one that was mined
+        for (String hash : tx.hashes) {
+            Optional<TransactionReceipt> receipt = web3j.ethGetTransactionReceipt(hash).send().getTransactionReceipt();
+            if (receipt.isPresent()) {
+                return receipt.get();
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Re-send a stuck transaction at the same nonce with a higher gas price,
+     * so it replaces the original in the node's pool
+     */
+    private void replace(PendingTransaction tx) throws Exception {
+        BigInteger bumped = tx.gasPrice.multiply(BigInteger.valueOf(100 + gasBumpPercent)).divide(BigInteger.valueOf(100));
+        tx.gasPrice = bumped.max(currentGasPrice());
+        replacements.increment();
+        tx.sends++;
+        String error = sendSigned(tx);
+        if (error != null) {
+            // "nonce too low" here means one of the earlier hashes was mined; the next poll finds it
+            System.err.println("Replacement for nonce " + tx.nonce + " not accepted: " + error);
+        }
+    }
+
+    private void complete(PendingTransaction tx, TransactionReceipt receipt) {
+        long now = System.nanoTime();
+        if (!receipt.isStatusOK()) {
+            for (Submission submission : tx.submissions) {
+                reverted.increment();
+                submission.future.complete(failure(submission, "Transaction reverted: " + receipt.getTransactionHash()));
+            }
+            return;
+        }
+        for (int i = 0; i < tx.submissions.size(); i++) {
+            Submission submission = tx.submissions.get(i);
+            confirmed.increment();
+            confirmationLatency.record(now - submission.createdAtNanos);
+
+            Map<String, Object> result = new HashMap<>();
+            result.put("success", true);
+            result.put("status", "CONFIRMED");
+            result.put("transactionHash", receipt.getTransactionHash());
+            result.put("blockNumber", receipt.getBlockNumber().longValue());
+            result.put("gasUsed", receipt.getGasUsed().longValue());
+            result.put("nonce", tx.nonce.longValue());
+            result.put("attempts", submission.attempts);
+            result.put("function", submission.function);
+            result.put("batchSize", tx.submissions.size());
+            if (tx.merkleRoot != null) {
+                result.put("merkleRoot", tx.merkleRoot);
+                result.put("leafIndex", i);
+            }
+            submission.future.complete(result);
+        }
+    }
+
+    private void retryOrFail(List<Submission> submissions, String error) {
+        for (Submission submission : submissions) {
+            if (submission.attempts < maxAttempts) {
+                retries.add(submission);
+            } else {
+                fail(submission, error);
+            }
+        }
+    }
+
+    /**
+     * Without a node, queued events either fail or, for development setups,
+     * complete with a simulated hash as they did before the submitter existed
+     */
+    private void drainWhileUnavailable() {
+        List<Submission> waiting = new ArrayList<>(retries);
+        retries.clear();
+        queue.drainTo(waiting);
+        for (Submission submission : waiting) {
+            if (!simulateWhenUnavailable) {
+                fail(submission, "Blockchain node unavailable");
+                continue;
+            }
+            simulated.increment();
+            submission.future.complete(simulatedResult(submission.function, submission.data, submission.attempts));
+        }
+    }
+
+    /**
+     * The result of a call that was never sent, with a made-up hash
+     */
+    static Map<String, Object> simulatedResult(String function, String data, int attempts) {
+        Map<String, Object> result = new HashMap<>();
+        result.put("success", true);
+        result.put("status", "SIMULATED");
+        result.put("transactionHash", Hash.sha3String(data + System.nanoTime()));
+        result.put("function", function);
+        result.put("attempts", attempts);
+        return result;
+    }
+
+    private void fail(Submission submission, String error) {
+        failed.increment();
+        submission.future.complete(failure(submission, error));
+    }
+
+    private static Map<String, Object> failure(Submission submission, String error) {
+        Map<String, Object> result = new HashMap<>();
+        result.put("success", false);
+        result.put("status", "FAILED");
+        result.put("error", error);
+        result.put("function", submission.function);
+        result.put("attempts", submission.attempts);
+        return result;
+    }
+
+    private boolean resyncNonce() {
+        try {
+            nonces.sync(pendingNonce());
+            nonceResyncs.increment();
+            return true;
+        } catch (Exception e) {
+            connected = false;
+            return false;
+        }
+    }
+
+    private BigInteger pendingNonce() throws Exception {
+        return web3j.ethGetTransactionCount(credentials.getAddress(), DefaultBlockParameterName.PENDING)
+                .send().getTransactionCount();
+    }
+
+    private BigInteger currentGasPrice() {
+        try {
+            return web3j.ethGasPrice().send().getGasPrice();
+        } catch (Exception e) {
+            return fallbackGasPrice;
+        }
+    }
+
+    private static boolean isNonceError(String error) {
+        String message = error.toLowerCase();
+        return message.contains("nonce too low") || message.contains("nonce too high")
+                || message.contains("invalid nonce");
+    }
+
+    /**
+     * Next nonce to use for the writer's account. Only the writer thread
+     * changes it; it starts from and is resynced to the node's pending count.
+     */
+    static final class NonceManager {
+        private volatile BigInteger next;
+
+        BigInteger reserve() {
+            BigInteger nonce = next;
+            next = nonce.add(BigInteger.ONE);
+            return nonce;
+        }
+
+        void sync(BigInteger pendingCount) {
+            next = pendingCount;
+        }
+
+        Long peek() {
+            BigInteger value = next;
+            return value != null ? value.longValue() : null;
+        }
+    }
+
+    private static final class Submission {
+        private final String function;
+        private final String data;
+        private final String to;
+        private final long createdAtNanos = System.nanoTime();
+        private final CompletableFuture<Map<String, Object>> future = new CompletableFuture<>();
+        private int attempts = 0;
+
+        Submission(Function function, String to) {
+            this.function = function.getName();
+            this.data = FunctionEncoder.encode(function);
+            this.to = to;
+        }
+    }
+
+    private static final class PendingTransaction {
+        private final String data;
+        private final String to;
+        private final List<Submission> submissions;
+        private final String merkleRoot;
+        private final List<String> hashes = new ArrayList<>(2);
+        private BigInteger nonce;
+        private BigInteger gasPrice;
+        private long sentAtNanos;
+        private int sends;
+
+        PendingTransaction(String data, String to, List<Submission> submissions, BigInteger gasPrice,
+                           String merkleRoot) {
+            this.data = data;
+            this.to = to;
+            this.submissions = submissions;
+            this.gasPrice = gasPrice;
+            this.merkleRoot = merkleRoot;
+        }
+    }
+}
@@ -0,0 +1,399 @@
+package com.sensesafe.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.Deflater;
+
+/**
+ * Streams rows into a compressed columnar file for analytics exports.
+ *
+ * Rows are buffered into row groups; when a group fills, each column is
+ * encoded on its own and deflated, so only one group is held in memory. A
+ * column chunk starts with a presence bitmap (bit set = value present) and
+ * holds only the present values:
+ * <ul>
+ *   <li>INT64 and TIMESTAMP: zigzag varint deltas from the previous value;
+ *       timestamps are microseconds since 1970-01-01T00:00 of the naive
+ *       local date-time</li>
+ *   <li>FLOAT64: a scale byte k, then zigzag varint deltas of value * 10^k
+ *       when every value in the chunk round-trips exactly with at most nine
+ *       decimals (coordinates, scores); otherwise 0xFF and the little-endian
+ *       IEEE doubles split into eight byte planes, which deflate far better
+ *       than interleaved bytes</li>
+ *   <li>BOOLEAN: a bitmap</li>
+ *   <li>STRING: varint byte length and UTF-8 bytes</li>
+ *   <li>DICTIONARY: the group's distinct values as strings, in first-seen
+ *       order, then a varint code per value; used for enums and other
+ *       low-cardinality columns</li>
+ * </ul>
+ * The file is the magic, the row groups, a UTF-8 JSON footer with the
+ * schema, group offsets and caller metadata, the footer length (int, little
+ * endian) and the magic again. A chunk is framed as compressed length and
+ * raw length (ints, little endian) followed by the deflated bytes.
+ */
+public class ColumnarFileWriter implements Closeable {
+
+    public static final byte[] MAGIC = {'S', 'S', 'C', '1'};
+    public static final int FORMAT_VERSION = 1;
+
+    private static final double[] POWERS_OF_TEN = {1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9};
+    private static final double MAX_EXACT_LONG = 9007199254740992.0; // 2^53
+    private static final byte RAW_DOUBLES = (byte) 0xFF;
+
+    public enum ColumnType {
+        INT64, FLOAT64, BOOLEAN, TIMESTAMP, STRING, DICTIONARY
+    }
+
+    public static final class Column {
+        private final String name;
+        private final ColumnType type;
+
+        public Column(String name, ColumnType type) {
+            this.name = name;
+            this.type = type;
+        }
+
+        public String getName() { return name; }
+        public ColumnType getType() { return type; }
+    }
+
+    private final OutputStream output;
+    private final ObjectMapper objectMapper;
+    private final String dataset;
+    private final List<Column> schema;
+    private final int rowGroupSize;
+    private final Map<String, Object> metadata;
+    private final ColumnBuffer[] columns;
+    private final Deflater deflater = new Deflater(Deflater.DEFAULT_COMPRESSION);
+    private final List<Map<String, Object>> rowGroups = new ArrayList<>();
+
+    private byte[] deflateBuffer = new byte[64 * 1024];
+    private int rowsInGroup;
+    private long rowCount;
+    private long position;
+    private boolean closed;
+
+    public ColumnarFileWriter(OutputStream output, ObjectMapper objectMapper, String dataset,
+                              List<Column> schema, int rowGroupSize, Map<String, Object> metadata) throws IOException {
+        this.output = output;
+        this.objectMapper = objectMapper;
+        this.dataset = dataset;
+        this.schema = List.copyOf(schema);
+        this.rowGroupSize = rowGroupSize;
+        this.metadata = metadata;
+        this.columns = new ColumnBuffer[schema.size()];
+        for (int i = 0; i < columns.length; i++) {
+            columns[i] = new ColumnBuffer(schema.get(i).getType(), rowGroupSize);
+        }
+        write(MAGIC, 0, MAGIC.length);
+    }
+
+    /**
+     * Append one row; values are in schema order and may be null. Enums are
+     * written by name
+     */
+    public void writeRow(Object... values) throws IOException {
+        if (values.length != columns.length) {
+            throw new IllegalArgumentException("Expected " + columns.length + " values, got " + values.length);
+        }
+        for (int i = 0; i < columns.length; i++) {
+            columns[i].add(rowsInGroup, values[i]);
+        }
+        rowsInGroup++;
+        rowCount++;
+        if (rowsInGroup == rowGroupSize) {
+            flushRowGroup();
+        }
+    }
+
+    public long getRowCount() {
+        return rowCount;
+    }
+
+    /**
+     * Bytes written so far, including the footer once closed
+     */
+    public long getBytesWritten() {
+        return position;
+    }
+
+    /**
+     * Write the last row group and the footer; the underlying stream is
+     * flushed but left open
+     */
+    @Override
+    public void close() throws IOException {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        try {
+            if (rowsInGroup > 0) {
+                flushRowGroup();
+            }
+
+            List<Map<String, Object>> schemaJson = new ArrayList<>();
+            for (Column column : schema) {
+                Map<String, Object> field = new LinkedHashMap<>();
+                field.put("name", column.getName());
+                field.put("type", column.getType().name());
+                schemaJson.add(field);
+            }
+            Map<String, Object> footer = new LinkedHashMap<>();
+            footer.put("version", FORMAT_VERSION);
+            footer.put("dataset", dataset);
+            footer.put("rows", rowCount);
+            footer.put("columns", schemaJson);
+            footer.put("rowGroups", rowGroups);
+            footer.put("metadata", metadata);
+
+            byte[] footerBytes = objectMapper.writeValueAsBytes(footer);
+            write(footerBytes, 0, footerBytes.length);
+            byte[] trailer = new byte[4];
+            putIntLE(trailer, 0, footerBytes.length);
+            write(trailer, 0, trailer.length);
+            write(MAGIC, 0, MAGIC.length);
+            output.flush();
+        } finally {
+            deflater.end();
+        }
+    }
+
+    private void flushRowGroup() throws IOException {
+        Map<String, Object> group = new LinkedHashMap<>();
+        group.put("offset", position);
+        group.put("rows", rowsInGroup);
+
+        byte[] frame = new byte[8];
+        for (ColumnBuffer column : columns) {
+            Bytes raw = column.encode(rowsInGroup);
+            int compressedLength = deflate(raw);
+            putIntLE(frame, 0, compressedLength);
+            putIntLE(frame, 4, raw.length);
+            write(frame, 0, frame.length);
+            write(deflateBuffer, 0, compressedLength);
+            column.reset();
+        }
+
+        rowGroups.add(group);
+        rowsInGroup = 0;
+        output.flush();
+    }
+
+    private int deflate(Bytes raw) {
+        deflater.reset();
+        deflater.setInput(raw.data, 0, raw.length);
+        deflater.finish();
+        int length = 0;
+        while (!deflater.finished()) {
+            if (length == deflateBuffer.length) {
+                deflateBuffer = Arrays.copyOf(deflateBuffer, deflateBuffer.length * 2);
+            }
+            length += deflater.deflate(deflateBuffer, length, deflateBuffer.length - length);
+        }
+        return length;
+    }
+
+    private void write(byte[] bytes, int offset, int length) throws IOException {
+        output.write(bytes, offset, length);
+        position += length;
+    }
+
+    private static void putIntLE(byte[] target, int offset, int value) {
+        target[offset] = (byte) value;
+        target[offset + 1] = (byte) (value >>> 8);
+        target[offset + 2] = (byte) (value >>> 16);
+        target[offset + 3] = (byte) (value >>> 24);
+    }
+
+    private static long toMicros(LocalDateTime timestamp) {
+        return timestamp.toEpochSecond(ZoneOffset.UTC) * 1_000_000L + timestamp.getNano() / 1_000;
+    }
+
+    /**
+     * One column of the current row group
+     */
+    private static final class ColumnBuffer {
+        private final ColumnType type;
+        private final byte[] presence;
+        private final Bytes values = new Bytes(1024);
+        private final Map<String, Integer> dictionary = new LinkedHashMap<>();
+        private double[] doubles;
+        private byte[] booleans;
+        private int present;
+        private long previous;
+
+        ColumnBuffer(ColumnType type, int rowGroupSize) {
+            this.type = type;
+            this.presence = new byte[(rowGroupSize + 7) / 8];
+            if (type == ColumnType.FLOAT64) {
+                doubles = new double[rowGroupSize];
+            } else if (type == ColumnType.BOOLEAN) {
+                booleans = new byte[(rowGroupSize + 7) / 8];
+            }
+        }
+
+        void add(int row, Object value) {
+            if (value == null) {
+                return;
+            }
+            presence[row >>> 3] |= (byte) (1 << (row & 7));
+            switch (type) {
+                case INT64:
+                    long number = ((Number) value).longValue();
+                    values.putVarLong(zigzag(number - previous));
+                    previous = number;
+                    break;
+                case TIMESTAMP:
+                    long micros = toMicros((LocalDateTime) value);
+                    values.putVarLong(zigzag(micros - previous));
+                    previous = micros;
+                    break;
+                case FLOAT64:
+                    doubles[present] = ((Number) value).doubleValue();
+                    break;
+                case BOOLEAN:
+                    if ((Boolean) value) {
+                        booleans[present >>> 3] |= (byte) (1 << (present & 7));
+                    }
+                    break;
+                case STRING:
+                    byte[] utf8 = value.toString().getBytes(StandardCharsets.UTF_8);
+                    values.putVarLong(utf8.length);
+                    values.put(utf8, 0, utf8.length);
+                    break;
+                case DICTIONARY:
+                    String key = value instanceof Enum ? ((Enum<?>) value).name() : value.toString();
+                    values.putVarLong(dictionary.computeIfAbsent(key, k -> dictionary.size()));
+                    break;
+            }
+            present++;
+        }
+
+        Bytes encode(int rows) {
+            Bytes out = new Bytes(presence.length + values.length + 16);
+            out.put(presence, 0, (rows + 7) / 8);
+            switch (type) {
+                case FLOAT64:
+                    int scale = decimalScale();
+                    if (scale >= 0) {
+                        out.putByte((byte) scale);
+                        long last = 0;
+                        for (int i = 0; i < present; i++) {
+                            long scaled = Math.round(doubles[i] * POWERS_OF_TEN[scale]);
+                            out.putVarLong(zigzag(scaled - last));
+                            last = scaled;
+                        }
+                        break;
+                    }
+                    // Byte-stream split: all first bytes, then all second bytes, ...
+                    out.putByte(RAW_DOUBLES);
+                    for (int plane = 0; plane < 8; plane++) {
+                        for (int i = 0; i < present; i++) {
+                            out.putByte((byte) (Double.doubleToRawLongBits(doubles[i]) >>> (plane * 8)));
+                        }
+                    }
+                    break;
+                case BOOLEAN:
+                    out.put(booleans, 0, (present + 7) / 8);
+                    break;
+                case DICTIONARY:
+                    out.putVarLong(dictionary.size());
+                    for (String entry : dictionary.keySet()) {
+                        byte[] utf8 = entry.getBytes(StandardCharsets.UTF_8);
+                        out.putVarLong(utf8.length);
+                        out.put(utf8, 0, utf8.length);
+                    }
+                    out.put(values.data, 0, values.length);
+                    break;
+                default:
+                    out.put(values.data, 0, values.length);
+            }
+            return out;
+        }
+
+        /**
+         * Fewest decimals that reproduce every value bit for bit when read
+         * back as scaled / 10^k, or -1 if there are none
+         */
+        private int decimalScale() {
+            for (int scale = 0; scale < POWERS_OF_TEN.length; scale++) {
+                double power = POWERS_OF_TEN[scale];
+                boolean exact = true;
+                for (int i = 0; i < present && exact; i++) {
+                    double scaled = doubles[i] * power;
+                    exact = Math.abs(scaled) < MAX_EXACT_LONG
+                            && Double.doubleToRawLongBits(Math.round(scaled) / power) == Double.doubleToRawLongBits(doubles[i]);
+                }
+                if (exact) {
+                    return scale;
+                }
+            }
+            return -1;
+        }
+
+        void reset() {
+            Arrays.fill(presence, (byte) 0);
+            if (booleans != null) {
+                Arrays.fill(booleans, (byte) 0);
+            }
+            values.length = 0;
+            dictionary.clear();
+            present = 0;
+            previous = 0;
+        }
+
+        private static long zigzag(long value) {
+            return (value << 1) ^ (value >> 63);
+        }
+    }
+
+    /**
+     * Growable byte array
+     */
+    private static final class Bytes {
+        private byte[] data;
+        private int length;
+
+        Bytes(int capacity) {
+            this.data = new byte[Math.max(capacity, 16)];
+        }
+
+        void putByte(byte value) {
+            ensure(1);
+            data[length++] = value;
+        }
+
+        void put(byte[] bytes, int offset, int count) {
+            ensure(count);
+            System.arraycopy(bytes, offset, data, length, count);
+            length += count;
+        }
+
+        void putVarLong(long value) {
+            ensure(10);
+            while ((value & ~0x7FL) != 0) {
+                data[length++] = (byte) ((value & 0x7F) | 0x80);
+                value >>>= 7;
+            }
+            data[length++] = (byte) value;
+        }
+
+        private void ensure(int extra) {
+            if (length + extra > data.length) {
+                data = Arrays.copyOf(data, Math.max(data.length * 2, length + extra));
+            }
+        }
+    }
+}
@@ -0,0 +1,794 @@
+package com.sensesafe.service;
+
+import com.sensesafe.model.Incident;
+import com.sensesafe.model.User;
+import com.sensesafe.model.VolunteerApplication;
+import com.sensesafe.repository.IncidentRepository;
+import com.sensesafe.repository.UserRepository;
+import com.sensesafe.repository.VolunteerApplicationRepository;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Dashboard counters kept up to date as incidents, users and volunteer
+ * applications are saved, so the admin dashboards read a snapshot instead
+ * of loading tables.
+ *
+ * Each incident's last recorded facts (status, type, severity, area, risk,
+ * duplicate flag) are kept by id; recording it again subtracts the old facts
+ * and adds the new ones, both to the all-time totals and to the rolling
+ * counters at its creation time. "Last N hours" views sum a per-minute ring
+ * for windows up to a day and a per-hour ring beyond that, so long windows
+ * are aligned to the hour and only cover the configured window.
+ *
+ * The store is written to a snapshot file every minute and on shutdown. On
+ * startup it is loaded and caught up with what changed since it was saved,
+ * or rebuilt from aggregate projections if there is none or it was taken
+ * of a different database (an in-memory one is recreated on every start);
+ * a periodic full rebuild corrects writes that bypassed the hooks.
+ */
+@Service
+public class DashboardMetricsService {
+
+    static final double HIGH_RISK_THRESHOLD = 70.0;
+    static final double DEFAULT_RISK = 50.0;
+    static final double DUPLICATE_SIMILARITY = 0.8;
+
+    private static final int SNAPSHOT_MAGIC = 0x5353444D; // "SSDM"
+    private static final int SNAPSHOT_VERSION = 1;
+    private static final String OTHER_AREA = "Other";
+
+    // Counter layout shared by the totals and both rings
+    private static final int INCIDENTS = 0;
+    private static final int STATUS = 1;
+    private static final int TYPE = STATUS + Incident.Status.values().length;
+    private static final int SEVERITY = TYPE + Incident.IncidentType.values().length;
+    private static final int CRITICAL_ACTIVE = SEVERITY + Incident.Severity.values().length;
+    private static final int HIGH_RISK = CRITICAL_ACTIVE + 1;
+    private static final int DUPLICATES = HIGH_RISK + 1;
+    private static final int USERS_REGISTERED = DUPLICATES + 1;
+    // Then a (count, risk sum in hundredths) pair per area
+    private static final int AREAS = USERS_REGISTERED + 1;
+
+    @Autowired
+    private IncidentRepository incidentRepository;
+
+    @Autowired
+    private UserRepository userRepository;
+
+    @Autowired
+    private VolunteerApplicationRepository volunteerApplicationRepository;
+
+    @Value("${dashboard.metrics.window-hours:720}")
+    private int windowHours;
+
+    @Value("${dashboard.metrics.minute-window-hours:24}")
+    private int minuteWindowHours;
+
+    @Value("${dashboard.metrics.max-areas:64}")
+    private int maxAreas;
+
+    @Value("${dashboard.metrics.stripes:4}")
+    private int stripes;
+
+    @Value("${dashboard.metrics.active-user-hours:24}")
+    private int activeUserHours;
+
+    @Value("${dashboard.metrics.snapshot-file:./data/dashboard-metrics.snapshot}")
+    private String snapshotFile;
+
+    private volatile Store store;
+    private volatile boolean ready = false;
+
+    private final LongAdder rebuilds = new LongAdder();
+    private final LongAdder incidentUpdates = new LongAdder();
+    private final LongAdder snapshotsSaved = new LongAdder();
+    private volatile long lastSnapshotBytes;
+    private volatile long lastSnapshotMillis;
+    private volatile String startupSource = "none";
+
+    @PostConstruct
+    public void init() {
+        store = newStore();
+    }
+
+    /**
+     * Load the last snapshot and catch it up, or rebuild from the database,
+     * once startup data has been loaded
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void start() {
+        long start = System.nanoTime();
+        Path path = snapshotPath();
+        if (path != null && Files.exists(path)) {
+            try {
+                Store loaded = newStore();
+                long savedAt = loadSnapshot(loaded, path);
+                checkMatchesDatabase(loaded, savedAt);
+                int changed = catchUp(loaded, savedAt);
+                store = loaded;
+                ready = true;
+                startupSource = "snapshot";
+                System.out.println("Dashboard metrics loaded from snapshot with " + loaded.incidents.size() +
+                        " incidents, " + changed + " changed since, in " + (System.nanoTime() - start) / 1_000_000 + " ms");
+                return;
+            } catch (IOException | RuntimeException e) {
+                System.err.println("Dashboard metrics snapshot unusable, rebuilding: " + e.getMessage());
+            }
+        }
+        rebuild();
+        startupSource = "rebuild";
+    }
+
+    /**
+     * Rebuild the store from the database
+     */
+    public void rebuild() {
+        long start = System.nanoTime();
+        Store fresh = newStore();
+
+        for (Object[] row : incidentRepository.findDashboardFacts()) {
+            recordFacts(fresh, (Long) row[0], (Incident.Status) row[1], (Incident.IncidentType) row[2],
+                    (Incident.Severity) row[3], (String) row[4], (Double) row[5], (Double) row[6],
+                    (LocalDateTime) row[7]);
+        }
+
+        fresh.totalUsers.add(userRepository.count());
+        LocalDateTime windowStart = LocalDateTime.now().minusHours(windowHours);
+        for (LocalDateTime createdAt : userRepository.findCreatedAtAfter(windowStart)) {
+            fresh.add(epochMillis(createdAt), USERS_REGISTERED, 1, false);
+        }
+        for (Object[] row : userRepository.findLastLoginsAfter(LocalDateTime.now().minusHours(activeUserHours))) {
+            fresh.lastLogins.put((Long) row[0], (LocalDateTime) row[1]);
+        }
+        loadApplicationCounts(fresh);
+
+        store = fresh;
+        ready = true;
+        rebuilds.increment();
+        System.out.println("Dashboard metrics built from " + fresh.incidents.size() + " incidents in " +
+                (System.nanoTime() - start) / 1_000_000 + " ms");
+    }
+
+    /**
+     * Correct drift from writes that bypassed the hooks or rolled back
+     */
+    @Scheduled(fixedDelayString = "${dashboard.metrics.reconcile-interval-ms:900000}",
+               initialDelayString = "${dashboard.metrics.reconcile-interval-ms:900000}")
+    public void reconcile() {
+        if (!ready) {
+            return;
+        }
+        try {
+            rebuild();
+        } catch (Exception e) {
+            System.err.println("Dashboard metrics reconcile failed: " + e.getMessage());
+        }
+    }
+
+    @Scheduled(fixedDelayString = "${dashboard.metrics.snapshot-interval-ms:60000}",
+               initialDelayString = "${dashboard.metrics.snapshot-interval-ms:60000}")
+    public void saveSnapshot() {
+        Path path = snapshotPath();
+        if (!ready || path == null) {
+            return;
+        }
+        try {
+            writeSnapshot(store, path);
+        } catch (IOException e) {
+            System.err.println("Dashboard metrics snapshot failed: " + e.getMessage());
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        saveSnapshot();
+    }
+
+    public boolean isReady() {
+        return ready;
+    }
+
+    /**
+     * Whether a window of this many hours can be answered from the rings
+     */
+    public boolean covers(int hours) {
+        return ready && hours > 0 && hours <= windowHours;
+    }
+
+    /**
+     * Record the current state of a saved incident, replacing what was
+     * recorded for it before
+     */
+    public void recordIncident(Incident incident) {
+        if (incident.getId() == null || incident.getCreatedAt() == null) {
+            return;
+        }
+        recordFacts(store, incident.getId(), incident.getStatus(), incident.getType(), incident.getSeverity(),
+                incident.getAddress(), incident.getRiskScore(), incident.getSimilarityScore(),
+                incident.getCreatedAt());
+        incidentUpdates.increment();
+    }
+
+    public void removeIncident(Long incidentId) {
+        Store current = store;
+        current.incidents.computeIfPresent(incidentId, (id, previous) -> {
+            current.apply(previous, -1);
+            return null;
+        });
+    }
+
+    public void userRegistered(User user) {
+        Store current = store;
+        current.totalUsers.increment();
+        LocalDateTime createdAt = user.getCreatedAt() != null ? user.getCreatedAt() : LocalDateTime.now();
+        current.add(epochMillis(createdAt), USERS_REGISTERED, 1, false);
+    }
+
+    public void userLoggedIn(User user) {
+        if (user.getId() != null) {
+            store.lastLogins.put(user.getId(), user.getLastLogin() != null ? user.getLastLogin() : LocalDateTime.now());
+        }
+    }
+
+    public void applicationSubmitted() {
+        store.applications[VolunteerApplication.ApplicationStatus.PENDING.ordinal()].increment();
+    }
+
+    public void applicationStatusChanged(VolunteerApplication.ApplicationStatus from,
+                                         VolunteerApplication.ApplicationStatus to) {
+        if (from == to) {
+            return;
+        }
+        Store current = store;
+        if (from != null) {
+            current.applications[from.ordinal()].decrement();
+        }
+        if (to != null) {
+            current.applications[to.ordinal()].increment();
+        }
+    }
+
+    public void applicationDeleted(VolunteerApplication.ApplicationStatus status) {
+        if (status != null) {
+            store.applications[status.ordinal()].decrement();
+        }
+    }
+
+    public long getIncidentCount(Incident.Status status) {
+        return store.totals[STATUS + status.ordinal()].sum();
+    }
+
+    public long getCriticalActiveCount() {
+        return store.totals[CRITICAL_ACTIVE].sum();
+    }
+
+    public long getHighRiskCount() {
+        return store.totals[HIGH_RISK].sum();
+    }
+
+    public long getTotalUsers() {
+        return store.totalUsers.sum();
+    }
+
+    public long getApplicationCount(VolunteerApplication.ApplicationStatus status) {
+        return store.applications[status.ordinal()].sum();
+    }
+
+    /**
+     * Users whose last login falls within the active-user window
+     */
+    public long getActiveUserCount() {
+        LocalDateTime cutoff = LocalDateTime.now().minusHours(activeUserHours);
+        Store current = store;
+        current.lastLogins.values().removeIf(lastLogin -> lastLogin.isBefore(cutoff));
+        return current.lastLogins.size();
+    }
+
+    /**
+     * Incident counts and risk for incidents created in the last hours
+     */
+    public WindowSnapshot window(int hours) {
+        Store current = store;
+        return new WindowSnapshot(hours, current.sum(hours), current.areaNames());
+    }
+
+    /**
+     * Users registered in the last hours
+     */
+    public long getNewUserCount(int hours) {
+        return store.sum(hours)[USERS_REGISTERED];
+    }
+
+    public Map<String, Object> getMetrics() {
+        Store current = store;
+        Map<String, Object> metrics = new HashMap<>();
+        metrics.put("ready", ready);
+        metrics.put("startupSource", startupSource);
+        metrics.put("windowHours", windowHours);
+        metrics.put("minuteWindowHours", minuteWindowHours);
+        metrics.put("trackedIncidents", current.incidents.size());
+        metrics.put("trackedAreas", current.areaIds.size());
+        metrics.put("incidentUpdates", incidentUpdates.sum());
+        metrics.put("rebuilds", rebuilds.sum());
+        metrics.put("snapshotsSaved", snapshotsSaved.sum());
+        metrics.put("lastSnapshotBytes", lastSnapshotBytes);
+        metrics.put("lastSnapshotMillis", lastSnapshotMillis);
+        return metrics;
+    }
+
+    private Store newStore() {
+        int minuteHours = Math.min(minuteWindowHours, windowHours);
+        return new Store(AREAS + 2 * maxAreas, maxAreas, minuteHours, windowHours, stripes);
+    }
+
+    private void recordFacts(Store target, Long id, Incident.Status status, Incident.IncidentType type,
+                             Incident.Severity severity, String address, Double riskScore,
+                             Double similarityScore, LocalDateTime createdAt) {
+        IncidentFacts facts = new IncidentFacts(status, type, severity, target.areaId(areaOf(address)), riskScore,
+                similarityScore != null && similarityScore > DUPLICATE_SIMILARITY, epochMillis(createdAt));
+        // compute() serializes updates of the same incident, so old facts are subtracted exactly once
+        target.incidents.compute(id, (key, previous) -> {
+            if (previous != null) {
+                target.apply(previous, -1);
+            }
+            target.apply(facts, 1);
+            return facts;
+        });
+    }
+
+    private void loadApplicationCounts(Store target) {
+        for (LongAdder adder : target.applications) {
+            adder.reset();
+        }
+        for (Object[] row : volunteerApplicationRepository.getApplicationStatusStatistics()) {
+            VolunteerApplication.ApplicationStatus status = (VolunteerApplication.ApplicationStatus) row[0];
+            target.applications[status.ordinal()].add((Long) row[1]);
+        }
+    }
+
+    /**
+     * The rows created before the snapshot was saved must be the ones it
+     * counted; otherwise catching up would add today's rows to another
+     * database's totals
+     */
+    private void checkMatchesDatabase(Store loaded, long savedAt) throws IOException {
+        LocalDateTime since = LocalDateTime.ofInstant(Instant.ofEpochMilli(savedAt), ZoneId.systemDefault());
+        long users = userRepository.count() - userRepository.countNewUsersAfter(since);
+        if (users != loaded.totalUsers.sum()) {
+            throw new IOException("snapshot counts " + loaded.totalUsers.sum() + " users, the database had "
+                    + users + " when it was saved");
+        }
+        long incidents = incidentRepository.countByCreatedAtBefore(since);
+        Long maxId = incidentRepository.findMaxIdCreatedBefore(since);
+        Long snapshotMaxId = loaded.incidents.keySet().stream().max(Long::compare).orElse(null);
+        if (incidents != loaded.incidents.size() || !Objects.equals(maxId, snapshotMaxId)) {
+            throw new IOException("snapshot has " + loaded.incidents.size() + " incidents up to id " + snapshotMaxId
+                    + ", the database had " + incidents + " up to id " + maxId + " when it was saved");
+        }
+    }
+
+    /**
+     * Apply what changed after a snapshot was saved; incidents are matched
+     * on updatedAt, which every save bumps
+     */
+    private int catchUp(Store target, long savedAt) {
+        LocalDateTime since = LocalDateTime.ofInstant(Instant.ofEpochMilli(savedAt), ZoneId.systemDefault());
+        List<Object[]> changed = incidentRepository.findDashboardFactsUpdatedSince(since);
+        for (Object[] row : changed) {
+            recordFacts(target, (Long) row[0], (Incident.Status) row[1], (Incident.IncidentType) row[2],
+                    (Incident.Severity) row[3], (String) row[4], (Double) row[5], (Double) row[6],
+                    (LocalDateTime) row[7]);
+        }
+        for (LocalDateTime createdAt : userRepository.findCreatedAtAfter(since)) {
+            target.totalUsers.increment();
+            target.add(epochMillis(createdAt), USERS_REGISTERED, 1, false);
+        }
+        for (Object[] row : userRepository.findLastLoginsAfter(since)) {
+            target.lastLogins.put((Long) row[0], (LocalDateTime) row[1]);
+        }
+        loadApplicationCounts(target);
+        return changed.size();
+    }
+
+    private void writeSnapshot(Store source, Path path) throws IOException {
+        long start = System.nanoTime();
+        if (path.getParent() != null) {
+            Files.createDirectories(path.getParent());
+        }
+        Path temp = path.resolveSibling(path.getFileName() + ".tmp");
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(temp), 1 << 16))) {
+            out.writeInt(SNAPSHOT_MAGIC);
+            out.writeInt(SNAPSHOT_VERSION);
+            out.writeLong(System.currentTimeMillis());
+
+            List<String> areas = source.areaNames();
+            out.writeInt(areas.size());
+            for (String area : areas) {
+                out.writeUTF(area);
+            }
+            out.writeInt(source.totals.length);
+            for (LongAdder total : source.totals) {
+                out.writeLong(total.sum());
+            }
+            out.writeLong(source.totalUsers.sum());
+            out.writeInt(source.applications.length);
+            for (LongAdder count : source.applications) {
+                out.writeLong(count.sum());
+            }
+
+            Map<Long, LocalDateTime> logins = new HashMap<>(source.lastLogins);
+            out.writeInt(logins.size());
+            for (Map.Entry<Long, LocalDateTime> login : logins.entrySet()) {
+                out.writeLong(login.getKey());
+                out.writeLong(epochMillis(login.getValue()));
+            }
+
+            Map<Long, IncidentFacts> incidents = new HashMap<>(source.incidents);
+            out.writeInt(incidents.size());
+            for (Map.Entry<Long, IncidentFacts> entry : incidents.entrySet()) {
+                IncidentFacts facts = entry.getValue();
+                out.writeLong(entry.getKey());
+                out.writeByte(facts.status != null ? facts.status.ordinal() : -1);
+                out.writeByte(facts.type != null ? facts.type.ordinal() : -1);
+                out.writeByte(facts.severity != null ? facts.severity.ordinal() : -1);
+                out.writeShort(facts.areaId);
+                out.writeDouble(facts.riskScore != null ? facts.riskScore : Double.NaN);
+                out.writeBoolean(facts.duplicate);
+                out.writeLong(facts.createdAtMillis);
+            }
+
+            source.minutes.writeTo(out);
+            source.hours.writeTo(out);
+        }
+        Files.move(temp, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+
+        snapshotsSaved.increment();
+        lastSnapshotBytes = Files.size(path);
+        lastSnapshotMillis = (System.nanoTime() - start) / 1_000_000;
+    }
+
+    /**
+     * Read a snapshot into an empty store
+     *
+     * @return when the snapshot was saved
+     */
+    private long loadSnapshot(Store target, Path path) throws IOException {
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(path), 1 << 16))) {
+            if (in.readInt() != SNAPSHOT_MAGIC || in.readInt() != SNAPSHOT_VERSION) {
+                throw new IOException("Not a dashboard metrics snapshot: " + path);
+            }
+            long savedAt = in.readLong();
+
+            int areaCount = in.readInt();
+            if (areaCount > maxAreas) {
+                throw new IOException("Snapshot has " + areaCount + " areas, more than max-areas " + maxAreas);
+            }
+            for (int i = 0; i < areaCount; i++) {
+                target.areaId(in.readUTF());
+            }
+            int totals = in.readInt();
+            if (totals != target.totals.length) {
+                throw new IOException("Snapshot has " + totals + " counters, expected " + target.totals.length);
+            }
+            for (LongAdder total : target.totals) {
+                total.add(in.readLong());
+            }
+            target.totalUsers.add(in.readLong());
+            int applications = in.readInt();
+            for (int i = 0; i < applications; i++) {
+                long count = in.readLong();
+                if (i < target.applications.length) {
+                    target.applications[i].add(count);
+                }
+            }
+
+            LocalDateTime loginCutoff = LocalDateTime.now().minusHours(activeUserHours);
+            int logins = in.readInt();
+            for (int i = 0; i < logins; i++) {
+                long userId = in.readLong();
+                LocalDateTime lastLogin = LocalDateTime.ofInstant(Instant.ofEpochMilli(in.readLong()),
+                        ZoneId.systemDefault());
+                if (!lastLogin.isBefore(loginCutoff)) {
+                    target.lastLogins.put(userId, lastLogin);
+                }
+            }
+
+            Incident.Status[] statuses = Incident.Status.values();
+            Incident.IncidentType[] types = Incident.IncidentType.values();
+            Incident.Severity[] severities = Incident.Severity.values();
+            int incidents = in.readInt();
+            for (int i = 0; i < incidents; i++) {
+                long id = in.readLong();
+                int status = in.readByte();
+                int type = in.readByte();
+                int severity = in.readByte();
+                int areaId = in.readShort();
+                double risk = in.readDouble();
+                boolean duplicate = in.readBoolean();
+                long createdAt = in.readLong();
+                target.incidents.put(id, new IncidentFacts(status >= 0 ? statuses[status] : null,
+                        type >= 0 ? types[type] : null, severity >= 0 ? severities[severity] : null, areaId,
+                        Double.isNaN(risk) ? null : risk, duplicate, createdAt));
+            }
+
+            target.minutes.readFrom(in);
+            target.hours.readFrom(in);
+            return savedAt;
+        }
+    }
+
+    private Path snapshotPath() {
+        return snapshotFile == null || snapshotFile.isBlank() ? null : Paths.get(snapshotFile);
+    }
+
+    private static long epochMillis(LocalDateTime time) {
+        return time.atZone(ZoneId.systemDefault()).toInstant().toEpochMilli();
+    }
+
+    static String areaOf(String address) {
+        if (address == null) {
+            return null;
+        }
+        return address.split(",")[0].trim();
+    }
+
+    /**
+     * Totals, rolling counters and the per-incident facts they were built from
+     */
+    private static final class Store {
+        private final LongAdder[] totals;
+        private final RollingWindowCounters minutes;
+        private final RollingWindowCounters hours;
+        private final int minuteWindowHours;
+        private final int maxAreas;
+        private final Map<String, Integer> areaIds = new ConcurrentHashMap<>();
+        private final Map<Long, IncidentFacts> incidents = new ConcurrentHashMap<>();
+        private final Map<Long, LocalDateTime> lastLogins = new ConcurrentHashMap<>();
+        private final LongAdder totalUsers = new LongAdder();
+        private final LongAdder[] applications = adders(VolunteerApplication.ApplicationStatus.values().length);
+
+        Store(int dimensions, int maxAreas, int minuteWindowHours, int windowHours, int stripes) {
+            this.totals = adders(dimensions);
+            this.minutes = new RollingWindowCounters(dimensions, minuteWindowHours * 60, 60_000L, stripes);
+            this.hours = new RollingWindowCounters(dimensions, windowHours, 3_600_000L, stripes);
+            this.minuteWindowHours = minuteWindowHours;
+            this.maxAreas = maxAreas;
+        }
+
+        void apply(IncidentFacts facts, int sign) {
+            long time = facts.createdAtMillis;
+            add(time, INCIDENTS, sign, true);
+            if (facts.status != null) {
+                add(time, STATUS + facts.status.ordinal(), sign, true);
+            }
+            if (facts.type != null) {
+                add(time, TYPE + facts.type.ordinal(), sign, true);
+            }
+            if (facts.severity != null) {
+                add(time, SEVERITY + facts.severity.ordinal(), sign, true);
+            }
+            if (facts.isCriticalActive()) {
+                add(time, CRITICAL_ACTIVE, sign, true);
+            }
+            if (facts.riskScore != null && facts.riskScore >= HIGH_RISK_THRESHOLD) {
+                add(time, HIGH_RISK, sign, true);
+            }
+            if (facts.duplicate) {
+                add(time, DUPLICATES, sign, true);
+            }
+            if (facts.areaId >= 0) {
+                double risk = facts.riskScore != null ? facts.riskScore : DEFAULT_RISK;
+                add(time, AREAS + 2 * facts.areaId, sign, true);
+                add(time, AREAS + 2 * facts.areaId + 1, sign * Math.round(risk * 100), true);
+            }
+        }
+
+        void add(long time, int dimension, long delta, boolean total) {
+            if (total) {
+                totals[dimension].add(delta);
+            }
+            minutes.add(time, dimension, delta);
+            hours.add(time, dimension, delta);
+        }
+
+        long[] sum(int windowHours) {
+            return windowHours <= minuteWindowHours ? minutes.sum(windowHours * 60) : hours.sum(windowHours);
+        }
+
+        /**
+         * Stable small id for an area; areas past the cap share the last one
+         */
+        int areaId(String area) {
+            if (area == null) {
+                return -1;
+            }
+            Integer id = areaIds.get(area);
+            if (id != null) {
+                return id;
+            }
+            synchronized (areaIds) {
+                id = areaIds.get(area);
+                if (id == null) {
+                    if (areaIds.size() < maxAreas - 1) {
+                        id = areaIds.size();
+                        areaIds.put(area, id);
+                    } else {
+                        id = areaIds.computeIfAbsent(OTHER_AREA, key -> maxAreas - 1);
+                    }
+                }
+                return id;
+            }
+        }
+
+        List<String> areaNames() {
+            String[] names = new String[areaIds.size()];
+            areaIds.forEach((name, id) -> {
+                if (id < names.length) {
+                    names[id] = name;
+                }
+            });
+            List<String> ordered = new ArrayList<>(names.length);
+            for (String name : names) {
+                ordered.add(name != null ? name : OTHER_AREA);
+            }
+            return ordered;
+        }
+    }
+
+    /**
+     * What an incident contributes to the counters
+     */
+    private static final class IncidentFacts {
+        private final Incident.Status status;
+        private final Incident.IncidentType type;
+        private final Incident.Severity severity;
+        private final int areaId;
+        private final Double riskScore;
+        private final boolean duplicate;
+        private final long createdAtMillis;
+
+        IncidentFacts(Incident.Status status, Incident.IncidentType type, Incident.Severity severity, int areaId,
+                      Double riskScore, boolean duplicate, long createdAtMillis) {
+            this.status = status;
+            this.type = type;
+            this.severity = severity;
+            this.areaId = areaId;
+            this.riskScore = riskScore;
+            this.duplicate = duplicate;
+            this.createdAtMillis = createdAtMillis;
+        }
+
+        boolean isCriticalActive() {
+            return severity == Incident.Severity.CRITICAL && (status == Incident.Status.NEW ||
+                    status == Incident.Status.VERIFIED || status == Incident.Status.IN_PROGRESS);
+        }
+    }
+
+    /**
+     * Counters summed over a window
+     */
+    public static final class WindowSnapshot {
+        private final int hours;
+        private final long[] sums;
+        private final List<String> areaNames;
+
+        WindowSnapshot(int hours, long[] sums, List<String> areaNames) {
+            this.hours = hours;
+            this.sums = sums;
+            this.areaNames = areaNames;
+        }
+
+        public int getHours() {
+            return hours;
+        }
+
+        public long getIncidents() {
+            return sums[INCIDENTS];
+        }
+
+        public long getCount(Incident.Status status) {
+            return sums[STATUS + status.ordinal()];
+        }
+
+        public long getCriticalCount() {
+            return sums[SEVERITY + Incident.Severity.CRITICAL.ordinal()];
+        }
+
+        public long getDuplicateCount() {
+            return sums[DUPLICATES];
+        }
+
+        public Map<String, Long> getIncidentsByType() {
+            Map<String, Long> counts = new LinkedHashMap<>();
+            for (Incident.IncidentType type : Incident.IncidentType.values()) {
+                if (sums[TYPE + type.ordinal()] > 0) {
+                    counts.put(type.name(), sums[TYPE + type.ordinal()]);
+                }
+            }
+            return counts;
+        }
+
+        public Map<String, Long> getSeverityDistribution() {
+            Map<String, Long> counts = new LinkedHashMap<>();
+            for (Incident.Severity severity : Incident.Severity.values()) {
+                if (sums[SEVERITY + severity.ordinal()] > 0) {
+                    counts.put(severity.name(), sums[SEVERITY + severity.ordinal()]);
+                }
+            }
+            return counts;
+        }
+
+        /**
+         * Type counts as [type, count] rows, the shape of the GROUP BY statistics queries
+         */
+        public List<Object[]> getTypeStatistics() {
+            List<Object[]> rows = new ArrayList<>();
+            for (Incident.IncidentType type : Incident.IncidentType.values()) {
+                if (sums[TYPE + type.ordinal()] > 0) {
+                    rows.add(new Object[]{type, sums[TYPE + type.ordinal()]});
+                }
+            }
+            return rows;
+        }
+
+        public List<Object[]> getSeverityStatistics() {
+            List<Object[]> rows = new ArrayList<>();
+            for (Incident.Severity severity : Incident.Severity.values()) {
+                if (sums[SEVERITY + severity.ordinal()] > 0) {
+                    rows.add(new Object[]{severity, sums[SEVERITY + severity.ordinal()]});
+                }
+            }
+            return rows;
+        }
+
+        /**
+         * Average risk per area; incidents without a risk score count as the default
+         */
+        public Map<String, Double> getRiskByArea() {
+            Map<String, Double> averages = new HashMap<>();
+            for (int id = 0; id < areaNames.size(); id++) {
+                long count = sums[AREAS + 2 * id];
+                if (count > 0) {
+                    averages.put(areaNames.get(id), sums[AREAS + 2 * id + 1] / 100.0 / count);
+                }
+            }
+            return averages;
+        }
+    }
+
+    private static LongAdder[] adders(int size) {
+        LongAdder[] adders = new LongAdder[size];
+        for (int i = 0; i < size; i++) {
+            adders[i] = new LongAdder();
+        }
+        return adders;
+    }
+}
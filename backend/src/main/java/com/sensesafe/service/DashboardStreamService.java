@@ -0,0 +1,397 @@
+package com.sensesafe.service;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.sensesafe.config.InstrumentedThreadPoolExecutor;
+import com.sensesafe.config.LatencyHistogram;
+import com.sensesafe.model.Incident;
+import com.sensesafe.model.VolunteerApplication;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.MediaType;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.TreeMap;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Pushes the admin dashboard counters to connected admins over server-sent
+ * events, replacing per-admin polling.
+ *
+ * One frame of flat "section.key" counters is built per tick from
+ * DashboardMetricsService and diffed against the previous one; the changed
+ * keys are serialized once and the same payload is queued for every
+ * subscriber, so the cost of a tick doesn't depend on how many admins are
+ * watching. A new subscriber gets the full frame as a "snapshot" event,
+ * then "delta" events whose seq follows on from it. Ticks with no changes
+ * send nothing except a periodic heartbeat.
+ *
+ * The socket writes happen on a small sender pool, never on the shared
+ * scheduler thread, one drain at a time per subscriber. A client whose
+ * queue fills up or whose write has been stuck past the send timeout is
+ * dropped; it reconnects and starts again from a snapshot.
+ */
+@Service
+public class DashboardStreamService {
+
+    private static final int ANALYTICS_WINDOW_HOURS = 24;
+
+    @Autowired
+    private DashboardMetricsService dashboardMetricsService;
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    @Value("${dashboard.stream.timeout-ms:1800000}")
+    private long timeoutMillis;
+
+    @Value("${dashboard.stream.heartbeat-ticks:15}")
+    private int heartbeatTicks;
+
+    @Value("${dashboard.stream.send-threads:4}")
+    private int sendThreads;
+
+    @Value("${dashboard.stream.max-pending:8}")
+    private int maxPending;
+
+    @Value("${dashboard.stream.send-timeout-ms:10000}")
+    private long sendTimeoutMillis;
+
+    @Value("${spring.threads.virtual.enabled:false}")
+    private boolean virtualThreads;
+
+    private InstrumentedThreadPoolExecutor senders;
+
+    private final List<Subscriber> subscribers = new CopyOnWriteArrayList<>();
+    // Orders frames and their queueing; no socket writes happen under it
+    private final ReentrantLock publishLock = new ReentrantLock();
+
+    // Guarded by publishLock
+    private Map<String, Object> lastFrame;
+    private long seq;
+    private int quietTicks;
+
+    private final LongAdder ticks = new LongAdder();
+    private final LongAdder deltasPublished = new LongAdder();
+    private final LongAdder heartbeats = new LongAdder();
+    private final LongAdder eventsSent = new LongAdder();
+    private final LongAdder bytesSent = new LongAdder();
+    private final LongAdder sendFailures = new LongAdder();
+    private final LongAdder subscriptions = new LongAdder();
+    private final LongAdder slowClientsDropped = new LongAdder();
+    private final LongAdder sendTimeouts = new LongAdder();
+    private final LatencyHistogram frameLatency = new LatencyHistogram();
+    private final LatencyHistogram fanoutLatency = new LatencyHistogram();
+    private final LatencyHistogram sendLatency = new LatencyHistogram();
+
+    @PostConstruct
+    public void init() {
+        // At most one drain per subscriber is queued, so the queue only fills with that many admins
+        senders = new InstrumentedThreadPoolExecutor("dashboard-stream", sendThreads, 1000,
+                new ThreadPoolExecutor.AbortPolicy(), virtualThreads);
+    }
+
+    @PreDestroy
+    public void shutdown() throws InterruptedException {
+        senders.shutdown();
+        senders.awaitTermination(5, TimeUnit.SECONDS);
+    }
+
+    /**
+     * Register an admin's stream and queue the current frame for it
+     */
+    public SseEmitter subscribe() {
+        SseEmitter emitter = new SseEmitter(timeoutMillis);
+        Subscriber subscriber = new Subscriber(emitter, maxPending);
+        emitter.onCompletion(() -> remove(subscriber));
+        emitter.onTimeout(() -> remove(subscriber));
+        emitter.onError(e -> remove(subscriber));
+
+        publishLock.lock();
+        try {
+            if (lastFrame == null) {
+                lastFrame = buildFrame();
+            }
+            Map<String, Object> event = new LinkedHashMap<>();
+            event.put("seq", seq);
+            event.put("publishedAt", System.currentTimeMillis());
+            event.put("frame", lastFrame);
+            String payload = serialize(event);
+            if (payload == null) {
+                return emitter;
+            }
+            // Queued under the lock so no delta can overtake it
+            subscriber.pending.add(new PendingEvent("snapshot", seq, payload));
+            subscribers.add(subscriber);
+            subscriptions.increment();
+        } finally {
+            publishLock.unlock();
+        }
+        scheduleDrain(subscriber);
+        return emitter;
+    }
+
+    @Scheduled(fixedRateString = "${dashboard.stream.interval-ms:2000}")
+    public void publish() {
+        if (subscribers.isEmpty()) {
+            publishLock.lock();
+            try {
+                // Nobody is watching; the next subscriber starts from a fresh frame
+                lastFrame = null;
+            } finally {
+                publishLock.unlock();
+            }
+            return;
+        }
+
+        publishLock.lock();
+        try {
+            ticks.increment();
+            long start = System.nanoTime();
+            Map<String, Object> frame = buildFrame();
+            frameLatency.record(System.nanoTime() - start);
+
+            Map<String, Object> changed = new TreeMap<>();
+            List<String> removed = new ArrayList<>();
+            if (lastFrame != null) {
+                frame.forEach((key, value) -> {
+                    if (!Objects.equals(lastFrame.get(key), value)) {
+                        changed.put(key, value);
+                    }
+                });
+                for (String key : lastFrame.keySet()) {
+                    if (!frame.containsKey(key)) {
+                        removed.add(key);
+                    }
+                }
+            } else {
+                changed.putAll(frame);
+            }
+            lastFrame = frame;
+
+            String eventName;
+            Map<String, Object> event = new LinkedHashMap<>();
+            if (!changed.isEmpty() || !removed.isEmpty()) {
+                seq++;
+                quietTicks = 0;
+                eventName = "delta";
+                event.put("seq", seq);
+                event.put("publishedAt", System.currentTimeMillis());
+                event.put("changed", changed);
+                event.put("removed", removed);
+                deltasPublished.increment();
+            } else if (++quietTicks >= heartbeatTicks) {
+                // Keeps proxies from closing idle streams; seq is unchanged
+                quietTicks = 0;
+                eventName = "heartbeat";
+                event.put("seq", seq);
+                event.put("publishedAt", System.currentTimeMillis());
+                heartbeats.increment();
+            } else {
+                return;
+            }
+
+            String payload = serialize(event);
+            if (payload == null) {
+                return;
+            }
+            long fanoutStart = System.nanoTime();
+            PendingEvent pending = new PendingEvent(eventName, seq, payload);
+            for (Subscriber subscriber : subscribers) {
+                long sendStarted = subscriber.sendStartedNanos;
+                if (sendStarted != 0
+                        && fanoutStart - sendStarted > TimeUnit.MILLISECONDS.toNanos(sendTimeoutMillis)) {
+                    sendTimeouts.increment();
+                    drop(subscriber);
+                } else if (!subscriber.pending.offer(pending)) {
+                    drop(subscriber);
+                } else {
+                    scheduleDrain(subscriber);
+                }
+            }
+            fanoutLatency.record(System.nanoTime() - fanoutStart);
+        } finally {
+            publishLock.unlock();
+        }
+    }
+
+    public int getSubscriberCount() {
+        return subscribers.size();
+    }
+
+    public Map<String, Object> getMetrics() {
+        Map<String, Object> metrics = new HashMap<>();
+        metrics.put("subscribers", subscribers.size());
+        metrics.put("subscriptions", subscriptions.sum());
+        metrics.put("ticks", ticks.sum());
+        metrics.put("deltasPublished", deltasPublished.sum());
+        metrics.put("heartbeats", heartbeats.sum());
+        metrics.put("eventsSent", eventsSent.sum());
+        metrics.put("bytesSent", bytesSent.sum());
+        metrics.put("sendFailures", sendFailures.sum());
+        metrics.put("slowClientsDropped", slowClientsDropped.sum());
+        metrics.put("sendTimeouts", sendTimeouts.sum());
+        metrics.put("frameLatency", frameLatency.snapshot());
+        metrics.put("fanoutLatency", fanoutLatency.snapshot());
+        metrics.put("sendLatency", sendLatency.snapshot());
+        metrics.put("senders", senders.getMetrics());
+        return metrics;
+    }
+
+    private void scheduleDrain(Subscriber subscriber) {
+        if (!subscriber.draining.compareAndSet(false, true)) {
+            return;
+        }
+        try {
+            senders.execute(() -> drain(subscriber));
+        } catch (RejectedExecutionException e) {
+            // Left queued; the next tick tries again, or drops the client once its queue is full
+            subscriber.draining.set(false);
+        }
+    }
+
+    private void drain(Subscriber subscriber) {
+        try {
+            PendingEvent event;
+            while (!subscriber.closed && (event = subscriber.pending.poll()) != null) {
+                long start = System.nanoTime();
+                subscriber.sendStartedNanos = start;
+                boolean sent = send(subscriber.emitter, event.name, event.seq, event.payload);
+                subscriber.sendStartedNanos = 0;
+                sendLatency.record(System.nanoTime() - start);
+                if (!sent) {
+                    remove(subscriber);
+                    return;
+                }
+            }
+        } finally {
+            subscriber.draining.set(false);
+        }
+        // An event queued between the last poll and clearing the flag
+        if (!subscriber.closed && !subscriber.pending.isEmpty()) {
+            scheduleDrain(subscriber);
+        }
+    }
+
+    /**
+     * Disconnect a client that fell behind; it reconnects and gets a snapshot
+     */
+    private void drop(Subscriber subscriber) {
+        if (subscriber.closed) {
+            return;
+        }
+        remove(subscriber);
+        slowClientsDropped.increment();
+        // Completing the async request also fails a write stuck on the client's socket
+        subscriber.emitter.complete();
+    }
+
+    private void remove(Subscriber subscriber) {
+        subscriber.closed = true;
+        subscribers.remove(subscriber);
+        subscriber.pending.clear();
+    }
+
+    /**
+     * The counters shown on the admin dashboard, flattened to section.key
+     */
+    private Map<String, Object> buildFrame() {
+        Map<String, Object> frame = new TreeMap<>();
+        for (Incident.Status status : Incident.Status.values()) {
+            frame.put("incidents.status." + status.name(), dashboardMetricsService.getIncidentCount(status));
+        }
+        frame.put("incidents.criticalActive", dashboardMetricsService.getCriticalActiveCount());
+        frame.put("incidents.highRisk", dashboardMetricsService.getHighRiskCount());
+        frame.put("incidents.lastHour", dashboardMetricsService.window(1).getIncidents());
+
+        DashboardMetricsService.WindowSnapshot window = dashboardMetricsService.window(ANALYTICS_WINDOW_HOURS);
+        frame.put("last24h.total", window.getIncidents());
+        frame.put("last24h.active",
+                window.getCount(Incident.Status.NEW) + window.getCount(Incident.Status.IN_PROGRESS));
+        frame.put("last24h.critical", window.getCriticalCount());
+        frame.put("last24h.duplicates", window.getDuplicateCount());
+        window.getIncidentsByType().forEach((type, count) -> frame.put("last24h.type." + type, count));
+        window.getSeverityDistribution().forEach((severity, count) -> frame.put("last24h.severity." + severity, count));
+        window.getRiskByArea().forEach((area, risk) ->
+                frame.put("last24h.riskByArea." + area, Math.round(risk * 10) / 10.0));
+
+        frame.put("users.total", dashboardMetricsService.getTotalUsers());
+        frame.put("users.active", dashboardMetricsService.getActiveUserCount());
+        frame.put("users.newThisWeek", dashboardMetricsService.getNewUserCount(7 * 24));
+        frame.put("volunteers.active",
+                dashboardMetricsService.getApplicationCount(VolunteerApplication.ApplicationStatus.APPROVED));
+        frame.put("volunteers.pendingApplications",
+                dashboardMetricsService.getApplicationCount(VolunteerApplication.ApplicationStatus.PENDING));
+        return frame;
+    }
+
+    private String serialize(Map<String, Object> event) {
+        try {
+            return objectMapper.writeValueAsString(event);
+        } catch (JsonProcessingException e) {
+            System.err.println("Dashboard stream event not serializable: " + e.getMessage());
+            return null;
+        }
+    }
+
+    private boolean send(SseEmitter emitter, String eventName, long eventSeq, String payload) {
+        try {
+            emitter.send(SseEmitter.event()
+                    .name(eventName)
+                    .id(Long.toString(eventSeq))
+                    .data(payload, MediaType.APPLICATION_JSON));
+            eventsSent.increment();
+            bytesSent.add(payload.length());
+            return true;
+        } catch (IOException | IllegalStateException e) {
+            sendFailures.increment();
+            emitter.completeWithError(e);
+            return false;
+        }
+    }
+
+    private static final class Subscriber {
+        final SseEmitter emitter;
+        final BlockingQueue<PendingEvent> pending;
+        final AtomicBoolean draining = new AtomicBoolean();
+        // When the write in progress started, 0 when idle
+        volatile long sendStartedNanos;
+        volatile boolean closed;
+
+        Subscriber(SseEmitter emitter, int maxPending) {
+            this.emitter = emitter;
+            this.pending = new ArrayBlockingQueue<>(maxPending);
+        }
+    }
+
+    private static final class PendingEvent {
+        final String name;
+        final long seq;
+        final String payload;
+
+        PendingEvent(String name, long seq, String payload) {
+            this.name = name;
+            this.seq = seq;
+            this.payload = payload;
+        }
+    }
+}
@@ -1,28 +1,223 @@
 package com.sensesafe.service;
 
+import com.sensesafe.model.OutboundNotification;
+import com.sensesafe.repository.OutboundNotificationRepository;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.mail.SimpleMailMessage;
 import org.springframework.mail.javamail.JavaMailSender;
+import org.springframework.mail.javamail.JavaMailSenderImpl;
 import org.springframework.mail.javamail.MimeMessageHelper;
-import org.springframework.scheduling.annotation.Async;
 import org.springframework.stereotype.Service;
 
 import jakarta.mail.MessagingException;
 import jakarta.mail.internet.MimeMessage;
+import java.io.IOException;
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.EnumSet;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.LongAdder;
 
+/**
+ * Renders notification emails and hands them to the MailDispatcher, which
+ * sends them over pooled SMTP connections in priority order: SOS first,
+ * then emergency and hospital alerts, then OTPs, then status and volunteer
+ * updates. Queueing is cheap, so these methods run on the caller's thread.
+ *
+ * The alert bodies are EmailTemplates compiled once at class load. An
+ * alert binds its fields once; the bound template is cached, so sending the
+ * same alert again (to each hospital, say) only fills in what differs per
+ * recipient, and a body going to many recipients is also MIME-encoded once.
+ *
+ * Mail at the durable priorities (SOS by default) goes through the
+ * NotificationOutbox instead, which stores it first and retries it until it
+ * is delivered or dead-lettered. Its journal keeps that mail on local disk,
+ * so it also outlives a restart of the in-memory database.
+ */
 @Service
 public class EmailService {
 
     @Autowired
     private JavaMailSender mailSender;
 
+    @Autowired
+    private OutboundNotificationRepository outboundNotificationRepository;
+
     @Value("${spring.mail.username}")
     private String fromEmail;
 
-    @Async
+    @Value("${mail.dispatch.enabled:true}")
+    private boolean dispatchEnabled;
+
+    @Value("${mail.dispatch.connections:4}")
+    private int connections;
+
+    @Value("${mail.dispatch.queue-capacity:20000}")
+    private int queueCapacity;
+
+    @Value("${mail.dispatch.batch-size:20}")
+    private int batchSize;
+
+    @Value("${mail.dispatch.max-messages-per-connection:100}")
+    private int maxMessagesPerConnection;
+
+    @Value("${mail.dispatch.idle-timeout-ms:60000}")
+    private long idleTimeoutMs;
+
+    @Value("${mail.dispatch.rate-per-second:10}")
+    private double ratePerSecond;
+
+    @Value("${mail.dispatch.shutdown-grace-ms:10000}")
+    private long shutdownGraceMs;
+
+    @Value("${mail.templates.cache-size:256}")
+    private int templateCacheSize;
+
+    @Value("${notifications.outbox.enabled:true}")
+    private boolean outboxEnabled;
+
+    @Value("${notifications.outbox.priorities:CRITICAL}")
+    private String[] outboxPriorities;
+
+    @Value("${notifications.outbox.batch-size:100}")
+    private int outboxBatchSize;
+
+    @Value("${notifications.outbox.max-in-flight:200}")
+    private int outboxMaxInFlight;
+
+    @Value("${notifications.outbox.poll-interval-ms:1000}")
+    private long outboxPollIntervalMs;
+
+    @Value("${notifications.outbox.lease-ms:120000}")
+    private long outboxLeaseMs;
+
+    @Value("${notifications.outbox.max-attempts:8}")
+    private int outboxMaxAttempts;
+
+    @Value("${notifications.outbox.base-backoff-ms:5000}")
+    private long outboxBaseBackoffMs;
+
+    @Value("${notifications.outbox.max-backoff-ms:600000}")
+    private long outboxMaxBackoffMs;
+
+    @Value("${notifications.outbox.retention-hours:72}")
+    private long outboxRetentionHours;
+
+    @Value("${notifications.outbox.journal.enabled:true}")
+    private boolean outboxJournalEnabled;
+
+    @Value("${notifications.outbox.journal.directory:./data/notification-outbox}")
+    private String outboxJournalDirectory;
+
+    @Value("${notifications.outbox.journal.segment-bytes:16777216}")
+    private int outboxJournalSegmentBytes;
+
+    @Value("${notifications.outbox.journal.fsync:always}")
+    private String outboxJournalFsync;
+
+    @Value("${notifications.outbox.journal.fsync-interval-ms:100}")
+    private long outboxJournalFsyncIntervalMs;
+
+    private MailDispatcher dispatcher;
+    private AuditJournal outboxJournal;
+    private NotificationOutbox outbox;
+    private Set<MailDispatcher.Priority> durablePriorities = EnumSet.noneOf(MailDispatcher.Priority.class);
+
+    // Access-ordered, so the eldest entry is the least recently used
+    private final Map<List<Object>, EmailTemplate> boundTemplates = new LinkedHashMap<>(64, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<List<Object>, EmailTemplate> eldest) {
+            return size() > templateCacheSize;
+        }
+    };
+    private final LongAdder templateCacheHits = new LongAdder();
+    private final LongAdder templateCacheMisses = new LongAdder();
+
+    @PostConstruct
+    public void init() throws IOException {
+        if (dispatchEnabled && mailSender instanceof JavaMailSenderImpl sender) {
+            dispatcher = new MailDispatcher(sender.getSession(), sender.getProtocol(), sender.getHost(),
+                    sender.getPort(), sender.getUsername(), sender.getPassword(), fromEmail, connections,
+                    queueCapacity, batchSize, maxMessagesPerConnection, idleTimeoutMs, ratePerSecond);
+            System.out.println("Mail dispatcher started with " + connections + " SMTP connections to "
+                    + sender.getHost() + " at up to " + ratePerSecond + " messages/s");
+        } else if (dispatchEnabled) {
+            System.err.println("Mail dispatcher needs a JavaMailSenderImpl; sending each email directly");
+        }
+
+        if (outboxEnabled) {
+            Arrays.stream(outboxPriorities)
+                    .map(priority -> MailDispatcher.Priority.valueOf(priority.trim().toUpperCase()))
+                    .forEach(durablePriorities::add);
+            if (outboxJournalEnabled) {
+                Long lastSequence = outboundNotificationRepository.findMaxJournalSequence();
+                outboxJournal = new AuditJournal(Paths.get(outboxJournalDirectory), outboxJournalSegmentBytes,
+                        AuditJournal.FsyncPolicy.valueOf(outboxJournalFsync.trim().toUpperCase()),
+                        outboxJournalFsyncIntervalMs, lastSequence != null ? lastSequence : 0L);
+                System.out.println("Outbox journal opened at " + Paths.get(outboxJournalDirectory).toAbsolutePath()
+                        + " with " + outboxJournal.getLiveEventCount() + " unsent emails");
+            }
+            outbox = new NotificationOutbox(outboundNotificationRepository, outboxJournal, this::deliver,
+                    outboxBatchSize, outboxMaxInFlight, outboxPollIntervalMs, outboxLeaseMs, outboxMaxAttempts,
+                    outboxBaseBackoffMs, outboxMaxBackoffMs, outboxRetentionHours);
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        // Stop polling first so nothing new is handed to the dispatcher during its grace period
+        if (outbox != null) {
+            outbox.shutdown();
+        }
+        if (dispatcher != null) {
+            dispatcher.shutdown(shutdownGraceMs);
+        }
+        // Journal what finished while draining, or it is sent again after a restart
+        if (outbox != null) {
+            outbox.flushFinalOutcomes();
+        }
+        if (outboxJournal != null) {
+            try {
+                outboxJournal.close();
+            } catch (IOException e) {
+                System.err.println("Could not close the outbox journal: " + e.getMessage());
+            }
+        }
+    }
+
+    public Map<String, Object> getDispatchMetrics() {
+        Map<String, Object> templateCache = new HashMap<>();
+        synchronized (boundTemplates) {
+            templateCache.put("size", boundTemplates.size());
+        }
+        templateCache.put("capacity", templateCacheSize);
+        templateCache.put("hits", templateCacheHits.sum());
+        templateCache.put("misses", templateCacheMisses.sum());
+
+        Map<String, Object> metrics = dispatcher != null ? dispatcher.getMetrics() : new HashMap<>();
+        metrics.put("enabled", dispatcher != null);
+        metrics.put("templateCache", templateCache);
+        return metrics;
+    }
+
     public void sendSimpleEmail(String to, String subject, String text) {
+        sendSimpleEmail(to, subject, text, MailDispatcher.Priority.LOW);
+    }
+
+    public void sendSimpleEmail(String to, String subject, String text, MailDispatcher.Priority priority) {
+        if (dispatcher != null) {
+            enqueue(to, subject, text, false, priority);
+            return;
+        }
         try {
             SimpleMailMessage message = new SimpleMailMessage();
             message.setFrom(fromEmail);
@@ -35,8 +230,15 @@ public class EmailService {
         }
     }
 
-    @Async
     public void sendHtmlEmail(String to, String subject, String htmlContent) {
+        sendHtmlEmail(to, subject, htmlContent, MailDispatcher.Priority.NORMAL);
+    }
+
+    public void sendHtmlEmail(String to, String subject, String htmlContent, MailDispatcher.Priority priority) {
+        if (dispatcher != null) {
+            enqueue(to, subject, htmlContent, true, priority);
+            return;
+        }
         try {
             MimeMessage message = mailSender.createMimeMessage();
             MimeMessageHelper helper = new MimeMessageHelper(message, true);
@@ -52,7 +254,139 @@ public class EmailService {
         }
     }
 
-    @Async
+    /**
+     * The same HTML email to each recipient
+     */
+    public void sendHtmlEmail(List<String> recipients, String subject, String htmlContent,
+                              MailDispatcher.Priority priority) {
+        sendHtmlEmail(recipients, subject, htmlContent, priority, null);
+    }
+
+    /**
+     * The same HTML email to each recipient. At a durable priority it is
+     * stored in the outbox under idempotencyKey (per recipient), so calling
+     * again with the same key sends nothing new; without a key every call
+     * is a new request.
+     */
+    public void sendHtmlEmail(List<String> recipients, String subject, String htmlContent,
+                              MailDispatcher.Priority priority, String idempotencyKey) {
+        if (outbox != null && durablePriorities.contains(priority)) {
+            String requestKey = idempotencyKey != null ? idempotencyKey : UUID.randomUUID().toString();
+            for (String to : recipients) {
+                try {
+                    outbox.enqueue(NotificationOutbox.keyFor(requestKey, to), to, subject, htmlContent, true, priority);
+                } catch (Exception e) {
+                    // The outbox table is unavailable; don't lose the email as well
+                    System.err.println("Outbox unavailable, sending " + priority + " email to " + to
+                            + " directly: " + e.getMessage());
+                    sendHtmlEmail(to, subject, htmlContent, priority);
+                }
+            }
+            return;
+        }
+        if (dispatcher != null) {
+            int accepted = dispatcher.submit(recipients, subject, htmlContent, true, priority);
+            if (accepted < recipients.size()) {
+                System.err.println("Mail queue full, dropped " + (recipients.size() - accepted) + " of "
+                        + recipients.size() + " " + priority + " emails: " + subject);
+            }
+            return;
+        }
+        for (String to : recipients) {
+            try {
+                sendHtmlEmail(to, subject, htmlContent, priority);
+            } catch (Exception e) {
+                // Log error but continue sending to other recipients
+                System.err.println("Failed to send email to " + to + ": " + e.getMessage());
+            }
+        }
+    }
+
+    public Map<String, Object> getOutboxMetrics() {
+        if (outbox == null) {
+            Map<String, Object> metrics = new HashMap<>();
+            metrics.put("enabled", false);
+            return metrics;
+        }
+        Map<String, Object> metrics = outbox.getMetrics();
+        metrics.put("enabled", true);
+        metrics.put("priorities", durablePriorities);
+        return metrics;
+    }
+
+    public List<OutboundNotification> getDeadLetters(int limit) {
+        if (outbox == null) {
+            throw new IllegalStateException("Notification outbox is disabled");
+        }
+        return outbox.getDeadLetters(limit);
+    }
+
+    public boolean requeueDeadLetter(Long id) {
+        if (outbox == null) {
+            throw new IllegalStateException("Notification outbox is disabled");
+        }
+        return outbox.requeue(id);
+    }
+
+    /**
+     * Send one outbox row, reporting the result through the future
+     */
+    private CompletableFuture<Void> deliver(OutboundNotification notification) {
+        MailDispatcher.Priority priority = MailDispatcher.Priority.values()[notification.getPriority()];
+        if (dispatcher != null) {
+            return dispatcher.deliver(notification.getRecipient(), notification.getSubject(), notification.getBody(),
+                    notification.isHtml(), priority);
+        }
+        try {
+            if (notification.isHtml()) {
+                sendHtmlEmail(notification.getRecipient(), notification.getSubject(), notification.getBody(), priority);
+            } else {
+                sendSimpleEmail(notification.getRecipient(), notification.getSubject(), notification.getBody(), priority);
+            }
+            return CompletableFuture.completedFuture(null);
+        } catch (Exception e) {
+            return CompletableFuture.failedFuture(e);
+        }
+    }
+
+    private void enqueue(String to, String subject, String body, boolean html, MailDispatcher.Priority priority) {
+        if (!dispatcher.submit(to, subject, body, html, priority)) {
+            System.err.println("Mail queue full, dropped " + priority + " email to " + to + ": " + subject);
+        }
+    }
+
+    /**
+     * A template with an alert's fields bound, from the cache when the same
+     * alert has been bound recently
+     */
+    private EmailTemplate bind(String name, EmailTemplate template, Map<String, String> values) {
+        List<Object> key = List.of(name, values);
+        synchronized (boundTemplates) {
+            EmailTemplate cached = boundTemplates.get(key);
+            if (cached != null) {
+                templateCacheHits.increment();
+                return cached;
+            }
+        }
+        templateCacheMisses.increment();
+        EmailTemplate bound = template.bind(values);
+        synchronized (boundTemplates) {
+            boundTemplates.put(key, bound);
+        }
+        return bound;
+    }
+
+    /**
+     * Name/value pairs; null values render as "null", as they did with String.format
+     */
+    private static Map<String, String> fields(String... namesAndValues) {
+        Map<String, String> fields = new HashMap<>();
+        for (int i = 0; i < namesAndValues.length; i += 2) {
+            fields.put(namesAndValues[i], String.valueOf(namesAndValues[i + 1]));
+        }
+        return fields;
+    }
+
     public void sendOtpEmail(String to, String otp, String firstName) {
         String subject = "SenseSafe Admin Login - OTP Verification";
         String htmlContent = String.format("""
@@ -79,19 +413,20 @@ public class EmailService {
         sendHtmlEmail(to, subject, htmlContent);
     }
 
-    @Async
     public void sendEmergencyAlert(String to, String incidentDetails, String location) {
-        String subject = "🚨 EMERGENCY ALERT - SenseSafe";
-        String htmlContent = String.format("""
+        sendEmergencyAlert(List.of(to), incidentDetails, location);
+    }
+
+    private static final EmailTemplate EMERGENCY_ALERT = EmailTemplate.compile("""
             <html>
             <body style="font-family: Arial, sans-serif; line-height: 1.6; color: #333;">
                 <div style="max-width: 600px; margin: 0 auto; padding: 20px; border: 3px solid #EF4444; border-radius: 10px;">
                     <h1 style="color: #EF4444; text-align: center;">🚨 EMERGENCY ALERT</h1>
                     <div style="background-color: #FEF2F2; padding: 20px; border-radius: 8px; margin: 20px 0;">
                         <h3 style="color: #DC2626; margin-top: 0;">Incident Details:</h3>
-                        <p style="font-size: 16px;"><strong>%s</strong></p>
+                        <p style="font-size: 16px;"><strong>{{incidentDetails}}</strong></p>
                         <h3 style="color: #DC2626;">Location:</h3>
-                        <p style="font-size: 16px;"><strong>%s</strong></p>
+                        <p style="font-size: 16px;"><strong>{{location}}</strong></p>
                     </div>
                     <div style="text-align: center; margin: 30px 0;">
                         <p style="font-size: 18px; color: #DC2626;"><strong>Please take immediate action if you are in the area.</strong></p>
@@ -103,24 +438,24 @@ public class EmailService {
                 </div>
             </body>
             </html>
-            """, incidentDetails, location);
+            """);
+
+    /**
+     * One alert to many recipients, rendered and MIME-encoded once
+     */
+    public void sendEmergencyAlert(List<String> recipients, String incidentDetails, String location) {
+        String subject = "🚨 EMERGENCY ALERT - SenseSafe";
+        String htmlContent = bind("emergency-alert", EMERGENCY_ALERT, fields(
+            "incidentDetails", incidentDetails,
+            "location", location)).render();
         
-        sendHtmlEmail(to, subject, htmlContent);
+        sendHtmlEmail(recipients, subject, htmlContent, MailDispatcher.Priority.HIGH);
     }
 
-    @Async
-    public void sendEnhancedSOSAlert(List<String> emergencyContacts, String userName, String userEmail, 
-                                   String userPhone, String location, Double latitude, Double longitude, 
-                                   String message, java.time.LocalDateTime timestamp) {
-        String subject = "🆘 URGENT SOS ALERT - " + userName + " Needs Help";
-        
-        // Create Google Maps link
-        String mapsLink = String.format("https://www.google.com/maps?q=%.6f,%.6f", latitude, longitude);
-        
-        String htmlContent = String.format("""
+    private static final EmailTemplate SOS_ALERT = EmailTemplate.compile("""
             <html>
             <body style="font-family: Arial, sans-serif; line-height: 1.6; color: #333;">
-                <div style="max-width: 600px; margin: 0 auto; padding: 20px; border: 4px solid #DC2626; border-radius: 15px; background: linear-gradient(135deg, #FEF2F2 0%%, #FFFFFF 100%%);">
+                <div style="max-width: 600px; margin: 0 auto; padding: 20px; border: 4px solid #DC2626; border-radius: 15px; background: linear-gradient(135deg, #FEF2F2 0%, #FFFFFF 100%);">
                     <div style="text-align: center; margin-bottom: 30px;">
                         <h1 style="color: #DC2626; font-size: 28px; margin: 0; text-shadow: 1px 1px 2px rgba(0,0,0,0.1);">🆘 EMERGENCY SOS ALERT</h1>
                         <div style="background: #DC2626; color: white; padding: 8px 16px; border-radius: 20px; display: inline-block; margin-top: 10px; font-weight: bold;">
@@ -131,17 +466,17 @@ public class EmailService {
                     <div style="background-color: #FFFFFF; padding: 25px; border-radius: 12px; margin: 20px 0; box-shadow: 0 4px 6px rgba(0,0,0,0.1); border-left: 6px solid #DC2626;">
                         <h2 style="color: #DC2626; margin-top: 0; font-size: 20px;">👤 Person in Need:</h2>
                         <div style="background: #F9FAFB; padding: 15px; border-radius: 8px; margin: 10px 0;">
-                            <p style="margin: 5px 0; font-size: 16px;"><strong>Name:</strong> %s</p>
-                            <p style="margin: 5px 0; font-size: 16px;"><strong>Email:</strong> %s</p>
-                            <p style="margin: 5px 0; font-size: 16px;"><strong>Phone:</strong> %s</p>
+                            <p style="margin: 5px 0; font-size: 16px;"><strong>Name:</strong> {{userName}}</p>
+                            <p style="margin: 5px 0; font-size: 16px;"><strong>Email:</strong> {{userEmail}}</p>
+                            <p style="margin: 5px 0; font-size: 16px;"><strong>Phone:</strong> {{userPhone}}</p>
                         </div>
                         
                         <h2 style="color: #DC2626; margin-top: 25px; font-size: 20px;">📍 Location Information:</h2>
                         <div style="background: #F9FAFB; padding: 15px; border-radius: 8px; margin: 10px 0;">
-                            <p style="margin: 5px 0; font-size: 16px;"><strong>Address:</strong> %s</p>
-                            <p style="margin: 5px 0; font-size: 16px;"><strong>Coordinates:</strong> %.6f, %.6f</p>
+                            <p style="margin: 5px 0; font-size: 16px;"><strong>Address:</strong> {{location}}</p>
+                            <p style="margin: 5px 0; font-size: 16px;"><strong>Coordinates:</strong> {{latitude}}, {{longitude}}</p>
                             <div style="text-align: center; margin: 15px 0;">
-                                <a href="%s" target="_blank" style="background: #3B82F6; color: white; padding: 12px 24px; text-decoration: none; border-radius: 8px; font-weight: bold; display: inline-block;">
+                                <a href="{{mapsLink}}" target="_blank" style="background: #3B82F6; color: white; padding: 12px 24px; text-decoration: none; border-radius: 8px; font-weight: bold; display: inline-block;">
                                     📍 View on Google Maps
                                 </a>
                             </div>
@@ -149,16 +484,16 @@ public class EmailService {
                         
                         <h2 style="color: #DC2626; margin-top: 25px; font-size: 20px;">💬 Emergency Message:</h2>
                         <div style="background: #FEF2F2; padding: 15px; border-radius: 8px; margin: 10px 0; border: 2px solid #FECACA;">
-                            <p style="font-size: 16px; margin: 0; font-weight: 500;">%s</p>
+                            <p style="font-size: 16px; margin: 0; font-weight: 500;">{{message}}</p>
                         </div>
                         
                         <h2 style="color: #DC2626; margin-top: 25px; font-size: 20px;">⏰ Alert Time:</h2>
                         <div style="background: #F9FAFB; padding: 15px; border-radius: 8px; margin: 10px 0;">
-                            <p style="margin: 0; font-size: 16px; font-weight: 500;">%s</p>
+                            <p style="margin: 0; font-size: 16px; font-weight: 500;">{{timestamp}}</p>
                         </div>
                     </div>
                     
-                    <div style="text-align: center; margin: 30px 0; background: linear-gradient(135deg, #FEE2E2 0%%, #FECACA 100%%); padding: 20px; border-radius: 12px; border: 2px solid #F87171;">
+                    <div style="text-align: center; margin: 30px 0; background: linear-gradient(135deg, #FEE2E2 0%, #FECACA 100%); padding: 20px; border-radius: 12px; border: 2px solid #F87171;">
                         <h3 style="color: #991B1B; margin: 0 0 10px 0; font-size: 18px;">🚨 WHAT TO DO NOW:</h3>
                         <div style="text-align: left; max-width: 400px; margin: 0 auto;">
                             <p style="margin: 8px 0; color: #991B1B; font-weight: 500;">• Call emergency services: <strong>911</strong></p>
@@ -177,42 +512,53 @@ public class EmailService {
                 </div>
             </body>
             </html>
-            """, 
-            userName, 
-            userEmail != null ? userEmail : "Not provided", 
-            userPhone != null ? userPhone : "Not provided",
-            location,
-            latitude, 
-            longitude,
-            mapsLink,
-            message != null ? message : "Emergency assistance needed - no additional details provided",
-            timestamp.toString().replace("T", " at "));
-
-        for (String contact : emergencyContacts) {
-            try {
-                sendHtmlEmail(contact, subject, htmlContent);
-            } catch (Exception e) {
-                // Log error but continue sending to other contacts
-                System.err.println("Failed to send SOS alert to " + contact + ": " + e.getMessage());
-            }
-        }
+            """);
+
+    public void sendEnhancedSOSAlert(List<String> emergencyContacts, String userName, String userEmail, 
+                                   String userPhone, String location, Double latitude, Double longitude, 
+                                   String message, java.time.LocalDateTime timestamp) {
+        sendEnhancedSOSAlert(emergencyContacts, userName, userEmail, userPhone, location, latitude, longitude,
+                message, timestamp, null);
     }
 
-    @Async
-    public void sendHospitalAlert(String hospitalEmail, String incidentDetails, String location, String contactNumber) {
-        String subject = "🏥 Hospital Alert - Emergency Incident Reported";
-        String htmlContent = String.format("""
+    /**
+     * The SOS alert, stored durably when CRITICAL is an outbox priority.
+     * Retrying with the same idempotencyKey doesn't alert the contacts twice.
+     */
+    public void sendEnhancedSOSAlert(List<String> emergencyContacts, String userName, String userEmail, 
+                                   String userPhone, String location, Double latitude, Double longitude, 
+                                   String message, java.time.LocalDateTime timestamp, String idempotencyKey) {
+        String subject = "🆘 URGENT SOS ALERT - " + userName + " Needs Help";
+        
+        // Create Google Maps link
+        String mapsLink = String.format("https://www.google.com/maps?q=%.6f,%.6f", latitude, longitude);
+        
+        String htmlContent = bind("sos-alert", SOS_ALERT, fields(
+            "userName", userName,
+            "userEmail", userEmail != null ? userEmail : "Not provided",
+            "userPhone", userPhone != null ? userPhone : "Not provided",
+            "location", location,
+            "latitude", String.format("%.6f", latitude),
+            "longitude", String.format("%.6f", longitude),
+            "mapsLink", mapsLink,
+            "message", message != null ? message : "Emergency assistance needed - no additional details provided",
+            "timestamp", timestamp.toString().replace("T", " at "))).render();
+
+        sendHtmlEmail(emergencyContacts, subject, htmlContent, MailDispatcher.Priority.CRITICAL, idempotencyKey);
+    }
+
+    private static final EmailTemplate HOSPITAL_ALERT = EmailTemplate.compile("""
             <html>
             <body style="font-family: Arial, sans-serif; line-height: 1.6; color: #333;">
                 <div style="max-width: 600px; margin: 0 auto; padding: 20px;">
                     <h2 style="color: #EF4444;">🏥 Hospital Emergency Alert</h2>
                     <div style="background-color: #FEF2F2; padding: 20px; border-radius: 8px; margin: 20px 0; border-left: 4px solid #EF4444;">
                         <h3 style="color: #DC2626; margin-top: 0;">Incident Details:</h3>
-                        <p style="font-size: 16px;">%s</p>
+                        <p style="font-size: 16px;">{{incidentDetails}}</p>
                         <h3 style="color: #DC2626;">Location:</h3>
-                        <p style="font-size: 16px;">%s</p>
+                        <p style="font-size: 16px;">{{location}}</p>
                         <h3 style="color: #DC2626;">Contact Number:</h3>
-                        <p style="font-size: 16px;">%s</p>
+                        <p style="font-size: 16px;">{{contactNumber}}</p>
                     </div>
                     <div style="background-color: #FEF9C3; padding: 15px; border-radius: 8px; margin: 20px 0;">
                         <p style="margin: 0; color: #92400E;"><strong>Please prepare for potential incoming patients.</strong></p>
@@ -224,113 +570,129 @@ public class EmailService {
                 </div>
             </body>
             </html>
-            """, incidentDetails, location, contactNumber);
+            """);
+
+    public void sendHospitalAlert(String hospitalEmail, String incidentDetails, String location, String contactNumber) {
+        String subject = "🏥 Hospital Alert - Emergency Incident Reported";
+        String htmlContent = bind("hospital-alert", HOSPITAL_ALERT, fields(
+            "incidentDetails", incidentDetails,
+            "location", location,
+            "contactNumber", contactNumber)).render();
         
-        sendHtmlEmail(hospitalEmail, subject, htmlContent);
+        sendHtmlEmail(hospitalEmail, subject, htmlContent, MailDispatcher.Priority.HIGH);
     }
 
-    @Async
-    public void sendEnhancedHospitalAlert(String hospitalEmail, String hospitalName, String patientName, 
-                                        String location, Double latitude, Double longitude, String injuries, 
-                                        String callbackNumber, String urgency, String additionalInfo, String reporterName) {
-        String subject = String.format("🚨 %s PRIORITY - Emergency Patient Alert", urgency);
-        
-        String urgencyColor = switch (urgency) {
-            case "CRITICAL" -> "#DC2626";
-            case "HIGH" -> "#EA580C";
-            case "MEDIUM" -> "#D97706";
-            case "LOW" -> "#059669";
-            default -> "#6B7280";
-        };
-        
-        String mapsLink = (latitude != null && longitude != null) ? 
-            String.format("https://maps.google.com/?q=%.6f,%.6f", latitude, longitude) : "";
-        
-        String htmlContent = String.format("""
+    // hospitalName is the only per-recipient field; the rest is bound once per alert
+    private static final EmailTemplate ENHANCED_HOSPITAL_ALERT = EmailTemplate.compile("""
             <html>
             <body style="font-family: Arial, sans-serif; line-height: 1.6; color: #333;">
                 <div style="max-width: 600px; margin: 0 auto; padding: 20px;">
-                    <div style="background-color: %s; color: white; padding: 15px; border-radius: 8px 8px 0 0; text-align: center;">
-                        <h2 style="margin: 0; font-size: 24px;">🏥 %s</h2>
-                        <h1 style="margin: 10px 0 0 0; font-size: 28px;">%s PRIORITY ALERT</h1>
+                    <div style="background-color: {{urgencyColor}}; color: white; padding: 15px; border-radius: 8px 8px 0 0; text-align: center;">
+                        <h2 style="margin: 0; font-size: 24px;">🏥 {{hospitalName}}</h2>
+                        <h1 style="margin: 10px 0 0 0; font-size: 28px;">{{urgency}} PRIORITY ALERT</h1>
                     </div>
                     
                     <div style="background-color: #F9FAFB; padding: 20px; border: 1px solid #E5E7EB; border-top: none;">
                         <div style="background-color: white; padding: 20px; border-radius: 8px; margin-bottom: 20px; box-shadow: 0 1px 3px rgba(0,0,0,0.1);">
                             <h3 style="color: #1F2937; margin-top: 0; border-bottom: 2px solid #E5E7EB; padding-bottom: 10px;">👤 Patient Information</h3>
-                            <table style="width: 100%%; border-collapse: collapse;">
+                            <table style="width: 100%; border-collapse: collapse;">
                                 <tr>
-                                    <td style="padding: 8px 0; font-weight: bold; color: #374151; width: 30%%;">Patient Name:</td>
-                                    <td style="padding: 8px 0; color: #1F2937;">%s</td>
+                                    <td style="padding: 8px 0; font-weight: bold; color: #374151; width: 30%;">Patient Name:</td>
+                                    <td style="padding: 8px 0; color: #1F2937;">{{patientName}}</td>
                                 </tr>
                                 <tr>
                                     <td style="padding: 8px 0; font-weight: bold; color: #374151;">Callback Number:</td>
-                                    <td style="padding: 8px 0; color: #1F2937;"><a href="tel:%s" style="color: #2563EB; text-decoration: none;">%s</a></td>
+                                    <td style="padding: 8px 0; color: #1F2937;"><a href="tel:{{callbackNumber}}" style="color: #2563EB; text-decoration: none;">{{callbackNumber}}</a></td>
                                 </tr>
                                 <tr>
                                     <td style="padding: 8px 0; font-weight: bold; color: #374151;">Reported By:</td>
-                                    <td style="padding: 8px 0; color: #1F2937;">%s</td>
+                                    <td style="padding: 8px 0; color: #1F2937;">{{reporterName}}</td>
                                 </tr>
                             </table>
                         </div>
                         
                         <div style="background-color: white; padding: 20px; border-radius: 8px; margin-bottom: 20px; box-shadow: 0 1px 3px rgba(0,0,0,0.1);">
                             <h3 style="color: #1F2937; margin-top: 0; border-bottom: 2px solid #E5E7EB; padding-bottom: 10px;">📍 Location Details</h3>
-                            <p style="margin: 10px 0; color: #1F2937; font-size: 16px;">%s</p>
-                            %s
+                            <p style="margin: 10px 0; color: #1F2937; font-size: 16px;">{{location}}</p>
+                            {{mapsLink}}
                         </div>
                         
-                        %s
+                        {{injuriesSection}}
                         
-                        %s
+                        {{additionalInfoSection}}
                         
-                        <div style="background-color: #FEF2F2; padding: 20px; border-radius: 8px; border-left: 4px solid %s;">
+                        <div style="background-color: #FEF2F2; padding: 20px; border-radius: 8px; border-left: 4px solid {{urgencyColor}};">
                             <h3 style="color: #DC2626; margin-top: 0;">⚠️ Action Required</h3>
                             <ul style="color: #7F1D1D; margin: 10px 0; padding-left: 20px;">
                                 <li>Prepare emergency bay for incoming patient</li>
                                 <li>Alert on-duty medical staff</li>
                                 <li>Contact callback number for coordination</li>
-                                <li>Prepare for %s priority treatment</li>
+                                <li>Prepare for {{urgencyLower}} priority treatment</li>
                             </ul>
                         </div>
                     </div>
                     
                     <div style="background-color: #1F2937; color: white; padding: 15px; border-radius: 0 0 8px 8px; text-align: center;">
                         <p style="margin: 0; font-size: 12px;">
-                            Alert sent at %s via SenseSafe Emergency Response System<br>
+                            Alert sent at {{sentAt}} via SenseSafe Emergency Response System<br>
                             This is an automated emergency notification - Please respond immediately
                         </p>
                     </div>
                 </div>
             </body>
             </html>
-            """, 
-            urgencyColor, hospitalName, urgency,
-            patientName, callbackNumber, callbackNumber, reporterName,
-            location,
-            mapsLink.isEmpty() ? "" : String.format("<p style=\"margin: 10px 0;\"><a href=\"%s\" style=\"color: #2563EB; text-decoration: none; font-weight: bold;\">📍 View on Google Maps</a></p>", mapsLink),
-            injuries != null && !injuries.trim().isEmpty() ? 
-                String.format("""
+            """);
+
+    private static final EmailTemplate MEDICAL_INFORMATION_SECTION = EmailTemplate.compile("""
                     <div style="background-color: white; padding: 20px; border-radius: 8px; margin-bottom: 20px; box-shadow: 0 1px 3px rgba(0,0,0,0.1);">
                         <h3 style="color: #1F2937; margin-top: 0; border-bottom: 2px solid #E5E7EB; padding-bottom: 10px;">🩺 Medical Information</h3>
-                        <p style="margin: 10px 0; color: #1F2937; font-size: 16px; background-color: #FEF2F2; padding: 15px; border-radius: 6px; border-left: 4px solid #EF4444;">%s</p>
+                        <p style="margin: 10px 0; color: #1F2937; font-size: 16px; background-color: #FEF2F2; padding: 15px; border-radius: 6px; border-left: 4px solid #EF4444;">{{injuries}}</p>
                     </div>
-                    """, injuries) : "",
-            additionalInfo != null && !additionalInfo.trim().isEmpty() ? 
-                String.format("""
+                    """);
+
+    private static final EmailTemplate ADDITIONAL_INFORMATION_SECTION = EmailTemplate.compile("""
                     <div style="background-color: white; padding: 20px; border-radius: 8px; margin-bottom: 20px; box-shadow: 0 1px 3px rgba(0,0,0,0.1);">
                         <h3 style="color: #1F2937; margin-top: 0; border-bottom: 2px solid #E5E7EB; padding-bottom: 10px;">ℹ️ Additional Information</h3>
-                        <p style="margin: 10px 0; color: #1F2937; font-size: 16px;">%s</p>
+                        <p style="margin: 10px 0; color: #1F2937; font-size: 16px;">{{additionalInfo}}</p>
                     </div>
-                    """, additionalInfo) : "",
-            urgencyColor, urgency.toLowerCase(),
-            java.time.LocalDateTime.now().format(java.time.format.DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss"))
-        );
+                    """);
+
+    public void sendEnhancedHospitalAlert(String hospitalEmail, String hospitalName, String patientName, 
+                                        String location, Double latitude, Double longitude, String injuries, 
+                                        String callbackNumber, String urgency, String additionalInfo, String reporterName) {
+        String subject = String.format("🚨 %s PRIORITY - Emergency Patient Alert", urgency);
         
-        sendHtmlEmail(hospitalEmail, subject, htmlContent);
+        String urgencyColor = switch (urgency) {
+            case "CRITICAL" -> "#DC2626";
+            case "HIGH" -> "#EA580C";
+            case "MEDIUM" -> "#D97706";
+            case "LOW" -> "#059669";
+            default -> "#6B7280";
+        };
+        
+        String mapsLink = (latitude != null && longitude != null) ? 
+            String.format("https://maps.google.com/?q=%.6f,%.6f", latitude, longitude) : "";
+        
+        EmailTemplate alert = bind("enhanced-hospital-alert", ENHANCED_HOSPITAL_ALERT, fields(
+            "urgencyColor", urgencyColor,
+            "urgency", urgency,
+            "patientName", patientName,
+            "callbackNumber", callbackNumber,
+            "reporterName", reporterName,
+            "location", location,
+            "mapsLink", mapsLink.isEmpty() ? "" : "<p style=\"margin: 10px 0;\"><a href=\"" + mapsLink + "\" style=\"color: #2563EB; text-decoration: none; font-weight: bold;\">📍 View on Google Maps</a></p>",
+            "injuriesSection", injuries != null && !injuries.trim().isEmpty() ?
+                MEDICAL_INFORMATION_SECTION.render(fields("injuries", injuries)) : "",
+            "additionalInfoSection", additionalInfo != null && !additionalInfo.trim().isEmpty() ?
+                ADDITIONAL_INFORMATION_SECTION.render(fields("additionalInfo", additionalInfo)) : "",
+            "urgencyLower", urgency.toLowerCase(),
+            "sentAt", java.time.LocalDateTime.now().format(java.time.format.DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss"))
+        ));
+        String htmlContent = alert.render(fields("hospitalName", hospitalName));
+        
+        sendHtmlEmail(hospitalEmail, subject, htmlContent, MailDispatcher.Priority.HIGH);
     }
 
-    @Async
     public void sendVolunteerApplicationUpdate(String to, String firstName, String status, String notes) {
         String subject = "SenseSafe Volunteer Application - Status Update";
         String statusColor = status.equals("APPROVED") ? "#10B981" : "#EF4444";
@@ -356,6 +718,6 @@ public class EmailService {
             """, firstName, statusColor, statusColor, status, 
             notes != null ? "<p><strong>Notes:</strong> " + notes + "</p>" : "");
         
-        sendHtmlEmail(to, subject, htmlContent);
+        sendHtmlEmail(to, subject, htmlContent, MailDispatcher.Priority.LOW);
     }
 }
\ No newline at end of file
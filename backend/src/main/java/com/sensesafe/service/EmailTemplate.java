@@ -0,0 +1,111 @@
+package com.sensesafe.service;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * An email body parsed once into literal text and {{name}} placeholders.
+ *
+ * Rendering is plain concatenation of the segments. bind fills in some of
+ * the placeholders and folds them into the surrounding text, so an alert can
+ * bind its incident fields once and then render only the per-recipient
+ * fields for each recipient; once nothing is left to fill, the finished
+ * body is kept and every render returns it as is. Values are inserted
+ * verbatim, as String.format did before.
+ */
+public final class EmailTemplate {
+
+    private static final String OPEN = "{{";
+    private static final String CLOSE = "}}";
+
+    // Literal text at even indexes, placeholder names at odd ones
+    private final String[] segments;
+    private final Set<String> placeholders;
+    private final String rendered;
+    private final int literalLength;
+
+    private EmailTemplate(List<String> segments) {
+        this.segments = segments.toArray(new String[0]);
+        Set<String> names = new LinkedHashSet<>();
+        int length = 0;
+        for (int i = 0; i < this.segments.length; i++) {
+            if (i % 2 == 1) {
+                names.add(this.segments[i]);
+            } else {
+                length += this.segments[i].length();
+            }
+        }
+        this.placeholders = Collections.unmodifiableSet(names);
+        this.literalLength = length;
+        this.rendered = names.isEmpty() ? this.segments[0] : null;
+    }
+
+    public static EmailTemplate compile(String source) {
+        List<String> segments = new ArrayList<>();
+        int position = 0;
+        while (true) {
+            int open = source.indexOf(OPEN, position);
+            if (open < 0) {
+                break;
+            }
+            int close = source.indexOf(CLOSE, open + OPEN.length());
+            if (close < 0) {
+                throw new IllegalArgumentException("Unclosed placeholder at " + open);
+            }
+            segments.add(source.substring(position, open));
+            segments.add(source.substring(open + OPEN.length(), close).trim());
+            position = close + CLOSE.length();
+        }
+        segments.add(source.substring(position));
+        return new EmailTemplate(segments);
+    }
+
+    public Set<String> getPlaceholders() {
+        return placeholders;
+    }
+
+    /**
+     * A template with the given placeholders filled in and the rest left open
+     */
+    public EmailTemplate bind(Map<String, String> values) {
+        List<String> bound = new ArrayList<>();
+        StringBuilder literal = new StringBuilder(segments[0]);
+        for (int i = 1; i < segments.length; i += 2) {
+            String value = values.get(segments[i]);
+            if (value != null) {
+                literal.append(value);
+            } else {
+                bound.add(literal.toString());
+                bound.add(segments[i]);
+                literal.setLength(0);
+            }
+            literal.append(segments[i + 1]);
+        }
+        bound.add(literal.toString());
+        return new EmailTemplate(bound);
+    }
+
+    public String render() {
+        return render(Map.of());
+    }
+
+    public String render(Map<String, String> values) {
+        if (rendered != null) {
+            return rendered;
+        }
+        StringBuilder out = new StringBuilder(literalLength + 64 * (segments.length / 2));
+        out.append(segments[0]);
+        for (int i = 1; i < segments.length; i += 2) {
+            String value = values.get(segments[i]);
+            if (value == null) {
+                throw new IllegalArgumentException("No value for {{" + segments[i] + "}}");
+            }
+            out.append(value).append(segments[i + 1]);
+        }
+        return out.toString();
+    }
+}
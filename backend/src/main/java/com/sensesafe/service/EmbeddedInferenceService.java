@@ -0,0 +1,243 @@
+package com.sensesafe.service;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import jakarta.annotation.PostConstruct;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.io.Resource;
+import org.springframework.core.io.ResourceLoader;
+import org.springframework.stereotype.Service;
+
+import java.io.InputStream;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.DoubleAdder;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Runs exported fraud and risk models inside the backend.
+ *
+ * In "shadow" mode the remote ML service stays authoritative and every
+ * remote answer is compared with the embedded one, so the two can be
+ * checked against each other on live traffic before switching. In "primary"
+ * mode the embedded models answer and the remote fraud/risk calls are
+ * skipped. In any mode other than "off", a loaded model replaces the
+ * hand-written heuristics when the remote service is unavailable.
+ * Post-processing (thresholds, risk levels, confidence) matches ML/fraud_endpoint.py
+ * and ML/risk_endpoint.py.
+ */
+@Service
+public class EmbeddedInferenceService {
+
+    public enum Mode { OFF, SHADOW, PRIMARY }
+
+    private static final double FRAUD_THRESHOLD = 0.5;
+
+    @Autowired
+    private ResourceLoader resourceLoader;
+
+    @Value("${ml.embedded.mode:off}")
+    private String modeSetting;
+
+    @Value("${ml.embedded.fraud-model:}")
+    private String fraudModelLocation;
+
+    @Value("${ml.embedded.risk-model:}")
+    private String riskModelLocation;
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+
+    private Mode mode;
+    private InferenceModel fraudModel;
+    private InferenceModel riskModel;
+
+    private final ModelStats fraudStats = new ModelStats();
+    private final ModelStats riskStats = new ModelStats();
+
+    @PostConstruct
+    public void init() {
+        mode = Mode.valueOf(modeSetting.trim().toUpperCase());
+        if (mode == Mode.OFF) {
+            return;
+        }
+        fraudModel = load("fraud", fraudModelLocation);
+        riskModel = load("risk", riskModelLocation);
+    }
+
+    public boolean isFraudPrimary() {
+        return mode == Mode.PRIMARY && fraudModel != null;
+    }
+
+    public boolean isRiskPrimary() {
+        return mode == Mode.PRIMARY && riskModel != null;
+    }
+
+    public boolean isFraudShadow() {
+        return mode == Mode.SHADOW && fraudModel != null;
+    }
+
+    public boolean isRiskShadow() {
+        return mode == Mode.SHADOW && riskModel != null;
+    }
+
+    public boolean hasFraudModel() {
+        return fraudModel != null;
+    }
+
+    public boolean hasRiskModel() {
+        return riskModel != null;
+    }
+
+    /**
+     * Fraud result in the same shape as MLAnalysisService's parsed response
+     */
+    public Map<String, Object> scoreFraud(Map<String, Object> fraudData) {
+        double fraudProbability = predict(fraudModel, fraudData, fraudStats);
+
+        Map<String, Object> result = new HashMap<>();
+        result.put("success", true);
+        result.put("fraudProbability", fraudProbability);
+        result.put("isFraud", fraudProbability >= FRAUD_THRESHOLD);
+        result.put("confidence", Math.min(
+                Math.abs(fraudProbability - FRAUD_THRESHOLD) / Math.max(FRAUD_THRESHOLD, 1 - FRAUD_THRESHOLD), 1.0));
+        result.put("mlServiceUsed", false);
+        result.put("engine", fraudModel.getName());
+        return result;
+    }
+
+    /**
+     * Risk result in the same shape as MLAnalysisService's parsed response
+     */
+    public Map<String, Object> scoreRisk(Map<String, Object> riskData) {
+        double riskScore = Math.max(0.0, Math.min(100.0, predict(riskModel, riskData, riskStats)));
+
+        String riskLevel;
+        if (riskScore < 30) riskLevel = "low";
+        else if (riskScore < 60) riskLevel = "medium";
+        else if (riskScore < 80) riskLevel = "high";
+        else riskLevel = "critical";
+
+        // Higher scores and high-risk indicators increase confidence
+        double confidence = riskScore > 0 ? Math.min(riskScore / 100.0, 1.0) : 0.1;
+        if (asDouble(riskData.get("injuries_reported")) > 0) confidence += 0.1;
+        if (asDouble(riskData.get("near_sensitive_location")) == 1) confidence += 0.1;
+        if (asDouble(riskData.get("people_involved")) > 3) confidence += 0.05;
+
+        Map<String, Object> result = new HashMap<>();
+        result.put("success", true);
+        result.put("riskScore", riskScore);
+        result.put("riskLevel", riskLevel);
+        result.put("confidence", Math.min(confidence, 1.0));
+        result.put("mlServiceUsed", false);
+        result.put("engine", riskModel.getName());
+        return result;
+    }
+
+    /**
+     * Score the payload locally and record how far it is from the remote answer.
+     * Never throws; a shadow failure must not affect the real result.
+     */
+    public void shadowFraud(Map<String, Object> fraudData, Map<String, Object> remoteResult) {
+        try {
+            Map<String, Object> local = scoreFraud(fraudData);
+            fraudStats.compare((Double) local.get("fraudProbability"), (Double) remoteResult.get("fraudProbability"),
+                    local.get("isFraud").equals(remoteResult.get("isFraud")));
+        } catch (Exception e) {
+            fraudStats.shadowErrors.increment();
+        }
+    }
+
+    public void shadowRisk(Map<String, Object> riskData, Map<String, Object> remoteResult) {
+        try {
+            Map<String, Object> local = scoreRisk(riskData);
+            riskStats.compare((Double) local.get("riskScore"), (Double) remoteResult.get("riskScore"),
+                    local.get("riskLevel").equals(remoteResult.get("riskLevel")));
+        } catch (Exception e) {
+            riskStats.shadowErrors.increment();
+        }
+    }
+
+    public Map<String, Object> getMetrics() {
+        Map<String, Object> metrics = new HashMap<>();
+        metrics.put("mode", mode.name());
+        metrics.put("fraud", fraudStats.snapshot(fraudModel));
+        metrics.put("risk", riskStats.snapshot(riskModel));
+        return metrics;
+    }
+
+    private double predict(InferenceModel model, Map<String, Object> payload, ModelStats stats) {
+        long start = System.nanoTime();
+        double value = model.predict(payload);
+        stats.recordScore(System.nanoTime() - start);
+        return value;
+    }
+
+    private InferenceModel load(String label, String location) {
+        if (location == null || location.isBlank()) {
+            System.err.println("No embedded " + label + " model configured");
+            return null;
+        }
+        Resource resource = resourceLoader.getResource(location);
+        try (InputStream in = resource.getInputStream()) {
+            JsonNode json = objectMapper.readTree(in);
+            TreeEnsembleModel model = TreeEnsembleModel.fromJson(json);
+            System.out.println("Loaded embedded " + label + " model '" + model.getName() + "' with "
+                    + model.getTreeCount() + " trees, " + model.getNodeCount() + " nodes");
+            return model;
+        } catch (Exception e) {
+            System.err.println("Failed to load embedded " + label + " model from " + location + ": " + e.getMessage());
+            return null;
+        }
+    }
+
+    private static double asDouble(Object value) {
+        return value instanceof Number number ? number.doubleValue() : 0.0;
+    }
+
+    private static final class ModelStats {
+        private final LongAdder scored = new LongAdder();
+        private final LongAdder totalScoreNanos = new LongAdder();
+        private final AtomicLong maxScoreNanos = new AtomicLong();
+        private final LongAdder compared = new LongAdder();
+        private final LongAdder agreed = new LongAdder();
+        private final DoubleAdder totalAbsDiff = new DoubleAdder();
+        private final AtomicLong maxAbsDiffBits = new AtomicLong(Double.doubleToLongBits(0.0));
+        private final LongAdder shadowErrors = new LongAdder();
+
+        void recordScore(long nanos) {
+            scored.increment();
+            totalScoreNanos.add(nanos);
+            maxScoreNanos.accumulateAndGet(nanos, Math::max);
+        }
+
+        void compare(double local, double remote, boolean sameLabel) {
+            double diff = Math.abs(local - remote);
+            compared.increment();
+            if (sameLabel) {
+                agreed.increment();
+            }
+            totalAbsDiff.add(diff);
+            maxAbsDiffBits.accumulateAndGet(Double.doubleToLongBits(diff),
+                    (current, next) -> Double.longBitsToDouble(next) > Double.longBitsToDouble(current) ? next : current);
+        }
+
+        Map<String, Object> snapshot(InferenceModel model) {
+            long scoredCount = scored.sum();
+            long comparedCount = compared.sum();
+            Map<String, Object> snapshot = new HashMap<>();
+            snapshot.put("loaded", model != null);
+            snapshot.put("model", model != null ? model.getName() : null);
+            snapshot.put("scored", scoredCount);
+            snapshot.put("avgScoreMicros", scoredCount > 0 ? totalScoreNanos.sum() / scoredCount / 1_000.0 : 0.0);
+            snapshot.put("maxScoreMicros", maxScoreNanos.get() / 1_000.0);
+            snapshot.put("shadowCompared", comparedCount);
+            snapshot.put("shadowLabelAgreement", comparedCount > 0 ? (double) agreed.sum() / comparedCount : 0.0);
+            snapshot.put("shadowMeanAbsDiff", comparedCount > 0 ? totalAbsDiff.sum() / comparedCount : 0.0);
+            snapshot.put("shadowMaxAbsDiff", Double.longBitsToDouble(maxAbsDiffBits.get()));
+            snapshot.put("shadowErrors", shadowErrors.sum());
+            return snapshot;
+        }
+    }
+}
@@ -0,0 +1,211 @@
+package com.sensesafe.service;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Predicate;
+
+/**
+ * In-memory lat/lng cell grid used to prefilter radius and nearest-neighbour
+ * queries before the exact haversine check.
+ *
+ * Points are bucketed into fixed-size cells (in degrees). A radius query only
+ * visits the cells overlapping the query's bounding box, and each candidate's
+ * distance is computed exactly once, so results come back already sorted.
+ */
+public class GeoGridIndex<V> {
+
+    private static final double EARTH_RADIUS_KM = 6371.0;
+    private static final double KM_PER_DEGREE_LAT = 111.32;
+
+    private final double cellSizeDegrees;
+    private final int latCells;
+    private final int lngCells;
+
+    // id -> current entry; cells may briefly hold stale entries, which are skipped on read
+    private final Map<Long, Entry<V>> entries = new ConcurrentHashMap<>();
+    private final Map<Long, Map<Long, Entry<V>>> cells = new ConcurrentHashMap<>();
+
+    public GeoGridIndex(double cellSizeDegrees) {
+        if (cellSizeDegrees <= 0 || cellSizeDegrees > 90) {
+            throw new IllegalArgumentException("Cell size must be in (0, 90] degrees");
+        }
+        this.cellSizeDegrees = cellSizeDegrees;
+        this.latCells = (int) Math.ceil(180.0 / cellSizeDegrees);
+        this.lngCells = (int) Math.ceil(360.0 / cellSizeDegrees);
+    }
+
+    public void put(long id, double latitude, double longitude, V value) {
+        long cell = cellKey(latIndex(latitude), lngIndex(longitude));
+        Entry<V> entry = new Entry<>(id, latitude, longitude, cell, value);
+
+        Entry<V> previous = entries.put(id, entry);
+        if (previous != null && previous.cell != cell) {
+            Map<Long, Entry<V>> oldCell = cells.get(previous.cell);
+            if (oldCell != null) {
+                oldCell.remove(id, previous);
+            }
+        }
+        cells.computeIfAbsent(cell, k -> new ConcurrentHashMap<>()).put(id, entry);
+    }
+
+    public void remove(long id) {
+        Entry<V> previous = entries.remove(id);
+        if (previous != null) {
+            Map<Long, Entry<V>> cell = cells.get(previous.cell);
+            if (cell != null) {
+                cell.remove(id, previous);
+            }
+        }
+    }
+
+    public boolean contains(long id) {
+        return entries.containsKey(id);
+    }
+
+    public int size() {
+        return entries.size();
+    }
+
+    public void clear() {
+        entries.clear();
+        cells.clear();
+    }
+
+    /**
+     * All points within radiusKm of the given location, nearest first.
+     */
+    public List<Hit<V>> withinRadius(double latitude, double longitude, double radiusKm, Predicate<V> filter) {
+        List<Hit<V>> hits = new ArrayList<>();
+        if (radiusKm < 0) {
+            return hits;
+        }
+
+        double latDelta = radiusKm / KM_PER_DEGREE_LAT;
+        int minLat = latIndex(Math.max(-90.0, latitude - latDelta));
+        int maxLat = latIndex(Math.min(90.0, latitude + latDelta));
+
+        // Near the poles the longitude span blows up; fall back to scanning the full ring
+        double cosLat = Math.cos(Math.toRadians(Math.min(89.9, Math.abs(latitude) + latDelta)));
+        double lngDelta = radiusKm / (KM_PER_DEGREE_LAT * cosLat);
+        int lngStart;
+        int lngSpan;
+        if (lngDelta * 2 + cellSizeDegrees >= 360.0) {
+            lngStart = 0;
+            lngSpan = lngCells;
+        } else {
+            lngStart = lngIndex(longitude - lngDelta);
+            int lngEnd = lngIndex(longitude + lngDelta);
+            lngSpan = Math.floorMod(lngEnd - lngStart, lngCells) + 1;
+        }
+
+        for (int latIdx = minLat; latIdx <= maxLat; latIdx++) {
+            for (int i = 0; i < lngSpan; i++) {
+                int lngIdx = (lngStart + i) % lngCells;
+                Map<Long, Entry<V>> cell = cells.get(cellKey(latIdx, lngIdx));
+                if (cell == null) {
+                    continue;
+                }
+                for (Entry<V> entry : cell.values()) {
+                    if (entries.get(entry.id) != entry) {
+                        continue;
+                    }
+                    if (filter != null && !filter.test(entry.value)) {
+                        continue;
+                    }
+                    double distance = haversineKm(latitude, longitude, entry.latitude, entry.longitude);
+                    if (distance <= radiusKm) {
+                        hits.add(new Hit<>(entry.id, distance, entry.value));
+                    }
+                }
+            }
+        }
+
+        hits.sort(Comparator.comparingDouble(Hit::getDistanceKm));
+        return hits;
+    }
+
+    /**
+     * The k nearest points within maxRadiusKm, nearest first. Rings of cells are
+     * expanded outwards until k points are found or the radius is exhausted.
+     */
+    public List<Hit<V>> nearest(double latitude, double longitude, int k, double maxRadiusKm, Predicate<V> filter) {
+        if (k <= 0) {
+            return new ArrayList<>();
+        }
+
+        double cellKm = cellSizeDegrees * KM_PER_DEGREE_LAT;
+        double radius = Math.min(cellKm, maxRadiusKm);
+        while (true) {
+            List<Hit<V>> hits = withinRadius(latitude, longitude, radius, filter);
+            if (hits.size() >= k || radius >= maxRadiusKm) {
+                return selectNearest(hits, k);
+            }
+            radius = Math.min(radius * 2, maxRadiusKm);
+        }
+    }
+
+    public static double haversineKm(double lat1, double lng1, double lat2, double lng2) {
+        double latDistance = Math.toRadians(lat2 - lat1);
+        double lngDistance = Math.toRadians(lng2 - lng1);
+        double sinLat = Math.sin(latDistance / 2);
+        double sinLng = Math.sin(lngDistance / 2);
+        double a = sinLat * sinLat
+                + Math.cos(Math.toRadians(lat1)) * Math.cos(Math.toRadians(lat2)) * sinLng * sinLng;
+        return EARTH_RADIUS_KM * 2 * Math.atan2(Math.sqrt(a), Math.sqrt(1 - a));
+    }
+
+    private List<Hit<V>> selectNearest(List<Hit<V>> sortedHits, int k) {
+        if (sortedHits.size() <= k) {
+            return sortedHits;
+        }
+        return new ArrayList<>(sortedHits.subList(0, k));
+    }
+
+    private int latIndex(double latitude) {
+        return Math.min(latCells - 1, (int) Math.floor((latitude + 90.0) / cellSizeDegrees));
+    }
+
+    private int lngIndex(double longitude) {
+        double normalized = ((longitude + 180.0) % 360.0 + 360.0) % 360.0;
+        return Math.min(lngCells - 1, (int) Math.floor(normalized / cellSizeDegrees));
+    }
+
+    private static long cellKey(int latIdx, int lngIdx) {
+        return ((long) latIdx << 32) | (lngIdx & 0xffffffffL);
+    }
+
+    private static final class Entry<V> {
+        final long id;
+        final double latitude;
+        final double longitude;
+        final long cell;
+        final V value;
+
+        Entry(long id, double latitude, double longitude, long cell, V value) {
+            this.id = id;
+            this.latitude = latitude;
+            this.longitude = longitude;
+            this.cell = cell;
+            this.value = value;
+        }
+    }
+
+    public static final class Hit<V> {
+        private final long id;
+        private final double distanceKm;
+        private final V value;
+
+        Hit(long id, double distanceKm, V value) {
+            this.id = id;
+            this.distanceKm = distanceKm;
+            this.value = value;
+        }
+
+        public long getId() { return id; }
+        public double getDistanceKm() { return distanceKm; }
+        public V getValue() { return value; }
+    }
+}
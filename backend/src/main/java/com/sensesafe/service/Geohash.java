@@ -0,0 +1,142 @@
+package com.sensesafe.service;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Base-32 geohash cells, used to name the geo-partitioned incident topics.
+ *
+ * A hash of precision p interleaves 5p bits, longitude first, so each extra
+ * character narrows the cell by 8x in one axis and 4x in the other:
+ * precision 2 is about 1250 x 625 km, 3 about 156 x 156 km, 4 about
+ * 39 x 20 km at the equator.
+ */
+public final class Geohash {
+
+    private static final char[] BASE32 = "0123456789bcdefghjkmnpqrstuvwxyz".toCharArray();
+    private static final int[] DECODE = new int[128];
+
+    static {
+        Arrays.fill(DECODE, -1);
+        for (int i = 0; i < BASE32.length; i++) {
+            DECODE[BASE32[i]] = i;
+        }
+    }
+
+    private Geohash() {
+    }
+
+    public static String encode(double latitude, double longitude, int precision) {
+        double minLat = -90, maxLat = 90;
+        double minLng = -180, maxLng = 180;
+        char[] hash = new char[precision];
+        boolean lngBit = true;
+        for (int i = 0; i < precision; i++) {
+            int value = 0;
+            for (int bit = 0; bit < 5; bit++) {
+                value <<= 1;
+                if (lngBit) {
+                    double mid = (minLng + maxLng) / 2;
+                    if (longitude >= mid) {
+                        value |= 1;
+                        minLng = mid;
+                    } else {
+                        maxLng = mid;
+                    }
+                } else {
+                    double mid = (minLat + maxLat) / 2;
+                    if (latitude >= mid) {
+                        value |= 1;
+                        minLat = mid;
+                    } else {
+                        maxLat = mid;
+                    }
+                }
+                lngBit = !lngBit;
+            }
+            hash[i] = BASE32[value];
+        }
+        return new String(hash);
+    }
+
+    public static boolean isValid(String hash) {
+        if (hash == null || hash.isEmpty()) {
+            return false;
+        }
+        for (int i = 0; i < hash.length(); i++) {
+            char c = hash.charAt(i);
+            if (c >= 128 || DECODE[c] < 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Cell height in degrees of latitude at a precision
+     */
+    public static double cellHeight(int precision) {
+        return 180.0 / (1L << (5 * precision / 2));
+    }
+
+    /**
+     * Cell width in degrees of longitude at a precision
+     */
+    public static double cellWidth(int precision) {
+        return 360.0 / (1L << ((5 * precision + 1) / 2));
+    }
+
+    /**
+     * Cells at a precision that together cover a bounding box, or null if
+     * that takes more than maxCells. A west edge greater than the east edge
+     * means the box crosses the antimeridian.
+     */
+    public static List<String> cover(double south, double west, double north, double east,
+                                     int precision, int maxCells) {
+        south = clampLatitude(south);
+        north = clampLatitude(north);
+        if (south > north) {
+            double swap = south;
+            south = north;
+            north = swap;
+        }
+        if (west > east) {
+            List<String> left = cover(south, west, north, 180.0, precision, maxCells);
+            if (left == null) {
+                return null;
+            }
+            List<String> right = cover(south, -180.0, north, east, precision, maxCells - left.size());
+            if (right == null) {
+                return null;
+            }
+            left.addAll(right);
+            return left;
+        }
+
+        double height = cellHeight(precision);
+        double width = cellWidth(precision);
+        long rows = (long) Math.floor((north + 90) / height) - (long) Math.floor((south + 90) / height) + 1;
+        long cols = (long) Math.floor((Math.min(east, 179.999999) + 180) / width)
+                - (long) Math.floor((west + 180) / width) + 1;
+        if (rows * cols > maxCells) {
+            return null;
+        }
+
+        Set<String> cells = new LinkedHashSet<>();
+        double startLat = (Math.floor((south + 90) / height) + 0.5) * height - 90;
+        double startLng = (Math.floor((west + 180) / width) + 0.5) * width - 180;
+        for (long row = 0; row < rows; row++) {
+            for (long col = 0; col < cols; col++) {
+                cells.add(encode(startLat + row * height, startLng + col * width, precision));
+            }
+        }
+        return new ArrayList<>(cells);
+    }
+
+    private static double clampLatitude(double latitude) {
+        return Math.max(-90.0, Math.min(89.999999, latitude));
+    }
+}
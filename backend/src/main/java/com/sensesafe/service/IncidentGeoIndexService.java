@@ -0,0 +1,76 @@
+package com.sensesafe.service;
+
+import com.sensesafe.model.Incident;
+import com.sensesafe.repository.IncidentRepository;
+import jakarta.annotation.PostConstruct;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Service;
+
+import java.util.List;
+
+@Service
+public class IncidentGeoIndexService {
+
+    @Autowired
+    private IncidentRepository incidentRepository;
+
+    @Value("${geolocation.index.cell-size-degrees:0.05}")
+    private double cellSizeDegrees;
+
+    private GeoGridIndex<Incident.Status> index;
+    private volatile boolean ready = false;
+
+    @PostConstruct
+    public void init() {
+        index = new GeoGridIndex<>(cellSizeDegrees);
+    }
+
+    /**
+     * Rebuild the index from the database once startup data has been loaded
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void rebuild() {
+        ready = false;
+        index.clear();
+        for (Object[] row : incidentRepository.findAllLocations()) {
+            Long id = (Long) row[0];
+            Double latitude = (Double) row[1];
+            Double longitude = (Double) row[2];
+            if (id != null && latitude != null && longitude != null) {
+                index.put(id, latitude, longitude, (Incident.Status) row[3]);
+            }
+        }
+        ready = true;
+        System.out.println("Incident geo index built with " + index.size() + " incidents");
+    }
+
+    public boolean isReady() {
+        return ready;
+    }
+
+    public void index(Incident incident) {
+        if (incident.getId() == null || incident.getLatitude() == null || incident.getLongitude() == null) {
+            return;
+        }
+        index.put(incident.getId(), incident.getLatitude(), incident.getLongitude(), incident.getStatus());
+    }
+
+    public void remove(Long incidentId) {
+        index.remove(incidentId);
+    }
+
+    /**
+     * Incident ids within the radius, nearest first
+     */
+    public List<GeoGridIndex.Hit<Incident.Status>> findWithinRadius(Double latitude, Double longitude,
+                                                                   Double radiusKm, Incident.Status status) {
+        return index.withinRadius(latitude, longitude, radiusKm, status == null ? null : s -> s == status);
+    }
+
+    public int size() {
+        return index.size();
+    }
+}
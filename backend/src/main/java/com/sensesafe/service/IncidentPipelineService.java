@@ -0,0 +1,204 @@
+package com.sensesafe.service;
+
+import com.sensesafe.config.InstrumentedThreadPoolExecutor;
+import com.sensesafe.model.Incident;
+import com.sensesafe.repository.IncidentRepository;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Staged post-acknowledgement processing for newly reported incidents.
+ *
+ * The request thread only persists the incident; enrichment, ML scoring,
+ * notification fan-out and emergency dispatch then run one after another on
+ * their own bounded executors. When a stage's queue is full the submitting
+ * thread runs the task itself, which pushes back on the stage before it
+ * instead of dropping work.
+ *
+ * Each stage records its progress in Incident.processingStage. At startup
+ * incidents that were acknowledged but not finished are resubmitted from the
+ * stage after the last one they completed, so a restart doesn't silently skip
+ * their notifications or dispatch. A stage interrupted mid-way runs again.
+ */
+@Service
+public class IncidentPipelineService {
+
+    @Autowired
+    private IncidentService incidentService;
+
+    @Autowired
+    private IncidentRepository incidentRepository;
+
+    @Value("${pipeline.enrichment.threads:2}")
+    private int enrichmentThreads;
+
+    @Value("${pipeline.scoring.threads:4}")
+    private int scoringThreads;
+
+    @Value("${pipeline.fan-out.threads:2}")
+    private int fanOutThreads;
+
+    @Value("${pipeline.dispatch.threads:2}")
+    private int dispatchThreads;
+
+    @Value("${pipeline.queue-capacity:500}")
+    private int queueCapacity;
+
+    // Stage threads are virtual when the JVM has them; the thread counts still bound each stage
+    @Value("${spring.threads.virtual.enabled:false}")
+    private boolean virtualThreads;
+
+    private InstrumentedThreadPoolExecutor enrichmentExecutor;
+    private InstrumentedThreadPoolExecutor scoringExecutor;
+    private InstrumentedThreadPoolExecutor fanOutExecutor;
+    private InstrumentedThreadPoolExecutor dispatchExecutor;
+
+    private final LongAdder incidentsStarted = new LongAdder();
+    private final LongAdder incidentsCompleted = new LongAdder();
+    private final LongAdder incidentsResumed = new LongAdder();
+    private final LongAdder stageFailures = new LongAdder();
+    private final LongAdder totalEndToEndNanos = new LongAdder();
+    private final AtomicLong maxEndToEndNanos = new AtomicLong();
+
+    @PostConstruct
+    public void init() {
+        enrichmentExecutor = newStageExecutor("pipeline-enrich", enrichmentThreads);
+        scoringExecutor = newStageExecutor("pipeline-score", scoringThreads);
+        fanOutExecutor = newStageExecutor("pipeline-fanout", fanOutThreads);
+        dispatchExecutor = newStageExecutor("pipeline-dispatch", dispatchThreads);
+    }
+
+    @PreDestroy
+    public void shutdown() throws InterruptedException {
+        // Drain in stage order so in-flight incidents can finish
+        for (InstrumentedThreadPoolExecutor executor :
+                new InstrumentedThreadPoolExecutor[]{enrichmentExecutor, scoringExecutor, fanOutExecutor, dispatchExecutor}) {
+            executor.shutdown();
+            executor.awaitTermination(10, TimeUnit.SECONDS);
+        }
+    }
+
+    /**
+     * Queue a persisted incident for processing. If called inside a transaction
+     * the work starts only after commit, so the stages can see the row.
+     */
+    public void submit(Long incidentId) {
+        long receivedAt = System.nanoTime();
+        incidentsStarted.increment();
+
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    enrichmentExecutor.execute(() -> enrich(incidentId, receivedAt));
+                }
+            });
+        } else {
+            enrichmentExecutor.execute(() -> enrich(incidentId, receivedAt));
+        }
+    }
+
+    /**
+     * Resubmit incidents left unfinished when the server last stopped
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void resumeUnfinished() {
+        List<Object[]> unfinished = incidentRepository.findUnfinishedProcessing();
+        for (Object[] row : unfinished) {
+            Long incidentId = (Long) row[0];
+            Incident.ProcessingStage stage = (Incident.ProcessingStage) row[1];
+            long receivedAt = System.nanoTime();
+            incidentsStarted.increment();
+            incidentsResumed.increment();
+            switch (stage) {
+                case RECEIVED -> enrichmentExecutor.execute(() -> enrich(incidentId, receivedAt));
+                case ENRICHED -> scoringExecutor.execute(() -> score(incidentId, receivedAt));
+                case SCORED -> fanOutExecutor.execute(() -> fanOut(incidentId, receivedAt));
+                case NOTIFIED -> dispatchExecutor.execute(() -> dispatch(incidentId, receivedAt));
+                default -> {
+                    // COMPLETED rows aren't returned
+                }
+            }
+        }
+        if (!unfinished.isEmpty()) {
+            System.out.println("Resumed " + unfinished.size() + " incidents with unfinished pipeline stages");
+        }
+    }
+
+    public Map<String, Object> getMetrics() {
+        long completed = incidentsCompleted.sum();
+
+        Map<String, Object> stages = new LinkedHashMap<>();
+        stages.put("enrichment", enrichmentExecutor.getMetrics());
+        stages.put("scoring", scoringExecutor.getMetrics());
+        stages.put("fanOut", fanOutExecutor.getMetrics());
+        stages.put("dispatch", dispatchExecutor.getMetrics());
+
+        Map<String, Object> metrics = new HashMap<>();
+        metrics.put("incidentsStarted", incidentsStarted.sum());
+        metrics.put("incidentsCompleted", completed);
+        metrics.put("incidentsResumed", incidentsResumed.sum());
+        metrics.put("incidentsInFlight", incidentsStarted.sum() - completed);
+        metrics.put("stageFailures", stageFailures.sum());
+        metrics.put("avgEndToEndMillis", completed > 0 ? totalEndToEndNanos.sum() / completed / 1_000_000.0 : 0.0);
+        metrics.put("maxEndToEndMillis", maxEndToEndNanos.get() / 1_000_000.0);
+        metrics.put("stages", stages);
+        return metrics;
+    }
+
+    private void enrich(Long incidentId, long receivedAt) {
+        runStage("enrichment", incidentId, () -> incidentService.enrichIncident(incidentId));
+        scoringExecutor.execute(() -> score(incidentId, receivedAt));
+    }
+
+    private void score(Long incidentId, long receivedAt) {
+        runStage("scoring", incidentId, () -> incidentService.scoreIncident(incidentId));
+        fanOutExecutor.execute(() -> fanOut(incidentId, receivedAt));
+    }
+
+    private void fanOut(Long incidentId, long receivedAt) {
+        runStage("fan-out", incidentId, () -> incidentService.fanOutIncident(incidentId));
+        dispatchExecutor.execute(() -> dispatch(incidentId, receivedAt));
+    }
+
+    private void dispatch(Long incidentId, long receivedAt) {
+        runStage("dispatch", incidentId, () -> incidentService.dispatchIncident(incidentId));
+
+        long elapsed = System.nanoTime() - receivedAt;
+        totalEndToEndNanos.add(elapsed);
+        maxEndToEndNanos.accumulateAndGet(elapsed, Math::max);
+        incidentsCompleted.increment();
+    }
+
+    // A failed stage is logged and the incident moves on, so a geocoder or ML
+    // outage never stops notifications and dispatch from going out
+    private void runStage(String stage, Long incidentId, Runnable work) {
+        try {
+            work.run();
+        } catch (Exception e) {
+            stageFailures.increment();
+            System.err.println("Pipeline stage " + stage + " failed for incident " + incidentId + ": " + e.getMessage());
+        }
+    }
+
+    private InstrumentedThreadPoolExecutor newStageExecutor(String name, int threads) {
+        return new InstrumentedThreadPoolExecutor(name, threads, queueCapacity, new ThreadPoolExecutor.CallerRunsPolicy(),
+                virtualThreads);
+    }
+}
@@ -9,6 +9,7 @@ import com.sensesafe.repository.EmergencyResponseRepository;
 import com.sensesafe.repository.IncidentVerificationRepository;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Propagation;
 import org.springframework.transaction.annotation.Transactional;
 
 import java.time.LocalDateTime;
@@ -38,13 +39,13 @@ public class IncidentService {
     private MLAnalysisService mlAnalysisService;
 
     @Autowired
-    private GeolocationService geolocationService;
+    private MLScoringOrchestrator mlScoringOrchestrator;
 
     @Autowired
-    private NotificationService notificationService;
+    private GeolocationService geolocationService;
 
     @Autowired
-    private BlockchainService blockchainService;
+    private NotificationService notificationService;
 
     @Autowired
     private WebSocketService webSocketService;
@@ -55,10 +56,44 @@ public class IncidentService {
     @Autowired
     private SystemConfigService systemConfigService;
 
+    @Autowired
+    private IncidentGeoIndexService incidentGeoIndexService;
+
+    @Autowired
+    private IncidentPipelineService incidentPipelineService;
+
+    @Autowired
+    private IncidentSimilarityService incidentSimilarityService;
+
+    @Autowired
+    private DashboardMetricsService dashboardMetricsService;
+
+    /**
+     * Persist a new report and acknowledge it. Enrichment, ML scoring,
+     * notifications and dispatch continue in IncidentPipelineService.
+     */
     public Incident createIncident(Incident incident) {
         // Set initial values
         incident.setCreatedAt(LocalDateTime.now());
         incident.setUpdatedAt(LocalDateTime.now());
+        incident.setProcessingStage(Incident.ProcessingStage.RECEIVED);
+
+        Incident savedIncident = incidentRepository.save(incident);
+        incidentGeoIndexService.index(savedIncident);
+        dashboardMetricsService.recordIncident(savedIncident);
+
+        incidentPipelineService.submit(savedIncident.getId());
+
+        return savedIncident;
+    }
+
+    /**
+     * Pipeline stage 1: location enrichment
+     */
+    @Transactional(propagation = Propagation.REQUIRES_NEW)
+    public void enrichIncident(Long incidentId) {
+        Incident incident = incidentRepository.findById(incidentId)
+                .orElseThrow(() -> new RuntimeException("Incident not found"));
 
         // Reverse geocode location if address not provided
         if (incident.getAddress() == null || incident.getAddress().isEmpty()) {
@@ -76,20 +111,39 @@ public class IncidentService {
                 incident.getLatitude(), incident.getLongitude());
         incident.setNearSensitiveLocation(nearSensitive);
 
-        // Save incident first
-        Incident savedIncident = incidentRepository.save(incident);
+        incident.setProcessingStage(Incident.ProcessingStage.ENRICHED);
+        incidentRepository.save(incident);
+        dashboardMetricsService.recordIncident(incident);
+    }
+
+    /**
+     * Pipeline stage 2: ML fraud, risk and similarity scoring
+     */
+    @Transactional(propagation = Propagation.REQUIRES_NEW)
+    public void scoreIncident(Long incidentId) {
+        Incident incident = incidentRepository.findById(incidentId)
+                .orElseThrow(() -> new RuntimeException("Incident not found"));
 
-        // Perform ML analysis
-        performMLAnalysis(savedIncident);
+        incident.setProcessingStage(Incident.ProcessingStage.SCORED);
+        performMLAnalysis(incident);
+    }
+
+    /**
+     * Pipeline stage 3: reporter stats, notifications, WebSocket broadcast and audit
+     */
+    @Transactional(propagation = Propagation.REQUIRES_NEW)
+    public void fanOutIncident(Long incidentId) {
+        Incident incident = incidentRepository.findById(incidentId)
+                .orElseThrow(() -> new RuntimeException("Incident not found"));
 
         // Update user report count
         userService.incrementReportCount(incident.getReporter().getId());
 
         // Send real-time notifications
-        notificationService.notifyNewIncident(savedIncident);
+        notificationService.notifyNewIncident(incident);
 
         // Broadcast new incident via WebSocket
-        webSocketService.broadcastNewIncident(savedIncident);
+        webSocketService.broadcastNewIncident(incident);
 
         // Log incident creation in audit log
         auditLogService.logAction(
@@ -97,7 +151,7 @@ public class IncidentService {
             incident.getReporter().getId().toString(),
             incident.getReporter().getRole().name(),
             "INCIDENT",
-            savedIncident.getId().toString(),
+            incident.getId().toString(),
             String.format("%s incident reported in %s", incident.getType().name(), incident.getAddress()),
             null, // IP address would be set by controller
             null, // User agent would be set by controller
@@ -105,13 +159,26 @@ public class IncidentService {
             null
         );
 
+        incident.setProcessingStage(Incident.ProcessingStage.NOTIFIED);
+        incidentRepository.save(incident);
+    }
+
+    /**
+     * Pipeline stage 4: auto-dispatch of emergency services for critical incidents
+     */
+    @Transactional(propagation = Propagation.REQUIRES_NEW)
+    public void dispatchIncident(Long incidentId) {
+        Incident incident = incidentRepository.findById(incidentId)
+                .orElseThrow(() -> new RuntimeException("Incident not found"));
+
         // Auto-dispatch emergency services for critical incidents (if enabled)
-        if (savedIncident.getSeverity() == Incident.Severity.CRITICAL && 
+        if (incident.getSeverity() == Incident.Severity.CRITICAL &&
             systemConfigService.isAutoDispatchEnabled()) {
-            autoDispatchEmergencyServices(savedIncident);
+            autoDispatchEmergencyServices(incident);
         }
 
-        return savedIncident;
+        incident.setProcessingStage(Incident.ProcessingStage.COMPLETED);
+        incidentRepository.save(incident);
     }
 
     public Optional<Incident> findById(Long id) {
@@ -132,12 +199,50 @@ public class IncidentService {
     }
 
     public List<Incident> findIncidentsNearLocation(Double latitude, Double longitude, Double radiusKm) {
-        return incidentRepository.findIncidentsWithinRadius(latitude, longitude, radiusKm);
+        if (!incidentGeoIndexService.isReady()) {
+            return incidentRepository.findIncidentsWithinRadius(latitude, longitude, radiusKm);
+        }
+        return loadInDistanceOrder(
+                incidentGeoIndexService.findWithinRadius(latitude, longitude, radiusKm, null), null);
     }
 
     public List<Incident> findActiveIncidentsNearLocation(Double latitude, Double longitude, Double radiusKm) {
-        return incidentRepository.findActiveIncidentsWithinRadius(
-                latitude, longitude, radiusKm, Incident.Status.IN_PROGRESS);
+        if (!incidentGeoIndexService.isReady()) {
+            return incidentRepository.findActiveIncidentsWithinRadius(
+                    latitude, longitude, radiusKm, Incident.Status.IN_PROGRESS);
+        }
+        return loadInDistanceOrder(
+                incidentGeoIndexService.findWithinRadius(latitude, longitude, radiusKm, Incident.Status.IN_PROGRESS),
+                Incident.Status.IN_PROGRESS);
+    }
+
+    private List<Incident> loadInDistanceOrder(List<GeoGridIndex.Hit<Incident.Status>> hits, Incident.Status status) {
+        List<Long> ids = new ArrayList<>(hits.size());
+        for (GeoGridIndex.Hit<Incident.Status> hit : hits) {
+            ids.add(hit.getId());
+        }
+        // Hits are already sorted by distance; keep that order and re-check status against the DB row
+        return loadInOrder(ids, status);
+    }
+
+    private List<Incident> loadInOrder(List<Long> ids, Incident.Status status) {
+        if (ids.isEmpty()) {
+            return new ArrayList<>();
+        }
+
+        Map<Long, Incident> incidentsById = new HashMap<>();
+        for (Incident incident : incidentRepository.findAllById(ids)) {
+            incidentsById.put(incident.getId(), incident);
+        }
+
+        List<Incident> ordered = new ArrayList<>(ids.size());
+        for (Long id : ids) {
+            Incident incident = incidentsById.get(id);
+            if (incident != null && (status == null || incident.getStatus() == status)) {
+                ordered.add(incident);
+            }
+        }
+        return ordered;
     }
 
     public List<Incident> findCriticalIncidents() {
@@ -161,32 +266,20 @@ public class IncidentService {
 
         if (newStatus == Incident.Status.RESOLVED) {
             incident.setResolvedAt(LocalDateTime.now());
-            // Log resolution on blockchain (async to avoid blocking)
-            try {
-                Map<String, Object> blockchainResult = blockchainService.logResolved(incidentId);
-                if ((Boolean) blockchainResult.get("success")) {
-                    System.out.println(
-                            "Incident resolution logged on blockchain: " + blockchainResult.get("transactionHash"));
-                }
-            } catch (Exception e) {
-                System.err.println("Failed to log resolution on blockchain: " + e.getMessage());
-            }
+            // The INCIDENT_RESOLVED audit log below puts the resolution on the blockchain
         } else if (newStatus == Incident.Status.VERIFIED && oldStatus == Incident.Status.NEW) {
             // Update reporter's verified report count
             userService.incrementVerifiedReportCount(incident.getReporter().getId());
-            // Log verification on blockchain (async to avoid blocking)
-            try {
-                Map<String, Object> blockchainResult = blockchainService.logVerified(incidentId);
-                if ((Boolean) blockchainResult.get("success")) {
-                    System.out.println(
-                            "Incident verification logged on blockchain: " + blockchainResult.get("transactionHash"));
-                }
-            } catch (Exception e) {
-                System.err.println("Failed to log verification on blockchain: " + e.getMessage());
-            }
+            // The INCIDENT_VERIFIED audit log below puts the verification on the blockchain
         }
 
         Incident updatedIncident = incidentRepository.save(incident);
+        incidentGeoIndexService.index(updatedIncident);
+        dashboardMetricsService.recordIncident(updatedIncident);
+        if (newStatus == Incident.Status.REJECTED) {
+            // A rejected report shouldn't mark genuine ones as duplicates
+            incidentSimilarityService.remove(incidentId);
+        }
 
         // Log status change in audit log
         String auditAction = switch (newStatus) {
@@ -249,10 +342,28 @@ public class IncidentService {
     }
 
     public List<Incident> findSimilarIncidents(Long incidentId, Double threshold) {
-        return incidentRepository.findSimilarIncidents(threshold, incidentId);
+        if (!incidentSimilarityService.isReady()) {
+            return incidentRepository.findSimilarIncidents(threshold, incidentId);
+        }
+        Incident incident = incidentRepository.findById(incidentId)
+                .orElseThrow(() -> new RuntimeException("Incident not found"));
+
+        List<Long> ids = incidentSimilarityService.findSimilar(incident, threshold, 50).stream()
+                .map(IncidentSimilarityIndex.Match::getId)
+                .toList();
+        return loadInOrder(ids, null);
     }
 
     public Map<String, Object> getIncidentStatistics(int days) {
+        if (dashboardMetricsService.covers(days * 24)) {
+            DashboardMetricsService.WindowSnapshot window = dashboardMetricsService.window(days * 24);
+            return Map.of(
+                    "totalIncidents", window.getIncidents(),
+                    "typeStatistics", window.getTypeStatistics(),
+                    "severityStatistics", window.getSeverityStatistics(),
+                    "period", days + " days");
+        }
+
         LocalDateTime since = LocalDateTime.now().minusDays(days);
 
         Long totalIncidents = incidentRepository.countIncidentsAfter(since);
@@ -267,6 +378,34 @@ public class IncidentService {
     }
 
     public Map<String, Object> getAnalytics(int hours) {
+        if (!dashboardMetricsService.covers(hours)) {
+            return scanAnalytics(hours);
+        }
+
+        DashboardMetricsService.WindowSnapshot window = dashboardMetricsService.window(hours);
+        Map<String, Object> analytics = new HashMap<>();
+        analytics.put("incidentsByType", window.getIncidentsByType());
+        analytics.put("riskByArea", window.getRiskByArea());
+        analytics.put("severityDistribution", window.getSeverityDistribution());
+
+        Map<String, Object> realTimeMetrics = new HashMap<>();
+        realTimeMetrics.put("totalIncidents", window.getIncidents());
+        realTimeMetrics.put("activeIncidents",
+                window.getCount(Incident.Status.NEW) + window.getCount(Incident.Status.IN_PROGRESS));
+        realTimeMetrics.put("criticalIncidents", window.getCriticalCount());
+        realTimeMetrics.put("duplicateDetected", window.getDuplicateCount());
+        realTimeMetrics.put("mlAccuracy", 87.5 + Math.random() * 10); // Mock ML accuracy
+
+        analytics.put("realTimeMetrics", realTimeMetrics);
+
+        return analytics;
+    }
+
+    /**
+     * Analytics computed from the incidents themselves, for windows the
+     * metrics store doesn't cover
+     */
+    private Map<String, Object> scanAnalytics(int hours) {
         LocalDateTime since = LocalDateTime.now().minusHours(hours);
 
         List<Incident> incidents = incidentRepository.findRecentIncidents(since);
@@ -324,27 +463,29 @@ public class IncidentService {
 
     private void performMLAnalysis(Incident incident) {
         try {
-            // 1. Similarity analysis (First, to feed into fraud detection)
-            Map<String, Object> similarityResult = mlAnalysisService.analyzeSimilarity(incident);
+            // Similarity feeds fraud; risk is scored in parallel with that chain
+            Map<String, Map<String, Object>> scores = mlScoringOrchestrator.score(incident);
+
+            Map<String, Object> similarityResult = scores.get("similarity");
             if ((Boolean) similarityResult.get("success")) {
                 incident.setSimilarityScore((Double) similarityResult.get("topMatchScore"));
             }
 
-            // 2. Fraud analysis (Uses similarity score)
-            Map<String, Object> fraudResult = mlAnalysisService.analyzeFraud(incident, incident.getReporter());
+            Map<String, Object> fraudResult = scores.get("fraud");
             if ((Boolean) fraudResult.get("success")) {
                 incident.setFraudProbability((Double) fraudResult.get("fraudProbability"));
                 incident.setIsFraud((Boolean) fraudResult.get("isFraud"));
             }
 
-            // 3. Risk analysis
-            Map<String, Object> riskResult = mlAnalysisService.analyzeRisk(incident);
+            Map<String, Object> riskResult = scores.get("risk");
             if ((Boolean) riskResult.get("success")) {
                 incident.setRiskScore((Double) riskResult.get("riskScore"));
                 incident.setRiskLevel((String) riskResult.get("riskLevel"));
             }
 
             incidentRepository.save(incident);
+            incidentSimilarityService.index(incident);
+            dashboardMetricsService.recordIncident(incident);
         } catch (Exception e) {
             // Log error but don't fail incident creation
             System.err.println("ML analysis failed for incident " + incident.getId() + ": " + e.getMessage());
@@ -395,31 +536,19 @@ public class IncidentService {
 
             emergencyResponseRepository.save(response);
 
-            // Log resource allocation in audit log
+            // Log resource allocation in audit log, which also records it on the blockchain
             auditLogService.logAction(
                 "RESOURCE_ASSIGNED",
                 "System",
                 "SYSTEM",
                 "INCIDENT",
                 incident.getId().toString(),
-                String.format("%s assigned to incident", serviceType.name()),
+                String.format("%s %s assigned to incident", serviceType.name(), response.getResourceId()),
                 null,
                 null,
                 "SUCCESS",
                 null
             );
-
-            // Log resource allocation on blockchain (async to avoid blocking)
-            try {
-                Map<String, Object> blockchainResult = blockchainService.logResource(incident.getId(),
-                        response.getResourceId());
-                if ((Boolean) blockchainResult.get("success")) {
-                    System.out.println(
-                            "Resource allocation logged on blockchain: " + blockchainResult.get("transactionHash"));
-                }
-            } catch (Exception e) {
-                System.err.println("Failed to log resource allocation on blockchain: " + e.getMessage());
-            }
         }
 
         // Send emergency alerts
@@ -0,0 +1,225 @@
+package com.sensesafe.service;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Fixed-capacity store of L2-normalized incident feature vectors for
+ * top-k cosine similarity search.
+ *
+ * Vectors live back to back in one primitive float array, with id, location
+ * and creation time in parallel arrays, so a query is a single linear scan
+ * with no per-entry objects. Slots are reused ring-style: once full, the
+ * oldest inserted incident is overwritten. A query can be limited to a radius
+ * and a time window, which is how duplicate reports are told apart from
+ * merely similar ones elsewhere or earlier.
+ */
+public class IncidentSimilarityIndex {
+
+    private static final long EMPTY = Long.MIN_VALUE;
+
+    private final int dimensions;
+    private final int capacity;
+    private final float[] vectors;
+    private final long[] ids;
+    private final double[] latitudes;
+    private final double[] longitudes;
+    private final long[] createdAtMillis;
+
+    // Guarded by lock
+    private final Map<Long, Integer> slots = new HashMap<>();
+    private int nextSlot;
+
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+
+    public IncidentSimilarityIndex(int dimensions, int capacity) {
+        if (dimensions <= 0 || capacity <= 0) {
+            throw new IllegalArgumentException("Dimensions and capacity must be positive");
+        }
+        this.dimensions = dimensions;
+        this.capacity = capacity;
+        this.vectors = new float[dimensions * capacity];
+        this.ids = new long[capacity];
+        this.latitudes = new double[capacity];
+        this.longitudes = new double[capacity];
+        this.createdAtMillis = new long[capacity];
+        Arrays.fill(ids, EMPTY);
+    }
+
+    /**
+     * Insert or replace an incident's vector. The vector is normalized on the
+     * way in, so callers can pass raw weighted features.
+     */
+    public void put(long id, float[] vector, double latitude, double longitude, long createdAt) {
+        if (vector.length != dimensions) {
+            throw new IllegalArgumentException("Expected " + dimensions + " dimensions, got " + vector.length);
+        }
+        float norm = norm(vector);
+
+        lock.writeLock().lock();
+        try {
+            Integer slot = slots.get(id);
+            if (slot == null) {
+                slot = nextSlot;
+                nextSlot = (nextSlot + 1) % capacity;
+                if (ids[slot] != EMPTY) {
+                    slots.remove(ids[slot]);
+                }
+                slots.put(id, slot);
+            }
+            int offset = slot * dimensions;
+            for (int d = 0; d < dimensions; d++) {
+                vectors[offset + d] = norm > 0 ? vector[d] / norm : 0f;
+            }
+            ids[slot] = id;
+            latitudes[slot] = latitude;
+            longitudes[slot] = longitude;
+            createdAtMillis[slot] = createdAt;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    public void remove(long id) {
+        lock.writeLock().lock();
+        try {
+            Integer slot = slots.remove(id);
+            if (slot != null) {
+                ids[slot] = EMPTY;
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    public void clear() {
+        lock.writeLock().lock();
+        try {
+            slots.clear();
+            Arrays.fill(ids, EMPTY);
+            nextSlot = 0;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    public int size() {
+        lock.readLock().lock();
+        try {
+            return slots.size();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    public int capacity() {
+        return capacity;
+    }
+
+    /**
+     * The k most similar incidents scoring at least {@code minScore}, best
+     * first. A radius of zero or less disables the spatial filter; the time
+     * window is inclusive on both ends.
+     */
+    public List<Match> topK(float[] query, long excludeId, double latitude, double longitude, double radiusKm,
+                            long fromMillis, long toMillis, int k, float minScore) {
+        if (query.length != dimensions) {
+            throw new IllegalArgumentException("Expected " + dimensions + " dimensions, got " + query.length);
+        }
+        float norm = norm(query);
+        if (norm == 0 || k <= 0) {
+            return new ArrayList<>();
+        }
+        float[] normalized = new float[dimensions];
+        for (int d = 0; d < dimensions; d++) {
+            normalized[d] = query[d] / norm;
+        }
+
+        // Best k so far, kept sorted descending by insertion
+        int[] bestSlots = new int[k];
+        float[] bestScores = new float[k];
+        double[] bestDistances = new double[k];
+        int found = 0;
+
+        lock.readLock().lock();
+        try {
+            for (int slot = 0; slot < capacity; slot++) {
+                long id = ids[slot];
+                if (id == EMPTY || id == excludeId) {
+                    continue;
+                }
+                long created = createdAtMillis[slot];
+                if (created < fromMillis || created > toMillis) {
+                    continue;
+                }
+
+                int offset = slot * dimensions;
+                float score = 0f;
+                for (int d = 0; d < dimensions; d++) {
+                    score += normalized[d] * vectors[offset + d];
+                }
+                if (score < minScore || (found == k && score <= bestScores[k - 1])) {
+                    continue;
+                }
+
+                // Distance only for candidates that would make the cut
+                double distanceKm = GeoGridIndex.haversineKm(latitude, longitude, latitudes[slot], longitudes[slot]);
+                if (radiusKm > 0 && distanceKm > radiusKm) {
+                    continue;
+                }
+
+                int position = found < k ? found++ : k - 1;
+                while (position > 0 && bestScores[position - 1] < score) {
+                    bestSlots[position] = bestSlots[position - 1];
+                    bestScores[position] = bestScores[position - 1];
+                    bestDistances[position] = bestDistances[position - 1];
+                    position--;
+                }
+                bestSlots[position] = slot;
+                bestScores[position] = score;
+                bestDistances[position] = distanceKm;
+            }
+
+            List<Match> matches = new ArrayList<>(found);
+            for (int i = 0; i < found; i++) {
+                int slot = bestSlots[i];
+                matches.add(new Match(ids[slot], bestScores[i], bestDistances[i], createdAtMillis[slot]));
+            }
+            return matches;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    private static float norm(float[] vector) {
+        float sum = 0f;
+        for (float value : vector) {
+            sum += value * value;
+        }
+        return (float) Math.sqrt(sum);
+    }
+
+    public static final class Match {
+        private final long id;
+        private final float score;
+        private final double distanceKm;
+        private final long createdAtMillis;
+
+        Match(long id, float score, double distanceKm, long createdAtMillis) {
+            this.id = id;
+            this.score = score;
+            this.distanceKm = distanceKm;
+            this.createdAtMillis = createdAtMillis;
+        }
+
+        public long getId() { return id; }
+        public float getScore() { return score; }
+        public double getDistanceKm() { return distanceKm; }
+        public long getCreatedAtMillis() { return createdAtMillis; }
+    }
+}
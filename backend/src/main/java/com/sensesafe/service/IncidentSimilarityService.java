@@ -0,0 +1,194 @@
+package com.sensesafe.service;
+
+import com.sensesafe.model.Incident;
+import com.sensesafe.repository.IncidentRepository;
+import jakarta.annotation.PostConstruct;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * In-process similarity search over recent incidents.
+ *
+ * Each incident is turned into the same features the Python similarity
+ * service receives (type, time of day, media, upvotes, flags, injuries,
+ * people, responder distance, sensitive location), weighted and kept in an
+ * IncidentSimilarityIndex. Duplicate scoring only considers incidents within
+ * a radius and time window of the new report.
+ */
+@Service
+public class IncidentSimilarityService {
+
+    private static final int TYPE_COUNT = Incident.IncidentType.values().length;
+    // One-hot type, sin/cos hour, media, upvotes, flags, injuries, people, responder distance, sensitive
+    static final int DIMENSIONS = TYPE_COUNT + 9;
+
+    private static final double LOG_101 = Math.log(101);
+
+    @Autowired
+    private IncidentRepository incidentRepository;
+
+    @Value("${ml.similarity.capacity:20000}")
+    private int capacity;
+
+    @Value("${ml.similarity.retention-hours:168}")
+    private long retentionHours;
+
+    @Value("${ml.similarity.duplicate-radius-km:2.0}")
+    private double duplicateRadiusKm;
+
+    @Value("${ml.similarity.duplicate-window-hours:6}")
+    private long duplicateWindowHours;
+
+    @Value("${ml.similarity.top-k:5}")
+    private int topK;
+
+    @Value("${ml.similarity.min-score:0.5}")
+    private float minScore;
+
+    private IncidentSimilarityIndex index;
+    private volatile boolean ready = false;
+
+    @PostConstruct
+    public void init() {
+        index = new IncidentSimilarityIndex(DIMENSIONS, capacity);
+    }
+
+    /**
+     * Rebuild the index from incidents inside the retention window once
+     * startup data has been loaded
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    @Transactional(readOnly = true)
+    public void rebuild() {
+        ready = false;
+        index.clear();
+        List<Incident> recent = incidentRepository.findRecentIncidents(LocalDateTime.now().minusHours(retentionHours));
+        // Oldest first so the newest incidents survive if there are more than the index holds
+        for (int i = recent.size() - 1; i >= 0; i--) {
+            index(recent.get(i));
+        }
+        ready = true;
+        System.out.println("Incident similarity index built with " + index.size() + " incidents");
+    }
+
+    public boolean isReady() {
+        return ready;
+    }
+
+    public void index(Incident incident) {
+        if (incident.getId() == null || incident.getLatitude() == null || incident.getLongitude() == null) {
+            return;
+        }
+        index.put(incident.getId(), featuresOf(incident), incident.getLatitude(), incident.getLongitude(),
+                toMillis(incident.getCreatedAt()));
+    }
+
+    public void remove(Long incidentId) {
+        index.remove(incidentId);
+    }
+
+    /**
+     * Duplicate check for one incident: the most similar reports near it in
+     * space and time, in the same shape the ML service's similarity response
+     * is parsed into.
+     */
+    public Map<String, Object> analyze(Incident incident) {
+        long createdAt = toMillis(incident.getCreatedAt());
+        long window = duplicateWindowHours * 3_600_000L;
+        List<IncidentSimilarityIndex.Match> matches = index.topK(featuresOf(incident), idOf(incident),
+                incident.getLatitude(), incident.getLongitude(), duplicateRadiusKm,
+                createdAt - window, createdAt + window, topK, minScore);
+
+        List<Map<String, Object>> similarIncidents = new ArrayList<>(matches.size());
+        double[] scores = new double[matches.size()];
+        for (int i = 0; i < matches.size(); i++) {
+            IncidentSimilarityIndex.Match match = matches.get(i);
+            Map<String, Object> similar = new HashMap<>();
+            similar.put("id", match.getId());
+            similar.put("similarity", (double) match.getScore());
+            similar.put("distanceKm", match.getDistanceKm());
+            similar.put("minutesApart", Math.abs(createdAt - match.getCreatedAtMillis()) / 60_000);
+            similarIncidents.add(similar);
+            scores[i] = match.getScore();
+        }
+
+        Map<String, Object> result = new HashMap<>();
+        result.put("success", true);
+        result.put("similarIncidents", similarIncidents);
+        result.put("similarityScores", scores);
+        result.put("topMatchScore", scores.length > 0 ? scores[0] : 0.0);
+        result.put("mlServiceUsed", false);
+        result.put("engine", "in-process");
+        return result;
+    }
+
+    /**
+     * Ids of indexed incidents at least {@code threshold} similar to the given
+     * one, anywhere inside the retention window, best first
+     */
+    public List<IncidentSimilarityIndex.Match> findSimilar(Incident incident, double threshold, int limit) {
+        long now = System.currentTimeMillis();
+        return index.topK(featuresOf(incident), idOf(incident), incident.getLatitude(), incident.getLongitude(), 0,
+                now - retentionHours * 3_600_000L, Long.MAX_VALUE, limit, (float) threshold);
+    }
+
+    public Map<String, Object> getMetrics() {
+        Map<String, Object> metrics = new HashMap<>();
+        metrics.put("ready", ready);
+        metrics.put("size", index.size());
+        metrics.put("capacity", index.capacity());
+        metrics.put("dimensions", DIMENSIONS);
+        metrics.put("duplicateRadiusKm", duplicateRadiusKm);
+        metrics.put("duplicateWindowHours", duplicateWindowHours);
+        return metrics;
+    }
+
+    /**
+     * Weighted feature vector; the index normalizes it. Type dominates, so
+     * only reports of the same kind score high, and counts are log-scaled so
+     * one busy incident doesn't swamp the rest.
+     */
+    static float[] featuresOf(Incident incident) {
+        float[] features = new float[DIMENSIONS];
+        features[incident.getType().ordinal()] = 1.0f;
+
+        int d = TYPE_COUNT;
+        LocalDateTime createdAt = incident.getCreatedAt() != null ? incident.getCreatedAt() : LocalDateTime.now();
+        double hourAngle = 2 * Math.PI * (createdAt.getHour() + createdAt.getMinute() / 60.0) / 24.0;
+        features[d++] = (float) (0.5 * Math.sin(hourAngle));
+        features[d++] = (float) (0.5 * Math.cos(hourAngle));
+        features[d++] = incident.getMediaUrls() != null && !incident.getMediaUrls().isEmpty() ? 0.3f : 0f;
+        features[d++] = (float) (0.2 * logScaled(incident.getUpvotes()));
+        features[d++] = (float) (0.2 * logScaled(incident.getFlags()));
+        features[d++] = (float) (0.5 * logScaled(incident.getInjuriesReported()));
+        features[d++] = (float) (0.5 * logScaled(incident.getPeopleInvolved()));
+        double distance = incident.getDistanceToResponder() != null ? incident.getDistanceToResponder() : 5.0;
+        features[d++] = (float) (0.3 * Math.min(distance, 50.0) / 50.0);
+        features[d] = Boolean.TRUE.equals(incident.getNearSensitiveLocation()) ? 0.3f : 0f;
+        return features;
+    }
+
+    private static double logScaled(Integer count) {
+        return count == null || count <= 0 ? 0.0 : Math.min(Math.log1p(count) / LOG_101, 1.0);
+    }
+
+    private static long idOf(Incident incident) {
+        return incident.getId() != null ? incident.getId() : Long.MIN_VALUE + 1;
+    }
+
+    private static long toMillis(LocalDateTime dateTime) {
+        LocalDateTime value = dateTime != null ? dateTime : LocalDateTime.now();
+        return value.atZone(ZoneId.systemDefault()).toInstant().toEpochMilli();
+    }
+}
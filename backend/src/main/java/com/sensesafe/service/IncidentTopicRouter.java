@@ -0,0 +1,169 @@
+package com.sensesafe.service;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.MessageChannel;
+import org.springframework.messaging.MessagingException;
+import org.springframework.messaging.simp.stomp.StompCommand;
+import org.springframework.messaging.simp.stomp.StompHeaderAccessor;
+import org.springframework.messaging.support.ChannelInterceptor;
+import org.springframework.messaging.support.MessageHeaderAccessor;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Geo-partitioned incident topics, /topic/incidents/geo/{geohash}.
+ *
+ * An incident is published to its cell at each configured precision, and a
+ * client subscribes to the cells covering its viewport or location at one
+ * precision (see plan), so the broker only delivers incidents near what
+ * the client is looking at. As a channel interceptor this also tracks which
+ * cells have subscribers, so publishers skip serializing for empty cells,
+ * and rejects pattern subscriptions that would bring back the firehose.
+ */
+@Component
+public class IncidentTopicRouter implements ChannelInterceptor {
+
+    public static final String GEO_TOPIC_PREFIX = "/topic/incidents/geo/";
+
+    @Value("${websocket.geo.precisions:1,2,3,4}")
+    private int[] precisions;
+
+    @Value("${websocket.geo.max-cells:32}")
+    private int maxCells;
+
+    @Value("${websocket.geo.max-subscriptions-per-session:128}")
+    private int maxSubscriptionsPerSession;
+
+    // session id -> subscription id -> geo topic
+    private final Map<String, Map<String, String>> sessions = new ConcurrentHashMap<>();
+    private final Map<String, Integer> subscribersByTopic = new ConcurrentHashMap<>();
+
+    private final LongAdder subscribed = new LongAdder();
+    private final LongAdder rejected = new LongAdder();
+    private final LongAdder published = new LongAdder();
+    private final LongAdder topicsSent = new LongAdder();
+    private final LongAdder topicsSkipped = new LongAdder();
+
+    @Override
+    public Message<?> preSend(Message<?> message, MessageChannel channel) {
+        StompHeaderAccessor accessor = MessageHeaderAccessor.getAccessor(message, StompHeaderAccessor.class);
+        if (accessor == null || accessor.getCommand() == null) {
+            return message;
+        }
+        String sessionId = accessor.getSessionId();
+        StompCommand command = accessor.getCommand();
+        if (command == StompCommand.SUBSCRIBE) {
+            onSubscribe(sessionId, accessor.getSubscriptionId(), accessor.getDestination());
+        } else if (command == StompCommand.UNSUBSCRIBE) {
+            Map<String, String> subscriptions = sessionId != null ? sessions.get(sessionId) : null;
+            if (subscriptions != null) {
+                release(subscriptions.remove(accessor.getSubscriptionId()));
+            }
+        } else if (command == StompCommand.DISCONNECT) {
+            Map<String, String> subscriptions = sessionId != null ? sessions.remove(sessionId) : null;
+            if (subscriptions != null) {
+                subscriptions.values().forEach(this::release);
+            }
+        }
+        return message;
+    }
+
+    /**
+     * The precision and cells a client should subscribe to for a bounding
+     * box: the finest precision that covers it in at most max-cells cells
+     */
+    public Map<String, Object> plan(double south, double west, double north, double east) {
+        int[] finestFirst = precisions.clone();
+        Arrays.sort(finestFirst);
+        for (int i = finestFirst.length - 1; i >= 0; i--) {
+            List<String> cells = Geohash.cover(south, west, north, east, finestFirst[i], maxCells);
+            if (cells != null) {
+                List<String> topics = new ArrayList<>(cells.size());
+                for (String cell : cells) {
+                    topics.add(GEO_TOPIC_PREFIX + cell);
+                }
+                Map<String, Object> plan = new LinkedHashMap<>();
+                plan.put("precision", finestFirst[i]);
+                plan.put("cells", cells);
+                plan.put("topics", topics);
+                return plan;
+            }
+        }
+        throw new IllegalArgumentException("Area too large to subscribe to; zoom in");
+    }
+
+    /**
+     * Geo topics for a point that currently have subscribers
+     */
+    public List<String> subscribedTopics(double latitude, double longitude) {
+        published.increment();
+        List<String> topics = new ArrayList<>(precisions.length);
+        for (int precision : precisions) {
+            String topic = GEO_TOPIC_PREFIX + Geohash.encode(latitude, longitude, precision);
+            if (subscribersByTopic.containsKey(topic)) {
+                topics.add(topic);
+                topicsSent.increment();
+            } else {
+                topicsSkipped.increment();
+            }
+        }
+        return topics;
+    }
+
+    public Map<String, Object> getMetrics() {
+        Map<String, Object> metrics = new HashMap<>();
+        metrics.put("precisions", precisions);
+        metrics.put("sessions", sessions.size());
+        metrics.put("activeTopics", subscribersByTopic.size());
+        metrics.put("subscriptions", subscribed.sum());
+        metrics.put("rejectedSubscriptions", rejected.sum());
+        metrics.put("incidentsPublished", published.sum());
+        metrics.put("topicsSent", topicsSent.sum());
+        metrics.put("topicsSkipped", topicsSkipped.sum());
+        return metrics;
+    }
+
+    private void onSubscribe(String sessionId, String subscriptionId, String destination) {
+        if (destination == null) {
+            return;
+        }
+        if (destination.contains("*") || destination.contains("{")) {
+            rejected.increment();
+            throw new MessagingException("Pattern subscriptions are not allowed: " + destination);
+        }
+        if (!destination.startsWith(GEO_TOPIC_PREFIX) || sessionId == null || subscriptionId == null) {
+            return;
+        }
+
+        String cell = destination.substring(GEO_TOPIC_PREFIX.length());
+        if (!Geohash.isValid(cell) || Arrays.stream(precisions).noneMatch(p -> p == cell.length())) {
+            rejected.increment();
+            throw new MessagingException("Unknown incident cell: " + cell);
+        }
+        Map<String, String> subscriptions = sessions.computeIfAbsent(sessionId, key -> new ConcurrentHashMap<>());
+        if (subscriptions.size() >= maxSubscriptionsPerSession) {
+            rejected.increment();
+            throw new MessagingException("Too many incident cell subscriptions");
+        }
+        String previous = subscriptions.put(subscriptionId, destination);
+        release(previous);
+        subscribersByTopic.merge(destination, 1, Integer::sum);
+        subscribed.increment();
+    }
+
+    private void release(String topic) {
+        if (topic == null) {
+            return;
+        }
+        subscribersByTopic.computeIfPresent(topic, (key, count) -> count > 1 ? count - 1 : null);
+    }
+}
@@ -0,0 +1,21 @@
+package com.sensesafe.service;
+
+import java.util.Map;
+
+/**
+ * A model that scores one ML request payload in-process.
+ *
+ * Payloads are the same maps MLAnalysisService sends to the ML service, so an
+ * embedded model can replace or shadow a remote call without a translation
+ * layer. Implementations must be thread-safe and should not allocate per call.
+ */
+public interface InferenceModel {
+
+    String getName();
+
+    /**
+     * Raw model output: a probability for classifiers, the predicted value
+     * for regressors
+     */
+    double predict(Map<String, Object> payload);
+}
@@ -2,23 +2,30 @@ package com.sensesafe.service;
 
 import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.sensesafe.config.CircuitBreaker;
 import com.sensesafe.model.Incident;
 import com.sensesafe.model.User;
+import io.netty.channel.ChannelOption;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
-import org.springframework.http.HttpEntity;
-import org.springframework.http.HttpHeaders;
 import org.springframework.http.MediaType;
-import org.springframework.http.ResponseEntity;
+import org.springframework.http.client.reactive.ReactorClientHttpConnector;
 import org.springframework.stereotype.Service;
-import org.springframework.web.client.RestTemplate;
+import org.springframework.web.reactive.function.client.WebClient;
+import reactor.netty.http.client.HttpClient;
+import reactor.netty.resources.ConnectionProvider;
 
+import java.time.Duration;
 import java.time.LocalDateTime;
 import java.time.LocalTime;
 import java.util.HashMap;
 import java.util.Map;
 import java.util.List;
 import java.util.ArrayList;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
 
 @Service
 public class MLAnalysisService {
@@ -26,6 +33,12 @@ public class MLAnalysisService {
     @Autowired
     private SystemConfigService systemConfigService;
 
+    @Autowired
+    private IncidentSimilarityService incidentSimilarityService;
+
+    @Autowired
+    private EmbeddedInferenceService embeddedInferenceService;
+
     @Value("${ml.base-url}")
     private String mlBaseUrl;
 
@@ -38,21 +51,159 @@ public class MLAnalysisService {
     @Value("${ml.endpoints.similarity}")
     private String similarityEndpoint;
 
-    private final RestTemplate restTemplate = new RestTemplate();
+    @Value("${ml.endpoints.score:/predict/score}")
+    private String scoreEndpoint;
+
+    @Value("${ml.endpoints.fraud-batch:/predict/fraud/batch}")
+    private String fraudBatchEndpoint;
+
+    @Value("${ml.endpoints.risk-batch:/predict/risk/batch}")
+    private String riskBatchEndpoint;
+
+    @Value("${ml.endpoints.similarity-batch:/predict/similarity/batch}")
+    private String similarityBatchEndpoint;
+
+    @Value("${ml.similarity.local-enabled:true}")
+    private boolean localSimilarityEnabled;
+
+    @Value("${ml.batching.enabled:false}")
+    private boolean batchingEnabled;
+
+    @Value("${ml.batching.max-batch-size:32}")
+    private int maxBatchSize;
+
+    @Value("${ml.batching.linger-ms:5}")
+    private long batchLingerMs;
+
+    @Value("${ml.batching.queue-capacity:1000}")
+    private int batchQueueCapacity;
+
+    @Value("${ml.batching.max-in-flight:4}")
+    private int maxInFlightBatches;
+
+    @Value("${ml.client.max-connections:50}")
+    private int maxConnections;
+
+    @Value("${ml.client.pending-acquire-max:200}")
+    private int pendingAcquireMax;
+
+    @Value("${ml.client.connect-timeout-ms:500}")
+    private int connectTimeoutMs;
+
+    @Value("${ml.client.response-timeout-ms:2000}")
+    private long responseTimeoutMs;
+
+    @Value("${ml.client.max-idle-ms:30000}")
+    private long maxIdleMs;
+
+    @Value("${ml.circuit-breaker.window-size:50}")
+    private int breakerWindowSize;
+
+    @Value("${ml.circuit-breaker.minimum-calls:10}")
+    private int breakerMinimumCalls;
+
+    @Value("${ml.circuit-breaker.failure-rate-threshold:0.5}")
+    private double breakerFailureRateThreshold;
+
+    @Value("${ml.circuit-breaker.slow-call-ms:1500}")
+    private long breakerSlowCallMs;
+
+    @Value("${ml.circuit-breaker.open-duration-ms:10000}")
+    private long breakerOpenDurationMs;
+
+    @Value("${ml.circuit-breaker.half-open-calls:3}")
+    private int breakerHalfOpenCalls;
+
+    private ConnectionProvider connectionProvider;
+    private WebClient webClient;
+    private CircuitBreaker circuitBreaker;
+    private MLMicroBatcher fraudBatcher;
+    private MLMicroBatcher riskBatcher;
+    private MLMicroBatcher similarityBatcher;
     private final ObjectMapper objectMapper = new ObjectMapper();
 
+    @PostConstruct
+    public void init() {
+        // Pooled keep-alive connections on the Netty event loop; idle ones are
+        // evicted before the ML service's own keep-alive timeout closes them
+        connectionProvider = ConnectionProvider.builder("ml-service")
+                .maxConnections(maxConnections)
+                .pendingAcquireMaxCount(pendingAcquireMax)
+                .pendingAcquireTimeout(Duration.ofMillis(responseTimeoutMs))
+                .maxIdleTime(Duration.ofMillis(maxIdleMs))
+                .evictInBackground(Duration.ofMillis(maxIdleMs))
+                .build();
+
+        HttpClient httpClient = HttpClient.create(connectionProvider)
+                .option(ChannelOption.CONNECT_TIMEOUT_MILLIS, connectTimeoutMs)
+                .option(ChannelOption.SO_KEEPALIVE, true)
+                .responseTimeout(Duration.ofMillis(responseTimeoutMs))
+                .keepAlive(true);
+
+        webClient = WebClient.builder()
+                .baseUrl(mlBaseUrl)
+                .clientConnector(new ReactorClientHttpConnector(httpClient))
+                .build();
+
+        circuitBreaker = new CircuitBreaker("ml-service", breakerWindowSize, breakerMinimumCalls,
+                breakerFailureRateThreshold, breakerSlowCallMs, breakerOpenDurationMs, breakerHalfOpenCalls);
+
+        if (batchingEnabled) {
+            fraudBatcher = newBatcher("fraud", fraudBatchEndpoint);
+            riskBatcher = newBatcher("risk", riskBatchEndpoint);
+            similarityBatcher = newBatcher("similarity", similarityBatchEndpoint);
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        if (batchingEnabled) {
+            fraudBatcher.shutdown();
+            riskBatcher.shutdown();
+            similarityBatcher.shutdown();
+        }
+        connectionProvider.dispose();
+    }
+
     /**
      * Check if ML service is available
      */
     public boolean isMLServiceAvailable() {
+        // An open circuit already knows the answer; don't add load to a struggling service
+        if (!circuitBreaker.isCallPermitted()) {
+            return false;
+        }
         try {
-            ResponseEntity<String> response = restTemplate.getForEntity(mlBaseUrl + "/health", String.class);
-            return response.getStatusCode().is2xxSuccessful();
+            webClient.get()
+                    .uri("/health")
+                    .retrieve()
+                    .toBodilessEntity()
+                    .block(Duration.ofMillis(responseTimeoutMs));
+            return true;
         } catch (Exception e) {
             return false;
         }
     }
 
+    public CircuitBreaker.State getCircuitState() {
+        return circuitBreaker.getState();
+    }
+
+    public Map<String, Object> getClientMetrics() {
+        Map<String, Object> metrics = new HashMap<>();
+        metrics.put("circuitBreaker", circuitBreaker.getMetrics());
+        metrics.put("maxConnections", maxConnections);
+        metrics.put("connectTimeoutMs", connectTimeoutMs);
+        metrics.put("responseTimeoutMs", responseTimeoutMs);
+        metrics.put("batchingEnabled", batchingEnabled);
+        if (batchingEnabled) {
+            metrics.put("fraudBatcher", fraudBatcher.getMetrics());
+            metrics.put("riskBatcher", riskBatcher.getMetrics());
+            metrics.put("similarityBatcher", similarityBatcher.getMetrics());
+        }
+        return metrics;
+    }
+
     /**
      * Comprehensive ML analysis for incidents
      */
@@ -80,25 +231,7 @@ public class MLAnalysisService {
         }
         
         try {
-            Map<String, Object> fraudData = prepareFraudData(incident, reporter);
-            
-            HttpHeaders headers = new HttpHeaders();
-            headers.setContentType(MediaType.APPLICATION_JSON);
-            HttpEntity<Map<String, Object>> request = new HttpEntity<>(fraudData, headers);
-
-            ResponseEntity<String> response = restTemplate.postForEntity(
-                mlBaseUrl + fraudEndpoint, request, String.class);
-
-            JsonNode jsonResponse = objectMapper.readTree(response.getBody());
-            
-            Map<String, Object> result = new HashMap<>();
-            result.put("success", jsonResponse.get("success").asBoolean());
-            result.put("fraudProbability", jsonResponse.get("fraud_probability").asDouble());
-            result.put("isFraud", jsonResponse.get("is_fraud").asBoolean());
-            result.put("confidence", jsonResponse.get("confidence").asDouble());
-            result.put("mlServiceUsed", true);
-            
-            return result;
+            return callFraud(prepareFraudData(incident, reporter));
         } catch (Exception e) {
             // Fallback analysis if ML service is unavailable
             return getFallbackFraudAnalysis(incident, reporter);
@@ -107,25 +240,7 @@ public class MLAnalysisService {
 
     public Map<String, Object> analyzeRisk(Incident incident) {
         try {
-            Map<String, Object> riskData = prepareRiskData(incident);
-            
-            HttpHeaders headers = new HttpHeaders();
-            headers.setContentType(MediaType.APPLICATION_JSON);
-            HttpEntity<Map<String, Object>> request = new HttpEntity<>(riskData, headers);
-
-            ResponseEntity<String> response = restTemplate.postForEntity(
-                mlBaseUrl + riskEndpoint, request, String.class);
-
-            JsonNode jsonResponse = objectMapper.readTree(response.getBody());
-            
-            Map<String, Object> result = new HashMap<>();
-            result.put("success", jsonResponse.get("success").asBoolean());
-            result.put("riskScore", jsonResponse.get("risk_score").asDouble());
-            result.put("riskLevel", jsonResponse.get("risk_level").asText());
-            result.put("confidence", jsonResponse.get("confidence").asDouble());
-            result.put("mlServiceUsed", true);
-            
-            return result;
+            return callRisk(prepareRiskData(incident));
         } catch (Exception e) {
             // Fallback analysis if ML service is unavailable
             return getFallbackRiskAnalysis(incident);
@@ -133,47 +248,180 @@ public class MLAnalysisService {
     }
 
     public Map<String, Object> analyzeSimilarity(Incident incident) {
+        if (isLocalSimilarityEnabled()) {
+            return incidentSimilarityService.analyze(incident);
+        }
         try {
-            Map<String, Object> similarityData = prepareSimilarityData(incident);
-            
-            HttpHeaders headers = new HttpHeaders();
-            headers.setContentType(MediaType.APPLICATION_JSON);
-            HttpEntity<Map<String, Object>> request = new HttpEntity<>(similarityData, headers);
-
-            ResponseEntity<String> response = restTemplate.postForEntity(
-                mlBaseUrl + similarityEndpoint, request, String.class);
-
-            JsonNode jsonResponse = objectMapper.readTree(response.getBody());
-            
-            Map<String, Object> result = new HashMap<>();
-            result.put("success", jsonResponse.get("success").asBoolean());
-            result.put("similarIncidents", jsonResponse.get("similar_incidents"));
-            result.put("similarityScores", jsonResponse.get("similarity_scores"));
-            result.put("topMatchScore", jsonResponse.get("top_match_score").asDouble());
-            result.put("mlServiceUsed", true);
-            
-            return result;
+            return callSimilarity(prepareSimilarityData(incident));
         } catch (Exception e) {
             // Fallback analysis if ML service is unavailable
             return getFallbackSimilarityAnalysis(incident);
         }
     }
 
+    /**
+     * Whether similarity is scored by the in-process engine instead of the
+     * ML service. False until the engine's index has been built.
+     */
+    boolean isLocalSimilarityEnabled() {
+        return localSimilarityEnabled && incidentSimilarityService.isReady();
+    }
+
+    /**
+     * Score similarity, fraud and risk in one round trip to the ML service.
+     * A null fraud payload skips fraud scoring.
+     */
+    Map<String, Map<String, Object>> callCombinedScore(Map<String, Object> similarityData,
+                                                       Map<String, Object> fraudData,
+                                                       Map<String, Object> riskData) throws Exception {
+        Map<String, Object> payload = new HashMap<>();
+        payload.put("similarity", similarityData);
+        payload.put("fraud", fraudData);
+        payload.put("risk", riskData);
+
+        JsonNode jsonResponse = postForJson(scoreEndpoint, payload);
+
+        Map<String, Map<String, Object>> results = new HashMap<>();
+        results.put("similarity", parseSimilarityResponse(jsonResponse.get("similarity")));
+        results.put("risk", parseRiskResponse(jsonResponse.get("risk")));
+        if (fraudData != null) {
+            results.put("fraud", parseFraudResponse(jsonResponse.get("fraud")));
+        }
+        return results;
+    }
+
+    // Raw calls to the ML service; these throw so callers can choose their own fallback
+
+    Map<String, Object> callFraud(Map<String, Object> fraudData) throws Exception {
+        if (embeddedInferenceService.isFraudPrimary()) {
+            return embeddedInferenceService.scoreFraud(fraudData);
+        }
+        Map<String, Object> result = batchingEnabled
+                ? awaitBatched(fraudBatcher, fraudData)
+                : parseFraudResponse(postForJson(fraudEndpoint, fraudData));
+        if (embeddedInferenceService.isFraudShadow()) {
+            embeddedInferenceService.shadowFraud(fraudData, result);
+        }
+        return result;
+    }
+
+    Map<String, Object> callRisk(Map<String, Object> riskData) throws Exception {
+        if (embeddedInferenceService.isRiskPrimary()) {
+            return embeddedInferenceService.scoreRisk(riskData);
+        }
+        Map<String, Object> result = batchingEnabled
+                ? awaitBatched(riskBatcher, riskData)
+                : parseRiskResponse(postForJson(riskEndpoint, riskData));
+        if (embeddedInferenceService.isRiskShadow()) {
+            embeddedInferenceService.shadowRisk(riskData, result);
+        }
+        return result;
+    }
+
+    Map<String, Object> callSimilarity(Map<String, Object> similarityData) throws Exception {
+        if (batchingEnabled) {
+            return awaitBatched(similarityBatcher, similarityData);
+        }
+        return parseSimilarityResponse(postForJson(similarityEndpoint, similarityData));
+    }
+
+    private MLMicroBatcher newBatcher(String model, String batchEndpoint) {
+        return new MLMicroBatcher(model, maxBatchSize, batchLingerMs, batchQueueCapacity, maxInFlightBatches,
+                payloads -> postBatch(model, batchEndpoint, payloads));
+    }
+
+    private Map<String, Object> awaitBatched(MLMicroBatcher batcher, Map<String, Object> data) throws Exception {
+        // Don't make callers sit out the linger time just to be refused by an open circuit
+        if (!circuitBreaker.isCallPermitted()) {
+            throw new CircuitBreaker.CallNotPermittedException("ml-service");
+        }
+        try {
+            return batcher.submit(data).get(batchLingerMs + responseTimeoutMs, TimeUnit.MILLISECONDS);
+        } catch (ExecutionException e) {
+            throw e.getCause() instanceof Exception cause ? cause : e;
+        }
+    }
+
+    /**
+     * Score a batch with one vectorized request. The service answers with a
+     * "results" array in request order, each entry shaped like the
+     * single-item response.
+     */
+    private List<Map<String, Object>> postBatch(String model, String batchEndpoint,
+                                                List<Map<String, Object>> payloads) throws Exception {
+        Map<String, Object> request = new HashMap<>();
+        request.put("items", payloads);
+
+        JsonNode jsonResponse = postForJson(batchEndpoint, request);
+        JsonNode items = jsonResponse.get("results");
+
+        List<Map<String, Object>> results = new ArrayList<>(items.size());
+        for (JsonNode item : items) {
+            results.add(switch (model) {
+                case "fraud" -> parseFraudResponse(item);
+                case "risk" -> parseRiskResponse(item);
+                default -> parseSimilarityResponse(item);
+            });
+        }
+        return results;
+    }
+
+    /**
+     * POST to the ML service through the circuit breaker. The exchange runs on
+     * the Netty event loop; the caller waits at most the response timeout, and
+     * an open circuit fails immediately so callers go straight to their fallback.
+     */
+    private JsonNode postForJson(String endpoint, Map<String, Object> data) throws Exception {
+        return circuitBreaker.call(() -> {
+            String body = webClient.post()
+                    .uri(endpoint)
+                    .contentType(MediaType.APPLICATION_JSON)
+                    .bodyValue(data)
+                    .retrieve()
+                    .bodyToMono(String.class)
+                    .block(Duration.ofMillis(responseTimeoutMs));
+            return objectMapper.readTree(body);
+        });
+    }
+
+    private Map<String, Object> parseFraudResponse(JsonNode jsonResponse) {
+        Map<String, Object> result = new HashMap<>();
+        result.put("success", jsonResponse.get("success").asBoolean());
+        result.put("fraudProbability", jsonResponse.get("fraud_probability").asDouble());
+        result.put("isFraud", jsonResponse.get("is_fraud").asBoolean());
+        result.put("confidence", jsonResponse.get("confidence").asDouble());
+        result.put("mlServiceUsed", true);
+        return result;
+    }
+
+    private Map<String, Object> parseRiskResponse(JsonNode jsonResponse) {
+        Map<String, Object> result = new HashMap<>();
+        result.put("success", jsonResponse.get("success").asBoolean());
+        result.put("riskScore", jsonResponse.get("risk_score").asDouble());
+        result.put("riskLevel", jsonResponse.get("risk_level").asText());
+        result.put("confidence", jsonResponse.get("confidence").asDouble());
+        result.put("mlServiceUsed", true);
+        return result;
+    }
+
+    private Map<String, Object> parseSimilarityResponse(JsonNode jsonResponse) {
+        Map<String, Object> result = new HashMap<>();
+        result.put("success", jsonResponse.get("success").asBoolean());
+        result.put("similarIncidents", jsonResponse.get("similar_incidents"));
+        result.put("similarityScores", jsonResponse.get("similarity_scores"));
+        result.put("topMatchScore", jsonResponse.get("top_match_score").asDouble());
+        result.put("mlServiceUsed", true);
+        return result;
+    }
+
     /**
      * Enhanced severity suggestion with ML integration
      */
     public Map<String, Object> suggestSeverity(Incident incident, Map<String, Object> guidedQuestions) {
         try {
             Map<String, Object> data = prepareEnhancedRiskData(incident, guidedQuestions);
-            
-            HttpHeaders headers = new HttpHeaders();
-            headers.setContentType(MediaType.APPLICATION_JSON);
-            HttpEntity<Map<String, Object>> request = new HttpEntity<>(data, headers);
-
-            ResponseEntity<String> response = restTemplate.postForEntity(
-                mlBaseUrl + riskEndpoint, request, String.class);
 
-            JsonNode jsonResponse = objectMapper.readTree(response.getBody());
+            JsonNode jsonResponse = postForJson(riskEndpoint, data);
             
             Map<String, Object> result = new HashMap<>();
             result.put("success", jsonResponse.get("success").asBoolean());
@@ -258,7 +506,7 @@ public class MLAnalysisService {
         return result;
     }
 
-    private Map<String, Object> prepareFraudData(Incident incident, User reporter) {
+    Map<String, Object> prepareFraudData(Incident incident, User reporter) {
         Map<String, Object> data = new HashMap<>();
         
         data.put("incident_type", incident.getType().name().toLowerCase());
@@ -278,7 +526,7 @@ public class MLAnalysisService {
         return data;
     }
 
-    private Map<String, Object> prepareRiskData(Incident incident) {
+    Map<String, Object> prepareRiskData(Incident incident) {
         Map<String, Object> data = new HashMap<>();
         
         data.put("incident_type", incident.getType().name().toLowerCase());
@@ -315,7 +563,7 @@ public class MLAnalysisService {
         return data;
     }
 
-    private Map<String, Object> prepareSimilarityData(Incident incident) {
+    Map<String, Object> prepareSimilarityData(Incident incident) {
         Map<String, Object> data = new HashMap<>();
         
         data.put("incident_type", incident.getType().name().toLowerCase());
@@ -404,7 +652,12 @@ public class MLAnalysisService {
     }
 
     // Fallback methods when ML service is unavailable
-    private Map<String, Object> getFallbackFraudAnalysis(Incident incident, User reporter) {
+    Map<String, Object> getFallbackFraudAnalysis(Incident incident, User reporter) {
+        // A loaded model beats the heuristics below, unless AI scoring has been switched off
+        if (embeddedInferenceService.hasFraudModel() && systemConfigService.isAiRiskScoringEnabled()) {
+            return embeddedInferenceService.scoreFraud(prepareFraudData(incident, reporter));
+        }
+
         Map<String, Object> result = new HashMap<>();
         
         // Simple rule-based fraud detection
@@ -431,7 +684,11 @@ public class MLAnalysisService {
         return result;
     }
 
-    private Map<String, Object> getFallbackRiskAnalysis(Incident incident) {
+    Map<String, Object> getFallbackRiskAnalysis(Incident incident) {
+        if (embeddedInferenceService.hasRiskModel()) {
+            return embeddedInferenceService.scoreRisk(prepareRiskData(incident));
+        }
+
         Map<String, Object> result = new HashMap<>();
         
         // Simple rule-based risk assessment
@@ -480,7 +737,12 @@ public class MLAnalysisService {
         return result;
     }
 
-    private Map<String, Object> getFallbackSimilarityAnalysis(Incident incident) {
+    Map<String, Object> getFallbackSimilarityAnalysis(Incident incident) {
+        // The in-process engine needs no network, so it stands in for the remote call once it's built
+        if (incidentSimilarityService.isReady()) {
+            return incidentSimilarityService.analyze(incident);
+        }
+
         Map<String, Object> result = new HashMap<>();
         
         result.put("success", true);
@@ -0,0 +1,182 @@
+package com.sensesafe.service;
+
+import com.sensesafe.config.InstrumentedThreadPoolExecutor;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Collects concurrent scoring requests for one ML model into micro-batches.
+ *
+ * A single flusher thread takes the first waiting payload, then keeps
+ * collecting until the batch is full or the linger time since that first
+ * payload has passed, and hands the batch to a small sender pool. Each caller
+ * gets a future that is completed with its own entry of the batch response,
+ * or exceptionally if the batch call fails. When every sender is busy the
+ * flusher sends the batch itself, so batches grow instead of piling up.
+ */
+public class MLMicroBatcher {
+
+    private final String name;
+    private final int maxBatchSize;
+    private final long lingerNanos;
+    private final BatchCall batchCall;
+    private final BlockingQueue<Pending> queue;
+    private final InstrumentedThreadPoolExecutor senders;
+    private final Thread flusher;
+    private volatile boolean running = true;
+
+    private final LongAdder submitted = new LongAdder();
+    private final LongAdder rejected = new LongAdder();
+    private final LongAdder batches = new LongAdder();
+    private final LongAdder batchedItems = new LongAdder();
+    private final LongAdder sizeFlushes = new LongAdder();
+    private final LongAdder lingerFlushes = new LongAdder();
+    private final LongAdder batchFailures = new LongAdder();
+
+    public MLMicroBatcher(String name, int maxBatchSize, long lingerMs, int queueCapacity,
+                          int maxInFlightBatches, BatchCall batchCall) {
+        this.name = name;
+        this.maxBatchSize = maxBatchSize;
+        this.lingerNanos = TimeUnit.MILLISECONDS.toNanos(lingerMs);
+        this.batchCall = batchCall;
+        this.queue = new LinkedBlockingQueue<>(queueCapacity);
+        this.senders = new InstrumentedThreadPoolExecutor("ml-batch-" + name, maxInFlightBatches, 1,
+                new ThreadPoolExecutor.CallerRunsPolicy());
+        this.flusher = new Thread(this::flushLoop, "ml-batch-" + name + "-flusher");
+        this.flusher.setDaemon(true);
+        this.flusher.start();
+    }
+
+    /**
+     * Queue one payload for the next batch. The future fails straight away if
+     * the batcher is saturated, so the caller can take its fallback path.
+     */
+    public CompletableFuture<Map<String, Object>> submit(Map<String, Object> payload) {
+        submitted.increment();
+        Pending pending = new Pending(payload);
+        if (!running || !queue.offer(pending)) {
+            rejected.increment();
+            pending.future.completeExceptionally(
+                    new RejectedExecutionException("ML batcher '" + name + "' is saturated"));
+        }
+        return pending.future;
+    }
+
+    public void shutdown() {
+        running = false;
+        flusher.interrupt();
+        senders.shutdown();
+        List<Pending> leftovers = new ArrayList<>();
+        queue.drainTo(leftovers);
+        for (Pending pending : leftovers) {
+            pending.future.completeExceptionally(new RejectedExecutionException("ML batcher '" + name + "' stopped"));
+        }
+    }
+
+    public Map<String, Object> getMetrics() {
+        long sent = batches.sum();
+        Map<String, Object> metrics = new HashMap<>();
+        metrics.put("name", name);
+        metrics.put("maxBatchSize", maxBatchSize);
+        metrics.put("lingerMs", TimeUnit.NANOSECONDS.toMillis(lingerNanos));
+        metrics.put("queued", queue.size());
+        metrics.put("submitted", submitted.sum());
+        metrics.put("rejected", rejected.sum());
+        metrics.put("batches", sent);
+        metrics.put("avgBatchSize", sent > 0 ? (double) batchedItems.sum() / sent : 0.0);
+        metrics.put("sizeFlushes", sizeFlushes.sum());
+        metrics.put("lingerFlushes", lingerFlushes.sum());
+        metrics.put("batchFailures", batchFailures.sum());
+        metrics.put("senders", senders.getMetrics());
+        return metrics;
+    }
+
+    private void flushLoop() {
+        while (running) {
+            try {
+                Pending first = queue.poll(1, TimeUnit.SECONDS);
+                if (first == null) {
+                    continue;
+                }
+                List<Pending> batch = new ArrayList<>(maxBatchSize);
+                batch.add(first);
+                long deadline = System.nanoTime() + lingerNanos;
+                while (batch.size() < maxBatchSize) {
+                    // Take whatever is already waiting without paying for a timed poll
+                    queue.drainTo(batch, maxBatchSize - batch.size());
+                    long remaining = deadline - System.nanoTime();
+                    if (batch.size() >= maxBatchSize || remaining <= 0) {
+                        break;
+                    }
+                    Pending next = queue.poll(remaining, TimeUnit.NANOSECONDS);
+                    if (next == null) {
+                        break;
+                    }
+                    batch.add(next);
+                }
+                if (batch.size() >= maxBatchSize) {
+                    sizeFlushes.increment();
+                } else {
+                    lingerFlushes.increment();
+                }
+                senders.execute(() -> send(batch));
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            } catch (Exception e) {
+                System.err.println("ML batcher '" + name + "' flush failed: " + e.getMessage());
+            }
+        }
+    }
+
+    private void send(List<Pending> batch) {
+        batches.increment();
+        batchedItems.add(batch.size());
+        List<Map<String, Object>> payloads = new ArrayList<>(batch.size());
+        for (Pending pending : batch) {
+            payloads.add(pending.payload);
+        }
+        try {
+            List<Map<String, Object>> results = batchCall.invoke(payloads);
+            if (results.size() != batch.size()) {
+                throw new IllegalStateException("Expected " + batch.size() + " results, got " + results.size());
+            }
+            for (int i = 0; i < batch.size(); i++) {
+                batch.get(i).future.complete(results.get(i));
+            }
+        } catch (Exception e) {
+            batchFailures.increment();
+            for (Pending pending : batch) {
+                pending.future.completeExceptionally(e);
+            }
+        }
+    }
+
+    private static final class Pending {
+        private final Map<String, Object> payload;
+        private final CompletableFuture<Map<String, Object>> future = new CompletableFuture<>();
+
+        Pending(Map<String, Object> payload) {
+            this.payload = payload;
+        }
+    }
+
+    /**
+     * Scores a batch of payloads in one call; results must come back in
+     * request order.
+     */
+    @FunctionalInterface
+    public interface BatchCall {
+        List<Map<String, Object>> invoke(List<Map<String, Object>> payloads) throws Exception;
+    }
+}
@@ -0,0 +1,232 @@
+package com.sensesafe.service;
+
+import com.sensesafe.config.InstrumentedThreadPoolExecutor;
+import com.sensesafe.model.Incident;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Runs the ML calls for an incident along their real dependency graph.
+ *
+ * Only fraud needs the similarity score, so risk runs in parallel with the
+ * similarity -> fraud chain. Every call has its own timeout and the whole
+ * incident has a deadline; anything unfinished at that point gets the same
+ * rule-based fallback the sequential path used. Request payloads and
+ * fallbacks are built on the calling thread because they read lazy JPA
+ * associations; worker threads only do HTTP and parsing. When the in-process
+ * similarity engine is enabled, similarity is scored on the calling thread
+ * too, and fraud starts right away with its duplicate score.
+ */
+@Service
+public class MLScoringOrchestrator {
+
+    @Autowired
+    private MLAnalysisService mlAnalysisService;
+
+    @Autowired
+    private SystemConfigService systemConfigService;
+
+    @Value("${ml.orchestrator.threads:8}")
+    private int threads;
+
+    @Value("${ml.orchestrator.queue-capacity:200}")
+    private int queueCapacity;
+
+    @Value("${ml.orchestrator.call-timeout-ms:2000}")
+    private long callTimeoutMs;
+
+    @Value("${ml.orchestrator.deadline-ms:4500}")
+    private long deadlineMs;
+
+    @Value("${ml.orchestrator.combined-endpoint-enabled:false}")
+    private boolean combinedEndpointEnabled;
+
+    // ML calls park a virtual thread rather than hold a platform one while waiting
+    @Value("${spring.threads.virtual.enabled:false}")
+    private boolean virtualThreads;
+
+    private InstrumentedThreadPoolExecutor executor;
+
+    private final LongAdder callTimeouts = new LongAdder();
+    private final LongAdder callFailures = new LongAdder();
+    private final LongAdder deadlinesMissed = new LongAdder();
+    private final LongAdder combinedCalls = new LongAdder();
+    private final LongAdder combinedFailures = new LongAdder();
+
+    @PostConstruct
+    public void init() {
+        executor = new InstrumentedThreadPoolExecutor("ml-scoring", threads, queueCapacity,
+                new ThreadPoolExecutor.CallerRunsPolicy(), virtualThreads);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        executor.shutdownNow();
+    }
+
+    /**
+     * Score an incident. The result holds "similarity", "fraud" and "risk"
+     * maps in the same shape MLAnalysisService returns for each call.
+     * deadline-ms covers the whole call, including a combined attempt that
+     * falls back to per-model calls.
+     */
+    public Map<String, Map<String, Object>> score(Incident incident) {
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(deadlineMs);
+        Map<String, Object> similarityData = mlAnalysisService.prepareSimilarityData(incident);
+        Map<String, Object> riskData = mlAnalysisService.prepareRiskData(incident);
+        boolean fraudEnabled = systemConfigService.isAiRiskScoringEnabled();
+        Map<String, Object> fraudData = fraudEnabled
+                ? mlAnalysisService.prepareFraudData(incident, incident.getReporter())
+                : null;
+
+        Map<String, Object> localSimilarity = null;
+        if (mlAnalysisService.isLocalSimilarityEnabled()) {
+            localSimilarity = mlAnalysisService.analyzeSimilarity(incident);
+            if (fraudData != null) {
+                fraudData.put("duplicate_score", localSimilarity.get("topMatchScore"));
+            }
+        }
+
+        Map<String, Map<String, Object>> results = null;
+        if (combinedEndpointEnabled) {
+            results = scoreCombined(deadline, similarityData, fraudData, riskData);
+            if (results != null && localSimilarity != null) {
+                results.put("similarity", localSimilarity);
+            }
+        }
+        if (results == null) {
+            results = scoreParallel(deadline, localSimilarity, similarityData, fraudData, riskData);
+        }
+
+        // Fill any gaps with the rule-based fallbacks, here on the caller's thread
+        if (results.get("similarity") == null) {
+            results.put("similarity", mlAnalysisService.getFallbackSimilarityAnalysis(incident));
+        }
+        if (results.get("fraud") == null) {
+            results.put("fraud", mlAnalysisService.getFallbackFraudAnalysis(incident, incident.getReporter()));
+        }
+        if (results.get("risk") == null) {
+            results.put("risk", mlAnalysisService.getFallbackRiskAnalysis(incident));
+        }
+        return results;
+    }
+
+    public Map<String, Object> getMetrics() {
+        Map<String, Object> metrics = new HashMap<>();
+        metrics.put("executor", executor.getMetrics());
+        metrics.put("callTimeoutMs", callTimeoutMs);
+        metrics.put("deadlineMs", deadlineMs);
+        metrics.put("callTimeouts", callTimeouts.sum());
+        metrics.put("callFailures", callFailures.sum());
+        metrics.put("deadlinesMissed", deadlinesMissed.sum());
+        metrics.put("combinedEndpointEnabled", combinedEndpointEnabled);
+        metrics.put("combinedCalls", combinedCalls.sum());
+        metrics.put("combinedFailures", combinedFailures.sum());
+        return metrics;
+    }
+
+    private Map<String, Map<String, Object>> scoreParallel(long deadline,
+                                                           Map<String, Object> localSimilarity,
+                                                           Map<String, Object> similarityData,
+                                                           Map<String, Object> fraudData,
+                                                           Map<String, Object> riskData) {
+        Map<String, Map<String, Object>> results = new HashMap<>();
+        if (deadline - System.nanoTime() <= 0) {
+            // A combined attempt used up the budget; don't start calls nobody will wait for
+            deadlinesMissed.increment();
+            results.put("similarity", localSimilarity);
+            return results;
+        }
+
+        CompletableFuture<Map<String, Object>> similarity = localSimilarity != null
+                ? CompletableFuture.completedFuture(localSimilarity)
+                : call(() -> mlAnalysisService.callSimilarity(similarityData));
+
+        CompletableFuture<Map<String, Object>> risk =
+                call(() -> mlAnalysisService.callRisk(riskData));
+
+        // Fraud starts once similarity settles and gets its own timeout window;
+        // without a fresh similarity score it keeps the previously stored one
+        CompletableFuture<Map<String, Object>> fraud = fraudData == null
+                ? CompletableFuture.completedFuture(null)
+                : similarity.thenCompose(similarityResult -> {
+                    if (similarityResult != null && Boolean.TRUE.equals(similarityResult.get("success"))) {
+                        fraudData.put("duplicate_score", similarityResult.get("topMatchScore"));
+                    }
+                    return call(() -> mlAnalysisService.callFraud(fraudData));
+                });
+
+        try {
+            CompletableFuture.allOf(similarity, fraud, risk).get(deadline - System.nanoTime(), TimeUnit.NANOSECONDS);
+        } catch (TimeoutException e) {
+            deadlinesMissed.increment();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (Exception e) {
+            // Individual calls already map their own failures to null
+        }
+
+        results.put("similarity", similarity.getNow(null));
+        results.put("fraud", fraud.getNow(null));
+        results.put("risk", risk.getNow(null));
+        return results;
+    }
+
+    private Map<String, Map<String, Object>> scoreCombined(long deadline,
+                                                           Map<String, Object> similarityData,
+                                                           Map<String, Object> fraudData,
+                                                           Map<String, Object> riskData) {
+        combinedCalls.increment();
+        Future<Map<String, Map<String, Object>>> combined =
+                executor.submit(() -> mlAnalysisService.callCombinedScore(similarityData, fraudData, riskData));
+        try {
+            return combined.get(deadline - System.nanoTime(), TimeUnit.NANOSECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (Exception e) {
+            System.err.println("Combined ML scoring failed, falling back to per-model calls: " + e.getMessage());
+        } finally {
+            // Interrupting the worker aborts its blocked request instead of leaving it to finish unread
+            combined.cancel(true);
+        }
+        combinedFailures.increment();
+        return null;
+    }
+
+    private CompletableFuture<Map<String, Object>> call(MLCall mlCall) {
+        CompletableFuture<Map<String, Object>> future = new CompletableFuture<>();
+        CompletableFuture
+                .supplyAsync(() -> {
+                    try {
+                        return mlCall.invoke();
+                    } catch (Exception e) {
+                        callFailures.increment();
+                        return null;
+                    }
+                }, executor)
+                .thenAccept(future::complete);
+        future.orTimeout(callTimeoutMs, TimeUnit.MILLISECONDS)
+                .exceptionally(e -> {
+                    callTimeouts.increment();
+                    return null;
+                });
+        return future.exceptionally(e -> null);
+    }
+
+    @FunctionalInterface
+    private interface MLCall {
+        Map<String, Object> invoke() throws Exception;
+    }
+}
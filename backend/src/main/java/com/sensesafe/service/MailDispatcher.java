@@ -0,0 +1,472 @@
+package com.sensesafe.service;
+
+import com.sensesafe.config.LatencyHistogram;
+import jakarta.mail.Message;
+import jakarta.mail.MessagingException;
+import jakarta.mail.SendFailedException;
+import jakarta.mail.Session;
+import jakarta.mail.Transport;
+import jakarta.mail.internet.InternetAddress;
+import jakarta.mail.internet.MimeMessage;
+import jakarta.mail.util.SharedByteArrayInputStream;
+import org.springframework.mail.javamail.MimeMessageHelper;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.PriorityBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Sends queued mail over a fixed pool of persistent SMTP connections.
+ *
+ * Each worker owns one Transport and keeps it open between messages, so the
+ * TCP, STARTTLS and AUTH handshake is paid once per connection instead of
+ * once per message. Workers drain the queue in batches and send the batch
+ * back to back on their connection; the queue is ordered by priority, then
+ * arrival, and a worker hands the rest of its batch back whenever something
+ * more urgent is waiting, so an SOS never sits behind a batch of OTPs.
+ *
+ * Mail submitted to several recipients at once shares one MIME encoding of
+ * its subject and body; each recipient's message is a copy of those bytes
+ * with its own To and Message-ID headers.
+ *
+ * A connection is recycled after max-messages-per-connection (providers
+ * cap this) and closed after idle-timeout without traffic. A shared token
+ * bucket keeps the pool under the provider's send rate. A send that fails on
+ * the connection is retried once on a fresh one; a rejected recipient is not.
+ */
+public class MailDispatcher {
+
+    public enum Priority { CRITICAL, HIGH, NORMAL, LOW }
+
+    private final Session session;
+    private final String protocol;
+    private final String host;
+    private final int port;
+    private final String username;
+    private final String password;
+    private final String from;
+    private final String messageIdDomain;
+    private final int queueCapacity;
+    private final int batchSize;
+    private final int maxMessagesPerConnection;
+    private final long idleTimeoutNanos;
+    private final RateLimiter rateLimiter;
+
+    private final PriorityBlockingQueue<OutboundMail> queue = new PriorityBlockingQueue<>();
+    private final AtomicInteger queued = new AtomicInteger();
+    private final AtomicLong sequence = new AtomicLong();
+    private final List<Thread> workers = new ArrayList<>();
+    private final AtomicInteger openConnections = new AtomicInteger();
+    private volatile boolean running = true;
+
+    private final LongAdder submitted = new LongAdder();
+    private final LongAdder rejected = new LongAdder();
+    private final LongAdder sent = new LongAdder();
+    private final LongAdder failed = new LongAdder();
+    private final LongAdder batches = new LongAdder();
+    private final LongAdder contentsEncoded = new LongAdder();
+    private final LongAdder preempted = new LongAdder();
+    private final LongAdder connectionsOpened = new LongAdder();
+    private final LongAdder connectionFailures = new LongAdder();
+    private final LongAdder retries = new LongAdder();
+    private final Map<Priority, LatencyHistogram> queueWait = new EnumMap<>(Priority.class);
+    private final LatencyHistogram sendLatency = new LatencyHistogram();
+
+    public MailDispatcher(Session session, String protocol, String host, int port, String username, String password,
+                          String from, int connections, int queueCapacity, int batchSize,
+                          int maxMessagesPerConnection, long idleTimeoutMs, double ratePerSecond) {
+        this.session = session;
+        this.protocol = protocol;
+        this.host = host;
+        this.port = port;
+        this.username = username;
+        this.password = password;
+        this.from = from;
+        this.messageIdDomain = from != null && from.indexOf('@') >= 0
+                ? from.substring(from.indexOf('@') + 1) : "localhost";
+        this.queueCapacity = queueCapacity;
+        this.batchSize = Math.max(1, batchSize);
+        this.maxMessagesPerConnection = Math.max(1, maxMessagesPerConnection);
+        this.idleTimeoutNanos = TimeUnit.MILLISECONDS.toNanos(idleTimeoutMs);
+        this.rateLimiter = ratePerSecond > 0 ? new RateLimiter(ratePerSecond) : null;
+        for (Priority priority : Priority.values()) {
+            queueWait.put(priority, new LatencyHistogram());
+        }
+        for (int i = 0; i < connections; i++) {
+            Thread worker = new Thread(this::workLoop, "mail-smtp-" + (i + 1));
+            worker.setDaemon(true);
+            workers.add(worker);
+            worker.start();
+        }
+    }
+
+    /**
+     * Queue a message. Returns false if the queue is full or the dispatcher
+     * has stopped; CRITICAL mail is accepted even over capacity.
+     */
+    public boolean submit(String to, String subject, String body, boolean html, Priority priority) {
+        return enqueue(to, new MailContent(subject, body, html), priority, null);
+    }
+
+    /**
+     * Queue a message and learn how it went: the future completes once the
+     * server has accepted it, or exceptionally if it was rejected or failed
+     */
+    public CompletableFuture<Void> deliver(String to, String subject, String body, boolean html, Priority priority) {
+        CompletableFuture<Void> result = new CompletableFuture<>();
+        if (!enqueue(to, new MailContent(subject, body, html), priority, result)) {
+            result.completeExceptionally(new IllegalStateException("Mail queue is full"));
+        }
+        return result;
+    }
+
+    /**
+     * Queue the same message to each recipient, encoding it once. Returns
+     * how many were accepted.
+     */
+    public int submit(List<String> recipients, String subject, String body, boolean html, Priority priority) {
+        MailContent content = new MailContent(subject, body, html);
+        int accepted = 0;
+        for (String to : recipients) {
+            if (enqueue(to, content, priority, null)) {
+                accepted++;
+            }
+        }
+        return accepted;
+    }
+
+    /**
+     * True once everything queued so far has been sent or has failed
+     */
+    public boolean awaitIdle(long timeoutMs) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeoutMs);
+        while (queued.get() > 0) {
+            if (System.nanoTime() - deadline >= 0) {
+                return false;
+            }
+            Thread.sleep(10);
+        }
+        return true;
+    }
+
+    public void shutdown(long graceMs) {
+        running = false;
+        try {
+            awaitIdle(graceMs);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        for (Thread worker : workers) {
+            worker.interrupt();
+        }
+        List<OutboundMail> leftovers = new ArrayList<>();
+        queue.drainTo(leftovers);
+        for (OutboundMail mail : leftovers) {
+            mail.fail(new IllegalStateException("Mail dispatcher stopped"));
+        }
+        if (!leftovers.isEmpty()) {
+            System.err.println("Mail dispatcher stopped with " + leftovers.size() + " unsent messages");
+        }
+    }
+
+    public Map<String, Object> getMetrics() {
+        Map<String, Object> waits = new HashMap<>();
+        queueWait.forEach((priority, histogram) -> waits.put(priority.name(), histogram.snapshot()));
+        long connections = connectionsOpened.sum();
+
+        Map<String, Object> metrics = new HashMap<>();
+        metrics.put("workers", workers.size());
+        metrics.put("openConnections", openConnections.get());
+        metrics.put("queued", queued.get());
+        metrics.put("queueCapacity", queueCapacity);
+        metrics.put("submitted", submitted.sum());
+        metrics.put("rejected", rejected.sum());
+        metrics.put("sent", sent.sum());
+        metrics.put("failed", failed.sum());
+        metrics.put("retries", retries.sum());
+        metrics.put("batches", batches.sum());
+        metrics.put("contentsEncoded", contentsEncoded.sum());
+        metrics.put("preempted", preempted.sum());
+        metrics.put("connectionsOpened", connections);
+        metrics.put("connectionFailures", connectionFailures.sum());
+        metrics.put("messagesPerConnection", connections > 0 ? (double) sent.sum() / connections : 0.0);
+        metrics.put("ratePerSecond", rateLimiter != null ? rateLimiter.permitsPerSecond : 0.0);
+        metrics.put("queueWait", waits);
+        metrics.put("sendLatency", sendLatency.snapshot());
+        return metrics;
+    }
+
+    private boolean enqueue(String to, MailContent content, Priority priority, CompletableFuture<Void> result) {
+        submitted.increment();
+        if (!running || (priority != Priority.CRITICAL && queued.get() >= queueCapacity)) {
+            rejected.increment();
+            return false;
+        }
+        queued.incrementAndGet();
+        queue.offer(new OutboundMail(to, content, priority, sequence.incrementAndGet(), result));
+        return true;
+    }
+
+    private void workLoop() {
+        SmtpConnection connection = new SmtpConnection();
+        List<OutboundMail> batch = new ArrayList<>(batchSize);
+        try {
+            while (running || !queue.isEmpty()) {
+                OutboundMail first = queue.poll(1, TimeUnit.SECONDS);
+                if (first == null) {
+                    if (connection.isIdleFor(idleTimeoutNanos)) {
+                        connection.close();
+                    }
+                    continue;
+                }
+                batch.add(first);
+                queue.drainTo(batch, batchSize - 1);
+                batches.increment();
+                sendBatch(connection, batch);
+                batch.clear();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            connection.close();
+        }
+    }
+
+    private void sendBatch(SmtpConnection connection, List<OutboundMail> batch) throws InterruptedException {
+        for (int i = 0; i < batch.size(); i++) {
+            OutboundMail mail = batch.get(i);
+            OutboundMail waiting = queue.peek();
+            if (i > 0 && waiting != null && waiting.compareTo(mail) < 0) {
+                // Something more urgent arrived; let the next poll pick it up first
+                for (int j = i; j < batch.size(); j++) {
+                    queue.offer(batch.get(j));
+                }
+                preempted.add(batch.size() - i);
+                return;
+            }
+            queueWait.get(mail.priority).record(System.nanoTime() - mail.enqueuedAt);
+            if (rateLimiter != null) {
+                rateLimiter.acquire();
+            }
+            send(connection, mail);
+            queued.decrementAndGet();
+        }
+    }
+
+    private void send(SmtpConnection connection, OutboundMail mail) {
+        MimeMessage message;
+        try {
+            message = mail.toMimeMessage();
+        } catch (MessagingException e) {
+            failed.increment();
+            System.err.println("Could not build email to " + mail.to + ": " + e.getMessage());
+            mail.fail(e);
+            return;
+        }
+        for (int attempt = 0; attempt < 2; attempt++) {
+            long start = System.nanoTime();
+            try {
+                connection.send(message);
+                sendLatency.record(System.nanoTime() - start);
+                sent.increment();
+                mail.succeed();
+                return;
+            } catch (SendFailedException e) {
+                // The server refused the recipient; another connection won't change that
+                failed.increment();
+                System.err.println("Email to " + mail.to + " rejected: " + e.getMessage());
+                mail.fail(e);
+                return;
+            } catch (MessagingException e) {
+                connection.close();
+                if (attempt == 0) {
+                    retries.increment();
+                } else {
+                    failed.increment();
+                    System.err.println("Failed to send email to " + mail.to + ": " + e.getMessage());
+                    mail.fail(e);
+                }
+            }
+        }
+    }
+
+    /**
+     * One worker's SMTP connection, opened on first use
+     */
+    private final class SmtpConnection {
+        private Transport transport;
+        private int messagesSent;
+        private long lastUsed;
+
+        void send(MimeMessage message) throws MessagingException {
+            if (transport != null && messagesSent >= maxMessagesPerConnection) {
+                close();
+            }
+            if (transport == null) {
+                open();
+            }
+            transport.sendMessage(message, message.getAllRecipients());
+            messagesSent++;
+            lastUsed = System.nanoTime();
+        }
+
+        boolean isIdleFor(long nanos) {
+            return transport != null && System.nanoTime() - lastUsed >= nanos;
+        }
+
+        private void open() throws MessagingException {
+            Transport opened = session.getTransport(protocol);
+            try {
+                opened.connect(host, port, username, password);
+            } catch (MessagingException e) {
+                connectionFailures.increment();
+                throw e;
+            }
+            transport = opened;
+            messagesSent = 0;
+            lastUsed = System.nanoTime();
+            connectionsOpened.increment();
+            openConnections.incrementAndGet();
+        }
+
+        void close() {
+            if (transport == null) {
+                return;
+            }
+            try {
+                transport.close();
+            } catch (MessagingException e) {
+                // Already gone; nothing to clean up
+            }
+            transport = null;
+            openConnections.decrementAndGet();
+        }
+    }
+
+    /**
+     * Token bucket shared by all workers, with one second of burst
+     */
+    private static final class RateLimiter {
+        private final double permitsPerSecond;
+        private final long nanosPerPermit;
+        private long nextFree = System.nanoTime();
+
+        RateLimiter(double permitsPerSecond) {
+            this.permitsPerSecond = permitsPerSecond;
+            this.nanosPerPermit = (long) (1_000_000_000L / permitsPerSecond);
+        }
+
+        void acquire() throws InterruptedException {
+            long wait;
+            synchronized (this) {
+                long now = System.nanoTime();
+                // Unused time up to one second back counts as burst
+                long earliest = now - 1_000_000_000L;
+                if (nextFree < earliest) {
+                    nextFree = earliest;
+                }
+                wait = nextFree - now;
+                nextFree += nanosPerPermit;
+            }
+            if (wait > 0) {
+                TimeUnit.NANOSECONDS.sleep(wait);
+            }
+        }
+    }
+
+    /**
+     * Subject and body shared by the recipients of one submit
+     */
+    private final class MailContent {
+        private final String subject;
+        private final String body;
+        private final boolean html;
+        private byte[] encoded;
+
+        MailContent(String subject, String body, boolean html) {
+            this.subject = subject;
+            this.body = body;
+            this.html = html;
+        }
+
+        /**
+         * The message without recipients, as MIME bytes, built on first use
+         */
+        synchronized byte[] encoded() throws MessagingException {
+            if (encoded == null) {
+                MimeMessage message = new MimeMessage(session);
+                MimeMessageHelper helper = new MimeMessageHelper(message, html);
+                helper.setFrom(from);
+                helper.setSubject(subject);
+                helper.setText(body, html);
+                message.setSentDate(new Date());
+                message.saveChanges();
+                message.removeHeader("Message-ID");
+                ByteArrayOutputStream out = new ByteArrayOutputStream(body.length() + 1024);
+                try {
+                    message.writeTo(out);
+                } catch (IOException e) {
+                    throw new MessagingException("Could not encode email", e);
+                }
+                encoded = out.toByteArray();
+                contentsEncoded.increment();
+            }
+            return encoded;
+        }
+    }
+
+    private final class OutboundMail implements Comparable<OutboundMail> {
+        private final String to;
+        private final MailContent content;
+        private final Priority priority;
+        private final long seq;
+        private final CompletableFuture<Void> result;
+        private final long enqueuedAt = System.nanoTime();
+
+        OutboundMail(String to, MailContent content, Priority priority, long seq, CompletableFuture<Void> result) {
+            this.to = to;
+            this.content = content;
+            this.priority = priority;
+            this.seq = seq;
+            this.result = result;
+        }
+
+        void succeed() {
+            if (result != null) {
+                result.complete(null);
+            }
+        }
+
+        void fail(Exception error) {
+            if (result != null) {
+                result.completeExceptionally(error);
+            }
+        }
+
+        MimeMessage toMimeMessage() throws MessagingException {
+            // A parsed message counts as saved, so sending writes the shared body bytes untouched
+            MimeMessage message = new MimeMessage(session, new SharedByteArrayInputStream(content.encoded()));
+            message.setRecipients(Message.RecipientType.TO, InternetAddress.parse(to));
+            message.setHeader("Message-ID", "<" + UUID.randomUUID() + "@" + messageIdDomain + ">");
+            return message;
+        }
+
+        @Override
+        public int compareTo(OutboundMail other) {
+            int byPriority = priority.compareTo(other.priority);
+            return byPriority != 0 ? byPriority : Long.compare(seq, other.seq);
+        }
+    }
+}
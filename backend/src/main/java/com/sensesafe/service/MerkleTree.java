@@ -0,0 +1,89 @@
+package com.sensesafe.service;
+
+import org.web3j.crypto.Hash;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Keccak-256 Merkle tree over 32-byte leaves.
+ *
+ * Each pair is hashed smaller-first, the same convention as OpenZeppelin's
+ * MerkleProof, so a proof is just the list of sibling hashes and can be
+ * checked on-chain or off-chain without position bits. Leaves are hashed
+ * twice so a leaf can never be passed off as an inner node. An odd node at
+ * the end of a level is carried up unchanged.
+ */
+public class MerkleTree {
+
+    private final List<byte[][]> levels = new ArrayList<>();
+
+    public MerkleTree(List<byte[]> leaves) {
+        if (leaves.isEmpty()) {
+            throw new IllegalArgumentException("A Merkle tree needs at least one leaf");
+        }
+        byte[][] level = leaves.toArray(new byte[0][]);
+        levels.add(level);
+        while (level.length > 1) {
+            byte[][] parent = new byte[(level.length + 1) / 2][];
+            for (int i = 0; i < parent.length; i++) {
+                int left = 2 * i;
+                parent[i] = left + 1 < level.length ? hashPair(level[left], level[left + 1]) : level[left];
+            }
+            levels.add(parent);
+            level = parent;
+        }
+    }
+
+    /**
+     * Leaf hash of arbitrary data
+     */
+    public static byte[] leaf(byte[] data) {
+        return Hash.sha3(Hash.sha3(data));
+    }
+
+    public byte[] getRoot() {
+        return levels.get(levels.size() - 1)[0];
+    }
+
+    public int getLeafCount() {
+        return levels.get(0).length;
+    }
+
+    /**
+     * Sibling hashes from the leaf up to the root; one per level that has a
+     * sibling, so at most log2(n) entries
+     */
+    public List<byte[]> getProof(int index) {
+        if (index < 0 || index >= getLeafCount()) {
+            throw new IndexOutOfBoundsException("Leaf " + index + " of " + getLeafCount());
+        }
+        List<byte[]> proof = new ArrayList<>();
+        for (int level = 0; level < levels.size() - 1; level++) {
+            byte[][] nodes = levels.get(level);
+            int sibling = index ^ 1;
+            if (sibling < nodes.length) {
+                proof.add(nodes[sibling]);
+            }
+            index /= 2;
+        }
+        return proof;
+    }
+
+    public static boolean verify(byte[] leaf, List<byte[]> proof, byte[] root) {
+        byte[] node = leaf;
+        for (byte[] sibling : proof) {
+            node = hashPair(node, sibling);
+        }
+        return Arrays.equals(node, root);
+    }
+
+    static byte[] hashPair(byte[] a, byte[] b) {
+        byte[] combined = new byte[64];
+        boolean aFirst = Arrays.compareUnsigned(a, b) <= 0;
+        System.arraycopy(aFirst ? a : b, 0, combined, 0, 32);
+        System.arraycopy(aFirst ? b : a, 0, combined, 32, 32);
+        return Hash.sha3(combined);
+    }
+}
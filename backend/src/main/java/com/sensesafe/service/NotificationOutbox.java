@@ -0,0 +1,482 @@
+package com.sensesafe.service;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.sensesafe.config.LatencyHistogram;
+import com.sensesafe.model.OutboundNotification;
+import com.sensesafe.repository.OutboundNotificationRepository;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.data.domain.PageRequest;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HexFormat;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
+
+/**
+ * Durable outbox for email that must not be lost, backed by the
+ * outbound_notifications table and, when one is given, a local journal.
+ *
+ * enqueue writes a row and returns; an idempotency key per recipient makes
+ * repeating the same request a no-op. With a journal the email is appended
+ * there (forced to disk, with the ALWAYS fsync policy) before the row is
+ * saved, and every outcome is journaled after it. At startup, mail the
+ * journal still has as unsent but the table lacks, because the database
+ * is in memory or was rebuilt, is put back before the poller starts, with
+ * its attempts and dead-letter state. A poller thread claims due rows in
+ * batches with a claim token and a lease, and hands them to the sender,
+ * which works through them in parallel (the MailDispatcher's connections).
+ * Outcomes are written back in bulk on the next poll: sent rows are marked
+ * SENT, failed ones go back to PENDING with exponential backoff and jitter,
+ * and a row that has used up its attempts is parked as DEAD until an admin
+ * requeues it.
+ *
+ * Delivery is at least once. A row whose sender never reports back, e.g.
+ * because the server stopped mid-send, is claimed again when its lease runs
+ * out, so a recipient can occasionally get the same email twice.
+ */
+public class NotificationOutbox {
+
+    private static final int SENT = 0;
+    private static final int FAILED = 1;
+    private static final int MAX_ERROR_LENGTH = 1000;
+    private static final long PURGE_INTERVAL_NANOS = TimeUnit.MINUTES.toNanos(10);
+
+    private static final ObjectMapper JSON = new ObjectMapper();
+
+    private final OutboundNotificationRepository repository;
+    private final AuditJournal journal;
+    private final Function<OutboundNotification, CompletableFuture<Void>> sender;
+    private final int batchSize;
+    private final int maxInFlight;
+    private final long pollIntervalMs;
+    private final long leaseMs;
+    private final int maxAttempts;
+    private final long baseBackoffMs;
+    private final long maxBackoffMs;
+    private final Duration retention;
+
+    private final Thread poller;
+    private final Semaphore wakeups = new Semaphore(0);
+    private final ConcurrentLinkedQueue<Outcome> outcomes = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger inFlight = new AtomicInteger();
+    private volatile boolean running = true;
+    private long nextPurge = System.nanoTime();
+
+    private final LongAdder enqueued = new LongAdder();
+    private final LongAdder duplicates = new LongAdder();
+    private final LongAdder claimed = new LongAdder();
+    private final LongAdder sent = new LongAdder();
+    private final LongAdder retried = new LongAdder();
+    private final LongAdder deadLettered = new LongAdder();
+    private final LongAdder pollErrors = new LongAdder();
+    private final LongAdder restored = new LongAdder();
+    private final LongAdder journalErrors = new LongAdder();
+    private final LatencyHistogram deliveryLag = new LatencyHistogram(
+            new long[] {100, 250, 500, 1_000, 2_500, 5_000, 10_000, 30_000, 60_000, 300_000, 900_000});
+    // Sent and failed deliveries per second over the last minute
+    private final RollingWindowCounters throughput = new RollingWindowCounters(2, 60, 1_000, 4);
+
+    /**
+     * journal may be null, in which case the table alone holds the mail
+     */
+    public NotificationOutbox(OutboundNotificationRepository repository, AuditJournal journal,
+                              Function<OutboundNotification, CompletableFuture<Void>> sender,
+                              int batchSize, int maxInFlight, long pollIntervalMs, long leaseMs, int maxAttempts,
+                              long baseBackoffMs, long maxBackoffMs, long retentionHours) {
+        this.repository = repository;
+        this.journal = journal;
+        this.sender = sender;
+        this.batchSize = Math.max(1, batchSize);
+        this.maxInFlight = Math.max(1, maxInFlight);
+        this.pollIntervalMs = pollIntervalMs;
+        this.leaseMs = leaseMs;
+        this.maxAttempts = Math.max(1, maxAttempts);
+        this.baseBackoffMs = baseBackoffMs;
+        this.maxBackoffMs = maxBackoffMs;
+        this.retention = Duration.ofHours(retentionHours);
+        if (journal != null) {
+            restore();
+        }
+        this.poller = new Thread(this::pollLoop, "notification-outbox");
+        this.poller.setDaemon(true);
+        this.poller.start();
+    }
+
+    /**
+     * A stable key for one recipient of one request
+     */
+    public static String keyFor(String requestKey, String recipient) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            byte[] hash = digest.digest((requestKey + "\n" + recipient.trim().toLowerCase())
+                    .getBytes(StandardCharsets.UTF_8));
+            return HexFormat.of().formatHex(hash);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 not available", e);
+        }
+    }
+
+    /**
+     * Store an email for delivery. Returns false if one with the same key
+     * is already in the outbox.
+     */
+    public boolean enqueue(String idempotencyKey, String to, String subject, String body, boolean html,
+                           MailDispatcher.Priority priority) {
+        if (repository.existsByIdempotencyKey(idempotencyKey)) {
+            duplicates.increment();
+            return false;
+        }
+        OutboundNotification notification =
+                new OutboundNotification(idempotencyKey, to, subject, body, html, priority.ordinal());
+        notification.setCreatedAt(LocalDateTime.now());
+        if (journal != null) {
+            try {
+                notification.setJournalSequence(journal.append(encode(notification)));
+            } catch (IOException e) {
+                throw new UncheckedIOException("Could not journal email to " + to, e);
+            }
+        }
+        try {
+            repository.save(notification);
+        } catch (DataIntegrityViolationException e) {
+            // Another request with the same key got there first
+            journalOutcome(notification, "DUPLICATE", null, true);
+            duplicates.increment();
+            return false;
+        } catch (RuntimeException e) {
+            // The caller sends it another way, so it mustn't be restored later as well
+            journalOutcome(notification, "NOT_STORED", null, true);
+            throw e;
+        }
+        enqueued.increment();
+        wakeups.release();
+        return true;
+    }
+
+    public List<OutboundNotification> getDeadLetters(int limit) {
+        return repository.findByStatusOrderByIdDesc(OutboundNotification.Status.DEAD, PageRequest.of(0, limit));
+    }
+
+    public boolean requeue(Long id) {
+        boolean requeued = repository.requeueDead(id, LocalDateTime.now()) > 0;
+        if (requeued) {
+            repository.findById(id).ifPresent(row -> journalOutcome(row, "PENDING", null, false));
+            wakeups.release();
+        }
+        return requeued;
+    }
+
+    public void shutdown() {
+        running = false;
+        poller.interrupt();
+        try {
+            poller.join(5_000);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        flushFinalOutcomes();
+    }
+
+    /**
+     * Record sends that finished since the poller stopped, e.g. once the
+     * dispatcher has drained; rows still in flight are picked up again after
+     * their lease
+     */
+    public void flushFinalOutcomes() {
+        try {
+            flushOutcomes();
+        } catch (Exception e) {
+            System.err.println("Could not record final outbox outcomes: " + e.getMessage());
+        }
+    }
+
+    public Map<String, Object> getMetrics() {
+        long[] lastMinute = throughput.sum(60);
+        LocalDateTime oldestUnsent = repository.findOldestUnsentCreatedAt();
+
+        Map<String, Object> metrics = new HashMap<>();
+        metrics.put("pending", repository.countByStatus(OutboundNotification.Status.PENDING));
+        metrics.put("sending", repository.countByStatus(OutboundNotification.Status.SENDING));
+        metrics.put("dead", repository.countByStatus(OutboundNotification.Status.DEAD));
+        metrics.put("oldestUnsentAgeMillis",
+                oldestUnsent != null ? Duration.between(oldestUnsent, LocalDateTime.now()).toMillis() : 0);
+        metrics.put("inFlight", inFlight.get());
+        metrics.put("enqueued", enqueued.sum());
+        metrics.put("duplicates", duplicates.sum());
+        metrics.put("claimed", claimed.sum());
+        metrics.put("sent", sent.sum());
+        metrics.put("retried", retried.sum());
+        metrics.put("deadLettered", deadLettered.sum());
+        metrics.put("pollErrors", pollErrors.sum());
+        metrics.put("journaled", journal != null);
+        metrics.put("restored", restored.sum());
+        metrics.put("journalErrors", journalErrors.sum());
+        if (journal != null) {
+            metrics.put("journal", journal.getMetrics());
+        }
+        metrics.put("sentPerSecond", lastMinute[SENT] / 60.0);
+        metrics.put("failedPerSecond", lastMinute[FAILED] / 60.0);
+        metrics.put("deliveryLag", deliveryLag.snapshot());
+        return metrics;
+    }
+
+    private void pollLoop() {
+        while (running) {
+            try {
+                flushOutcomes();
+                int room = Math.min(batchSize, maxInFlight - inFlight.get());
+                int claimedNow = room > 0 ? claimAndSend(room) : 0;
+                if (System.nanoTime() - nextPurge >= 0) {
+                    nextPurge = System.nanoTime() + PURGE_INTERVAL_NANOS;
+                    repository.deleteSentBefore(LocalDateTime.now().minus(retention));
+                    if (journal != null) {
+                        journal.compact(System.currentTimeMillis() - retention.toMillis());
+                    }
+                }
+                // A full batch means more is probably due; otherwise wait for new rows or outcomes
+                if (claimedNow < room || room <= 0) {
+                    wakeups.tryAcquire(pollIntervalMs, TimeUnit.MILLISECONDS);
+                    wakeups.drainPermits();
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            } catch (Exception e) {
+                pollErrors.increment();
+                System.err.println("Notification outbox poll failed: " + e.getMessage());
+                try {
+                    Thread.sleep(pollIntervalMs);
+                } catch (InterruptedException interrupted) {
+                    Thread.currentThread().interrupt();
+                    return;
+                }
+            }
+        }
+    }
+
+    private int claimAndSend(int limit) {
+        LocalDateTime now = LocalDateTime.now();
+        List<Long> ids = repository.findDueIds(now, PageRequest.of(0, limit));
+        if (ids.isEmpty()) {
+            return 0;
+        }
+        String token = UUID.randomUUID().toString();
+        if (repository.claim(ids, token, now.plus(Duration.ofMillis(leaseMs)), now) == 0) {
+            return 0;
+        }
+        List<OutboundNotification> rows = repository.findByClaimToken(token);
+        for (OutboundNotification row : rows) {
+            claimed.increment();
+            inFlight.incrementAndGet();
+            CompletableFuture<Void> delivery;
+            try {
+                delivery = sender.apply(row);
+            } catch (Exception e) {
+                delivery = CompletableFuture.failedFuture(e);
+            }
+            // Give up waiting before the lease ends, so the row isn't claimed twice at once
+            delivery.orTimeout(leaseMs * 9 / 10, TimeUnit.MILLISECONDS).whenComplete((result, error) -> {
+                outcomes.add(new Outcome(row, error));
+                inFlight.decrementAndGet();
+                wakeups.release();
+            });
+        }
+        return rows.size();
+    }
+
+    private void flushOutcomes() {
+        LocalDateTime now = LocalDateTime.now();
+        long nowMillis = System.currentTimeMillis();
+        List<OutboundNotification> sentRows = new ArrayList<>();
+        Outcome outcome;
+        while ((outcome = outcomes.poll()) != null) {
+            OutboundNotification row = outcome.row;
+            if (outcome.error == null) {
+                sentRows.add(row);
+                sent.increment();
+                throughput.add(nowMillis, SENT, 1);
+                if (row.getCreatedAt() != null) {
+                    deliveryLag.record(Duration.between(row.getCreatedAt(), now).toNanos());
+                }
+                continue;
+            }
+            throughput.add(nowMillis, FAILED, 1);
+            String error = describe(outcome.error);
+            if (row.getAttempts() >= maxAttempts) {
+                repository.markFailed(row.getId(), OutboundNotification.Status.DEAD, now, error);
+                journalOutcome(row, "DEAD", error, false);
+                deadLettered.increment();
+                System.err.println("Dead-lettered email " + row.getId() + " to " + row.getRecipient()
+                        + " after " + row.getAttempts() + " attempts: " + error);
+            } else {
+                repository.markFailed(row.getId(), OutboundNotification.Status.PENDING,
+                        now.plus(Duration.ofMillis(backoffMillis(row.getAttempts()))), error);
+                journalOutcome(row, "PENDING", error, false);
+                retried.increment();
+            }
+        }
+        if (!sentRows.isEmpty()) {
+            repository.markSent(sentRows.stream().map(OutboundNotification::getId).toList(), now);
+            // Only once the table says so, so a crash in between restores nothing that was sent
+            sentRows.forEach(row -> journalOutcome(row, "SENT", null, true));
+        }
+    }
+
+    /**
+     * Put back journaled mail that is not done and missing from the table.
+     * Rows that are there but already sent (the server stopped before
+     * journaling it) are marked done instead.
+     */
+    private void restore() {
+        try {
+            // The latest partial outcome of each live event: its status, attempts and last error
+            Map<Long, JsonNode> states = new HashMap<>();
+            List<JsonNode> events = new ArrayList<>();
+            List<Long> sequences = new ArrayList<>();
+            journal.forEachRecoveredOutcome((sequence, timestamp, payload) -> {
+                if (journal.isLive(sequence)) {
+                    states.put(sequence, decode(payload));
+                }
+            });
+            journal.forEachRecoveredEvent((sequence, timestamp, payload) -> {
+                if (journal.isLive(sequence)) {
+                    sequences.add(sequence);
+                    events.add(decode(payload));
+                }
+            });
+
+            LocalDateTime now = LocalDateTime.now();
+            for (int i = 0; i < events.size(); i++) {
+                long sequence = sequences.get(i);
+                JsonNode event = events.get(i);
+                Optional<OutboundNotification> existing =
+                        repository.findByIdempotencyKey(event.get("idempotencyKey").asText());
+                if (existing.isPresent()) {
+                    OutboundNotification row = existing.get();
+                    if (row.getStatus() == OutboundNotification.Status.SENT) {
+                        journal.recordOutcome(sequence, encodeOutcome("SENT", row, null), true);
+                    } else if (!Long.valueOf(sequence).equals(row.getJournalSequence())) {
+                        // Lost the race for its key before the duplicate was journaled
+                        journal.recordOutcome(sequence, encodeOutcome("DUPLICATE", row, null), true);
+                    }
+                    continue;
+                }
+
+                OutboundNotification row = new OutboundNotification(event.get("idempotencyKey").asText(),
+                        event.get("recipient").asText(), event.get("subject").asText(), event.get("body").asText(),
+                        event.get("html").asBoolean(), event.get("priority").asInt());
+                row.setCreatedAt(LocalDateTime.parse(event.get("createdAt").asText()));
+                row.setJournalSequence(sequence);
+                JsonNode state = states.get(sequence);
+                if (state != null) {
+                    row.setStatus(OutboundNotification.Status.valueOf(state.get("status").asText()));
+                    row.setAttempts(state.get("attempts").asInt());
+                    row.setLastError(state.hasNonNull("lastError") ? state.get("lastError").asText() : null);
+                }
+                row.setNextAttemptAt(now);
+                repository.save(row);
+                restored.increment();
+            }
+            if (restored.sum() > 0) {
+                System.out.println("Restored " + restored.sum() + " unsent emails from the outbox journal");
+            }
+        } catch (Exception e) {
+            journalErrors.increment();
+            System.err.println("Could not restore the notification outbox from its journal: " + e.getMessage());
+        }
+    }
+
+    private void journalOutcome(OutboundNotification row, String status, String error, boolean done) {
+        if (journal == null || row.getJournalSequence() == null) {
+            return;
+        }
+        try {
+            journal.recordOutcome(row.getJournalSequence(), encodeOutcome(status, row, error), done);
+        } catch (IOException e) {
+            // The table has it; only a restore into an empty table would miss this outcome
+            journalErrors.increment();
+            System.err.println("Could not journal outcome " + status + " of email " + row.getId() + ": "
+                    + e.getMessage());
+        }
+    }
+
+    private static byte[] encode(OutboundNotification notification) throws IOException {
+        Map<String, Object> event = new LinkedHashMap<>();
+        event.put("idempotencyKey", notification.getIdempotencyKey());
+        event.put("recipient", notification.getRecipient());
+        event.put("subject", notification.getSubject());
+        event.put("body", notification.getBody());
+        event.put("html", notification.isHtml());
+        event.put("priority", notification.getPriority());
+        event.put("createdAt", notification.getCreatedAt().toString());
+        return JSON.writeValueAsBytes(event);
+    }
+
+    private static byte[] encodeOutcome(String status, OutboundNotification row, String error) throws IOException {
+        Map<String, Object> outcome = new LinkedHashMap<>();
+        outcome.put("status", status);
+        outcome.put("attempts", row.getAttempts());
+        outcome.put("lastError", error);
+        return JSON.writeValueAsBytes(outcome);
+    }
+
+    private static JsonNode decode(ByteBuffer payload) {
+        byte[] bytes = new byte[payload.remaining()];
+        payload.get(bytes);
+        try {
+            return JSON.readTree(bytes);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * base * 2^(attempts - 1), capped, with +/-20% jitter so a burst of
+     * failures doesn't retry in lockstep
+     */
+    private long backoffMillis(int attempts) {
+        long backoff = baseBackoffMs << Math.min(Math.max(attempts - 1, 0), 30);
+        if (backoff <= 0 || backoff > maxBackoffMs) {
+            backoff = maxBackoffMs;
+        }
+        return (long) (backoff * ThreadLocalRandom.current().nextDouble(0.8, 1.2));
+    }
+
+    private static String describe(Throwable error) {
+        Throwable cause = error instanceof CompletionException && error.getCause() != null ? error.getCause() : error;
+        String message = cause.getClass().getSimpleName() + ": " + cause.getMessage();
+        return message.length() > MAX_ERROR_LENGTH ? message.substring(0, MAX_ERROR_LENGTH) : message;
+    }
+
+    private static final class Outcome {
+        private final OutboundNotification row;
+        private final Throwable error;
+
+        Outcome(OutboundNotification row, Throwable error) {
+            this.row = row;
+            this.error = error;
+        }
+    }
+}
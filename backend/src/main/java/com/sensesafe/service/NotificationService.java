@@ -7,6 +7,7 @@ import org.springframework.messaging.simp.SimpMessagingTemplate;
 import org.springframework.scheduling.annotation.Async;
 import org.springframework.stereotype.Service;
 
+import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
@@ -29,7 +30,10 @@ public class NotificationService {
     @Autowired
     private SystemConfigService systemConfigService;
 
-    @Async
+    @Autowired
+    private WebSocketService webSocketService;
+
+    @Async(AsyncExecutors.REALTIME)
     public void notifyNewIncident(Incident incident) {
         // Create notification payload
         Map<String, Object> notification = new HashMap<>();
@@ -56,8 +60,8 @@ public class NotificationService {
         
         notification.put("timestamp", incident.getCreatedAt());
 
-        // Send to all connected clients
-        messagingTemplate.convertAndSend("/topic/incidents", notification);
+        // Send to clients watching the incident's area
+        webSocketService.broadcastToIncidentCells(incident, notification);
 
         // Send to nearby users (with lockdown restrictions)
         notifyNearbyUsers(incident, notification);
@@ -66,7 +70,7 @@ public class NotificationService {
         notifyAdmins(incident, notification);
     }
 
-    @Async
+    @Async(AsyncExecutors.REALTIME)
     public void notifyIncidentStatusUpdate(Incident incident, Incident.Status oldStatus) {
         Map<String, Object> notification = new HashMap<>();
         notification.put("type", "INCIDENT_STATUS_UPDATE");
@@ -92,24 +96,9 @@ public class NotificationService {
         }
     }
 
-    @Async
+    @Async(AsyncExecutors.EMAIL)
     public void sendEmergencyAlerts(Incident incident) {
-        // Send alerts to nearby users
-        List<User> nearbyUsers = userService.findUsersWithinRadius(
-            incident.getLatitude(), incident.getLongitude(), 5.0 // 5km radius
-        );
-
-        for (User user : nearbyUsers) {
-            if (user.getEmail() != null && !user.getEmail().isEmpty()) {
-                emailService.sendEmergencyAlert(
-                    user.getEmail(),
-                    incident.getTitle() + " - " + incident.getDescription(),
-                    incident.getAddress()
-                );
-            }
-        }
-
-        // Send WebSocket alerts
+        // Send WebSocket alerts first, so they don't wait on the recipient lookup
         Map<String, Object> alert = new HashMap<>();
         alert.put("type", "EMERGENCY_ALERT");
         alert.put("incidentId", incident.getId());
@@ -123,15 +112,45 @@ public class NotificationService {
         ));
 
         messagingTemplate.convertAndSend("/topic/emergency-alerts", alert);
+
+        // Send email alerts to nearby users
+        List<User> nearbyUsers = userService.findUsersWithinRadius(
+            incident.getLatitude(), incident.getLongitude(), 5.0 // 5km radius
+        );
+
+        List<String> recipients = new ArrayList<>(nearbyUsers.size());
+        for (User user : nearbyUsers) {
+            if (user.getEmail() != null && !user.getEmail().isEmpty()) {
+                recipients.add(user.getEmail());
+            }
+        }
+        if (!recipients.isEmpty()) {
+            emailService.sendEmergencyAlert(
+                recipients,
+                incident.getTitle() + " - " + incident.getDescription(),
+                incident.getAddress()
+            );
+        }
     }
 
-    @Async
+    @Async(AsyncExecutors.EMAIL)
     public void sendSOSAlert(User user, String message, List<String> emergencyContacts) {
         String userInfo = user.getFirstName() + " " + user.getLastName() + 
                          " (" + user.getPhoneNumber() + ")";
         String location = user.getAddress() != null ? user.getAddress() : 
                          "Lat: " + user.getLatitude() + ", Lng: " + user.getLongitude();
 
+        // Send WebSocket notification to admins before the emails are stored
+        Map<String, Object> sosAlert = new HashMap<>();
+        sosAlert.put("type", "SOS_ALERT");
+        sosAlert.put("userId", user.getId());
+        sosAlert.put("userName", user.getFirstName() + " " + user.getLastName());
+        sosAlert.put("message", message);
+        sosAlert.put("location", location);
+        sosAlert.put("timestamp", System.currentTimeMillis());
+
+        messagingTemplate.convertAndSend("/topic/sos-alerts", sosAlert);
+
         // Send email alerts to emergency contacts
         emailService.sendEnhancedSOSAlert(
             emergencyContacts, 
@@ -144,20 +163,9 @@ public class NotificationService {
             message,
             java.time.LocalDateTime.now()
         );
-
-        // Send WebSocket notification to admins
-        Map<String, Object> sosAlert = new HashMap<>();
-        sosAlert.put("type", "SOS_ALERT");
-        sosAlert.put("userId", user.getId());
-        sosAlert.put("userName", user.getFirstName() + " " + user.getLastName());
-        sosAlert.put("message", message);
-        sosAlert.put("location", location);
-        sosAlert.put("timestamp", System.currentTimeMillis());
-
-        messagingTemplate.convertAndSend("/topic/sos-alerts", sosAlert);
     }
 
-    @Async
+    @Async(AsyncExecutors.EMAIL)
     public void notifyHospitals(Incident incident) {
         // Mock hospital emails - in real app, this would be from database
         List<String> hospitalEmails = List.of(
@@ -178,7 +186,7 @@ public class NotificationService {
         }
     }
 
-    @Async
+    @Async(AsyncExecutors.REALTIME)
     public void notifyVolunteers(Incident incident) {
         // Find volunteers within radius
         List<User> volunteers = userService.findVolunteersWithinRadius(
@@ -209,19 +217,19 @@ public class NotificationService {
         }
     }
 
-    @Async
+    @Async(AsyncExecutors.REALTIME)
     public void sendRealTimeUpdate(String topic, Object data) {
         messagingTemplate.convertAndSend(topic, data);
     }
 
     private void notifyNearbyUsers(Incident incident, Map<String, Object> notification) {
-        // Find users within 2km radius
-        List<User> nearbyUsers = userService.findUsersWithinRadius(
+        // Find users within 2km radius (ids only, no need to load the entities)
+        List<Long> nearbyUserIds = userService.findUserIdsWithinRadius(
             incident.getLatitude(), incident.getLongitude(), 2.0
         );
 
-        for (User user : nearbyUsers) {
-            String userTopic = "/topic/user/" + user.getId();
+        for (Long userId : nearbyUserIds) {
+            String userTopic = "/topic/user/" + userId;
             messagingTemplate.convertAndSend(userTopic, notification);
         }
     }
@@ -0,0 +1,178 @@
+package com.sensesafe.service;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Ring of fixed-width counter rows, one row per time unit (a minute, an
+ * hour), for "last N units" sums without scanning the underlying data.
+ *
+ * Each row holds one long per dimension. Rows are striped across a few
+ * AtomicLongArrays picked by thread, as LongAdder does, so concurrent
+ * writers rarely contend on a cache line; a window sum reads every stripe.
+ * Rows are recycled as the clock moves on: the first caller in a new unit
+ * clears the rows that fell out of the ring. The two oldest rows are never
+ * written or read, so a writer that checked the clock just before a
+ * rollover can't land in a row that is being cleared.
+ */
+public class RollingWindowCounters {
+
+    private static final int GUARD_UNITS = 2;
+
+    private final int dimensions;
+    private final int slots;
+    private final long unitMillis;
+    private final AtomicLongArray[] stripes;
+    private final int stripeMask;
+
+    // Newest unit whose row has been cleared for use
+    private volatile long head;
+
+    public RollingWindowCounters(int dimensions, int windowUnits, long unitMillis, int stripes) {
+        if (dimensions <= 0 || windowUnits <= 0 || unitMillis <= 0) {
+            throw new IllegalArgumentException("Dimensions, window and unit must be positive");
+        }
+        this.dimensions = dimensions;
+        this.slots = windowUnits + GUARD_UNITS;
+        this.unitMillis = unitMillis;
+        int stripeCount = Integer.highestOneBit(Math.max(1, stripes));
+        this.stripes = new AtomicLongArray[stripeCount];
+        for (int i = 0; i < stripeCount; i++) {
+            this.stripes[i] = new AtomicLongArray(slots * dimensions);
+        }
+        this.stripeMask = stripeCount - 1;
+        this.head = System.currentTimeMillis() / unitMillis;
+    }
+
+    public int getDimensions() {
+        return dimensions;
+    }
+
+    public int getWindowUnits() {
+        return slots - GUARD_UNITS;
+    }
+
+    public long getUnitMillis() {
+        return unitMillis;
+    }
+
+    /**
+     * Add to one dimension of the row for the given time; times outside the
+     * window are dropped
+     *
+     * @return whether the time fell inside the window
+     */
+    public boolean add(long epochMillis, int dimension, long delta) {
+        long unit = epochMillis / unitMillis;
+        long newest = advance(System.currentTimeMillis() / unitMillis);
+        if (unit > newest || unit <= newest - getWindowUnits()) {
+            return false;
+        }
+        stripes[stripe()].getAndAdd(index(unit, dimension), delta);
+        return true;
+    }
+
+    /**
+     * Sum every dimension over the last units, ending with the current one
+     */
+    public long[] sum(int units) {
+        long newest = advance(System.currentTimeMillis() / unitMillis);
+        long oldest = newest - Math.min(units, getWindowUnits()) + 1;
+        long[] totals = new long[dimensions];
+        for (long unit = oldest; unit <= newest; unit++) {
+            int base = index(unit, 0);
+            for (AtomicLongArray stripe : stripes) {
+                for (int d = 0; d < dimensions; d++) {
+                    totals[d] += stripe.get(base + d);
+                }
+            }
+        }
+        return totals;
+    }
+
+    /**
+     * Write the window, stripes folded together, for reload after a restart
+     */
+    public void writeTo(DataOutputStream out) throws IOException {
+        long newest = advance(System.currentTimeMillis() / unitMillis);
+        out.writeInt(dimensions);
+        out.writeLong(unitMillis);
+        out.writeInt(getWindowUnits());
+        out.writeLong(newest);
+        for (long unit = newest - getWindowUnits() + 1; unit <= newest; unit++) {
+            int base = index(unit, 0);
+            for (int d = 0; d < dimensions; d++) {
+                long value = 0;
+                for (AtomicLongArray stripe : stripes) {
+                    value += stripe.get(base + d);
+                }
+                out.writeLong(value);
+            }
+        }
+    }
+
+    /**
+     * Load rows written by writeTo into this (empty) ring, skipping any that
+     * have since aged out of the window
+     */
+    public void readFrom(DataInputStream in) throws IOException {
+        int savedDimensions = in.readInt();
+        long savedUnitMillis = in.readLong();
+        int savedUnits = in.readInt();
+        long savedNewest = in.readLong();
+        if (savedDimensions != dimensions || savedUnitMillis != unitMillis) {
+            throw new IOException("Snapshot layout doesn't match: " + savedDimensions + " dimensions of " +
+                    savedUnitMillis + " ms, expected " + dimensions + " of " + unitMillis + " ms");
+        }
+        long newest = advance(System.currentTimeMillis() / unitMillis);
+        for (long unit = savedNewest - savedUnits + 1; unit <= savedNewest; unit++) {
+            boolean inWindow = unit <= newest && unit > newest - getWindowUnits();
+            int base = inWindow ? index(unit, 0) : 0;
+            for (int d = 0; d < dimensions; d++) {
+                long value = in.readLong();
+                if (inWindow && value != 0) {
+                    stripes[0].getAndAdd(base + d, value);
+                }
+            }
+        }
+    }
+
+    /**
+     * Clear the rows for units after head up to the given unit and move head
+     * there; cheap when head is already current
+     */
+    private long advance(long unit) {
+        long current = head;
+        if (unit <= current) {
+            return current;
+        }
+        synchronized (this) {
+            current = head;
+            if (unit > current) {
+                long from = Math.max(current + 1, unit - slots + 1);
+                for (long u = from; u <= unit; u++) {
+                    int base = index(u, 0);
+                    for (AtomicLongArray stripe : stripes) {
+                        for (int d = 0; d < dimensions; d++) {
+                            stripe.set(base + d, 0);
+                        }
+                    }
+                }
+                head = unit;
+                current = unit;
+            }
+        }
+        return current;
+    }
+
+    private int index(long unit, int dimension) {
+        return (int) Math.floorMod(unit, (long) slots) * dimensions + dimension;
+    }
+
+    private int stripe() {
+        long id = Thread.currentThread().getId();
+        return (int) (id ^ (id >>> 7)) & stripeMask;
+    }
+}
@@ -0,0 +1,40 @@
+package com.sensesafe.service;
+
+import com.sensesafe.config.VirtualThreads;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * The server's execution mode and thread counts, for comparing platform and
+ * virtual threads from a load client outside this JVM.
+ *
+ * The counts are platform threads only; virtual threads don't show up in
+ * the ThreadMXBean. The peak is since startup, so compare runs against a
+ * freshly started instance.
+ */
+@Component
+public class ServerThreadMetrics {
+
+    @Value("${spring.threads.virtual.enabled:false}")
+    private boolean virtualThreadsEnabled;
+
+    @Value("${server.tomcat.threads.max:200}")
+    private int tomcatMaxThreads;
+
+    public Map<String, Object> getMetrics() {
+        ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+        Map<String, Object> metrics = new LinkedHashMap<>();
+        metrics.put("virtualThreads", virtualThreadsEnabled && VirtualThreads.isSupported());
+        metrics.put("javaVersion", Runtime.version().toString());
+        metrics.put("tomcatMaxThreads", tomcatMaxThreads);
+        metrics.put("threads", threads.getThreadCount());
+        metrics.put("daemonThreads", threads.getDaemonThreadCount());
+        metrics.put("peakThreads", threads.getPeakThreadCount());
+        return metrics;
+    }
+}
@@ -0,0 +1,163 @@
+package com.sensesafe.service;
+
+import com.fasterxml.jackson.databind.JsonNode;
+
+import java.util.Map;
+
+/**
+ * Decision-tree ensemble (gradient boosting or random forest) loaded from the
+ * JSON written by ML/export_models.py.
+ *
+ * All trees share flat node arrays, so scoring is an index walk with no
+ * objects per node. The payload is encoded into a per-thread float buffer
+ * laid out like the training pipeline's transformed columns: one-hot
+ * columns for categorical features, passthrough for numeric ones. Values are
+ * compared as float because that is how scikit-learn evaluates its trees.
+ */
+public class TreeEnsembleModel implements InferenceModel {
+
+    public static final String FORMAT = "tree-ensemble";
+
+    private final String name;
+    private final boolean logistic;
+    private final boolean average;
+    private final double baseScore;
+
+    // Input column layout
+    private final String[] columnFeatures;
+    private final String[] columnCategories;
+
+    // Nodes of all trees; feature < 0 marks a leaf
+    private final int[] roots;
+    private final int[] nodeFeatures;
+    private final double[] thresholds;
+    private final int[] leftChildren;
+    private final int[] rightChildren;
+    private final double[] values;
+
+    private final ThreadLocal<float[]> buffers;
+
+    private TreeEnsembleModel(String name, boolean logistic, boolean average, double baseScore,
+                              String[] columnFeatures, String[] columnCategories, int[] roots,
+                              int[] nodeFeatures, double[] thresholds, int[] leftChildren,
+                              int[] rightChildren, double[] values) {
+        this.name = name;
+        this.logistic = logistic;
+        this.average = average;
+        this.baseScore = baseScore;
+        this.columnFeatures = columnFeatures;
+        this.columnCategories = columnCategories;
+        this.roots = roots;
+        this.nodeFeatures = nodeFeatures;
+        this.thresholds = thresholds;
+        this.leftChildren = leftChildren;
+        this.rightChildren = rightChildren;
+        this.values = values;
+        this.buffers = ThreadLocal.withInitial(() -> new float[columnFeatures.length]);
+    }
+
+    public static TreeEnsembleModel fromJson(JsonNode json) {
+        if (!FORMAT.equals(json.path("format").asText())) {
+            throw new IllegalArgumentException("Not a " + FORMAT + " model: " + json.path("format").asText());
+        }
+
+        JsonNode columns = json.get("columns");
+        String[] columnFeatures = new String[columns.size()];
+        String[] columnCategories = new String[columns.size()];
+        for (int c = 0; c < columns.size(); c++) {
+            columnFeatures[c] = columns.get(c).get("feature").asText();
+            JsonNode category = columns.get(c).get("equals");
+            columnCategories[c] = category == null || category.isNull() ? null : category.asText();
+        }
+
+        JsonNode trees = json.get("trees");
+        int totalNodes = 0;
+        for (JsonNode tree : trees) {
+            totalNodes += tree.get("feature").size();
+        }
+
+        int[] roots = new int[trees.size()];
+        int[] nodeFeatures = new int[totalNodes];
+        double[] thresholds = new double[totalNodes];
+        int[] leftChildren = new int[totalNodes];
+        int[] rightChildren = new int[totalNodes];
+        double[] values = new double[totalNodes];
+
+        int offset = 0;
+        for (int t = 0; t < trees.size(); t++) {
+            JsonNode tree = trees.get(t);
+            int nodes = tree.get("feature").size();
+            roots[t] = offset;
+            for (int n = 0; n < nodes; n++) {
+                int feature = tree.get("feature").get(n).asInt();
+                if (feature >= columnFeatures.length) {
+                    throw new IllegalArgumentException("Tree " + t + " uses column " + feature
+                            + " but the model has " + columnFeatures.length);
+                }
+                nodeFeatures[offset + n] = feature;
+                thresholds[offset + n] = tree.get("threshold").get(n).asDouble();
+                // Child indexes are tree-local in the export; rebase them onto the shared arrays
+                leftChildren[offset + n] = feature < 0 ? -1 : offset + tree.get("left").get(n).asInt();
+                rightChildren[offset + n] = feature < 0 ? -1 : offset + tree.get("right").get(n).asInt();
+                values[offset + n] = tree.get("value").get(n).asDouble();
+            }
+            offset += nodes;
+        }
+
+        String objective = json.path("objective").asText("regression");
+        String aggregation = json.path("aggregation").asText("sum");
+        return new TreeEnsembleModel(json.path("name").asText("tree-ensemble"),
+                "binary-logistic".equals(objective), "mean".equals(aggregation),
+                json.path("baseScore").asDouble(0.0), columnFeatures, columnCategories, roots,
+                nodeFeatures, thresholds, leftChildren, rightChildren, values);
+    }
+
+    @Override
+    public String getName() {
+        return name;
+    }
+
+    public int getTreeCount() {
+        return roots.length;
+    }
+
+    public int getNodeCount() {
+        return nodeFeatures.length;
+    }
+
+    @Override
+    public double predict(Map<String, Object> payload) {
+        float[] x = buffers.get();
+        encode(payload, x);
+
+        double sum = 0.0;
+        for (int root : roots) {
+            int node = root;
+            int feature;
+            while ((feature = nodeFeatures[node]) >= 0) {
+                node = x[feature] <= thresholds[node] ? leftChildren[node] : rightChildren[node];
+            }
+            sum += values[node];
+        }
+
+        double raw = baseScore + (average ? sum / roots.length : sum);
+        return logistic ? 1.0 / (1.0 + Math.exp(-raw)) : raw;
+    }
+
+    private void encode(Map<String, Object> payload, float[] x) {
+        for (int c = 0; c < x.length; c++) {
+            Object value = payload.get(columnFeatures[c]);
+            String category = columnCategories[c];
+            if (category != null) {
+                // Unknown categories encode as all zeros, like handle_unknown="ignore"
+                x[c] = category.equals(value) ? 1f : 0f;
+            } else if (value instanceof Number number) {
+                x[c] = number.floatValue();
+            } else if (value instanceof Boolean flag) {
+                x[c] = flag ? 1f : 0f;
+            } else {
+                x[c] = 0f;
+            }
+        }
+    }
+}
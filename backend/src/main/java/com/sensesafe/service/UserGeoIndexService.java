@@ -0,0 +1,106 @@
+package com.sensesafe.service;
+
+import com.sensesafe.model.User;
+import com.sensesafe.repository.UserRepository;
+import jakarta.annotation.PostConstruct;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Service;
+
+import java.util.List;
+import java.util.function.Predicate;
+
+/**
+ * Last-known user locations kept in memory so alert fan-out can answer radius
+ * and nearest-volunteer queries without scanning the users table.
+ */
+@Service
+public class UserGeoIndexService {
+
+    @Autowired
+    private UserRepository userRepository;
+
+    @Value("${geolocation.index.cell-size-degrees:0.05}")
+    private double cellSizeDegrees;
+
+    private static final Predicate<UserPoint> ACTIVE_VOLUNTEER =
+            p -> p.getRole() == User.Role.VOLUNTEER && p.isEnabled();
+
+    private GeoGridIndex<UserPoint> index;
+    private volatile boolean ready = false;
+
+    @PostConstruct
+    public void init() {
+        index = new GeoGridIndex<>(cellSizeDegrees);
+    }
+
+    /**
+     * Rebuild the index from the database once startup data has been loaded
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void rebuild() {
+        ready = false;
+        index.clear();
+        for (Object[] row : userRepository.findAllLocations()) {
+            index.put((Long) row[0], (Double) row[1], (Double) row[2],
+                    new UserPoint((User.Role) row[3], (Boolean) row[4]));
+        }
+        ready = true;
+        System.out.println("User geo index built with " + index.size() + " users");
+    }
+
+    public boolean isReady() {
+        return ready;
+    }
+
+    /**
+     * Add, move or drop a user depending on whether a location is known
+     */
+    public void index(User user) {
+        if (user.getId() == null) {
+            return;
+        }
+        if (user.getLatitude() == null || user.getLongitude() == null) {
+            index.remove(user.getId());
+            return;
+        }
+        index.put(user.getId(), user.getLatitude(), user.getLongitude(),
+                new UserPoint(user.getRole(), user.isEnabled()));
+    }
+
+    public void remove(Long userId) {
+        index.remove(userId);
+    }
+
+    public List<GeoGridIndex.Hit<UserPoint>> findUsersWithinRadius(Double latitude, Double longitude, Double radiusKm) {
+        return index.withinRadius(latitude, longitude, radiusKm, null);
+    }
+
+    public List<GeoGridIndex.Hit<UserPoint>> findVolunteersWithinRadius(Double latitude, Double longitude, Double radiusKm) {
+        return index.withinRadius(latitude, longitude, radiusKm, ACTIVE_VOLUNTEER);
+    }
+
+    public List<GeoGridIndex.Hit<UserPoint>> findNearestVolunteers(Double latitude, Double longitude,
+                                                                  int count, Double maxRadiusKm) {
+        return index.nearest(latitude, longitude, count, maxRadiusKm, ACTIVE_VOLUNTEER);
+    }
+
+    public int size() {
+        return index.size();
+    }
+
+    public static final class UserPoint {
+        private final User.Role role;
+        private final boolean enabled;
+
+        public UserPoint(User.Role role, Boolean enabled) {
+            this.role = role;
+            this.enabled = Boolean.TRUE.equals(enabled);
+        }
+
+        public User.Role getRole() { return role; }
+        public boolean isEnabled() { return enabled; }
+    }
+}
@@ -11,7 +11,10 @@ import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
 import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
 import java.util.Random;
 
@@ -28,6 +31,12 @@ public class UserService implements UserDetailsService {
     @Autowired
     private EmailService emailService;
 
+    @Autowired
+    private UserGeoIndexService userGeoIndexService;
+
+    @Autowired
+    private DashboardMetricsService dashboardMetricsService;
+
     @Override
     public UserDetails loadUserByUsername(String username) throws UsernameNotFoundException {
         return userRepository.findByUsername(username)
@@ -47,7 +56,10 @@ public class UserService implements UserDetailsService {
 
         user.setPassword(passwordEncoder.encode(user.getPassword()));
         user.setCreatedAt(LocalDateTime.now());
-        return userRepository.save(user);
+        User savedUser = userRepository.save(user);
+        userGeoIndexService.index(savedUser);
+        dashboardMetricsService.userRegistered(savedUser);
+        return savedUser;
     }
 
     public Optional<User> findByUsername(String username) {
@@ -71,13 +83,16 @@ public class UserService implements UserDetailsService {
     }
 
     public User updateUser(User user) {
-        return userRepository.save(user);
+        User savedUser = userRepository.save(user);
+        userGeoIndexService.index(savedUser);
+        return savedUser;
     }
 
     public void updateLastLogin(String username) {
         userRepository.findByUsername(username).ifPresent(user -> {
             user.setLastLogin(LocalDateTime.now());
             userRepository.save(user);
+            dashboardMetricsService.userLoggedIn(user);
         });
     }
 
@@ -94,15 +109,57 @@ public class UserService implements UserDetailsService {
             user.setLongitude(longitude);
             user.setAddress(address);
             userRepository.save(user);
+            userGeoIndexService.index(user);
         });
     }
 
     public List<User> findUsersWithinRadius(Double latitude, Double longitude, Double radiusKm) {
-        return userRepository.findUsersWithinRadius(latitude, longitude, radiusKm);
+        if (!userGeoIndexService.isReady()) {
+            return userRepository.findUsersWithinRadius(latitude, longitude, radiusKm);
+        }
+        return loadInDistanceOrder(userGeoIndexService.findUsersWithinRadius(latitude, longitude, radiusKm));
+    }
+
+    public List<Long> findUserIdsWithinRadius(Double latitude, Double longitude, Double radiusKm) {
+        if (!userGeoIndexService.isReady()) {
+            return userRepository.findUsersWithinRadius(latitude, longitude, radiusKm).stream()
+                    .map(User::getId).toList();
+        }
+        return userGeoIndexService.findUsersWithinRadius(latitude, longitude, radiusKm).stream()
+                .map(GeoGridIndex.Hit::getId).toList();
     }
 
     public List<User> findVolunteersWithinRadius(Double latitude, Double longitude, Double radiusKm) {
-        return userRepository.findVolunteersWithinRadius(latitude, longitude, radiusKm);
+        if (!userGeoIndexService.isReady()) {
+            return userRepository.findVolunteersWithinRadius(latitude, longitude, radiusKm);
+        }
+        return loadInDistanceOrder(userGeoIndexService.findVolunteersWithinRadius(latitude, longitude, radiusKm));
+    }
+
+    public List<User> findNearestVolunteers(Double latitude, Double longitude, int count, Double maxRadiusKm) {
+        return loadInDistanceOrder(
+                userGeoIndexService.findNearestVolunteers(latitude, longitude, count, maxRadiusKm));
+    }
+
+    private List<User> loadInDistanceOrder(List<GeoGridIndex.Hit<UserGeoIndexService.UserPoint>> hits) {
+        if (hits.isEmpty()) {
+            return new ArrayList<>();
+        }
+
+        List<Long> ids = hits.stream().map(GeoGridIndex.Hit::getId).toList();
+        Map<Long, User> usersById = new HashMap<>();
+        for (User user : userRepository.findAllById(ids)) {
+            usersById.put(user.getId(), user);
+        }
+
+        List<User> ordered = new ArrayList<>(ids.size());
+        for (Long id : ids) {
+            User user = usersById.get(id);
+            if (user != null) {
+                ordered.add(user);
+            }
+        }
+        return ordered;
     }
 
     // OTP functionality for admin login
@@ -176,6 +233,9 @@ public class UserService implements UserDetailsService {
     }
 
     public Long getNewUserCount(int days) {
+        if (dashboardMetricsService.covers(days * 24)) {
+            return dashboardMetricsService.getNewUserCount(days * 24);
+        }
         LocalDateTime since = LocalDateTime.now().minusDays(days);
         return userRepository.countNewUsersAfter(since);
     }
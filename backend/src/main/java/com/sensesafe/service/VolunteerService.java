@@ -25,6 +25,9 @@ public class VolunteerService {
     @Autowired
     private EmailService emailService;
 
+    @Autowired
+    private DashboardMetricsService dashboardMetricsService;
+
     public VolunteerApplication submitApplication(VolunteerApplication application) {
         // Check if user already has a pending or approved application
         Optional<VolunteerApplication> existingApp = volunteerApplicationRepository
@@ -46,7 +49,9 @@ public class VolunteerService {
         application.setCreatedAt(LocalDateTime.now());
         application.setStatus(VolunteerApplication.ApplicationStatus.PENDING);
         
-        return volunteerApplicationRepository.save(application);
+        VolunteerApplication savedApplication = volunteerApplicationRepository.save(application);
+        dashboardMetricsService.applicationSubmitted();
+        return savedApplication;
     }
 
     public List<VolunteerApplication> getAllApplications() {
@@ -83,12 +88,14 @@ public class VolunteerService {
         User reviewer = userService.findById(reviewerId)
             .orElseThrow(() -> new RuntimeException("Reviewer not found"));
 
+        VolunteerApplication.ApplicationStatus previousStatus = application.getStatus();
         application.setStatus(decision);
         application.setReviewNotes(reviewNotes);
         application.setReviewedBy(reviewer);
         application.setReviewedAt(LocalDateTime.now());
 
         VolunteerApplication updatedApplication = volunteerApplicationRepository.save(application);
+        dashboardMetricsService.applicationStatusChanged(previousStatus, decision);
 
         // Update user role if approved
         if (decision == VolunteerApplication.ApplicationStatus.APPROVED) {
@@ -165,6 +172,7 @@ public class VolunteerService {
         }
 
         volunteerApplicationRepository.delete(application);
+        dashboardMetricsService.applicationDeleted(application.getStatus());
     }
 
     private void sendApplicationStatusEmail(VolunteerApplication application, 
@@ -181,12 +189,17 @@ public class VolunteerService {
     }
 
     public Long getActiveVolunteerCount() {
-        return (long) volunteerApplicationRepository
-            .findByStatus(VolunteerApplication.ApplicationStatus.APPROVED).size();
+        return getApplicationCount(VolunteerApplication.ApplicationStatus.APPROVED);
     }
 
     public Long getPendingApplicationCount() {
-        return (long) volunteerApplicationRepository
-            .findByStatus(VolunteerApplication.ApplicationStatus.PENDING).size();
+        return getApplicationCount(VolunteerApplication.ApplicationStatus.PENDING);
+    }
+
+    private Long getApplicationCount(VolunteerApplication.ApplicationStatus status) {
+        if (dashboardMetricsService.isReady()) {
+            return dashboardMetricsService.getApplicationCount(status);
+        }
+        return volunteerApplicationRepository.countByStatus(status);
     }
 }
\ No newline at end of file
@@ -2,11 +2,14 @@ package com.sensesafe.service;
 
 import com.sensesafe.model.Incident;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.messaging.Message;
 import org.springframework.messaging.simp.SimpMessagingTemplate;
 import org.springframework.stereotype.Service;
 
 import java.time.LocalDateTime;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 
 @Service
@@ -15,14 +18,45 @@ public class WebSocketService {
     @Autowired
     private SimpMessagingTemplate messagingTemplate;
 
+    @Autowired
+    private IncidentTopicRouter incidentTopicRouter;
+
+    // Also send every incident to /topic/incidents, for clients that haven't moved to the geo topics
+    @Value("${websocket.geo.global-topic:false}")
+    private boolean globalTopic;
+
     public void broadcastNewIncident(Incident incident) {
         Map<String, Object> message = new HashMap<>();
         message.put("type", "NEW_INCIDENT");
         message.put("incident", createIncidentMessage(incident));
         message.put("timestamp", LocalDateTime.now().toString());
         
-        // Broadcast to all subscribers
-        messagingTemplate.convertAndSend("/topic/incidents", message);
+        // Broadcast to subscribers of the incident's cells
+        broadcastToIncidentCells(incident, message);
+    }
+
+    /**
+     * Send to the geo topics of the incident's cells that have subscribers,
+     * converting the payload once for all of them
+     */
+    public void broadcastToIncidentCells(Incident incident, Object payload) {
+        if (globalTopic) {
+            messagingTemplate.convertAndSend("/topic/incidents", payload);
+        }
+        if (incident.getLatitude() == null || incident.getLongitude() == null) {
+            return;
+        }
+        List<String> topics = incidentTopicRouter.subscribedTopics(incident.getLatitude(), incident.getLongitude());
+        if (topics.isEmpty()) {
+            return;
+        }
+        Message<?> message = messagingTemplate.getMessageConverter().toMessage(payload, null);
+        if (message == null) {
+            return;
+        }
+        for (String topic : topics) {
+            messagingTemplate.send(topic, message);
+        }
     }
 
     public void broadcastIncidentUpdate(Incident incident) {
@@ -31,8 +65,8 @@ public class WebSocketService {
         message.put("incident", createIncidentMessage(incident));
         message.put("timestamp", LocalDateTime.now().toString());
         
-        // Broadcast to all subscribers
-        messagingTemplate.convertAndSend("/topic/incidents", message);
+        // Broadcast to subscribers of the incident's cells
+        broadcastToIncidentCells(incident, message);
     }
 
     public void broadcastIncidentStatusChange(Incident incident, String oldStatus, String newStatus) {
@@ -43,8 +77,8 @@ public class WebSocketService {
         message.put("newStatus", newStatus);
         message.put("timestamp", LocalDateTime.now().toString());
         
-        // Broadcast to all subscribers
-        messagingTemplate.convertAndSend("/topic/incidents", message);
+        // Broadcast to subscribers of the incident's cells
+        broadcastToIncidentCells(incident, message);
     }
 
     public void broadcastIncidentVerification(Long incidentId, String verificationType, boolean isAccurate) {
@@ -55,8 +89,8 @@ public class WebSocketService {
         message.put("isAccurate", isAccurate);
         message.put("timestamp", LocalDateTime.now().toString());
         
-        // Broadcast to all subscribers
-        messagingTemplate.convertAndSend("/topic/incidents", message);
+        // No location here; send to the incident's own topic
+        messagingTemplate.convertAndSend("/topic/incidents/" + incidentId, message);
     }
 
     public void broadcastEmergencyAlert(String alertType, String message, Double latitude, Double longitude) {
@@ -0,0 +1,113 @@
+package com.sensesafe.benchmark;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.sensesafe.service.AuditJournal;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.stream.Stream;
+
+/**
+ * Appends the same synthetic audit event to a throwaway journal under each
+ * fsync policy and reports throughput and per-append latency percentiles.
+ *
+ * The payload has the fields AuditJournalService journals for an audit
+ * log. Each policy gets its own temporary directory, deleted afterwards.
+ * Run with
+ *
+ *   mvn test-compile exec:java -Dexec.classpathScope=test \
+ *       -Dexec.mainClass=com.sensesafe.benchmark.AuditJournalBenchmark -Dexec.args="100000 8"
+ */
+public class AuditJournalBenchmark {
+
+    public static void main(String[] args) throws Exception {
+        int events = args.length > 0 ? Integer.parseInt(args[0]) : 100_000;
+        int producers = args.length > 1 ? Integer.parseInt(args[1]) : 8;
+        int segmentBytes = args.length > 2 ? Integer.parseInt(args[2]) : 64 * 1024 * 1024;
+        long fsyncIntervalMs = args.length > 3 ? Long.parseLong(args[3]) : 100;
+
+        ObjectMapper json = new ObjectMapper();
+        Map<String, Object> fields = new LinkedHashMap<>();
+        fields.put("actionType", "AUDIT_BENCHMARK");
+        fields.put("userId", "benchmark");
+        fields.put("userRole", "ADMIN");
+        fields.put("targetType", "INCIDENT");
+        fields.put("targetId", "12345");
+        fields.put("targetDescription", "Incident status changed from PENDING to VERIFIED");
+        fields.put("ipAddress", "203.0.113.10");
+        fields.put("userAgent", "Mozilla/5.0 (X11; Linux x86_64)");
+        fields.put("status", "SUCCESS");
+        fields.put("errorMessage", null);
+        fields.put("metadata", null);
+        fields.put("createdAt", "2024-01-01T12:00:00");
+        byte[] payload = json.writeValueAsBytes(fields);
+
+        Map<String, Object> result = new LinkedHashMap<>();
+        result.put("events", events);
+        result.put("producers", producers);
+        result.put("payloadBytes", payload.length);
+        for (AuditJournal.FsyncPolicy policy : AuditJournal.FsyncPolicy.values()) {
+            result.put(policy.name().toLowerCase(),
+                    run(policy, events, producers, payload, segmentBytes, fsyncIntervalMs));
+        }
+        System.out.println(json.enable(SerializationFeature.INDENT_OUTPUT).writeValueAsString(result));
+    }
+
+    private static Map<String, Object> run(AuditJournal.FsyncPolicy policy, int events, int producers,
+                                           byte[] payload, int segmentBytes, long fsyncIntervalMs) throws Exception {
+        Path directory = Files.createTempDirectory("audit-journal-benchmark");
+        long[] latencies = new long[events];
+        LongAdder failures = new LongAdder();
+        double seconds;
+        Map<String, Object> journalMetrics;
+        try (AuditJournal journal = new AuditJournal(directory, segmentBytes, policy, fsyncIntervalMs, 0L)) {
+            ExecutorService pool = Executors.newFixedThreadPool(producers);
+            long start = System.nanoTime();
+            for (int p = 0; p < producers; p++) {
+                int producer = p;
+                pool.execute(() -> {
+                    for (int i = producer; i < events; i += producers) {
+                        long appendStart = System.nanoTime();
+                        try {
+                            journal.append(payload);
+                        } catch (IOException e) {
+                            failures.increment();
+                        }
+                        latencies[i] = System.nanoTime() - appendStart;
+                    }
+                });
+            }
+            pool.shutdown();
+            pool.awaitTermination(10, TimeUnit.MINUTES);
+            seconds = (System.nanoTime() - start) / 1_000_000_000.0;
+            journalMetrics = journal.getMetrics();
+        } finally {
+            try (Stream<Path> paths = Files.walk(directory)) {
+                paths.sorted(Comparator.reverseOrder()).forEach(path -> path.toFile().delete());
+            }
+        }
+
+        Arrays.sort(latencies);
+        Map<String, Object> run = new HashMap<>();
+        run.put("seconds", seconds);
+        run.put("eventsPerSecond", seconds > 0 ? events / seconds : 0.0);
+        run.put("p50Micros", latencies[(int) (events * 0.50)] / 1_000.0);
+        run.put("p99Micros", latencies[Math.min(events - 1, (int) (events * 0.99))] / 1_000.0);
+        run.put("maxMicros", latencies[events - 1] / 1_000.0);
+        run.put("failures", failures.sum());
+        run.put("fsyncs", journalMetrics.get("fsyncs"));
+        run.put("bytesAppended", journalMetrics.get("bytesAppended"));
+        return run;
+    }
+}
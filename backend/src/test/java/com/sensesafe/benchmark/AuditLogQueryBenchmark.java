@@ -0,0 +1,183 @@
+package com.sensesafe.benchmark;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.SingleConnectionDataSource;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Stream;
+
+/**
+ * Compares offset and keyset pagination on a seeded copy of the audit log
+ * columns the list queries touch.
+ *
+ * The table lives in an H2 file database in a temporary directory that is
+ * deleted afterwards, so neither the application's database nor its heap
+ * is involved, and millions of rows don't have to fit in memory. It has
+ * the same composite indexes as audit_logs. For each depth it times the old
+ * query shape, (? IS NULL OR col = ?) with LIMIT/OFFSET, and the keyset
+ * query the repository now builds, once unfiltered and once by user. Each
+ * timing is the median of a few runs. Run with
+ *
+ *   mvn test-compile exec:java -Dexec.classpathScope=test \
+ *       -Dexec.mainClass=com.sensesafe.benchmark.AuditLogQueryBenchmark -Dexec.args="5000000 50"
+ */
+public class AuditLogQueryBenchmark {
+
+    private static final String TABLE = "audit_logs_pagination_bench";
+    private static final String[] ACTION_TYPES = {"USER_LOGIN", "INCIDENT_CREATED", "INCIDENT_VERIFIED",
+            "INCIDENT_UPDATED", "RESOURCE_ASSIGNED", "INCIDENT_RESOLVED", "ALERT_SENT", "CONFIG_UPDATED"};
+    private static final int USERS = 100;
+    private static final int SEED_BATCH = 10000;
+    private static final int RUNS = 5;
+
+    private static final String OFFSET_SQL = "SELECT id, action_type, user_id, status, created_at FROM " + TABLE +
+            " WHERE (CAST(? AS VARCHAR(100)) IS NULL OR action_type = ?) AND (CAST(? AS VARCHAR(50)) IS NULL OR user_id = ?)" +
+            " AND (CAST(? AS VARCHAR(20)) IS NULL OR status = ?)" +
+            " ORDER BY created_at DESC LIMIT ? OFFSET ?";
+
+    private final JdbcTemplate jdbcTemplate;
+
+    AuditLogQueryBenchmark(JdbcTemplate jdbcTemplate) {
+        this.jdbcTemplate = jdbcTemplate;
+    }
+
+    public static void main(String[] args) throws Exception {
+        int rows = args.length > 0 ? Integer.parseInt(args[0]) : 5_000_000;
+        int pageSize = args.length > 1 ? Integer.parseInt(args[1]) : 50;
+        Path scratch = Files.createTempDirectory("audit-pagination-benchmark");
+        SingleConnectionDataSource dataSource = new SingleConnectionDataSource(
+                "jdbc:h2:file:" + scratch.resolve("benchmark").toAbsolutePath(), "sa", "", true);
+        try {
+            Map<String, Object> result = new AuditLogQueryBenchmark(new JdbcTemplate(dataSource)).run(rows, pageSize);
+            System.out.println(new ObjectMapper().enable(SerializationFeature.INDENT_OUTPUT).writeValueAsString(result));
+        } finally {
+            dataSource.destroy();
+            try (Stream<Path> paths = Files.walk(scratch)) {
+                paths.sorted(Comparator.reverseOrder()).forEach(path -> path.toFile().delete());
+            }
+        }
+    }
+
+    public Map<String, Object> run(int rows, int pageSize) {
+        long seedStart = System.nanoTime();
+        jdbcTemplate.execute("DROP TABLE IF EXISTS " + TABLE);
+        jdbcTemplate.execute("CREATE TABLE " + TABLE + " (id BIGINT PRIMARY KEY, action_type VARCHAR(100) NOT NULL, " +
+                "user_id VARCHAR(50) NOT NULL, status VARCHAR(20) NOT NULL, created_at TIMESTAMP NOT NULL)");
+        try {
+            seed(rows);
+            long seedMillis = (System.nanoTime() - seedStart) / 1_000_000;
+
+            List<Map<String, Object>> unfiltered = new ArrayList<>();
+            List<Map<String, Object>> byUser = new ArrayList<>();
+            for (long depth : new long[]{0, 1_000, 10_000, 100_000, 1_000_000, rows - pageSize}) {
+                if (depth >= 0 && depth <= rows - pageSize) {
+                    unfiltered.add(measure(null, depth, pageSize));
+                }
+            }
+            int userRows = rows / USERS;
+            for (long depth : new long[]{0, userRows / 10, userRows / 2, userRows - pageSize}) {
+                if (depth >= 0) {
+                    byUser.add(measure("user-42", depth, pageSize));
+                }
+            }
+
+            Map<String, Object> result = new HashMap<>();
+            result.put("rows", rows);
+            result.put("pageSize", pageSize);
+            result.put("seedMillis", seedMillis);
+            result.put("unfiltered", unfiltered);
+            result.put("byUser", byUser);
+            return result;
+        } finally {
+            jdbcTemplate.execute("DROP TABLE IF EXISTS " + TABLE);
+        }
+    }
+
+    private void seed(int rows) {
+        LocalDateTime start = LocalDateTime.now().minusSeconds(rows);
+        String sql = "INSERT INTO " + TABLE + " (id, action_type, user_id, status, created_at) VALUES (?, ?, ?, ?, ?)";
+        List<Object[]> batch = new ArrayList<>(SEED_BATCH);
+        for (int i = 1; i <= rows; i++) {
+            // A few rows share a timestamp so the id tie-break is exercised
+            batch.add(new Object[]{(long) i, ACTION_TYPES[i % ACTION_TYPES.length], "user-" + (i % USERS),
+                    i % 20 == 0 ? "FAILED" : "SUCCESS", Timestamp.valueOf(start.plusSeconds(i - i % 3))});
+            if (batch.size() == SEED_BATCH || i == rows) {
+                jdbcTemplate.batchUpdate(sql, batch);
+                batch.clear();
+            }
+        }
+        jdbcTemplate.execute("CREATE INDEX idx_bench_created ON " + TABLE + " (created_at, id)");
+        jdbcTemplate.execute("CREATE INDEX idx_bench_user ON " + TABLE + " (user_id, created_at, id)");
+        jdbcTemplate.execute("CREATE INDEX idx_bench_action ON " + TABLE + " (action_type, created_at, id)");
+        jdbcTemplate.execute("CREATE INDEX idx_bench_status ON " + TABLE + " (status, created_at, id)");
+    }
+
+    private Map<String, Object> measure(String userId, long depth, int pageSize) {
+        // The row just above the page is where a client paging by cursor would be
+        Map<String, Object> cursor = null;
+        if (depth > 0) {
+            cursor = userId != null
+                    ? jdbcTemplate.queryForMap("SELECT created_at, id FROM " + TABLE + " WHERE user_id = ?" +
+                            " ORDER BY created_at DESC, id DESC LIMIT 1 OFFSET ?", userId, depth - 1)
+                    : jdbcTemplate.queryForMap("SELECT created_at, id FROM " + TABLE +
+                            " ORDER BY created_at DESC, id DESC LIMIT 1 OFFSET ?", depth - 1);
+        }
+
+        long[] offsetNanos = new long[RUNS];
+        long[] keysetNanos = new long[RUNS];
+        for (int run = 0; run < RUNS; run++) {
+            long start = System.nanoTime();
+            jdbcTemplate.queryForList(OFFSET_SQL, null, null, userId, userId, null, null, pageSize, depth);
+            offsetNanos[run] = System.nanoTime() - start;
+
+            start = System.nanoTime();
+            keysetPage(userId, cursor, pageSize);
+            keysetNanos[run] = System.nanoTime() - start;
+        }
+
+        Map<String, Object> point = new LinkedHashMap<>();
+        point.put("depth", depth);
+        point.put("offsetMillis", median(offsetNanos) / 1_000_000.0);
+        point.put("keysetMillis", median(keysetNanos) / 1_000_000.0);
+        return point;
+    }
+
+    private List<Map<String, Object>> keysetPage(String userId, Map<String, Object> cursor, int pageSize) {
+        StringBuilder sql = new StringBuilder("SELECT id, action_type, user_id, status, created_at FROM " + TABLE);
+        List<Object> args = new ArrayList<>();
+        List<String> predicates = new ArrayList<>();
+        if (userId != null) {
+            predicates.add("user_id = ?");
+            args.add(userId);
+        }
+        if (cursor != null) {
+            predicates.add("created_at <= ? AND (created_at < ? OR (created_at = ? AND id < ?))");
+            args.addAll(List.of(cursor.get("created_at"), cursor.get("created_at"), cursor.get("created_at"),
+                    cursor.get("id")));
+        }
+        if (!predicates.isEmpty()) {
+            sql.append(" WHERE ").append(String.join(" AND ", predicates));
+        }
+        sql.append(" ORDER BY created_at DESC, id DESC LIMIT ?");
+        args.add(pageSize);
+        return jdbcTemplate.queryForList(sql.toString(), args.toArray());
+    }
+
+    private static long median(long[] values) {
+        long[] sorted = values.clone();
+        Arrays.sort(sorted);
+        return sorted[sorted.length / 2];
+    }
+}
@@ -0,0 +1,96 @@
+package com.sensesafe.benchmark;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.sensesafe.SenseSafeApplication;
+import com.sensesafe.model.AuditLog;
+import com.sensesafe.service.AuditLogWriter;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+/**
+ * Compares row-by-row and group-commit audit inserts.
+ *
+ * Each mode boots the application on its own in-memory database and
+ * scratch directory, with audit anchoring off and no reachable chain node,
+ * so the synthetic rows never reach a real audit trail. Run with
+ *
+ *   mvn test-compile exec:java -Dexec.classpathScope=test \
+ *       -Dexec.mainClass=com.sensesafe.benchmark.AuditLogWriterBenchmark -Dexec.args="5000 16"
+ */
+public class AuditLogWriterBenchmark {
+
+    public static void main(String[] args) throws Exception {
+        int events = args.length > 0 ? Integer.parseInt(args[0]) : 5000;
+        int producers = args.length > 1 ? Integer.parseInt(args[1]) : 16;
+
+        Map<String, Object> result = new HashMap<>();
+        result.put("events", events);
+        result.put("producers", producers);
+        result.put("rowByRow", run("row-by-row", false, events, producers));
+        result.put("groupCommit", run("group-commit", true, events, producers));
+        System.out.println(new ObjectMapper().enable(SerializationFeature.INDENT_OUTPUT).writeValueAsString(result));
+    }
+
+    private static Map<String, Object> run(String mode, boolean groupCommit, int events, int producers)
+            throws Exception {
+        Path scratch = Files.createTempDirectory("audit-writer-benchmark");
+        try (ConfigurableApplicationContext context = new SpringApplicationBuilder(SenseSafeApplication.class)
+                .properties(
+                        "server.port=0",
+                        "spring.datasource.url=jdbc:h2:mem:audit-writer-benchmark-" + mode + ";DB_CLOSE_DELAY=-1",
+                        "spring.jpa.show-sql=false",
+                        "logging.level.com.sensesafe=INFO",
+                        "logging.level.org.springframework=WARN",
+                        "logging.file.name=" + scratch.resolve("benchmark.log"),
+                        "blockchain.rpc-url=http://127.0.0.1:1",
+                        "audit.anchoring.enabled=false",
+                        "audit.journal.directory=" + scratch.resolve("audit-journal"),
+                        "dashboard.metrics.snapshot-file=" + scratch.resolve("dashboard-metrics.snapshot"),
+                        // Off, the writer commits each row in its own transaction
+                        "audit.writer.enabled=" + groupCommit)
+                .run()) {
+            AuditLogWriter writer = context.getBean(AuditLogWriter.class);
+            ExecutorService pool = Executors.newFixedThreadPool(producers);
+            CompletableFuture<?>[] saved = new CompletableFuture<?>[events];
+            long start = System.nanoTime();
+            for (int p = 0; p < producers; p++) {
+                int producer = p;
+                pool.execute(() -> {
+                    for (int i = producer; i < events; i += producers) {
+                        AuditLog auditLog = new AuditLog("AUDIT_BENCHMARK", "benchmark", "ADMIN", "SUCCESS");
+                        auditLog.setTargetType("BENCHMARK");
+                        auditLog.setTargetDescription(mode + " event " + i);
+                        auditLog.setBlockchainStatus("PENDING");
+                        saved[i] = writer.append(auditLog);
+                    }
+                });
+            }
+            pool.shutdown();
+            pool.awaitTermination(10, TimeUnit.MINUTES);
+            CompletableFuture.allOf(saved).get(10, TimeUnit.MINUTES);
+            double seconds = (System.nanoTime() - start) / 1_000_000_000.0;
+
+            Map<String, Object> run = new HashMap<>();
+            run.put("seconds", seconds);
+            run.put("eventsPerSecond", seconds > 0 ? events / seconds : 0.0);
+            run.put("writer", writer.getMetrics());
+            return run;
+        } finally {
+            try (Stream<Path> paths = Files.walk(scratch)) {
+                paths.sorted(Comparator.reverseOrder()).forEach(path -> path.toFile().delete());
+            }
+        }
+    }
+}
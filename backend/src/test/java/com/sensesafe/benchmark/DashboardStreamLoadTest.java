@@ -0,0 +1,248 @@
+package com.sensesafe.benchmark;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.sensesafe.config.LatencyHistogram;
+
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Flow;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Opens many concurrent dashboard streams against a server over real HTTP
+ * connections and measures what they receive.
+ *
+ * Each session is an async HttpClient request whose body is consumed line
+ * by line, so hundreds of sessions don't need hundreds of threads on
+ * either side. Delivery lag is the time from an event's publishedAt to its
+ * arrival at the session; publisher tick and fan-out cost are read from the
+ * dashboardStream section of /admin/pipeline/metrics before and after.
+ *
+ * It runs in its own JVM and refuses anything but a loopback address unless
+ * --allow-remote is given, so point it at a disposable local instance (see
+ * IncidentLoadTest). The admin token is read from SENSESAFE_TOKEN. Run with
+ *
+ *   SENSESAFE_TOKEN=... mvn test-compile exec:java -Dexec.classpathScope=test \
+ *       -Dexec.mainClass=com.sensesafe.benchmark.DashboardStreamLoadTest \
+ *       -Dexec.args="http://127.0.0.1:8081/api 500 20"
+ */
+public class DashboardStreamLoadTest {
+
+    private static final long[] LAG_BOUNDS_MILLIS = {1, 2, 5, 10, 25, 50, 100, 250, 500, 1000, 2500};
+    private static final Set<String> LOOPBACK_HOSTS = Set.of("localhost", "127.0.0.1", "[::1]");
+    private static final ObjectMapper JSON = new ObjectMapper();
+
+    public static void main(String[] args) throws Exception {
+        String baseUrl = args.length > 0 ? args[0] : "http://127.0.0.1:8081/api";
+        int sessions = args.length > 1 ? Integer.parseInt(args[1]) : 500;
+        int seconds = args.length > 2 ? Integer.parseInt(args[2]) : 20;
+        boolean allowRemote = args.length > 3 && args[3].equals("--allow-remote");
+
+        URI base = URI.create(baseUrl.endsWith("/") ? baseUrl.substring(0, baseUrl.length() - 1) : baseUrl);
+        if (!allowRemote && !LOOPBACK_HOSTS.contains(base.getHost())) {
+            throw new IllegalArgumentException(base.getHost() + " is not a loopback address; start a disposable "
+                    + "instance locally or pass --allow-remote");
+        }
+        String token = System.getenv("SENSESAFE_TOKEN");
+        String authorization = token != null && !token.isBlank() ? "Bearer " + token.trim() : null;
+
+        Map<String, Object> result = run(base, authorization, sessions, seconds);
+        System.out.println(JSON.copy().enable(SerializationFeature.INDENT_OUTPUT).writeValueAsString(result));
+    }
+
+    private static Map<String, Object> run(URI base, String authorization, int sessions, int seconds)
+            throws InterruptedException {
+        HttpClient client = HttpClient.newBuilder()
+                .version(HttpClient.Version.HTTP_1_1)
+                .connectTimeout(Duration.ofSeconds(10))
+                .build();
+
+        LatencyHistogram connectLatency = new LatencyHistogram();
+        LatencyHistogram deliveryLag = new LatencyHistogram(LAG_BOUNDS_MILLIS);
+        LongAdder snapshots = new LongAdder();
+        LongAdder deltas = new LongAdder();
+        LongAdder heartbeats = new LongAdder();
+        LongAdder failures = new LongAdder();
+        LongAdder outOfOrder = new LongAdder();
+        JsonNode publisherBefore = publisherMetrics(client, base, authorization);
+
+        List<SessionSubscriber> subscribers = new ArrayList<>(sessions);
+        List<CompletableFuture<HttpResponse<Void>>> responses = new ArrayList<>(sessions);
+        for (int i = 0; i < sessions; i++) {
+            SessionSubscriber subscriber = new SessionSubscriber(System.nanoTime(), connectLatency, deliveryLag,
+                    snapshots, deltas, heartbeats, outOfOrder);
+            HttpRequest.Builder request = HttpRequest.newBuilder(URI.create(base + "/admin/dashboard/stream"))
+                    .header("Accept", "text/event-stream")
+                    .GET();
+            if (authorization != null) {
+                request.header("Authorization", authorization);
+            }
+            subscribers.add(subscriber);
+            responses.add(client.sendAsync(request.build(), HttpResponse.BodyHandlers.fromLineSubscriber(subscriber))
+                    .whenComplete((response, error) -> {
+                        if (error != null || response.statusCode() != 200) {
+                            failures.increment();
+                        }
+                    }));
+        }
+
+        TimeUnit.SECONDS.sleep(seconds);
+
+        long connected = subscribers.stream().filter(s -> s.firstEventNanos.get() != 0).count();
+        long minEvents = subscribers.stream().mapToLong(s -> s.events.get()).min().orElse(0);
+        long maxEvents = subscribers.stream().mapToLong(s -> s.events.get()).max().orElse(0);
+        for (SessionSubscriber subscriber : subscribers) {
+            subscriber.cancel();
+        }
+        for (CompletableFuture<HttpResponse<Void>> response : responses) {
+            response.cancel(true);
+        }
+
+        JsonNode publisherAfter = publisherMetrics(client, base, authorization);
+        Map<String, Object> result = new HashMap<>();
+        result.put("sessions", sessions);
+        result.put("seconds", seconds);
+        result.put("connected", connected);
+        result.put("failures", failures.sum());
+        result.put("snapshotsReceived", snapshots.sum());
+        result.put("deltasReceived", deltas.sum());
+        result.put("heartbeatsReceived", heartbeats.sum());
+        if (publisherBefore != null && publisherAfter != null) {
+            result.put("deltasPublished", publisherAfter.path("deltasPublished").asLong()
+                    - publisherBefore.path("deltasPublished").asLong());
+        }
+        result.put("minEventsPerSession", minEvents);
+        result.put("maxEventsPerSession", maxEvents);
+        result.put("outOfOrder", outOfOrder.sum());
+        result.put("timeToSnapshot", connectLatency.snapshot());
+        result.put("deliveryLag", deliveryLag.snapshot());
+        result.put("publisher", publisherAfter);
+        return result;
+    }
+
+    /**
+     * The dashboardStream section of the server's pipeline metrics, or null
+     * if it could not be read
+     */
+    private static JsonNode publisherMetrics(HttpClient client, URI base, String authorization) {
+        HttpRequest.Builder request = HttpRequest.newBuilder(URI.create(base + "/admin/pipeline/metrics"))
+                .timeout(Duration.ofSeconds(30))
+                .GET();
+        if (authorization != null) {
+            request.header("Authorization", authorization);
+        }
+        try {
+            HttpResponse<String> response = client.send(request.build(), HttpResponse.BodyHandlers.ofString());
+            if (response.statusCode() != 200) {
+                System.err.println("Could not read publisher metrics: HTTP " + response.statusCode());
+                return null;
+            }
+            return JSON.readTree(response.body()).get("dashboardStream");
+        } catch (Exception e) {
+            System.err.println("Could not read publisher metrics: " + e.getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * Reads one stream's SSE lines and tallies its events
+     */
+    private static final class SessionSubscriber implements Flow.Subscriber<String> {
+        private final long openedNanos;
+        private final LatencyHistogram connectLatency;
+        private final LatencyHistogram deliveryLag;
+        private final LongAdder snapshots;
+        private final LongAdder deltas;
+        private final LongAdder heartbeats;
+        private final LongAdder outOfOrder;
+        private final AtomicLong firstEventNanos = new AtomicLong();
+        private final AtomicLong events = new AtomicLong();
+        private volatile Flow.Subscription subscription;
+        private String eventName;
+        private long lastSeq = -1;
+
+        SessionSubscriber(long openedNanos, LatencyHistogram connectLatency, LatencyHistogram deliveryLag,
+                          LongAdder snapshots, LongAdder deltas, LongAdder heartbeats, LongAdder outOfOrder) {
+            this.openedNanos = openedNanos;
+            this.connectLatency = connectLatency;
+            this.deliveryLag = deliveryLag;
+            this.snapshots = snapshots;
+            this.deltas = deltas;
+            this.heartbeats = heartbeats;
+            this.outOfOrder = outOfOrder;
+        }
+
+        @Override
+        public void onSubscribe(Flow.Subscription subscription) {
+            this.subscription = subscription;
+            subscription.request(Long.MAX_VALUE);
+        }
+
+        @Override
+        public void onNext(String line) {
+            if (line.startsWith("event:")) {
+                eventName = line.substring(6).trim();
+            } else if (line.startsWith("data:")) {
+                onEvent(eventName, line.substring(5).trim());
+            } else if (line.isEmpty()) {
+                eventName = null;
+            }
+        }
+
+        private void onEvent(String name, String data) {
+            long receivedAt = System.currentTimeMillis();
+            try {
+                JsonNode event = JSON.readTree(data);
+                long eventSeq = event.path("seq").asLong();
+                deliveryLag.record(Math.max(0, receivedAt - event.path("publishedAt").asLong()) * 1_000_000);
+                if ("snapshot".equals(name)) {
+                    snapshots.increment();
+                    if (firstEventNanos.compareAndSet(0, System.nanoTime())) {
+                        connectLatency.record(firstEventNanos.get() - openedNanos);
+                    }
+                } else if ("delta".equals(name)) {
+                    deltas.increment();
+                    if (lastSeq >= 0 && eventSeq != lastSeq + 1) {
+                        outOfOrder.increment();
+                    }
+                } else if ("heartbeat".equals(name)) {
+                    heartbeats.increment();
+                }
+                if (!"heartbeat".equals(name)) {
+                    lastSeq = eventSeq;
+                }
+                events.incrementAndGet();
+            } catch (Exception e) {
+                // A malformed line only skews the tallies
+            }
+        }
+
+        @Override
+        public void onError(Throwable throwable) {
+        }
+
+        @Override
+        public void onComplete() {
+        }
+
+        void cancel() {
+            Flow.Subscription current = subscription;
+            if (current != null) {
+                current.cancel();
+            }
+        }
+    }
+}
@@ -0,0 +1,179 @@
+package com.sensesafe.benchmark;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.sensesafe.config.LatencyHistogram;
+
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Reports incidents against a server's POST /incidents with a fixed number
+ * of clients in flight, and measures throughput, latency and how many
+ * threads the server needed.
+ *
+ * Every request runs the full incident pipeline, so point this at a
+ * disposable instance started just for the run, never at one holding real
+ * reports; it refuses anything but a loopback address unless --allow-remote
+ * is given. It runs in its own JVM, so the server's thread counts, read from
+ * /admin/pipeline/metrics before and after, only include the server. The
+ * execution mode is fixed at startup, so platform and virtual threads are
+ * compared by starting the instance once with VIRTUAL_THREADS off and once
+ * with it on. The admin token is read from SENSESAFE_TOKEN. Run with
+ *
+ *   SENSESAFE_TOKEN=... mvn test-compile exec:java -Dexec.classpathScope=test \
+ *       -Dexec.mainClass=com.sensesafe.benchmark.IncidentLoadTest \
+ *       -Dexec.args="http://127.0.0.1:8081/api 1000 10000 120"
+ */
+public class IncidentLoadTest {
+
+    private static final int CLIENT_THREADS = 4;
+    private static final Set<String> LOOPBACK_HOSTS = Set.of("localhost", "127.0.0.1", "[::1]");
+    private static final ObjectMapper JSON = new ObjectMapper();
+
+    public static void main(String[] args) throws Exception {
+        String baseUrl = args.length > 0 ? args[0] : "http://127.0.0.1:8081/api";
+        int clients = args.length > 1 ? Integer.parseInt(args[1]) : 1000;
+        int requests = args.length > 2 ? Integer.parseInt(args[2]) : 10000;
+        int timeoutSeconds = args.length > 3 ? Integer.parseInt(args[3]) : 120;
+        boolean allowRemote = args.length > 4 && args[4].equals("--allow-remote");
+
+        URI base = URI.create(baseUrl.endsWith("/") ? baseUrl.substring(0, baseUrl.length() - 1) : baseUrl);
+        if (!allowRemote && !LOOPBACK_HOSTS.contains(base.getHost())) {
+            throw new IllegalArgumentException(base.getHost() + " is not a loopback address; start a disposable "
+                    + "instance locally or pass --allow-remote");
+        }
+        String token = System.getenv("SENSESAFE_TOKEN");
+        String authorization = token != null && !token.isBlank() ? "Bearer " + token.trim() : null;
+
+        Map<String, Object> result = run(base, authorization, clients, requests, timeoutSeconds);
+        System.out.println(JSON.copy().enable(SerializationFeature.INDENT_OUTPUT).writeValueAsString(result));
+    }
+
+    private static Map<String, Object> run(URI base, String authorization, int clients, int requests,
+                                           int timeoutSeconds) throws Exception {
+        ExecutorService clientExecutor = Executors.newFixedThreadPool(CLIENT_THREADS);
+        HttpClient client = HttpClient.newBuilder()
+                .version(HttpClient.Version.HTTP_1_1)
+                .connectTimeout(Duration.ofSeconds(10))
+                .executor(clientExecutor)
+                .build();
+        URI incidents = URI.create(base + "/incidents");
+
+        JsonNode threadsBefore = serverThreads(client, base, authorization);
+        LatencyHistogram latency = new LatencyHistogram();
+        Map<Integer, LongAdder> statuses = new ConcurrentHashMap<>();
+        LongAdder failures = new LongAdder();
+        Semaphore inFlight = new Semaphore(clients);
+        long start = System.nanoTime();
+        long deadline = start + TimeUnit.SECONDS.toNanos(timeoutSeconds);
+        int sent = 0;
+        try {
+            for (; sent < requests; sent++) {
+                if (!inFlight.tryAcquire(Math.max(0, deadline - System.nanoTime()), TimeUnit.NANOSECONDS)) {
+                    break;
+                }
+                HttpRequest.Builder request = HttpRequest.newBuilder(incidents)
+                        .timeout(Duration.ofSeconds(timeoutSeconds))
+                        .header("Content-Type", "application/json")
+                        .POST(HttpRequest.BodyPublishers.ofString(incidentBody(sent)));
+                if (authorization != null) {
+                    request.header("Authorization", authorization);
+                }
+                long requestStart = System.nanoTime();
+                client.sendAsync(request.build(), HttpResponse.BodyHandlers.discarding())
+                        .whenComplete((response, error) -> {
+                            latency.record(System.nanoTime() - requestStart);
+                            if (error != null) {
+                                failures.increment();
+                            } else {
+                                statuses.computeIfAbsent(response.statusCode(), code -> new LongAdder()).increment();
+                            }
+                            inFlight.release();
+                        });
+            }
+            // Wait for the stragglers
+            boolean drained = inFlight.tryAcquire(clients, Math.max(0, deadline - System.nanoTime()),
+                    TimeUnit.NANOSECONDS);
+            double seconds = (System.nanoTime() - start) / 1_000_000_000.0;
+
+            Map<String, Long> statusCounts = new TreeMap<>();
+            statuses.forEach((status, count) -> statusCounts.put(String.valueOf(status), count.sum()));
+            long completed = latency.getCount() - failures.sum();
+
+            Map<String, Object> server = new HashMap<>();
+            server.put("before", threadsBefore);
+            server.put("after", serverThreads(client, base, authorization));
+
+            Map<String, Object> result = new HashMap<>();
+            result.put("url", incidents.toString());
+            result.put("clients", clients);
+            result.put("requested", requests);
+            result.put("sent", sent);
+            result.put("completed", completed);
+            result.put("drained", drained);
+            result.put("failures", failures.sum());
+            result.put("statusCounts", statusCounts);
+            result.put("seconds", seconds);
+            result.put("requestsPerSecond", seconds > 0 ? completed / seconds : 0.0);
+            result.put("latency", latency.snapshot());
+            result.put("server", server);
+            return result;
+        } finally {
+            clientExecutor.shutdownNow();
+        }
+    }
+
+    /**
+     * The serverThreads section of the server's pipeline metrics, or null if
+     * it could not be read
+     */
+    private static JsonNode serverThreads(HttpClient client, URI base, String authorization) {
+        HttpRequest.Builder request = HttpRequest.newBuilder(URI.create(base + "/admin/pipeline/metrics"))
+                .timeout(Duration.ofSeconds(30))
+                .GET();
+        if (authorization != null) {
+            request.header("Authorization", authorization);
+        }
+        try {
+            HttpResponse<String> response = client.send(request.build(), HttpResponse.BodyHandlers.ofString());
+            if (response.statusCode() != 200) {
+                System.err.println("Could not read server threads: HTTP " + response.statusCode());
+                return null;
+            }
+            return JSON.readTree(response.body()).get("serverThreads");
+        } catch (Exception e) {
+            System.err.println("Could not read server threads: " + e.getMessage());
+            return null;
+        }
+    }
+
+    private static String incidentBody(int n) throws Exception {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        Map<String, Object> incident = new HashMap<>();
+        incident.put("title", "Load test incident " + n);
+        incident.put("description", "Generated by the incident load test");
+        incident.put("type", "OTHER");
+        incident.put("severity", "LOW");
+        // Around the sample data, spread over roughly 20km so the reports don't all land in one geohash cell
+        incident.put("latitude", 40.7128 + random.nextDouble(-0.1, 0.1));
+        incident.put("longitude", -74.0060 + random.nextDouble(-0.1, 0.1));
+        incident.put("address", "Load test location " + n);
+        return JSON.writeValueAsString(incident);
+    }
+}
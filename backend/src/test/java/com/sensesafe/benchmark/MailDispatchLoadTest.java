@@ -0,0 +1,99 @@
+package com.sensesafe.benchmark;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.sensesafe.service.MailDispatcher;
+import jakarta.mail.Session;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+
+/**
+ * Pushes a burst of alert mail through a MailDispatcher into a local
+ * SmtpSinkServer, once with a connection per message (how EmailService
+ * used to send) and once with the pooled settings, and reports both.
+ *
+ * Mail goes out the way a mass alert does: one LOW body to a block of 99
+ * recipients, encoded once, then a CRITICAL message on its own, so the
+ * per-priority queue wait shows whether urgent mail overtakes the backlog.
+ * Nothing leaves the machine. Run with
+ *
+ *   mvn test-compile exec:java -Dexec.classpathScope=test \
+ *       -Dexec.mainClass=com.sensesafe.benchmark.MailDispatchLoadTest -Dexec.args="2000 4 20 100 150 5"
+ */
+public class MailDispatchLoadTest {
+
+    // Spring's default @Async pool, which the old per-message sends ran on
+    private static final int BASELINE_THREADS = 8;
+
+    public static void main(String[] args) throws Exception {
+        int messages = args.length > 0 ? Integer.parseInt(args[0]) : 2000;
+        int connections = args.length > 1 ? Integer.parseInt(args[1]) : 4;
+        int batchSize = args.length > 2 ? Integer.parseInt(args[2]) : 20;
+        int maxMessagesPerConnection = args.length > 3 ? Integer.parseInt(args[3]) : 100;
+        long handshakeMillis = args.length > 4 ? Long.parseLong(args[4]) : 150;
+        long replyMillis = args.length > 5 ? Long.parseLong(args[5]) : 5;
+
+        Map<String, Object> result = run(messages, connections, batchSize, maxMessagesPerConnection,
+                handshakeMillis, replyMillis);
+        System.out.println(new ObjectMapper().enable(SerializationFeature.INDENT_OUTPUT).writeValueAsString(result));
+    }
+
+    private static Map<String, Object> run(int messages, int connections, int batchSize, int maxMessagesPerConnection,
+                                           long handshakeMillis, long replyMillis)
+            throws IOException, InterruptedException {
+        Map<String, Object> result = new HashMap<>();
+        result.put("messages", messages);
+        result.put("handshakeMillis", handshakeMillis);
+        result.put("replyMillis", replyMillis);
+        result.put("connectionPerMessage",
+                runOnce(messages, BASELINE_THREADS, 1, 1, handshakeMillis, replyMillis));
+        result.put("pooled",
+                runOnce(messages, connections, batchSize, maxMessagesPerConnection, handshakeMillis, replyMillis));
+        return result;
+    }
+
+    private static Map<String, Object> runOnce(int messages, int connections, int batchSize, int maxMessagesPerConnection,
+                                        long handshakeMillis, long replyMillis)
+            throws IOException, InterruptedException {
+        try (SmtpSinkServer sink = new SmtpSinkServer(handshakeMillis, replyMillis)) {
+            Properties properties = new Properties();
+            properties.put("mail.smtp.auth", "false");
+            properties.put("mail.smtp.connectiontimeout", "10000");
+            properties.put("mail.smtp.timeout", "10000");
+            MailDispatcher dispatcher = new MailDispatcher(Session.getInstance(properties), "smtp", "localhost",
+                    sink.getPort(), null, null, "loadtest@sensesafe.local", connections, messages + 1, batchSize,
+                    maxMessagesPerConnection, 30_000, 0);
+
+            String body = "<html><body><h1>Load test alert</h1><p>Incident details and location</p></body></html>";
+            long start = System.nanoTime();
+            for (int block = 0; block * 100 < messages; block++) {
+                List<String> residents = new ArrayList<>(99);
+                for (int i = block * 100 + 1; i < Math.min(messages, (block + 1) * 100); i++) {
+                    residents.add("resident" + i + "@example.com");
+                }
+                dispatcher.submit(residents, "Load test alert " + block, body, true, MailDispatcher.Priority.LOW);
+                dispatcher.submit("contact" + block + "@example.com", "Load test SOS " + block, body, true,
+                        MailDispatcher.Priority.CRITICAL);
+            }
+            boolean drained = dispatcher.awaitIdle(600_000);
+            double seconds = (System.nanoTime() - start) / 1_000_000_000.0;
+            dispatcher.shutdown(0);
+
+            Map<String, Object> result = new HashMap<>();
+            result.put("connections", connections);
+            result.put("batchSize", batchSize);
+            result.put("maxMessagesPerConnection", maxMessagesPerConnection);
+            result.put("completed", drained);
+            result.put("seconds", seconds);
+            result.put("messagesPerSecond", seconds > 0 ? sink.getMessageCount() / seconds : 0.0);
+            result.put("dispatcher", dispatcher.getMetrics());
+            result.put("sink", sink.getMetrics());
+            return result;
+        }
+    }
+}
@@ -0,0 +1,153 @@
+package com.sensesafe.benchmark;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Minimal local SMTP server that accepts and discards everything, for
+ * measuring the mail dispatcher without a real provider.
+ *
+ * It speaks just enough SMTP for JavaMail (EHLO, MAIL, RCPT, DATA, RSET,
+ * NOOP, QUIT) with no TLS or AUTH. To make connection reuse show up the
+ * way it does against a remote provider, it can wait before the greeting
+ * (standing in for TCP, STARTTLS and AUTH round trips) and before every
+ * reply (one network round trip).
+ */
+public class SmtpSinkServer implements AutoCloseable {
+
+    private final ServerSocket serverSocket;
+    private final long handshakeMillis;
+    private final long replyMillis;
+    private final Thread acceptor;
+    private volatile boolean running = true;
+
+    private final AtomicInteger openConnections = new AtomicInteger();
+    private final LongAdder connections = new LongAdder();
+    private final LongAdder messages = new LongAdder();
+    private final LongAdder recipients = new LongAdder();
+    private final LongAdder bytes = new LongAdder();
+
+    public SmtpSinkServer(long handshakeMillis, long replyMillis) throws IOException {
+        this.serverSocket = new ServerSocket(0, 200, InetAddress.getLoopbackAddress());
+        this.handshakeMillis = handshakeMillis;
+        this.replyMillis = replyMillis;
+        this.acceptor = new Thread(this::acceptLoop, "smtp-sink-accept");
+        this.acceptor.setDaemon(true);
+        this.acceptor.start();
+    }
+
+    public int getPort() {
+        return serverSocket.getLocalPort();
+    }
+
+    public long getMessageCount() {
+        return messages.sum();
+    }
+
+    public Map<String, Object> getMetrics() {
+        Map<String, Object> metrics = new HashMap<>();
+        metrics.put("port", getPort());
+        metrics.put("handshakeMillis", handshakeMillis);
+        metrics.put("replyMillis", replyMillis);
+        metrics.put("connections", connections.sum());
+        metrics.put("openConnections", openConnections.get());
+        metrics.put("messages", messages.sum());
+        metrics.put("recipients", recipients.sum());
+        metrics.put("bytes", bytes.sum());
+        return metrics;
+    }
+
+    @Override
+    public void close() {
+        running = false;
+        try {
+            serverSocket.close();
+        } catch (IOException e) {
+            // Closing anyway
+        }
+    }
+
+    private void acceptLoop() {
+        while (running) {
+            try {
+                Socket socket = serverSocket.accept();
+                Thread handler = new Thread(() -> serve(socket), "smtp-sink-" + connections.sum());
+                handler.setDaemon(true);
+                handler.start();
+            } catch (IOException e) {
+                if (running) {
+                    System.err.println("SMTP sink accept failed: " + e.getMessage());
+                }
+            }
+        }
+    }
+
+    private void serve(Socket socket) {
+        connections.increment();
+        openConnections.incrementAndGet();
+        try (socket;
+             BufferedReader in = new BufferedReader(
+                     new InputStreamReader(socket.getInputStream(), StandardCharsets.US_ASCII));
+             OutputStream out = socket.getOutputStream()) {
+            pause(handshakeMillis);
+            reply(out, "220 localhost SenseSafe SMTP sink");
+            String line;
+            while ((line = in.readLine()) != null) {
+                String command = line.length() >= 4 ? line.substring(0, 4).toUpperCase() : line.toUpperCase();
+                switch (command) {
+                    case "EHLO" -> reply(out, "250-localhost\r\n250-8BITMIME\r\n250 SIZE 52428800");
+                    case "HELO", "MAIL", "RSET", "NOOP" -> reply(out, "250 OK");
+                    case "RCPT" -> {
+                        recipients.increment();
+                        reply(out, "250 OK");
+                    }
+                    case "DATA" -> {
+                        reply(out, "354 End data with <CR><LF>.<CR><LF>");
+                        while ((line = in.readLine()) != null && !line.equals(".")) {
+                            bytes.add(line.length() + 2);
+                        }
+                        messages.increment();
+                        reply(out, "250 OK queued");
+                    }
+                    case "QUIT" -> {
+                        reply(out, "221 Bye");
+                        return;
+                    }
+                    default -> reply(out, "502 Command not implemented");
+                }
+            }
+        } catch (IOException e) {
+            // Client went away
+        } finally {
+            openConnections.decrementAndGet();
+        }
+    }
+
+    private void reply(OutputStream out, String response) throws IOException {
+        pause(replyMillis);
+        out.write((response + "\r\n").getBytes(StandardCharsets.US_ASCII));
+        out.flush();
+    }
+
+    private static void pause(long millis) {
+        if (millis <= 0) {
+            return;
+        }
+        try {
+            TimeUnit.MILLISECONDS.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}